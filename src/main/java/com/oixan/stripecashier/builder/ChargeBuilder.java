@@ -1,8 +1,11 @@
 package com.oixan.stripecashier.builder;
 
+import com.oixan.stripecashier.client.IdempotencyKeys;
+import com.oixan.stripecashier.client.StripeClientResolver;
+import com.oixan.stripecashier.client.StripeInvoker;
 import com.oixan.stripecashier.factory.PaymentMethodsManagerFactory;
 import com.oixan.stripecashier.interfaces.IUserStripe;
-import com.stripe.Stripe;
+import com.stripe.StripeClient;
 import com.stripe.model.PaymentIntent;
 import com.stripe.model.PaymentMethod;
 import com.stripe.model.Refund;
@@ -10,6 +13,8 @@ import com.stripe.param.PaymentIntentCreateParams;
 import com.stripe.param.RefundCreateParams;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import java.util.HashMap;
@@ -42,6 +47,7 @@ import java.util.Map;
  * @see Refund
  */
 @Component
+@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 public class ChargeBuilder {
 
     /**
@@ -58,12 +64,37 @@ public class ChargeBuilder {
     private PaymentMethodsManagerFactory paymentMethodsManagerFactory;
 
 
+    /**
+     * Gives the Stripe client of the account serving the user.
+     */
+    @Autowired
+    private StripeClientResolver stripeClientResolver;
+
+    /**
+     * Runs and records the Stripe calls.
+     */
+    @Autowired
+    private StripeInvoker stripeInvoker;
+
+
     /**
      * The user associated with the checkout session.
      */
     private IUserStripe user; 
 
 
+    /**
+     * The idempotency key of the next charge or refund, set by the caller.
+     */
+    private String idempotencyKey;
+
+
+    /**
+     * Whether the key of the next charge or refund is derived from its parameters.
+     */
+    private boolean deriveIdempotencyKey;
+
+
     /**
      * Constructs a new {@code ChargeBuilder} instance.
      */
@@ -83,6 +114,38 @@ public class ChargeBuilder {
     }
 
 
+    /**
+     * Sets the idempotency key sent with the next charge or refund.
+     * <p>
+     * Retrying a charge with the same key, for example after a timeout, returns the first PaymentIntent instead of
+     * charging the customer again. Without a key, each call gets a random one, unless
+     * {@link #deriveIdempotencyKey()} is used. The key is used by a single call.
+     *
+     * @param idempotencyKey the idempotency key, unique per charge or refund
+     * @return the {@code ChargeBuilder} instance for method chaining
+     */
+    public ChargeBuilder setIdempotencyKey(String idempotencyKey) {
+      this.idempotencyKey = idempotencyKey;
+      return this;
+    }
+
+
+    /**
+     * Derives the idempotency key of the next charge or refund from its parameters, instead of generating one.
+     * <p>
+     * A retry of the same call, even from another process, then sends the same key and gets the result of the
+     * first attempt. Stripe keeps a key for 24 hours, so only use it for calls that are never legitimately
+     * repeated within that time: a second refund of the same amount of the same PaymentIntent would return the
+     * first Refund instead of creating one.
+     *
+     * @return the {@code ChargeBuilder} instance for method chaining
+     */
+    public ChargeBuilder deriveIdempotencyKey() {
+      this.deriveIdempotencyKey = true;
+      return this;
+    }
+
+
     /**
      * Charges the customer using the default provided payment method.
      * <p>
@@ -187,9 +250,14 @@ public class ChargeBuilder {
         // Aggiungi gli altri parametri
         options.forEach((key, value) -> paramsBuilder.putExtraParam(key, value));
 
+        RefundCreateParams params = paramsBuilder.build();
+
+        String key = takeIdempotencyKey("refund.create", params.toMap());
+
         try {
             // Crea il rimborso
-            Refund refund = Refund.create(paramsBuilder.build());
+            Refund refund = stripeInvoker.invoke("refund.create", key,
+                    () -> stripeClient().refunds().create(params, IdempotencyKeys.options(key)));
             return refund;
         } catch (Exception e) {
             throw new Exception("Failed to create Refund: " + e.getMessage(), e);
@@ -221,9 +289,14 @@ public class ChargeBuilder {
       // Add other options (like confirmation_method, payment_method, etc.)
       options.forEach(paramsBuilder::putExtraParam);
 
+      PaymentIntentCreateParams params = paramsBuilder.build();
+
+      String key = takeIdempotencyKey("payment_intent.create", params.toMap());
+
       try {
           // Create the PaymentIntent
-          PaymentIntent paymentIntent = PaymentIntent.create(paramsBuilder.build());
+          PaymentIntent paymentIntent = stripeInvoker.invoke("payment_intent.create", key,
+                  () -> stripeClient().paymentIntents().create(params, IdempotencyKeys.options(key)));
           return paymentIntent;
       } catch (Exception e) {
           throw new Exception("Failed to create PaymentIntent: " + e.getMessage(), e);
@@ -231,6 +304,29 @@ public class ChargeBuilder {
     }
 
     
+    /**
+     * Returns the idempotency key set by the caller, or a derived or random one, and clears the settings for the
+     * next call.
+     *
+     * @param operation the name of the operation
+     * @param params the parameters of the call, from which a key is derived when requested
+     * @return the idempotency key
+     */
+    private String takeIdempotencyKey(String operation, Map<String, Object> params) {
+        String key;
+        if (idempotencyKey != null) {
+            key = idempotencyKey;
+        } else if (deriveIdempotencyKey) {
+            key = IdempotencyKeys.derive(operation, params);
+        } else {
+            key = IdempotencyKeys.random(operation);
+        }
+        idempotencyKey = null;
+        deriveIdempotencyKey = false;
+        return key;
+    }
+
+
     /**
      * Returns the preferred currency for the payment.
      * 
@@ -271,4 +367,13 @@ public class ChargeBuilder {
             throw new Exception("This payment requires confirmation.");
         }
     }
+
+    /**
+     * Gets the Stripe client of the account serving the user.
+     *
+     * @return the Stripe client
+     */
+    private StripeClient stripeClient() {
+        return stripeClientResolver.resolve(user);
+    }
 }
@@ -1,9 +1,14 @@
 package com.oixan.stripecashier.builder;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
+import com.oixan.stripecashier.client.StripeClientResolver;
+import com.oixan.stripecashier.client.StripeInvoker;
 import com.oixan.stripecashier.interfaces.IUserStripe;
+import com.stripe.StripeClient;
 import com.stripe.exception.StripeException;
 import com.stripe.model.checkout.Session;
 import com.stripe.param.checkout.SessionCreateParams;
@@ -15,6 +20,7 @@ import com.stripe.param.checkout.SessionCreateParams;
  * The {@code complete} method finalizes the checkout session creation and returns the session URL.
  */
 @Component
+@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 public class CheckoutBuilder {
 
 
@@ -43,6 +49,18 @@ public class CheckoutBuilder {
      */
     private IUserStripe user;
 
+    /**
+     * Runs and records the Stripe calls.
+     */
+    @Autowired
+    private StripeInvoker stripeInvoker;
+
+    /**
+     * Gives the Stripe client of the account serving the user.
+     */
+    @Autowired
+    private StripeClientResolver stripeClientResolver;
+
     /**
      * Constructs a new {@code CheckoutBuilder} instance with the specified   .
      *
@@ -77,7 +95,7 @@ public class CheckoutBuilder {
                         .build();
 
         try {
-            Session session = Session.create(params);
+            Session session = stripeInvoker.invoke("checkout_session.create", () -> stripeClient().checkout().sessions().create(params));
             return session.getUrl();
         } catch (StripeException e) {
             throw new IllegalArgumentException("Failed to create checkout session.", e);
@@ -138,4 +156,13 @@ public class CheckoutBuilder {
         this.user = user;
         return this;
     }
+
+    /**
+     * Gets the Stripe client of the account serving the user.
+     *
+     * @return the Stripe client
+     */
+    private StripeClient stripeClient() {
+        return stripeClientResolver.resolve(user);
+    }
 }
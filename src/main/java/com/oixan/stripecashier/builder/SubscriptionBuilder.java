@@ -4,17 +4,28 @@ import java.time.Instant;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.Scope;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Component;
 
+import com.oixan.stripecashier.client.IdempotencyKeys;
+import com.oixan.stripecashier.client.StripeClientResolver;
+import com.oixan.stripecashier.client.StripeInvoker;
 import com.oixan.stripecashier.factory.SubscriptionServiceFactory;
+import com.oixan.stripecashier.interfaces.IUserStripe;
 import com.oixan.stripecashier.manager.CustomerManager;
 import com.oixan.stripecashier.manager.PaymentMethodsManager;
+import com.oixan.stripecashier.outbox.SubscriptionOutbox;
+import com.oixan.stripecashier.support.Async;
+import com.stripe.StripeClient;
 import com.stripe.exception.StripeException;
-import com.stripe.model.Customer;
 import com.stripe.model.PaymentMethod;
 import com.stripe.model.Subscription;
 import com.stripe.param.SubscriptionCreateParams;
@@ -25,11 +36,37 @@ import com.stripe.param.SubscriptionCreateParams.Item;
  * It supports setting custom trial periods, associating customers, handling payment methods, and defining subscription options.
  */
 @Component
+@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 public class SubscriptionBuilder {
 	
 	@Autowired
 	private SubscriptionServiceFactory subscriptionServiceFactory;
 
+    /**
+     * Runs the asynchronous variants of the operations.
+     */
+    @Autowired
+    @Qualifier("stripeCashierExecutor")
+    private Executor executor;
+
+    /**
+     * Gives the Stripe client of the account serving the user.
+     */
+    @Autowired
+    private StripeClientResolver stripeClientResolver;
+
+    /**
+     * Runs and records the Stripe calls.
+     */
+    @Autowired
+    private StripeInvoker stripeInvoker;
+
+    /**
+     * Writes the created subscriptions off the request thread, when {@code stripe.outbox.enabled} is set.
+     */
+    @Autowired(required = false)
+    private SubscriptionOutbox subscriptionOutbox;
+
     /**
      * Manages Stripe customers.
      */
@@ -50,6 +87,16 @@ public class SubscriptionBuilder {
      */
     private Instant trialExpires;
 
+    /**
+     * The idempotency key of the next subscription creation, set by the caller.
+     */
+    private String idempotencyKey;
+
+    /**
+     * Whether the key of the next subscription creation is derived from its parameters.
+     */
+    private boolean deriveIdempotencyKey;
+
     /**
      * Constructs a new instance with the specified managers.
      */
@@ -91,6 +138,35 @@ public class SubscriptionBuilder {
         return this;
     }
 
+    /**
+     * Sets the idempotency key sent with the next subscription creation.
+     * <p>
+     * Without a key, each creation gets a random one, unless {@link #deriveIdempotencyKey()} is used. Set a key to
+     * share it between the retries of a creation across processes. The key is used by a single call.
+     *
+     * @param idempotencyKey the idempotency key
+     * @return the current instance of {@code SubscriptionBuilder} for method chaining
+     */
+    public SubscriptionBuilder setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+        return this;
+    }
+
+    /**
+     * Derives the idempotency key of the next subscription creation from the subscription type and the creation
+     * parameters, instead of generating one.
+     * <p>
+     * Starting the same subscription again, even from another process, then returns the first one. Stripe keeps a
+     * key for 24 hours, so do not use it where a user may cancel and subscribe to the same price again within that
+     * time: Stripe would return the canceled subscription.
+     *
+     * @return the current instance of {@code SubscriptionBuilder} for method chaining
+     */
+    public SubscriptionBuilder deriveIdempotencyKey() {
+        this.deriveIdempotencyKey = true;
+        return this;
+    }
+
     /**
      * Sets the trial period for the subscription in days.
      *
@@ -172,17 +248,77 @@ public class SubscriptionBuilder {
             String paymentMethod,
             String type
     ) throws StripeException {
-        Customer stripeCustomer = customerManager.asStripeCustomer();
+        return create(snapshot(), subscriptionOptions, paymentMethod, type);
+    }
+    
+    /**
+     * Creates a basic subscription without blocking the calling thread.
+     *
+     * @return a future completed with the created {@code Subscription}
+     * @see #start()
+     */
+    public CompletableFuture<Subscription> startAsync() {
+        return startAsync(null, null, null);
+    }
 
-        if (stripeCustomer == null) {
-            throw new IllegalArgumentException("Customer is required.");
-        }
+    /**
+     * Creates a subscription with specified options, payment method, and type without blocking the calling thread.
+     * <p>
+     * The Stripe calls and the database save run on the {@code stripeCashierExecutor}. A {@link StripeException}
+     * completes the future exceptionally, wrapped in a {@link java.util.concurrent.CompletionException}.
+     * The price, trial, idempotency key and user are read before this method returns, so the builder can be
+     * changed and reused while the future is pending.
+     *
+     * @param subscriptionOptions the subscription options
+     * @param paymentMethod the payment method ID
+     * @param type the type of subscription
+     * @return a future completed with the created {@code Subscription}
+     * @see #start(Map, String, String)
+     */
+    public CompletableFuture<Subscription> startAsync(
+            Map<String, Object> subscriptionOptions,
+            String paymentMethod,
+            String type
+    ) {
+        Creation creation = snapshot();
+        return Async.supply(() -> create(creation, subscriptionOptions, paymentMethod, type), executor);
+    }
+
+    /**
+     * Reads the state of the next subscription creation, and clears its idempotency key, which is used by a
+     * single call.
+     *
+     * @return the state of the creation
+     */
+    private Creation snapshot() {
+        Creation creation = new Creation(
+                customerManager.getUser(), priceId, getTrialEndForSubscription(), idempotencyKey, deriveIdempotencyKey);
+        idempotencyKey = null;
+        deriveIdempotencyKey = false;
+        return creation;
+    }
 
+    /**
+     * Creates a subscription from the state read by {@link #snapshot()}, without reading the builder again.
+     *
+     * @param creation the state of the creation
+     * @param subscriptionOptions the subscription options
+     * @param paymentMethod the payment method ID
+     * @param type the type of subscription
+     * @return the created {@code Subscription}
+     * @throws StripeException if an error occurs during subscription creation
+     */
+    private Subscription create(
+            Creation creation,
+            Map<String, Object> subscriptionOptions,
+            String paymentMethod,
+            String type
+    ) throws StripeException {
         if (type == null || type.isEmpty()) {
             type = "default";
         }
 
-        if (priceId == null) {
+        if (creation.priceId() == null) {
             throw new IllegalArgumentException("Price ID is required.");
         }
 
@@ -190,24 +326,18 @@ public class SubscriptionBuilder {
             subscriptionOptions = new HashMap<>();
         }
 
-        String paymentMethodId = paymentMethod != null && !paymentMethod.isEmpty()
-                ? paymentMethod
-                : (paymentMethodsManager.defaultPaymentMethod() != null  ? paymentMethodsManager.defaultPaymentMethod().getId() : null );
-
-        if (paymentMethodId == null) {
-            throw new IllegalArgumentException("Payment method is required.");
-        }
+        SubscriptionCreationPlan plan = SubscriptionCreationPlan.resolve(customerManager, creation.user(), paymentMethod);
 
         Item item = SubscriptionCreateParams.Item.builder()
-                .setPrice(priceId)
+                .setPrice(creation.priceId())
                 .setQuantity(1L)
                 .build();
 
-        Map<String, Object> updatedSubscriptionOptions = addAdditionalOptions(subscriptionOptions);
+        Map<String, Object> updatedSubscriptionOptions = addAdditionalOptions(subscriptionOptions, creation.trialEnd());
 
         SubscriptionCreateParams params = SubscriptionCreateParams.builder()
-                .setCustomer(stripeCustomer.getId())
-                .setDefaultPaymentMethod(paymentMethodId)
+                .setCustomer(plan.getCustomerId())
+                .setDefaultPaymentMethod(plan.getPaymentMethodId())
                 .addItem(item)
                 .putAllMetadata(updatedSubscriptionOptions.entrySet().stream()
                         .collect(Collectors.toMap(
@@ -216,9 +346,20 @@ public class SubscriptionBuilder {
                         )))
                 .build();
 
-        Subscription stripeSubscription = Subscription.create(params);
+        String key;
+        if (creation.idempotencyKey() != null) {
+            key = creation.idempotencyKey();
+        } else if (creation.deriveIdempotencyKey()) {
+            key = IdempotencyKeys.derive("subscription.create", type, params.toMap());
+        } else {
+            key = IdempotencyKeys.random("subscription.create");
+        }
+
+        StripeClient stripeClient = stripeClientResolver.resolve(creation.user());
+        Subscription stripeSubscription = stripeInvoker.invoke("subscription.create", key,
+                () -> stripeClient.subscriptions().create(params, IdempotencyKeys.options(key)));
 
-        saveSubscription(stripeSubscription, type);
+        saveSubscription(stripeSubscription, plan.getCustomerId(), type);
 
         return stripeSubscription;
     }
@@ -227,13 +368,14 @@ public class SubscriptionBuilder {
      * Adds additional metadata and options for the subscription.
      *
      * @param options the existing subscription options
+     * @param trialEnd the trial end in epoch seconds, or {@code null} if no trial is set
      * @return the updated options map
      */
-    private Map<String, Object> addAdditionalOptions(Map<String, Object> options) {
+    private Map<String, Object> addAdditionalOptions(Map<String, Object> options, String trialEnd) {
         Map<String, Object> updatedOptions = options != null ? options : new HashMap<>();
         updatedOptions.put("expand", List.of("latest_invoice.payment_intent"));
         updatedOptions.put("promotion_code", null);
-        updatedOptions.put("trial_end", this.getTrialEndForSubscription());
+        updatedOptions.put("trial_end", trialEnd);
         return updatedOptions;
     }
 
@@ -247,15 +389,16 @@ public class SubscriptionBuilder {
     }
 
     /**
-     * Saves the subscription to the database.
+     * Saves the subscription to the database, or queues it in the {@link SubscriptionOutbox} when enabled.
      *
      * @param stripeSubscription the Stripe subscription object
+     * @param customerId the ID of the Stripe customer
      * @param type the type of the subscription
      */
-    private void saveSubscription(Subscription stripeSubscription, String type) {
+    private void saveSubscription(Subscription stripeSubscription, String customerId, String type) {
         com.oixan.stripecashier.entity.Subscription subscription = new com.oixan.stripecashier.entity.Subscription();
 
-        subscription.setUserId(customerManager.stripeId());
+        subscription.setUserId(customerId);
         subscription.setType(type);
         subscription.setStripeId(stripeSubscription.getId());
         subscription.setStripeStatus(stripeSubscription.getStatus());
@@ -264,6 +407,31 @@ public class SubscriptionBuilder {
         subscription.setTrialEndsAt(null);
         subscription.setEndsAt(null);
 
-        subscriptionServiceFactory.create().createSubscription(subscription);
+        if (subscriptionOutbox != null) {
+            // The relay skips the subscriptions already saved
+            subscriptionOutbox.enqueue(subscription);
+            return;
+        }
+
+        // Upserted by Stripe ID: a retried creation rewrites the same row, and a new subscription gets its own
+        // row next to the ended ones of the same type
+        try {
+            subscriptionServiceFactory.create().updateSubscription(subscription);
+        } catch (OptimisticLockingFailureException e) {
+            // The row was written and updated since, by a webhook for instance, so it is newer than this creation
+        }
+    }
+
+    /**
+     * The state of a subscription creation, read from the builder on the calling thread.
+     *
+     * @param user the subscribing user
+     * @param priceId the price ID of the product
+     * @param trialEnd the trial end in epoch seconds, or {@code null} if no trial is set
+     * @param idempotencyKey the idempotency key set by the caller, or {@code null}
+     * @param deriveIdempotencyKey whether the key is derived from the creation parameters
+     */
+    private record Creation(
+            IUserStripe user, String priceId, String trialEnd, String idempotencyKey, boolean deriveIdempotencyKey) {
     }
 }
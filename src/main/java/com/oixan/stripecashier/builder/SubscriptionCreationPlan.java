@@ -0,0 +1,84 @@
+package com.oixan.stripecashier.builder;
+
+import com.oixan.stripecashier.interfaces.IUserStripe;
+import com.oixan.stripecashier.manager.CustomerManager;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Customer;
+
+/**
+ * Resolves the inputs of a subscription creation with as few Stripe calls as possible.
+ * <p>
+ * The customer ID is read from the user rather than from Stripe. The customer is only read when no
+ * payment method is given, through {@link CustomerManager#asStripeCustomer(IUserStripe)}, which serves it from the
+ * customer cache with its default payment method expanded. Creating a subscription therefore takes at most
+ * one read before the subscription is created, and none when the customer is cached.
+ */
+final class SubscriptionCreationPlan {
+
+    private final String customerId;
+
+    private final String paymentMethodId;
+
+    private SubscriptionCreationPlan(String customerId, String paymentMethodId) {
+        this.customerId = customerId;
+        this.paymentMethodId = paymentMethodId;
+    }
+
+    /**
+     * Resolves the customer and the payment method of a new subscription.
+     *
+     * @param customerManager the manager of the subscribing customer
+     * @param user the subscribing user
+     * @param paymentMethod the payment method ID given by the caller, or {@code null} to use the default one
+     * @return the resolved plan
+     * @throws StripeException if the customer cannot be retrieved
+     * @throws IllegalArgumentException if the user has no Stripe customer or no payment method can be found
+     */
+    static SubscriptionCreationPlan resolve(CustomerManager customerManager, IUserStripe user, String paymentMethod)
+            throws StripeException {
+        String customerId = user.getStripeId();
+        if (customerId == null || customerId.isEmpty()) {
+            throw new IllegalArgumentException("Customer is required.");
+        }
+
+        String paymentMethodId = paymentMethod != null && !paymentMethod.isEmpty()
+                ? paymentMethod
+                : defaultPaymentMethodId(customerManager, user);
+
+        if (paymentMethodId == null) {
+            throw new IllegalArgumentException("Payment method is required.");
+        }
+
+        return new SubscriptionCreationPlan(customerId, paymentMethodId);
+    }
+
+    /**
+     * Reads the customer and returns the ID of its default payment method.
+     */
+    private static String defaultPaymentMethodId(CustomerManager customerManager, IUserStripe user) throws StripeException {
+        Customer customer = customerManager.asStripeCustomer(user);
+
+        if (customer == null || customer.getInvoiceSettings() == null) {
+            return null;
+        }
+        return customer.getInvoiceSettings().getDefaultPaymentMethod();
+    }
+
+    /**
+     * Gets the ID of the Stripe customer.
+     *
+     * @return the customer ID
+     */
+    String getCustomerId() {
+        return customerId;
+    }
+
+    /**
+     * Gets the ID of the payment method charged by the subscription.
+     *
+     * @return the payment method ID
+     */
+    String getPaymentMethodId() {
+        return paymentMethodId;
+    }
+}
@@ -0,0 +1,102 @@
+package com.oixan.stripecashier.bulk;
+
+import java.util.Map;
+
+import com.oixan.stripecashier.interfaces.IUserStripe;
+
+/**
+ * One charge of a bulk run.
+ */
+public final class BulkCharge {
+
+    private final String id;
+
+    private final IUserStripe user;
+
+    private final double amount;
+
+    private final String paymentMethod;
+
+    private final Map<String, Object> options;
+
+    /**
+     * Constructs a charge of the user's default payment method.
+     *
+     * @param id the ID of the charge, unique across runs, such as {@code 2024-05:user-42}
+     * @param user the user to charge
+     * @param amount the amount to charge, in the currency unit
+     */
+    public BulkCharge(String id, IUserStripe user, double amount) {
+        this(id, user, amount, null, null);
+    }
+
+    /**
+     * Constructs a charge.
+     *
+     * @param id the ID of the charge, unique across runs, such as {@code 2024-05:user-42}
+     * @param user the user to charge
+     * @param amount the amount to charge, in the currency unit
+     * @param paymentMethod the ID of the payment method to charge, or {@code null} for the user's default one
+     * @param options additional PaymentIntent parameters, or {@code null}
+     */
+    public BulkCharge(String id, IUserStripe user, double amount, String paymentMethod, Map<String, Object> options) {
+        if (id == null || id.isEmpty()) {
+            throw new IllegalArgumentException("The charge ID is required.");
+        }
+        this.id = id;
+        this.user = user;
+        this.amount = amount;
+        this.paymentMethod = paymentMethod;
+        this.options = options;
+    }
+
+    /**
+     * Gets the ID of the charge, also used as the idempotency key of its PaymentIntent.
+     *
+     * @return the charge ID
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Gets the user to charge.
+     *
+     * @return the user
+     */
+    public IUserStripe getUser() {
+        return user;
+    }
+
+    /**
+     * Gets the amount to charge.
+     *
+     * @return the amount, in the currency unit
+     */
+    public double getAmount() {
+        return amount;
+    }
+
+    /**
+     * Gets the payment method to charge.
+     *
+     * @return the payment method ID, or {@code null} for the user's default one
+     */
+    public String getPaymentMethod() {
+        return paymentMethod;
+    }
+
+    /**
+     * Gets the additional PaymentIntent parameters.
+     *
+     * @return the options, or {@code null}
+     */
+    public Map<String, Object> getOptions() {
+        return options;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkCharge{id=" + id + ", amount=" + amount + '}';
+    }
+}
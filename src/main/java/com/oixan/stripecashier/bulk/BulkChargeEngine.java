@@ -0,0 +1,254 @@
+package com.oixan.stripecashier.bulk;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import com.oixan.stripecashier.builder.ChargeBuilder;
+import com.oixan.stripecashier.client.StripeRateLimiter;
+import com.oixan.stripecashier.config.StripeProperties;
+import com.oixan.stripecashier.factory.ChargeBuilderFactory;
+import com.oixan.stripecashier.support.TokenBucket;
+import com.stripe.model.PaymentIntent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Charges many users at once through {@link ChargeBuilder}, for example for monthly usage billing.
+ * <p>
+ * The charges are read lazily from a stream and run on the {@code stripeCashierExecutor}, at most
+ * {@code stripe.bulk.concurrency} at a time. A token bucket shared by all the runs of the application starts at most
+ * {@code stripe.bulk.rate-limit} charges per second, to stay within Stripe's rate limits. The Stripe calls of the
+ * charges have the batch priority of the {@link StripeRateLimiter}.
+ * <p>
+ * Each charge is sent with an idempotency key derived from its ID, and its outcome is recorded in a
+ * {@link ChargeCheckpoint}. Rerunning the same charges after a crash skips the completed ones, and a charge whose
+ * outcome was lost with the crash is answered by Stripe from the first attempt instead of being repeated. A charge
+ * Stripe rejected, such as a card decline, is retried with the key numbered after its
+ * {@linkplain ChargeCheckpoint#getRejections(String) rejections}, since Stripe answers the same key with the same
+ * rejection for 24 hours.
+ * <p>
+ * Every charge is timed in the {@value #METRIC_NAME} timer, tagged with its {@code outcome}: {@code success} or
+ * {@code failure}. Its count gives the throughput of the runs.
+ */
+@Component
+public class BulkChargeEngine {
+
+    /**
+     * The name of the timer recording bulk charges.
+     */
+    public static final String METRIC_NAME = "stripe.bulk.charges";
+
+    /**
+     * The prefix of the idempotency key of a bulk charge, followed by its ID, and by the number of its rejected
+     * attempts when it has any.
+     */
+    public static final String IDEMPOTENCY_KEY_PREFIX = "bulk_charge:";
+
+    private static final Logger logger = LoggerFactory.getLogger(BulkChargeEngine.class);
+
+    /**
+     * Creates the charge builder of each user.
+     */
+    @Autowired
+    private ChargeBuilderFactory chargeBuilderFactory;
+
+    /**
+     * Holds the concurrency and rate limit settings.
+     */
+    @Autowired
+    private StripeProperties stripeProperties;
+
+    /**
+     * Runs the charges.
+     */
+    @Autowired
+    @Qualifier("stripeCashierExecutor")
+    private Executor executor;
+
+    /**
+     * Records the charge timers, when Micrometer is configured.
+     */
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    private volatile TokenBucket rateLimiter;
+
+    /**
+     * The charge timers, per outcome.
+     */
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new engine.
+     */
+    public BulkChargeEngine() {
+    }
+
+    /**
+     * Runs the given charges, without resuming an earlier run.
+     *
+     * @param charges the charges, read lazily
+     * @return the report of the run
+     * @see #charge(Stream, ChargeCheckpoint)
+     */
+    public BulkChargeReport charge(Stream<BulkCharge> charges) {
+        return charge(charges, new InMemoryChargeCheckpoint());
+    }
+
+    /**
+     * Runs the given charges, skipping those the checkpoint reports as completed.
+     * <p>
+     * The call returns once every charge has completed. A charge failure is reported in its result and does not
+     * stop the run. If the calling thread is interrupted, no further charge is started, the charges in progress
+     * are awaited and the report is marked as interrupted.
+     *
+     * @param charges the charges, read lazily
+     * @param checkpoint the progress of earlier runs, updated as charges complete
+     * @return the report of the run
+     */
+    public BulkChargeReport charge(Stream<BulkCharge> charges, ChargeCheckpoint checkpoint) {
+        int concurrency = stripeProperties.getBulk().getConcurrency();
+        TokenBucket limiter = rateLimiter();
+        Semaphore slots = new Semaphore(concurrency);
+        Queue<BulkChargeResult> results = new ConcurrentLinkedQueue<>();
+
+        long start = System.nanoTime();
+        long skipped = 0;
+        boolean interrupted = false;
+
+        try {
+            Iterator<BulkCharge> iterator = charges.iterator();
+            while (iterator.hasNext()) {
+                BulkCharge charge = iterator.next();
+                if (checkpoint.isCompleted(charge.getId())) {
+                    skipped++;
+                    continue;
+                }
+
+                slots.acquire();
+                try {
+                    limiter.acquire();
+                    executor.execute(() -> {
+                        try {
+                            BulkChargeResult result = attempt(charge, rejections(checkpoint, charge));
+                            results.add(result);
+                            record(checkpoint, result);
+                        } finally {
+                            slots.release();
+                        }
+                    });
+                } catch (InterruptedException | RejectedExecutionException e) {
+                    slots.release();
+                    throw e;
+                }
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+        } finally {
+            // Wait for the charges in progress
+            slots.acquireUninterruptibly(concurrency);
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        BulkChargeReport report = new BulkChargeReport(
+                new ArrayList<>(results), skipped, interrupted, Duration.ofNanos(System.nanoTime() - start));
+        logger.info("Bulk charge completed: {}", report);
+        return report;
+    }
+
+    private BulkChargeResult attempt(BulkCharge charge, int rejections) {
+        long start = System.nanoTime();
+        PaymentIntent paymentIntent = null;
+        Exception error = null;
+
+        try (StripeRateLimiter.Scope scope = StripeRateLimiter.batch()) {
+            ChargeBuilder chargeBuilder = chargeBuilderFactory.create(charge.getUser())
+                    .setIdempotencyKey(idempotencyKey(charge.getId(), rejections));
+            // ChargeBuilder adds its own parameters to the options, so the caller's map is left untouched
+            Map<String, Object> options = charge.getOptions() != null ? new HashMap<>(charge.getOptions()) : null;
+
+            paymentIntent = charge.getPaymentMethod() != null
+                    ? chargeBuilder.pay(charge.getAmount(), charge.getPaymentMethod(), options)
+                    : chargeBuilder.pay(charge.getAmount(), options);
+        } catch (Exception e) {
+            error = e;
+        }
+
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        timer(error == null ? "success" : "failure").record(elapsed);
+        return new BulkChargeResult(charge, paymentIntent, error, elapsed);
+    }
+
+    /**
+     * Builds the idempotency key of an attempt of a charge.
+     *
+     * @param chargeId the ID of the charge
+     * @param rejections the number of attempts of the charge Stripe rejected
+     * @return the idempotency key
+     */
+    static String idempotencyKey(String chargeId, int rejections) {
+        return IDEMPOTENCY_KEY_PREFIX + chargeId + (rejections > 0 ? ":" + rejections : "");
+    }
+
+    private static int rejections(ChargeCheckpoint checkpoint, BulkCharge charge) {
+        try {
+            return checkpoint.getRejections(charge.getId());
+        } catch (RuntimeException e) {
+            logger.warn("Could not read the rejections of charge {}", charge.getId(), e);
+            return 0;
+        }
+    }
+
+    private static void record(ChargeCheckpoint checkpoint, BulkChargeResult result) {
+        try {
+            checkpoint.record(result);
+        } catch (RuntimeException e) {
+            logger.warn("Could not checkpoint the outcome of charge {}", result.getCharge().getId(), e);
+        }
+    }
+
+    private TokenBucket rateLimiter() {
+        TokenBucket limiter = rateLimiter;
+        if (limiter == null) {
+            synchronized (this) {
+                limiter = rateLimiter;
+                if (limiter == null) {
+                    double rate = stripeProperties.getBulk().getRateLimit();
+                    limiter = new TokenBucket(rate, Math.max(1, rate));
+                    rateLimiter = limiter;
+                }
+            }
+        }
+        return limiter;
+    }
+
+    private Timer timer(String outcome) {
+        return timers.computeIfAbsent(outcome, key -> Timer.builder(METRIC_NAME)
+                .description("Charges made by the bulk charge engine")
+                .tag("outcome", key)
+                .publishPercentileHistogram()
+                .register(meterRegistry.getIfAvailable(() -> Metrics.globalRegistry)));
+    }
+}
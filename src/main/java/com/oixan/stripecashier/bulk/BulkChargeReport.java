@@ -0,0 +1,107 @@
+package com.oixan.stripecashier.bulk;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The outcome of one bulk run.
+ */
+public final class BulkChargeReport {
+
+    private final List<BulkChargeResult> results;
+
+    private final long skipped;
+
+    private final boolean interrupted;
+
+    private final Duration elapsed;
+
+    /**
+     * Constructs a new report.
+     *
+     * @param results the outcome of each charge attempted, in completion order
+     * @param skipped the number of charges skipped as already completed
+     * @param interrupted whether the run was interrupted before every charge was attempted
+     * @param elapsed the duration of the run
+     */
+    public BulkChargeReport(List<BulkChargeResult> results, long skipped, boolean interrupted, Duration elapsed) {
+        this.results = List.copyOf(results);
+        this.skipped = skipped;
+        this.interrupted = interrupted;
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * Gets the outcome of each charge attempted.
+     *
+     * @return the results, in completion order
+     */
+    public List<BulkChargeResult> getResults() {
+        return results;
+    }
+
+    /**
+     * Gets the outcome of the charges that failed.
+     *
+     * @return the failed results
+     */
+    public List<BulkChargeResult> getFailures() {
+        return results.stream().filter(result -> !result.isSucceeded()).collect(Collectors.toList());
+    }
+
+    /**
+     * Gets the number of charges that succeeded.
+     *
+     * @return the number of succeeded charges
+     */
+    public long getSucceeded() {
+        return results.stream().filter(BulkChargeResult::isSucceeded).count();
+    }
+
+    /**
+     * Gets the number of charges that failed.
+     *
+     * @return the number of failed charges
+     */
+    public long getFailed() {
+        return results.size() - getSucceeded();
+    }
+
+    /**
+     * Gets the number of charges skipped as already completed by an earlier run.
+     *
+     * @return the number of skipped charges
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Gets whether the run was interrupted before every charge was attempted.
+     *
+     * @return true if the run stopped early
+     */
+    public boolean isInterrupted() {
+        return interrupted;
+    }
+
+    /**
+     * Gets the duration of the run.
+     *
+     * @return the duration
+     */
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkChargeReport{succeeded=" + getSucceeded()
+                + ", failed=" + getFailed()
+                + ", skipped=" + skipped
+                + ", interrupted=" + interrupted
+                + ", elapsed=" + elapsed
+                + '}';
+    }
+}
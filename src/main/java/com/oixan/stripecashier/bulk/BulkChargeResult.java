@@ -0,0 +1,105 @@
+package com.oixan.stripecashier.bulk;
+
+import java.time.Duration;
+
+import com.stripe.exception.StripeException;
+import com.stripe.model.PaymentIntent;
+
+/**
+ * The outcome of one charge of a bulk run.
+ */
+public final class BulkChargeResult {
+
+    private final BulkCharge charge;
+
+    private final PaymentIntent paymentIntent;
+
+    private final Exception error;
+
+    private final Duration elapsed;
+
+    /**
+     * Constructs a new result.
+     *
+     * @param charge the charge
+     * @param paymentIntent the PaymentIntent created, or {@code null} if the charge failed
+     * @param error the error of the charge, or {@code null} if it succeeded
+     * @param elapsed the duration of the charge
+     */
+    public BulkChargeResult(BulkCharge charge, PaymentIntent paymentIntent, Exception error, Duration elapsed) {
+        this.charge = charge;
+        this.paymentIntent = paymentIntent;
+        this.error = error;
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * Gets the charge.
+     *
+     * @return the charge
+     */
+    public BulkCharge getCharge() {
+        return charge;
+    }
+
+    /**
+     * Gets whether the charge succeeded.
+     *
+     * @return true if a PaymentIntent was created and confirmed
+     */
+    public boolean isSucceeded() {
+        return error == null;
+    }
+
+    /**
+     * Gets whether Stripe answered the charge with an error, such as a card decline. Stripe keeps that answer for
+     * the idempotency key of the charge, so retrying the charge takes another key. Errors Stripe does not keep,
+     * such as a network failure, a rate limit or a conflict, are not rejections.
+     *
+     * @return true if Stripe rejected the charge
+     */
+    public boolean isRejected() {
+        // ChargeBuilder wraps the errors of Stripe
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof StripeException) {
+                Integer status = ((StripeException) cause).getStatusCode();
+                return status != null && status >= 400 && status < 500 && status != 409 && status != 429;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the PaymentIntent created.
+     *
+     * @return the PaymentIntent, or {@code null} if the charge failed
+     */
+    public PaymentIntent getPaymentIntent() {
+        return paymentIntent;
+    }
+
+    /**
+     * Gets the error of the charge.
+     *
+     * @return the error, or {@code null} if the charge succeeded
+     */
+    public Exception getError() {
+        return error;
+    }
+
+    /**
+     * Gets the duration of the charge, including the wait for the rate limiter.
+     *
+     * @return the duration
+     */
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkChargeResult{charge=" + charge.getId()
+                + (error == null ? ", paymentIntent=" + paymentIntent.getId() : ", error=" + error.getMessage())
+                + '}';
+    }
+}
@@ -0,0 +1,38 @@
+package com.oixan.stripecashier.bulk;
+
+/**
+ * Records the progress of a bulk run, so a run stopped by a crash resumes without charging anyone twice.
+ * <p>
+ * Implementations backed by a database or a file survive a restart; {@link InMemoryChargeCheckpoint} only covers
+ * reruns within the same process. Methods are called concurrently from the charging threads.
+ */
+public interface ChargeCheckpoint {
+
+    /**
+     * Tells whether a charge is already done and must be skipped.
+     *
+     * @param chargeId the ID of the charge
+     * @return true to skip the charge
+     */
+    boolean isCompleted(String chargeId);
+
+    /**
+     * Gets the number of attempts of a charge that Stripe {@linkplain BulkChargeResult#isRejected() rejected}.
+     * The next attempt is sent with an idempotency key numbered after them, so that Stripe does not answer it
+     * with the cached rejection. The default of 0 keeps the key of the charge, with which a retry within 24 hours
+     * gets the first rejection back.
+     *
+     * @param chargeId the ID of the charge
+     * @return the number of rejected attempts
+     */
+    default int getRejections(String chargeId) {
+        return 0;
+    }
+
+    /**
+     * Records the outcome of a charge, successful or not.
+     *
+     * @param result the outcome
+     */
+    void record(BulkChargeResult result);
+}
@@ -0,0 +1,41 @@
+package com.oixan.stripecashier.bulk;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link ChargeCheckpoint} kept in memory, which treats succeeded charges as completed and lets failed ones be
+ * retried by the next run, with a new idempotency key when Stripe rejected them.
+ */
+public class InMemoryChargeCheckpoint implements ChargeCheckpoint {
+
+    private final Set<String> succeeded = ConcurrentHashMap.newKeySet();
+
+    private final Map<String, Integer> rejections = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs an empty checkpoint.
+     */
+    public InMemoryChargeCheckpoint() {
+    }
+
+    @Override
+    public boolean isCompleted(String chargeId) {
+        return succeeded.contains(chargeId);
+    }
+
+    @Override
+    public int getRejections(String chargeId) {
+        return rejections.getOrDefault(chargeId, 0);
+    }
+
+    @Override
+    public void record(BulkChargeResult result) {
+        if (result.isSucceeded()) {
+            succeeded.add(result.getCharge().getId());
+        } else if (result.isRejected()) {
+            rejections.merge(result.getCharge().getId(), 1, Integer::sum);
+        }
+    }
+}
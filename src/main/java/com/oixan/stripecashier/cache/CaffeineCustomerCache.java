@@ -0,0 +1,100 @@
+package com.oixan.stripecashier.cache;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.oixan.stripecashier.support.StripeCall;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Customer;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * A {@link CustomerCache} backed by Caffeine, bounded in size and expiring entries a fixed time after they were
+ * loaded.
+ * <p>
+ * Concurrent lookups of the same missing customer share a single retrieval. Hits, misses and evictions are
+ * published in Micrometer under the {@value #CACHE_NAME} cache name, e.g. {@code cache.gets{result=hit}}.
+ */
+public class CaffeineCustomerCache implements CustomerCache {
+
+    /**
+     * The name the cache metrics are published under.
+     */
+    public static final String CACHE_NAME = "stripe.customers";
+
+    private final Cache<String, Customer> cache;
+
+    private final boolean enabled;
+
+    /**
+     * Constructs a new cache.
+     *
+     * @param maxSize the maximum number of customers, {@code 0} to disable caching
+     * @param ttl the time-to-live of an entry, {@link Duration#ZERO} to disable caching
+     */
+    public CaffeineCustomerCache(long maxSize, Duration ttl) {
+        this.enabled = maxSize > 0 && !ttl.isZero();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Publishes the metrics of the cache.
+     *
+     * @param meterRegistry the registry the metrics are registered in
+     * @return this cache
+     */
+    public CaffeineCustomerCache bindTo(MeterRegistry meterRegistry) {
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        return this;
+    }
+
+    @Override
+    public Customer get(String customerId, StripeCall<Customer> loader) throws StripeException {
+        if (!enabled) {
+            // Caffeine evicts entries of a zero-sized cache asynchronously, so it would still serve some reads
+            return loader.call();
+        }
+        try {
+            return cache.get(customerId, id -> {
+                try {
+                    return loader.call();
+                } catch (StripeException e) {
+                    throw new CompletionException(e);
+                }
+            });
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof StripeException) {
+                throw (StripeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void invalidate(String customerId) {
+        cache.invalidate(customerId);
+    }
+
+    @Override
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Returns the hit, miss and eviction counts of the cache.
+     *
+     * @return the statistics
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+}
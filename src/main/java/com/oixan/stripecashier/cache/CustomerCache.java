@@ -0,0 +1,40 @@
+package com.oixan.stripecashier.cache;
+
+import com.oixan.stripecashier.support.StripeCall;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Customer;
+
+/**
+ * A cache of Stripe {@link Customer} objects keyed by Stripe customer ID.
+ * <p>
+ * The cache serves {@code CustomerManager} and {@code PaymentMethodsManager}, so that a flow reading the same
+ * customer several times retrieves it from Stripe once. The library invalidates an entry after each of its own
+ * updates of the customer and on {@code customer.updated} and {@code customer.deleted} webhook events.
+ * <p>
+ * Declare a bean implementing this interface to replace the default {@link CaffeineCustomerCache}.
+ * Cached customers are shared between callers and must be treated as read-only.
+ */
+public interface CustomerCache {
+
+    /**
+     * Returns the customer with the given ID, loading it with {@code loader} on a miss.
+     *
+     * @param customerId the Stripe customer ID
+     * @param loader retrieves the customer from Stripe
+     * @return the customer
+     * @throws StripeException if the customer cannot be retrieved
+     */
+    Customer get(String customerId, StripeCall<Customer> loader) throws StripeException;
+
+    /**
+     * Removes the customer with the given ID.
+     *
+     * @param customerId the Stripe customer ID
+     */
+    void invalidate(String customerId);
+
+    /**
+     * Removes all customers.
+     */
+    void invalidateAll();
+}
@@ -0,0 +1,197 @@
+package com.oixan.stripecashier.cache;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import com.oixan.stripecashier.entity.Subscription;
+
+/**
+ * A bounded, TTL-evicting in-process cache of {@link Subscription} rows keyed by user ID and type.
+ * <p>
+ * The cache is used by {@code SubscriptionService} to serve the status checks of {@code SubscriptionManager}
+ * without hitting the database on every call. Entries are evicted in least-recently-used order once
+ * {@code maxSize} is reached, and expire {@code ttl} after they were loaded. Every write path of the
+ * service invalidates the affected entries.
+ * <p>
+ * Only rows that exist are cached; a lookup that finds nothing always goes back to the database.
+ * Cached entities are shared between callers and must be treated as read-only.
+ */
+public class SubscriptionCache {
+
+    /**
+     * The maximum number of entries held by the cache. A value of {@code 0} or less disables the cache.
+     */
+    private final int maxSize;
+
+    /**
+     * The time-to-live of an entry, in nanoseconds.
+     */
+    private final long ttlNanos;
+
+    /**
+     * The source of time used to expire entries.
+     */
+    private final LongSupplier ticker;
+
+    /**
+     * The cached entries, in access order.
+     */
+    private final LinkedHashMap<Key, Entry> entries;
+
+    /**
+     * Incremented on every invalidation, so that a load racing with a write does not cache a stale row.
+     */
+    private long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Constructs a new cache.
+     *
+     * @param maxSize the maximum number of entries, {@code 0} or less to disable caching
+     * @param ttl the time-to-live of an entry
+     */
+    public SubscriptionCache(int maxSize, Duration ttl) {
+        this(maxSize, ttl, System::nanoTime);
+    }
+
+    /**
+     * Constructs a new cache with a custom time source.
+     *
+     * @param maxSize the maximum number of entries, {@code 0} or less to disable caching
+     * @param ttl the time-to-live of an entry
+     * @param ticker the time source, in nanoseconds
+     */
+    public SubscriptionCache(int maxSize, Duration ttl, LongSupplier ticker) {
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl.toNanos();
+        this.ticker = ticker;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > SubscriptionCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the subscription for the given user and type, loading it with {@code loader} on a miss.
+     *
+     * @param userId the ID of the user
+     * @param type the type of the subscription
+     * @param loader the database lookup used on a miss
+     * @return an {@link Optional} containing the subscription if found, otherwise empty
+     */
+    public Optional<Subscription> get(String userId, String type, Supplier<Optional<Subscription>> loader) {
+        if (maxSize <= 0) {
+            return loader.get();
+        }
+
+        Key key = new Key(userId, type);
+        long stamp;
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && ticker.getAsLong() - entry.loadedAt < ttlNanos) {
+                hits.incrementAndGet();
+                return Optional.of(entry.subscription);
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+            stamp = generation;
+        }
+
+        misses.incrementAndGet();
+        Optional<Subscription> loaded = loader.get();
+
+        if (loaded.isPresent()) {
+            synchronized (this) {
+                if (stamp == generation) {
+                    entries.put(key, new Entry(loaded.get(), ticker.getAsLong()));
+                }
+            }
+        }
+
+        return loaded;
+    }
+
+    /**
+     * Removes the entry for the given user and type.
+     *
+     * @param userId the ID of the user
+     * @param type the type of the subscription
+     */
+    public synchronized void invalidate(String userId, String type) {
+        generation++;
+        entries.remove(new Key(userId, type));
+    }
+
+    /**
+     * Removes every entry whose subscription matches the given predicate.
+     *
+     * @param predicate the condition selecting the entries to remove
+     */
+    public synchronized void invalidateIf(Predicate<Subscription> predicate) {
+        generation++;
+        entries.values().removeIf(entry -> predicate.test(entry.subscription));
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+    }
+
+    /**
+     * Returns whether rows are cached at all.
+     *
+     * @return false if the cache was created with a {@code maxSize} of {@code 0} or less
+     */
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Returns the number of entries currently held, including expired ones not yet evicted.
+     *
+     * @return the number of entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of lookups served from the cache.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of lookups that went to the database.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    private record Key(String userId, String type) {
+    }
+
+    private record Entry(Subscription subscription, long loadedAt) {
+    }
+}
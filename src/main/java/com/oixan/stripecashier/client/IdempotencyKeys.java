@@ -0,0 +1,99 @@
+package com.oixan.stripecashier.client;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import com.stripe.net.RequestOptions;
+
+/**
+ * Builds the idempotency keys sent with the mutating Stripe calls of the library.
+ * <p>
+ * A derived key is a hash of the operation and of its inputs, so retrying the same call, from the same or another
+ * instance, sends the same key and Stripe returns the result of the first attempt instead of repeating it. Stripe
+ * keeps a key for 24 hours.
+ */
+public final class IdempotencyKeys {
+
+    private IdempotencyKeys() {
+    }
+
+    /**
+     * Derives a key from an operation and its inputs.
+     * <p>
+     * Maps are hashed by sorted keys, so the key does not depend on their iteration order.
+     *
+     * @param operation the name of the operation, such as {@code refund.create}
+     * @param parts the inputs identifying the call
+     * @return the key
+     */
+    public static String derive(String operation, Object... parts) {
+        StringBuilder canonical = new StringBuilder(operation);
+        for (Object part : parts) {
+            canonical.append('|');
+            append(canonical, part);
+        }
+        return operation + ':' + sha256(canonical.toString());
+    }
+
+    /**
+     * Generates a random key, for calls that may legitimately be repeated with the same inputs.
+     *
+     * @param operation the name of the operation, such as {@code payment_intent.create}
+     * @return the key
+     */
+    public static String random(String operation) {
+        return operation + ':' + UUID.randomUUID();
+    }
+
+    /**
+     * Builds the request options sending a key.
+     *
+     * @param idempotencyKey the key
+     * @return the request options
+     */
+    public static RequestOptions options(String idempotencyKey) {
+        return RequestOptions.builder().setIdempotencyKey(idempotencyKey).build();
+    }
+
+    private static void append(StringBuilder canonical, Object value) {
+        if (value instanceof Map) {
+            canonical.append('{');
+            stringKeys((Map<?, ?>) value).forEach((key, entry) -> {
+                canonical.append(key).append('=');
+                append(canonical, entry);
+                canonical.append(',');
+            });
+            canonical.append('}');
+        } else if (value instanceof Collection) {
+            canonical.append('[');
+            for (Object element : (Collection<?>) value) {
+                append(canonical, element);
+                canonical.append(',');
+            }
+            canonical.append(']');
+        } else {
+            canonical.append(value);
+        }
+    }
+
+    private static Map<String, Object> stringKeys(Map<?, ?> map) {
+        Map<String, Object> copy = new TreeMap<>();
+        map.forEach((key, value) -> copy.put(String.valueOf(key), value));
+        return copy;
+    }
+
+    private static String sha256(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
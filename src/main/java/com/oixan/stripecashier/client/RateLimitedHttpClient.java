@@ -0,0 +1,110 @@
+package com.oixan.stripecashier.client;
+
+import com.stripe.exception.StripeException;
+import com.stripe.net.HttpClient;
+import com.stripe.net.StripeRequest;
+import com.stripe.net.StripeResponse;
+import com.stripe.net.StripeResponseStream;
+
+/**
+ * An HTTP client of the Stripe SDK sending its requests through another one, paced by a {@link StripeRateLimiter}.
+ * <p>
+ * Each Stripe client gets its own rate limiter, so the accounts served by one JVM are paced independently, as
+ * Stripe limits each account on its own. A request waits for the rate limiter before it is sent. A rate-limited
+ * response lowers the rate and the request is sent again, up to {@code stripe.rate-limit.max-retries} times;
+ * Stripe does not process a rate-limited request, so the retry is safe.
+ */
+public class RateLimitedHttpClient extends HttpClient {
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final HttpClient delegate;
+
+    private final StripeRateLimiter rateLimiter;
+
+    /**
+     * Constructs a new client.
+     *
+     * @param delegate the client sending the requests
+     * @param rateLimiter the rate limiter pacing the requests
+     */
+    public RateLimitedHttpClient(HttpClient delegate, StripeRateLimiter rateLimiter) {
+        this.delegate = delegate;
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Sends a request once the rate limiter allows it.
+     *
+     * @param request the request
+     * @return the response
+     * @throws StripeException if the request fails
+     */
+    @Override
+    public StripeResponse request(StripeRequest request) throws StripeException {
+        rateLimiter.acquire();
+        StripeResponse response = delegate.request(request);
+        if (response.code() == TOO_MANY_REQUESTS) {
+            rateLimiter.onRateLimited();
+        }
+        return response;
+    }
+
+    /**
+     * Sends a request once the rate limiter allows it, with the retries of the underlying client, and sends it
+     * again at a lower rate while it is rate limited.
+     *
+     * @param request the request
+     * @return the last response
+     * @throws StripeException if the request fails
+     */
+    @Override
+    public StripeResponse requestWithRetries(StripeRequest request) throws StripeException {
+        for (int attempt = 0; ; attempt++) {
+            rateLimiter.acquire();
+            StripeResponse response = delegate.requestWithRetries(request);
+            if (response.code() != TOO_MANY_REQUESTS) {
+                return response;
+            }
+            rateLimiter.onRateLimited();
+            if (attempt >= rateLimiter.getMaxRetries()) {
+                return response;
+            }
+        }
+    }
+
+    /**
+     * Sends a streaming request once the rate limiter allows it.
+     *
+     * @param request the request
+     * @return the response stream
+     * @throws StripeException if the request fails
+     */
+    @Override
+    public StripeResponseStream requestStream(StripeRequest request) throws StripeException {
+        rateLimiter.acquire();
+        return delegate.requestStream(request);
+    }
+
+    /**
+     * Sends a streaming request once the rate limiter allows it, with the retries of the underlying client.
+     *
+     * @param request the request
+     * @return the response stream
+     * @throws StripeException if the request fails
+     */
+    @Override
+    public StripeResponseStream requestStreamWithRetries(StripeRequest request) throws StripeException {
+        rateLimiter.acquire();
+        return delegate.requestStreamWithRetries(request);
+    }
+
+    /**
+     * Gets the rate limiter pacing the requests.
+     *
+     * @return the rate limiter
+     */
+    public StripeRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+}
@@ -0,0 +1,83 @@
+package com.oixan.stripecashier.client;
+
+import java.net.PasswordAuthentication;
+import java.net.Proxy;
+import java.util.function.Supplier;
+
+import com.oixan.stripecashier.config.StripeProperties;
+import com.stripe.Stripe;
+import com.stripe.net.StripeResponseGetterOptions;
+
+/**
+ * The options of a {@link com.stripe.StripeClient} built by the library.
+ * <p>
+ * Timeouts and retries come from {@code stripe.http.*}. The API base URLs, client ID and proxy follow the global
+ * {@link Stripe} settings, so overriding them there still applies to the client.
+ */
+public class StripeClientOptions extends StripeResponseGetterOptions {
+
+    private final Supplier<String> apiKey;
+
+    private final StripeProperties.Http http;
+
+    /**
+     * Constructs new options.
+     *
+     * @param apiKey supplies the API key of each request
+     * @param http the HTTP client settings
+     */
+    public StripeClientOptions(Supplier<String> apiKey, StripeProperties.Http http) {
+        this.apiKey = apiKey;
+        this.http = http;
+    }
+
+    @Override
+    public String getApiKey() {
+        return apiKey.get();
+    }
+
+    @Override
+    public String getClientId() {
+        return Stripe.clientId;
+    }
+
+    @Override
+    public int getConnectTimeout() {
+        return (int) http.getConnectTimeout().toMillis();
+    }
+
+    @Override
+    public int getReadTimeout() {
+        return (int) http.getReadTimeout().toMillis();
+    }
+
+    @Override
+    public int getMaxNetworkRetries() {
+        return http.getMaxRetries();
+    }
+
+    @Override
+    public Proxy getConnectionProxy() {
+        return Stripe.getConnectionProxy();
+    }
+
+    @Override
+    public PasswordAuthentication getProxyCredential() {
+        return Stripe.getProxyCredential();
+    }
+
+    @Override
+    public String getApiBase() {
+        return Stripe.getApiBase();
+    }
+
+    @Override
+    public String getFilesBase() {
+        return Stripe.getUploadBase();
+    }
+
+    @Override
+    public String getConnectBase() {
+        return Stripe.getConnectBase();
+    }
+}
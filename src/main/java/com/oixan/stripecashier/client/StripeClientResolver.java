@@ -0,0 +1,149 @@
+package com.oixan.stripecashier.client;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.oixan.stripecashier.config.StripeProperties;
+import com.oixan.stripecashier.interfaces.IUserStripe;
+import com.stripe.StripeClient;
+import com.stripe.net.HttpClient;
+import com.stripe.net.LiveStripeResponseGetter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * Gives each user the {@link StripeClient} of the Stripe account serving it.
+ * <p>
+ * Users are routed by the {@link StripeTenantResolver}. Users without a tenant get the default client; each
+ * configured tenant gets its own client, with its own API key, an HTTP client made by the
+ * {@link StripeHttpClientFactory} and, when {@code stripe.rate-limit.enabled} is set, its own {@link StripeRateLimiter}, created on first use
+ * and kept for the life of the application. No global Stripe setting is changed, so
+ * several accounts can be served concurrently from one JVM.
+ */
+public class StripeClientResolver {
+
+    private final StripeClient defaultClient;
+
+    private final StripeTenantResolver tenantResolver;
+
+    private final Map<String, StripeProperties.Tenant> tenants;
+
+    private final StripeProperties.Http http;
+
+    private final StripeHttpClientFactory httpClientFactory;
+
+    private final StripeProperties.RateLimit rateLimit;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, StripeClient> tenantClients = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a resolver serving every user with a single client.
+     *
+     * @param defaultClient the client
+     */
+    public StripeClientResolver(StripeClient defaultClient) {
+        this(defaultClient, user -> null, Map.of(), new StripeProperties.Http());
+    }
+
+    /**
+     * Constructs a resolver.
+     *
+     * @param defaultClient the client of users without a tenant
+     * @param tenantResolver decides the tenant of each user
+     * @param tenants the configured tenants, by tenant ID
+     * @param http the settings of the HTTP clients of the tenants
+     */
+    public StripeClientResolver(
+            StripeClient defaultClient,
+            StripeTenantResolver tenantResolver,
+            Map<String, StripeProperties.Tenant> tenants,
+            StripeProperties.Http http
+    ) {
+        this(defaultClient, tenantResolver, tenants, http, tenant -> new StripeHttpClient(http),
+                new StripeProperties.RateLimit(), null);
+    }
+
+    /**
+     * Constructs a resolver building the tenant clients on the given HTTP clients, and pacing the calls of each
+     * tenant with its own rate limiter.
+     *
+     * @param defaultClient the client of users without a tenant
+     * @param tenantResolver decides the tenant of each user
+     * @param tenants the configured tenants, by tenant ID
+     * @param http the timeout and retry settings of the tenant clients
+     * @param httpClientFactory creates the HTTP client of each tenant
+     * @param rateLimit the settings of the rate limiters of the tenants, used when enabled
+     * @param meterRegistry the registry the metrics of the rate limiters are registered in, or {@code null} for
+     *        the global registry
+     */
+    public StripeClientResolver(
+            StripeClient defaultClient,
+            StripeTenantResolver tenantResolver,
+            Map<String, StripeProperties.Tenant> tenants,
+            StripeProperties.Http http,
+            StripeHttpClientFactory httpClientFactory,
+            StripeProperties.RateLimit rateLimit,
+            MeterRegistry meterRegistry
+    ) {
+        this.defaultClient = defaultClient;
+        this.tenantResolver = tenantResolver;
+        this.tenants = tenants;
+        this.http = http;
+        this.httpClientFactory = httpClientFactory;
+        this.rateLimit = rateLimit;
+        this.meterRegistry = meterRegistry != null ? meterRegistry : Metrics.globalRegistry;
+    }
+
+    /**
+     * Gets the client of the account serving a user.
+     *
+     * @param user the user, or {@code null} for the default account
+     * @return the client
+     * @throws IllegalStateException if the user is routed to a tenant that is not configured
+     */
+    public StripeClient resolve(IUserStripe user) {
+        String tenant = user != null ? tenantResolver.resolveTenant(user) : null;
+        return tenant != null ? forTenant(tenant) : defaultClient;
+    }
+
+    /**
+     * Gets the client of a tenant.
+     *
+     * @param tenant the tenant ID
+     * @return the client
+     * @throws IllegalStateException if the tenant is not configured
+     */
+    public StripeClient forTenant(String tenant) {
+        StripeClient client = tenantClients.get(tenant);
+        return client != null ? client : tenantClients.computeIfAbsent(tenant, this::createClient);
+    }
+
+    /**
+     * Gets the IDs of the configured tenants.
+     *
+     * @return the tenant IDs
+     */
+    public Set<String> getTenants() {
+        return Collections.unmodifiableSet(tenants.keySet());
+    }
+
+    private StripeClient createClient(String tenant) {
+        StripeProperties.Tenant settings = tenants.get(tenant);
+        if (settings == null || settings.getApiKey() == null) {
+            throw new IllegalStateException("No API key configured for Stripe tenant " + tenant);
+        }
+
+        String apiKey = settings.getApiKey();
+        StripeClientOptions options = new StripeClientOptions(() -> apiKey, http);
+        HttpClient httpClient = httpClientFactory.create(tenant);
+        if (rateLimit.isEnabled()) {
+            httpClient = new RateLimitedHttpClient(httpClient, new StripeRateLimiter(rateLimit, meterRegistry, tenant));
+        }
+        return new StripeClient(new LiveStripeResponseGetter(options, httpClient));
+    }
+}
@@ -0,0 +1,198 @@
+package com.oixan.stripecashier.client;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.oixan.stripecashier.config.StripeProperties;
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.StripeException;
+import com.stripe.net.HttpClient;
+import com.stripe.net.HttpHeaders;
+import com.stripe.net.StripeRequest;
+import com.stripe.net.StripeResponse;
+
+/**
+ * The HTTP client of the Stripe SDK, backed by a single {@link java.net.http.HttpClient}.
+ * <p>
+ * The JDK client keeps connections alive and reuses them across requests, so a TLS handshake is only paid when
+ * a new connection is opened, and it negotiates HTTP/2 with Stripe when {@code stripe.http.http2} is set. At most
+ * {@code stripe.http.max-connections} requests are in flight at once; further callers wait for a free slot.
+ * <p>
+ * Requests failing on the network, or answered with a status Stripe marks as retryable, are retried up to
+ * {@code stripe.http.max-retries} times with an exponential, jittered backoff. The SDK adds an idempotency key
+ * to {@code POST} requests when retries are enabled, so a retried write is applied once.
+ */
+public class StripeHttpClient extends HttpClient {
+
+    /**
+     * The headers managed by the JDK client, which it refuses to have set by the caller.
+     */
+    private static final Set<String> RESTRICTED_HEADERS = Set.of("connection", "content-length", "expect", "host", "upgrade");
+
+    private final java.net.http.HttpClient httpClient;
+
+    private final Semaphore connections;
+
+    private final Duration readTimeout;
+
+    private final int maxRetries;
+
+    private final Duration initialBackoff;
+
+    private final Duration maxBackoff;
+
+    /**
+     * Constructs a new client with the given settings.
+     *
+     * @param http the HTTP client settings
+     */
+    public StripeHttpClient(StripeProperties.Http http) {
+        this.httpClient = java.net.http.HttpClient.newBuilder()
+                .version(http.isHttp2() ? java.net.http.HttpClient.Version.HTTP_2 : java.net.http.HttpClient.Version.HTTP_1_1)
+                .connectTimeout(http.getConnectTimeout())
+                .followRedirects(java.net.http.HttpClient.Redirect.NEVER)
+                .build();
+        this.connections = new Semaphore(http.getMaxConnections(), true);
+        this.readTimeout = http.getReadTimeout();
+        this.maxRetries = http.getMaxRetries();
+        this.initialBackoff = http.getInitialBackoff();
+        this.maxBackoff = http.getMaxBackoff();
+    }
+
+    /**
+     * Sends a request once.
+     *
+     * @param request the request
+     * @return the response
+     * @throws ApiConnectionException if the request cannot be sent or the response cannot be read
+     */
+    @Override
+    public StripeResponse request(StripeRequest request) throws ApiConnectionException {
+        HttpRequest httpRequest = toHttpRequest(request);
+
+        try {
+            connections.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiConnectionException("Interrupted while waiting for a connection to Stripe", e);
+        }
+
+        try {
+            HttpResponse<String> response = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofString());
+            return new StripeResponse(response.statusCode(), HttpHeaders.of(response.headers().map()), response.body());
+        } catch (IOException e) {
+            throw new ApiConnectionException("IOException during API request to Stripe (" + request.url() + "): "
+                    + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiConnectionException("Interrupted during API request to Stripe (" + request.url() + ")", e);
+        } finally {
+            connections.release();
+        }
+    }
+
+    /**
+     * Sends a request, retrying it on network errors and retryable statuses.
+     *
+     * @param request the request
+     * @return the last response
+     * @throws StripeException if the last attempt fails on the network
+     */
+    @Override
+    public StripeResponse requestWithRetries(StripeRequest request) throws StripeException {
+        Integer requestRetries = request.options() != null ? request.options().getMaxNetworkRetries() : null;
+        int retries = requestRetries != null ? requestRetries : maxRetries;
+
+        for (int attempt = 0; ; attempt++) {
+            try {
+                StripeResponse response = requestWithTelemetry(request);
+                if (attempt >= retries || !shouldRetry(response)) {
+                    return response;
+                }
+            } catch (ApiConnectionException e) {
+                if (attempt >= retries) {
+                    throw e;
+                }
+            }
+            sleep(backoff(attempt));
+        }
+    }
+
+    /**
+     * Tells whether a response should be retried, following the {@code Stripe-Should-Retry} header when Stripe
+     * sends it. Rate-limited responses are left to the caller.
+     *
+     * @param response the response
+     * @return true if the request should be retried
+     */
+    static boolean shouldRetry(StripeResponse response) {
+        String shouldRetry = response.headers().firstValue("Stripe-Should-Retry").orElse(null);
+        if (shouldRetry != null) {
+            return Boolean.parseBoolean(shouldRetry);
+        }
+
+        int code = response.code();
+        return code == 409 || code == 500 || code == 502 || code == 503 || code == 504;
+    }
+
+    /**
+     * Computes the wait before a retry: the initial backoff doubled on each attempt, capped at the maximum
+     * backoff, of which a random half is kept so that concurrent callers do not retry in lockstep.
+     *
+     * @param attempt the number of the failed attempt, starting at {@code 0}
+     * @return the wait in milliseconds
+     */
+    long backoff(int attempt) {
+        long cap = Math.min(maxBackoff.toMillis(), initialBackoff.toMillis() << Math.min(attempt, 20));
+        return cap / 2 + ThreadLocalRandom.current().nextLong(cap / 2 + 1);
+    }
+
+    private HttpRequest toHttpRequest(StripeRequest request) throws ApiConnectionException {
+        HttpRequest.Builder builder;
+        try {
+            builder = HttpRequest.newBuilder(request.url().toURI());
+        } catch (URISyntaxException e) {
+            throw new ApiConnectionException("Invalid Stripe URL " + request.url(), e);
+        }
+
+        Integer requestTimeout = request.options() != null ? request.options().getReadTimeout() : null;
+        builder.timeout(requestTimeout != null ? Duration.ofMillis(requestTimeout) : readTimeout);
+
+        builder.header("User-Agent", buildUserAgentString());
+        builder.header("X-Stripe-Client-User-Agent", buildXStripeClientUserAgentString());
+        for (Map.Entry<String, List<String>> header : request.headers().map().entrySet()) {
+            if (RESTRICTED_HEADERS.contains(header.getKey().toLowerCase())) {
+                continue;
+            }
+            for (String value : header.getValue()) {
+                builder.header(header.getKey(), value);
+            }
+        }
+
+        if (request.content() != null) {
+            builder.header("Content-Type", request.content().contentType());
+            builder.method(request.method().name(), HttpRequest.BodyPublishers.ofByteArray(request.content().byteArrayContent()));
+        } else {
+            builder.method(request.method().name(), HttpRequest.BodyPublishers.noBody());
+        }
+
+        return builder.build();
+    }
+
+    private static void sleep(long millis) throws ApiConnectionException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiConnectionException("Interrupted while waiting to retry a request to Stripe", e);
+        }
+    }
+}
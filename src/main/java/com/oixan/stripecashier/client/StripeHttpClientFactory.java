@@ -0,0 +1,22 @@
+package com.oixan.stripecashier.client;
+
+import com.stripe.net.HttpClient;
+
+/**
+ * Creates the HTTP client of each tenant's Stripe client.
+ * <p>
+ * The default factory gives each tenant its own {@link StripeHttpClient} connection pool, tuned by
+ * {@code stripe.http.*}, unless the application declares its own {@link HttpClient} bean, which is then shared
+ * by every tenant. Declare a bean implementing this interface to build the tenant clients some other way.
+ */
+@FunctionalInterface
+public interface StripeHttpClientFactory {
+
+    /**
+     * Creates the HTTP client of a tenant. Called once per tenant, on its first use.
+     *
+     * @param tenant the tenant ID
+     * @return the HTTP client
+     */
+    HttpClient create(String tenant);
+}
@@ -0,0 +1,172 @@
+package com.oixan.stripecashier.client;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import com.oixan.stripecashier.support.StripeCall;
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.AuthenticationException;
+import com.stripe.exception.CardException;
+import com.stripe.exception.IdempotencyException;
+import com.stripe.exception.InvalidRequestException;
+import com.stripe.exception.PermissionException;
+import com.stripe.exception.RateLimitException;
+import com.stripe.exception.StripeException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Runs every outbound Stripe call of the library and records it in Micrometer.
+ * <p>
+ * Each call is timed in the {@value #METRIC_NAME} timer, tagged with the {@code operation} (for example
+ * {@code customer.retrieve}) and its {@code outcome}: {@code success}, or the kind of error Stripe returned.
+ * The timers publish percentile histograms, so latency percentiles can be aggregated across instances.
+ * <p>
+ * Calls are paced by the {@link StripeRateLimiter} of the Stripe client they are sent with, if any; see
+ * {@link RateLimitedHttpClient}.
+ * <p>
+ * Calls sent with an idempotency key are deduplicated while in flight: a call made with the key of a call still
+ * running waits for it and shares its result, so concurrent retries reach Stripe once.
+ */
+public class StripeInvoker {
+
+    /**
+     * The name of the timer recording Stripe calls.
+     */
+    public static final String METRIC_NAME = "stripe.requests";
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new invoker recording into the given registry.
+     *
+     * @param meterRegistry the registry the timers are registered in
+     */
+    public StripeInvoker(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Runs a Stripe call and records its duration and outcome.
+     *
+     * @param <T> the type of the result of the call
+     * @param operation the name of the operation, such as {@code subscription.create}
+     * @param call the call to run
+     * @return the result of the call
+     * @throws StripeException if the call fails
+     */
+    public <T> T invoke(String operation, StripeCall<T> call) throws StripeException {
+        long start = System.nanoTime();
+        String outcome = "success";
+        try {
+            return call.call();
+        } catch (StripeException e) {
+            outcome = outcome(e);
+            throw e;
+        } catch (RuntimeException e) {
+            outcome = "error";
+            throw e;
+        } finally {
+            timer(operation, outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Runs a Stripe call sent with an idempotency key, unless a call with the same key is already running, in which
+     * case its result is returned instead.
+     *
+     * @param <T> the type of the result of the call
+     * @param operation the name of the operation, such as {@code subscription.create}
+     * @param idempotencyKey the idempotency key sent with the call
+     * @param call the call to run
+     * @return the result of the call
+     * @throws StripeException if the call fails
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T invoke(String operation, String idempotencyKey, StripeCall<T> call) throws StripeException {
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(idempotencyKey, result);
+        if (running != null) {
+            return (T) await(running);
+        }
+
+        try {
+            T value = invoke(operation, call);
+            result.complete(value);
+            return value;
+        } catch (StripeException | RuntimeException e) {
+            result.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(idempotencyKey, result);
+        }
+    }
+
+    /**
+     * Returns the number of calls running with an idempotency key.
+     *
+     * @return the number of calls
+     */
+    int inFlight() {
+        return inFlight.size();
+    }
+
+    private static Object await(CompletableFuture<Object> running) throws StripeException {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof StripeException) {
+                throw (StripeException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Classifies a Stripe error into a low-cardinality outcome tag.
+     *
+     * @param e the error
+     * @return the outcome tag
+     */
+    static String outcome(StripeException e) {
+        if (e instanceof RateLimitException) {
+            return "rate_limited";
+        }
+        if (e instanceof CardException) {
+            return "card_error";
+        }
+        if (e instanceof IdempotencyException) {
+            return "idempotency_error";
+        }
+        if (e instanceof InvalidRequestException) {
+            return "invalid_request";
+        }
+        if (e instanceof AuthenticationException || e instanceof PermissionException) {
+            return "unauthorized";
+        }
+        if (e instanceof ApiConnectionException) {
+            return "connection_error";
+        }
+        return "api_error";
+    }
+
+    private Timer timer(String operation, String outcome) {
+        return timers.computeIfAbsent(operation + '|' + outcome, key -> Timer.builder(METRIC_NAME)
+                .description("Outbound calls to the Stripe API")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+}
@@ -0,0 +1,28 @@
+package com.oixan.stripecashier.client;
+
+import com.stripe.exception.StripeException;
+
+/**
+ * Thrown by a lazily paginated stream when a page cannot be fetched from Stripe.
+ * <p>
+ * Streams cannot throw checked exceptions, so the {@link StripeException} of the failed request is carried as the
+ * cause.
+ */
+public class StripePagingException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs a new exception.
+     *
+     * @param cause the error of the page request
+     */
+    public StripePagingException(StripeException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public synchronized StripeException getCause() {
+        return (StripeException) super.getCause();
+    }
+}
@@ -0,0 +1,298 @@
+package com.oixan.stripecashier.client;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import com.oixan.stripecashier.config.StripeProperties;
+import com.oixan.stripecashier.support.TokenBucket;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Paces the Stripe calls of one Stripe account so that spikes are smoothed out on the client instead of being
+ * rejected by Stripe.
+ * <p>
+ * Stripe limits each account on its own, so every Stripe client gets its own rate limiter through a
+ * {@link RateLimitedHttpClient}. Calls take a token from a shared bucket. The rate adapts to Stripe: it is halved when a call is rate limited, at
+ * most once per second, and grows back linearly up to {@code stripe.rate-limit.max-rate} while calls succeed.
+ * <p>
+ * Calls made inside a {@link #batch()} scope, such as the reconciliation job or the bulk charges, also take a
+ * token from a second bucket running at {@code stripe.rate-limit.batch-share} of the rate. Batch work can
+ * therefore never use the whole rate, and interactive calls always find room.
+ * <p>
+ * The current rate, the number of waiting calls and the wait time of each call are published in Micrometer as
+ * {@code stripe.ratelimiter.rate}, {@code stripe.ratelimiter.queue} and {@code stripe.ratelimiter.wait}, tagged with
+ * the {@code tenant} of the account, {@code default} for the default one, and the last two with the
+ * {@code priority} of the calls.
+ */
+public class StripeRateLimiter {
+
+    /**
+     * The priority of a Stripe call.
+     */
+    public enum Priority {
+
+        /**
+         * A call made while serving a user, the default.
+         */
+        INTERACTIVE,
+
+        /**
+         * A call made by a background job.
+         */
+        BATCH
+    }
+
+    /**
+     * The tenant tag of the rate limiter of the default account.
+     */
+    public static final String DEFAULT_TENANT = "default";
+
+    private static final ThreadLocal<Priority> PRIORITY = ThreadLocal.withInitial(() -> Priority.INTERACTIVE);
+
+    private static final long DECREASE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private final StripeProperties.RateLimit settings;
+
+    private final LongSupplier nanoClock;
+
+    private final Sleeper sleeper;
+
+    private final TokenBucket shared;
+
+    private final TokenBucket batch;
+
+    private final Map<Priority, AtomicInteger> waiting = new EnumMap<>(Priority.class);
+
+    private final Map<Priority, Timer> waits = new EnumMap<>(Priority.class);
+
+    private double rate;
+
+    private long adjustedAt;
+
+    private long decreasedAt;
+
+    /**
+     * Constructs a new rate limiter for the default account, reading the time from {@link System#nanoTime()}.
+     *
+     * @param settings the rate limiter settings
+     * @param meterRegistry the registry the metrics are registered in
+     */
+    public StripeRateLimiter(StripeProperties.RateLimit settings, MeterRegistry meterRegistry) {
+        this(settings, meterRegistry, DEFAULT_TENANT);
+    }
+
+    /**
+     * Constructs a new rate limiter for a tenant, reading the time from {@link System#nanoTime()}.
+     *
+     * @param settings the rate limiter settings
+     * @param meterRegistry the registry the metrics are registered in
+     * @param tenant the tenant ID the metrics are tagged with
+     */
+    public StripeRateLimiter(StripeProperties.RateLimit settings, MeterRegistry meterRegistry, String tenant) {
+        this(settings, meterRegistry, tenant, System::nanoTime, TimeUnit.NANOSECONDS::sleep);
+    }
+
+    /**
+     * Constructs a new rate limiter for the default account on the given clock.
+     *
+     * @param settings the rate limiter settings
+     * @param meterRegistry the registry the metrics are registered in
+     * @param nanoClock the source of the time, in nanoseconds
+     * @param sleeper waits for a token
+     */
+    public StripeRateLimiter(StripeProperties.RateLimit settings, MeterRegistry meterRegistry, LongSupplier nanoClock, Sleeper sleeper) {
+        this(settings, meterRegistry, DEFAULT_TENANT, nanoClock, sleeper);
+    }
+
+    /**
+     * Constructs a new rate limiter for a tenant on the given clock.
+     *
+     * @param settings the rate limiter settings
+     * @param meterRegistry the registry the metrics are registered in
+     * @param tenant the tenant ID the metrics are tagged with
+     * @param nanoClock the source of the time, in nanoseconds
+     * @param sleeper waits for a token
+     */
+    public StripeRateLimiter(
+            StripeProperties.RateLimit settings,
+            MeterRegistry meterRegistry,
+            String tenant,
+            LongSupplier nanoClock,
+            Sleeper sleeper
+    ) {
+        if (settings.getMinRate() <= 0 || settings.getMaxRate() < settings.getMinRate()) {
+            throw new IllegalArgumentException("The rates must be positive, and the maximum rate at least the minimum one.");
+        }
+        if (settings.getBatchShare() <= 0 || settings.getBatchShare() > 1) {
+            throw new IllegalArgumentException("The batch share must be greater than 0 and at most 1.");
+        }
+
+        this.settings = settings;
+        this.nanoClock = nanoClock;
+        this.sleeper = sleeper;
+        this.rate = settings.getMaxRate();
+        this.adjustedAt = nanoClock.getAsLong();
+        this.decreasedAt = adjustedAt - DECREASE_INTERVAL;
+
+        // Bursts are limited to a quarter of a second of calls
+        double burst = Math.max(1, settings.getMaxRate() / 4);
+        this.shared = new TokenBucket(rate, burst, nanoClock);
+        this.batch = new TokenBucket(rate * settings.getBatchShare(), Math.max(1, burst * settings.getBatchShare()), nanoClock);
+
+        Gauge.builder("stripe.ratelimiter.rate", this, StripeRateLimiter::getRate)
+                .description("Stripe calls allowed per second")
+                .tag("tenant", tenant)
+                .register(meterRegistry);
+        for (Priority priority : Priority.values()) {
+            String tag = priority.name().toLowerCase();
+            AtomicInteger count = new AtomicInteger();
+            waiting.put(priority, count);
+            Gauge.builder("stripe.ratelimiter.queue", count, AtomicInteger::get)
+                    .description("Stripe calls waiting for the rate limiter")
+                    .tag("tenant", tenant)
+                    .tag("priority", tag)
+                    .register(meterRegistry);
+            waits.put(priority, Timer.builder("stripe.ratelimiter.wait")
+                    .description("Time Stripe calls waited for the rate limiter")
+                    .tag("tenant", tenant)
+                    .tag("priority", tag)
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Marks the Stripe calls of the current thread as batch calls until the returned scope is closed.
+     * <pre>
+     * {@code
+     * try (StripeRateLimiter.Scope scope = StripeRateLimiter.batch()) {
+     *     // Stripe calls made here have the batch priority
+     * }
+     * }
+     * </pre>
+     *
+     * @return the scope, restoring the previous priority when closed
+     */
+    public static Scope batch() {
+        Priority previous = PRIORITY.get();
+        PRIORITY.set(Priority.BATCH);
+        return () -> PRIORITY.set(previous);
+    }
+
+    /**
+     * Gets the priority of the Stripe calls of the current thread.
+     *
+     * @return the priority
+     */
+    public static Priority currentPriority() {
+        return PRIORITY.get();
+    }
+
+    /**
+     * Waits until the current thread may call Stripe.
+     * <p>
+     * An interrupted thread stops waiting and keeps its interrupt status.
+     */
+    public void acquire() {
+        Priority priority = currentPriority();
+        AtomicInteger queue = waiting.get(priority);
+        long start = nanoClock.getAsLong();
+
+        queue.incrementAndGet();
+        try {
+            recover();
+            if (priority == Priority.BATCH) {
+                await(batch.reserve());
+            }
+            await(shared.reserve());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            queue.decrementAndGet();
+            waits.get(priority).record(nanoClock.getAsLong() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Halves the rate after Stripe rate limited a call. Calls rate limited within a second of the last decrease
+     * were sent at the previous rate, so they do not lower it further.
+     */
+    public synchronized void onRateLimited() {
+        long now = nanoClock.getAsLong();
+        if (now - decreasedAt < DECREASE_INTERVAL) {
+            return;
+        }
+        decreasedAt = now;
+        adjustedAt = now;
+        apply(Math.max(settings.getMinRate(), rate / 2));
+    }
+
+    /**
+     * Gets the current rate.
+     *
+     * @return the calls allowed per second
+     */
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    /**
+     * Gets how many times a rate-limited call is retried.
+     *
+     * @return the maximum number of retries
+     */
+    public int getMaxRetries() {
+        return settings.getMaxRetries();
+    }
+
+    private synchronized void recover() {
+        long now = nanoClock.getAsLong();
+        if (rate < settings.getMaxRate()) {
+            double gained = settings.getRecovery() * (now - adjustedAt) / TimeUnit.SECONDS.toNanos(1);
+            apply(Math.min(settings.getMaxRate(), rate + gained));
+        }
+        adjustedAt = now;
+    }
+
+    private void apply(double newRate) {
+        rate = newRate;
+        shared.setRate(newRate);
+        batch.setRate(newRate * settings.getBatchShare());
+    }
+
+    private void await(long nanos) throws InterruptedException {
+        if (nanos > 0) {
+            sleeper.sleep(nanos);
+        }
+    }
+
+    /**
+     * Restores the previous priority of the current thread when closed.
+     */
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+
+    /**
+     * Waits for the given number of nanoseconds.
+     */
+    @FunctionalInterface
+    public interface Sleeper {
+
+        /**
+         * Waits.
+         *
+         * @param nanos the time to wait, in nanoseconds
+         * @throws InterruptedException if the thread is interrupted while waiting
+         */
+        void sleep(long nanos) throws InterruptedException;
+    }
+}
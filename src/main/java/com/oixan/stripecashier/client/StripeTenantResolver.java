@@ -0,0 +1,22 @@
+package com.oixan.stripecashier.client;
+
+import com.oixan.stripecashier.interfaces.IUserStripe;
+
+/**
+ * Decides which Stripe account serves a user.
+ * <p>
+ * Declare a bean implementing this interface to serve several Stripe accounts from one application. The returned
+ * tenant ID must match a {@code stripe.tenants.<id>.api-key} entry; {@code null} routes the user to the account
+ * of {@code stripe.api-key}.
+ */
+@FunctionalInterface
+public interface StripeTenantResolver {
+
+    /**
+     * Gets the tenant of a user.
+     *
+     * @param user the user
+     * @return the tenant ID, or {@code null} for the default account
+     */
+    String resolveTenant(IUserStripe user);
+}
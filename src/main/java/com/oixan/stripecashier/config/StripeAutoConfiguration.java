@@ -1,15 +1,41 @@
 package com.oixan.stripecashier.config;
 
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 
+import com.oixan.stripecashier.cache.CaffeineCustomerCache;
+import com.oixan.stripecashier.cache.CustomerCache;
+import com.oixan.stripecashier.cache.SubscriptionCache;
+import com.oixan.stripecashier.client.RateLimitedHttpClient;
+import com.oixan.stripecashier.client.StripeClientOptions;
+import com.oixan.stripecashier.client.StripeClientResolver;
+import com.oixan.stripecashier.client.StripeHttpClient;
+import com.oixan.stripecashier.client.StripeHttpClientFactory;
+import com.oixan.stripecashier.client.StripeInvoker;
+import com.oixan.stripecashier.client.StripeRateLimiter;
+import com.oixan.stripecashier.client.StripeTenantResolver;
+import com.oixan.stripecashier.support.Async;
+import com.oixan.stripecashier.webhook.StripeWebhookHandler;
+import com.oixan.stripecashier.webhook.WebhookEventDispatcher;
 import com.stripe.Stripe;
+import com.stripe.StripeClient;
+import com.stripe.net.HttpClient;
+import com.stripe.net.LiveStripeResponseGetter;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import jakarta.annotation.PostConstruct;
 
 /**
@@ -34,11 +60,168 @@ public class StripeAutoConfiguration {
   
   
   /**
-   * Configures the Stripe API key.
+   * Configures the static Stripe API key, for application code calling the static Stripe resources.
+   * The library itself calls Stripe through the {@link StripeClientResolver}.
    */
   @PostConstruct
   public void config() {
 	  Stripe.apiKey = stripeProperties.getApiKey();
   }
+
+  /**
+   * Creates the HTTP client the Stripe calls are sent with, tuned by {@code stripe.http.*}.
+   *
+   * @return the HTTP client
+   */
+  @Bean
+  @ConditionalOnMissingBean
+  public HttpClient stripeHttpClient() {
+    return new StripeHttpClient(stripeProperties.getHttp());
+  }
+
+  /**
+   * Creates the factory of the tenants' HTTP clients. Each tenant gets its own {@link StripeHttpClient} connection
+   * pool, tuned by {@code stripe.http.*}; an {@link HttpClient} bean declared by the application is shared by the
+   * tenants instead.
+   *
+   * @param stripeHttpClient the HTTP client of the default account
+   * @return the HTTP client factory
+   */
+  @Bean
+  @ConditionalOnMissingBean
+  public StripeHttpClientFactory stripeHttpClientFactory(HttpClient stripeHttpClient) {
+    if (stripeHttpClient.getClass() != StripeHttpClient.class) {
+      return tenant -> stripeHttpClient;
+    }
+    return tenant -> new StripeHttpClient(stripeProperties.getHttp());
+  }
+
+  /**
+   * Creates the Stripe client of the default account, sending its requests through the {@link HttpClient} bean
+   * with the key of {@code stripe.api-key}, paced by a {@link StripeRateLimiter} of its own when
+   * {@code stripe.rate-limit.enabled} is set.
+   *
+   * @param stripeHttpClient the HTTP client
+   * @param meterRegistry the registry of the application, if any
+   * @return the Stripe client
+   */
+  @Bean
+  @ConditionalOnMissingBean
+  public StripeClient stripeClient(HttpClient stripeHttpClient, ObjectProvider<MeterRegistry> meterRegistry) {
+    StripeClientOptions options = new StripeClientOptions(stripeProperties::getApiKey, stripeProperties.getHttp());
+    StripeProperties.RateLimit rateLimit = stripeProperties.getRateLimit();
+    HttpClient httpClient = rateLimit.isEnabled()
+        ? new RateLimitedHttpClient(stripeHttpClient, new StripeRateLimiter(rateLimit, registry(meterRegistry)))
+        : stripeHttpClient;
+    return new StripeClient(new LiveStripeResponseGetter(options, httpClient));
+  }
+
+  /**
+   * Creates the tenant resolver routing every user to the default account.
+   * Declare a {@link StripeTenantResolver} bean to serve several accounts.
+   *
+   * @return the tenant resolver
+   */
+  @Bean
+  @ConditionalOnMissingBean
+  public StripeTenantResolver stripeTenantResolver() {
+    return user -> null;
+  }
+
+  /**
+   * Creates the resolver giving each user the Stripe client of its account, used by every builder and manager.
+   * Each tenant client has its own {@link StripeRateLimiter} when {@code stripe.rate-limit.enabled} is set.
+   *
+   * @param stripeClient the client of the default account
+   * @param stripeTenantResolver decides the tenant of each user
+   * @param stripeHttpClientFactory creates the HTTP client of each tenant
+   * @param meterRegistry the registry of the application, if any
+   * @return the client resolver
+   */
+  @Bean
+  @ConditionalOnMissingBean
+  public StripeClientResolver stripeClientResolver(
+      StripeClient stripeClient,
+      StripeTenantResolver stripeTenantResolver,
+      StripeHttpClientFactory stripeHttpClientFactory,
+      ObjectProvider<MeterRegistry> meterRegistry) {
+    return new StripeClientResolver(stripeClient, stripeTenantResolver, stripeProperties.getTenants(),
+        stripeProperties.getHttp(), stripeHttpClientFactory, stripeProperties.getRateLimit(), registry(meterRegistry));
+  }
+
+  /**
+   * Creates the cache of subscription rows used by the subscription status checks.
+   *
+   * @return the subscription cache
+   */
+  @Bean
+  @ConditionalOnMissingBean
+  public SubscriptionCache subscriptionCache() {
+    StripeProperties.Cache cache = stripeProperties.getCache();
+    return new SubscriptionCache(cache.getSubscriptionMaxSize(), cache.getSubscriptionTtl());
+  }
+
+  /**
+   * Creates the cache of Stripe customers read by the customer and payment method managers.
+   * Its hit and miss counts are published in the application's {@link MeterRegistry}, if any.
+   *
+   * @param meterRegistry the registry of the application, if any
+   * @return the customer cache
+   */
+  @Bean
+  @ConditionalOnMissingBean
+  public CustomerCache customerCache(ObjectProvider<MeterRegistry> meterRegistry) {
+    StripeProperties.Cache cache = stripeProperties.getCache();
+    CaffeineCustomerCache customerCache = new CaffeineCustomerCache(cache.getCustomerMaxSize(), cache.getCustomerTtl());
+    meterRegistry.ifAvailable(customerCache::bindTo);
+    return customerCache;
+  }
+
+  /**
+   * Creates the dispatcher applying webhook events on a bounded pool of workers.
+   * Only created when a webhook signing secret is configured.
+   *
+   * @param handlers the handlers the events are applied with
+   * @return the webhook event dispatcher
+   */
+  @Bean(destroyMethod = "shutdown")
+  @ConditionalOnMissingBean
+  @ConditionalOnProperty(prefix = "stripe.webhook", name = "secret")
+  public WebhookEventDispatcher webhookEventDispatcher(List<StripeWebhookHandler> handlers) {
+    StripeProperties.Webhook webhook = stripeProperties.getWebhook();
+    return new WebhookEventDispatcher(handlers, webhook.getWorkers(), webhook.getQueueCapacity());
+  }
+
+  /**
+   * Creates the executor running the asynchronous variants of the builder and manager operations.
+   * Uses a virtual thread per call on Java 21 or later, a bounded pool of platform threads otherwise.
+   * Declare a bean named {@code stripeCashierExecutor} to replace it.
+   *
+   * @return the executor
+   */
+  @Bean(name = "stripeCashierExecutor", destroyMethod = "shutdown")
+  @ConditionalOnMissingBean(name = "stripeCashierExecutor")
+  public ExecutorService stripeCashierExecutor() {
+    StripeProperties.Async async = stripeProperties.getAsync();
+    return Async.newExecutor(async.isVirtualThreads(), async.getPoolSize());
+  }
+
+  /**
+   * Creates the invoker timing every Stripe call, tagged by operation and outcome.
+   * The timers are registered in the application's {@link MeterRegistry}, published by Spring Boot Actuator
+   * when present, and in the global Micrometer registry otherwise.
+   *
+   * @param meterRegistry the registry of the application, if any
+   * @return the Stripe invoker
+   */
+  @Bean
+  @ConditionalOnMissingBean
+  public StripeInvoker stripeInvoker(ObjectProvider<MeterRegistry> meterRegistry) {
+    return new StripeInvoker(registry(meterRegistry));
+  }
+
+  private static MeterRegistry registry(ObjectProvider<MeterRegistry> meterRegistry) {
+    return meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+  }
   
-}
\ No newline at end of file
+}
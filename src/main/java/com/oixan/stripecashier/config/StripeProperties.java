@@ -1,5 +1,9 @@
 package com.oixan.stripecashier.config;
 
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 /**
@@ -41,4 +45,1344 @@ public class StripeProperties {
         this.apiKey = apiKey;
     }
 
+    /**
+     * The settings of the HTTP client calling Stripe.
+     */
+    private final Http http = new Http();
+
+    /**
+     * Gets the settings of the HTTP client calling Stripe.
+     *
+     * @return the HTTP client settings
+     */
+    public Http getHttp() {
+        return http;
+    }
+
+    /**
+     * The Stripe accounts served besides the default one, by tenant ID.
+     */
+    private final Map<String, Tenant> tenants = new LinkedHashMap<>();
+
+    /**
+     * Gets the Stripe accounts served besides the default one.
+     *
+     * @return the tenants, by tenant ID
+     */
+    public Map<String, Tenant> getTenants() {
+        return tenants;
+    }
+
+    /**
+     * The settings of the in-process caches.
+     */
+    private final Cache cache = new Cache();
+
+    /**
+     * Gets the settings of the in-process caches.
+     *
+     * @return the cache settings
+     */
+    public Cache getCache() {
+        return cache;
+    }
+
+    /**
+     * The settings of the webhook endpoint.
+     */
+    private final Webhook webhook = new Webhook();
+
+    /**
+     * Gets the settings of the webhook endpoint.
+     *
+     * @return the webhook settings
+     */
+    public Webhook getWebhook() {
+        return webhook;
+    }
+
+    /**
+     * The settings of the executor running asynchronous Stripe calls.
+     */
+    private final Async async = new Async();
+
+    /**
+     * Gets the settings of the executor running asynchronous Stripe calls.
+     *
+     * @return the async settings
+     */
+    public Async getAsync() {
+        return async;
+    }
+
+    /**
+     * The settings of the subscription reconciliation job.
+     */
+    private final Reconciliation reconciliation = new Reconciliation();
+
+    /**
+     * Gets the settings of the subscription reconciliation job.
+     *
+     * @return the reconciliation settings
+     */
+    public Reconciliation getReconciliation() {
+        return reconciliation;
+    }
+
+    /**
+     * The settings of the bulk charge engine.
+     */
+    private final Bulk bulk = new Bulk();
+
+    /**
+     * Gets the settings of the bulk charge engine.
+     *
+     * @return the bulk charge settings
+     */
+    public Bulk getBulk() {
+        return bulk;
+    }
+
+    /**
+     * The settings of the client-side rate limiter.
+     */
+    private final RateLimit rateLimit = new RateLimit();
+
+    /**
+     * Gets the settings of the client-side rate limiter.
+     *
+     * @return the rate limiter settings
+     */
+    public RateLimit getRateLimit() {
+        return rateLimit;
+    }
+
+    /**
+     * The settings of the subscription outbox.
+     */
+    private final Outbox outbox = new Outbox();
+
+    /**
+     * Gets the settings of the subscription outbox.
+     *
+     * @return the outbox settings
+     */
+    public Outbox getOutbox() {
+        return outbox;
+    }
+
+    /**
+     * The settings of the subscription item swaps.
+     */
+    private final Swap swap = new Swap();
+
+    /**
+     * Gets the settings of the subscription item swaps.
+     *
+     * @return the swap settings
+     */
+    public Swap getSwap() {
+        return swap;
+    }
+
+    /**
+     * The settings of the batched JDBC writes.
+     */
+    private final Jdbc jdbc = new Jdbc();
+
+    /**
+     * Gets the settings of the batched JDBC writes.
+     *
+     * @return the JDBC settings
+     */
+    public Jdbc getJdbc() {
+        return jdbc;
+    }
+
+    /**
+     * The settings of the HTTP client calling Stripe, bound to {@code stripe.http.*}.
+     */
+    public static class Http {
+
+        /**
+         * The maximum time to open a connection.
+         */
+        private Duration connectTimeout = Duration.ofSeconds(30);
+
+        /**
+         * The maximum time to wait for a response.
+         */
+        private Duration readTimeout = Duration.ofSeconds(80);
+
+        /**
+         * The maximum number of requests in flight at once. Over HTTP/1.1 each one holds a pooled connection.
+         */
+        private int maxConnections = 64;
+
+        /**
+         * How many times a request failing on the network or with a retryable status is retried.
+         */
+        private int maxRetries = 2;
+
+        /**
+         * The base wait before the first retry, doubled on each further retry and jittered.
+         */
+        private Duration initialBackoff = Duration.ofMillis(500);
+
+        /**
+         * The maximum wait between two retries.
+         */
+        private Duration maxBackoff = Duration.ofSeconds(5);
+
+        /**
+         * Whether HTTP/2 is negotiated with Stripe, falling back to HTTP/1.1 when unavailable.
+         */
+        private boolean http2 = true;
+
+        /**
+         * Constructs a new instance with the default settings.
+         */
+        public Http() {
+        }
+
+        /**
+         * Gets the maximum time to open a connection.
+         *
+         * @return the connect timeout
+         */
+        public Duration getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        /**
+         * Sets the maximum time to open a connection.
+         *
+         * @param connectTimeout the connect timeout
+         */
+        public void setConnectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+        }
+
+        /**
+         * Gets the maximum time to wait for a response.
+         *
+         * @return the read timeout
+         */
+        public Duration getReadTimeout() {
+            return readTimeout;
+        }
+
+        /**
+         * Sets the maximum time to wait for a response.
+         *
+         * @param readTimeout the read timeout
+         */
+        public void setReadTimeout(Duration readTimeout) {
+            this.readTimeout = readTimeout;
+        }
+
+        /**
+         * Gets the maximum number of requests in flight at once.
+         *
+         * @return the maximum number of connections
+         */
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        /**
+         * Sets the maximum number of requests in flight at once.
+         *
+         * @param maxConnections the maximum number of connections
+         */
+        public void setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+
+        /**
+         * Gets how many times a failed request is retried.
+         *
+         * @return the maximum number of retries
+         */
+        public int getMaxRetries() {
+            return maxRetries;
+        }
+
+        /**
+         * Sets how many times a failed request is retried.
+         *
+         * @param maxRetries the maximum number of retries, {@code 0} to disable retries
+         */
+        public void setMaxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+        }
+
+        /**
+         * Gets the base wait before the first retry.
+         *
+         * @return the initial backoff
+         */
+        public Duration getInitialBackoff() {
+            return initialBackoff;
+        }
+
+        /**
+         * Sets the base wait before the first retry.
+         *
+         * @param initialBackoff the initial backoff
+         */
+        public void setInitialBackoff(Duration initialBackoff) {
+            this.initialBackoff = initialBackoff;
+        }
+
+        /**
+         * Gets the maximum wait between two retries.
+         *
+         * @return the maximum backoff
+         */
+        public Duration getMaxBackoff() {
+            return maxBackoff;
+        }
+
+        /**
+         * Sets the maximum wait between two retries.
+         *
+         * @param maxBackoff the maximum backoff
+         */
+        public void setMaxBackoff(Duration maxBackoff) {
+            this.maxBackoff = maxBackoff;
+        }
+
+        /**
+         * Gets whether HTTP/2 is negotiated with Stripe.
+         *
+         * @return true if HTTP/2 is negotiated
+         */
+        public boolean isHttp2() {
+            return http2;
+        }
+
+        /**
+         * Sets whether HTTP/2 is negotiated with Stripe.
+         *
+         * @param http2 true to negotiate HTTP/2
+         */
+        public void setHttp2(boolean http2) {
+            this.http2 = http2;
+        }
+    }
+
+    /**
+     * A Stripe account served besides the default one, bound to {@code stripe.tenants.<id>.*}.
+     */
+    public static class Tenant {
+
+        /**
+         * The API key of the account.
+         */
+        private String apiKey;
+
+        /**
+         * Constructs a new instance with the default settings.
+         */
+        public Tenant() {
+        }
+
+        /**
+         * Gets the API key of the account.
+         *
+         * @return the API key
+         */
+        public String getApiKey() {
+            return apiKey;
+        }
+
+        /**
+         * Sets the API key of the account.
+         *
+         * @param apiKey the API key
+         */
+        public void setApiKey(String apiKey) {
+            this.apiKey = apiKey;
+        }
+    }
+
+    /**
+     * The settings of the in-process caches, bound to {@code stripe.cache.*}.
+     */
+    public static class Cache {
+
+        /**
+         * The maximum number of subscription rows kept in memory. {@code 0} disables the cache.
+         */
+        private int subscriptionMaxSize = 10_000;
+
+        /**
+         * How long a subscription row is served from memory before it is read again.
+         */
+        private Duration subscriptionTtl = Duration.ofSeconds(30);
+
+        /**
+         * The maximum number of Stripe customers kept in memory. {@code 0} disables the cache.
+         */
+        private int customerMaxSize = 10_000;
+
+        /**
+         * How long a Stripe customer is served from memory before it is retrieved again.
+         */
+        private Duration customerTtl = Duration.ofMinutes(5);
+
+        /**
+         * Constructs a new instance with the default settings.
+         */
+        public Cache() {
+        }
+
+        /**
+         * Gets the maximum number of subscription rows kept in memory.
+         *
+         * @return the maximum size
+         */
+        public int getSubscriptionMaxSize() {
+            return subscriptionMaxSize;
+        }
+
+        /**
+         * Sets the maximum number of subscription rows kept in memory.
+         *
+         * @param subscriptionMaxSize the maximum size, {@code 0} to disable the cache
+         */
+        public void setSubscriptionMaxSize(int subscriptionMaxSize) {
+            this.subscriptionMaxSize = subscriptionMaxSize;
+        }
+
+        /**
+         * Gets the time-to-live of a cached subscription row.
+         *
+         * @return the time-to-live
+         */
+        public Duration getSubscriptionTtl() {
+            return subscriptionTtl;
+        }
+
+        /**
+         * Sets the time-to-live of a cached subscription row.
+         *
+         * @param subscriptionTtl the time-to-live
+         */
+        public void setSubscriptionTtl(Duration subscriptionTtl) {
+            this.subscriptionTtl = subscriptionTtl;
+        }
+
+        /**
+         * Gets the maximum number of Stripe customers kept in memory.
+         *
+         * @return the maximum size
+         */
+        public int getCustomerMaxSize() {
+            return customerMaxSize;
+        }
+
+        /**
+         * Sets the maximum number of Stripe customers kept in memory.
+         *
+         * @param customerMaxSize the maximum size, {@code 0} to disable the cache
+         */
+        public void setCustomerMaxSize(int customerMaxSize) {
+            this.customerMaxSize = customerMaxSize;
+        }
+
+        /**
+         * Gets the time-to-live of a cached Stripe customer.
+         *
+         * @return the time-to-live
+         */
+        public Duration getCustomerTtl() {
+            return customerTtl;
+        }
+
+        /**
+         * Sets the time-to-live of a cached Stripe customer.
+         *
+         * @param customerTtl the time-to-live
+         */
+        public void setCustomerTtl(Duration customerTtl) {
+            this.customerTtl = customerTtl;
+        }
+    }
+
+    /**
+     * The settings of the webhook endpoint, bound to {@code stripe.webhook.*}.
+     * The endpoint is only registered when a signing secret is configured.
+     */
+    public static class Webhook {
+
+        /**
+         * The signing secret of the webhook endpoint, as shown in the Stripe dashboard.
+         */
+        private String secret;
+
+        /**
+         * The path the endpoint is mapped to.
+         */
+        private String path = "/stripe/webhook";
+
+        /**
+         * The maximum age of a signed payload before it is rejected.
+         */
+        private Duration tolerance = Duration.ofMinutes(5);
+
+        /**
+         * The number of workers applying events.
+         */
+        private int workers = 4;
+
+        /**
+         * The maximum number of events waiting to be applied before new ones are refused.
+         */
+        private int queueCapacity = 1000;
+
+        /**
+         * How often the inbox relay looks for events to apply.
+         */
+        private Duration interval = Duration.ofSeconds(1);
+
+        /**
+         * The maximum number of events the relay reads from the inbox at once.
+         */
+        private int batchSize = 100;
+
+        /**
+         * How many failed attempts to apply an event are made before it is left for an operator.
+         */
+        private int maxAttempts = 10;
+
+        /**
+         * The wait before the second attempt of a failed event, doubled on each further attempt.
+         */
+        private Duration initialBackoff = Duration.ofSeconds(1);
+
+        /**
+         * How long applied events are kept in the inbox, to recognise the late deliveries of the same events.
+         */
+        private Duration retention = Duration.ofDays(7);
+
+        /**
+         * Constructs a new instance with the default settings.
+         */
+        public Webhook() {
+        }
+
+        /**
+         * Gets the signing secret of the webhook endpoint.
+         *
+         * @return the signing secret
+         */
+        public String getSecret() {
+            return secret;
+        }
+
+        /**
+         * Sets the signing secret of the webhook endpoint.
+         *
+         * @param secret the signing secret
+         */
+        public void setSecret(String secret) {
+            this.secret = secret;
+        }
+
+        /**
+         * Gets the path the endpoint is mapped to.
+         *
+         * @return the path
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Sets the path the endpoint is mapped to.
+         *
+         * @param path the path
+         */
+        public void setPath(String path) {
+            this.path = path;
+        }
+
+        /**
+         * Gets the maximum age of a signed payload.
+         *
+         * @return the tolerance
+         */
+        public Duration getTolerance() {
+            return tolerance;
+        }
+
+        /**
+         * Sets the maximum age of a signed payload.
+         *
+         * @param tolerance the tolerance
+         */
+        public void setTolerance(Duration tolerance) {
+            this.tolerance = tolerance;
+        }
+
+        /**
+         * Gets the number of workers applying events.
+         *
+         * @return the number of workers
+         */
+        public int getWorkers() {
+            return workers;
+        }
+
+        /**
+         * Sets the number of workers applying events.
+         *
+         * @param workers the number of workers
+         */
+        public void setWorkers(int workers) {
+            this.workers = workers;
+        }
+
+        /**
+         * Gets the maximum number of queued events.
+         *
+         * @return the queue capacity
+         */
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        /**
+         * Sets the maximum number of queued events.
+         *
+         * @param queueCapacity the queue capacity
+         */
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        /**
+         * Gets how often the inbox relay looks for events to apply.
+         *
+         * @return the relay interval
+         */
+        public Duration getInterval() {
+            return interval;
+        }
+
+        /**
+         * Sets how often the inbox relay looks for events to apply.
+         *
+         * @param interval the relay interval
+         */
+        public void setInterval(Duration interval) {
+            this.interval = interval;
+        }
+
+        /**
+         * Gets the maximum number of events read from the inbox at once.
+         *
+         * @return the batch size
+         */
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        /**
+         * Sets the maximum number of events read from the inbox at once.
+         *
+         * @param batchSize the batch size, at least 1
+         */
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        /**
+         * Gets how many failed attempts to apply an event are made.
+         *
+         * @return the maximum number of attempts
+         */
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        /**
+         * Sets how many failed attempts to apply an event are made.
+         *
+         * @param maxAttempts the maximum number of attempts
+         */
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+
+        /**
+         * Gets the wait before the second attempt of a failed event.
+         *
+         * @return the initial backoff
+         */
+        public Duration getInitialBackoff() {
+            return initialBackoff;
+        }
+
+        /**
+         * Sets the wait before the second attempt of a failed event.
+         *
+         * @param initialBackoff the initial backoff
+         */
+        public void setInitialBackoff(Duration initialBackoff) {
+            this.initialBackoff = initialBackoff;
+        }
+
+        /**
+         * Gets how long applied events are kept in the inbox.
+         *
+         * @return the retention
+         */
+        public Duration getRetention() {
+            return retention;
+        }
+
+        /**
+         * Sets how long applied events are kept in the inbox.
+         *
+         * @param retention the retention
+         */
+        public void setRetention(Duration retention) {
+            this.retention = retention;
+        }
+    }
+
+    /**
+     * The settings of the executor running asynchronous Stripe calls, bound to {@code stripe.async.*}.
+     */
+    public static class Async {
+
+        /**
+         * Whether each call runs on its own virtual thread when the JVM supports them (Java 21 or later).
+         */
+        private boolean virtualThreads = true;
+
+        /**
+         * The maximum number of platform threads, used when virtual threads are disabled or unavailable.
+         */
+        private int poolSize = 50;
+
+        /**
+         * Constructs a new instance with the default settings.
+         */
+        public Async() {
+        }
+
+        /**
+         * Gets whether virtual threads are used when available.
+         *
+         * @return true if virtual threads are used when available
+         */
+        public boolean isVirtualThreads() {
+            return virtualThreads;
+        }
+
+        /**
+         * Sets whether virtual threads are used when available.
+         *
+         * @param virtualThreads true to use virtual threads when available
+         */
+        public void setVirtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+        }
+
+        /**
+         * Gets the maximum number of platform threads.
+         *
+         * @return the pool size
+         */
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        /**
+         * Sets the maximum number of platform threads.
+         *
+         * @param poolSize the pool size
+         */
+        public void setPoolSize(int poolSize) {
+            this.poolSize = poolSize;
+        }
+    }
+
+    /**
+     * The settings of the subscription reconciliation job, bound to {@code stripe.reconciliation.*}.
+     */
+    public static class Reconciliation {
+
+        /**
+         * Whether the job is scheduled. The reconciler can be run on demand either way.
+         */
+        private boolean enabled = false;
+
+        /**
+         * When the job runs, as a Spring cron expression.
+         */
+        private String cron = "0 0 3 * * *";
+
+        /**
+         * The number of subscriptions requested per page, at most 100.
+         */
+        private int pageSize = 100;
+
+        /**
+         * How many times a rate-limited page request is retried before the run stops.
+         */
+        private int maxRetries = 5;
+
+        /**
+         * The wait before the first retry of a rate-limited request, doubled on each further retry.
+         */
+        private Duration initialBackoff = Duration.ofSeconds(1);
+
+        /**
+         * Constructs a new instance with the default settings.
+         */
+        public Reconciliation() {
+        }
+
+        /**
+         * Gets whether the job is scheduled.
+         *
+         * @return true if the job is scheduled
+         */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * Sets whether the job is scheduled.
+         *
+         * @param enabled true to schedule the job
+         */
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * Gets the cron expression of the job.
+         *
+         * @return the cron expression
+         */
+        public String getCron() {
+            return cron;
+        }
+
+        /**
+         * Sets the cron expression of the job.
+         *
+         * @param cron the cron expression
+         */
+        public void setCron(String cron) {
+            this.cron = cron;
+        }
+
+        /**
+         * Gets the number of subscriptions requested per page.
+         *
+         * @return the page size
+         */
+        public int getPageSize() {
+            return pageSize;
+        }
+
+        /**
+         * Sets the number of subscriptions requested per page.
+         *
+         * @param pageSize the page size, between 1 and 100
+         */
+        public void setPageSize(int pageSize) {
+            this.pageSize = pageSize;
+        }
+
+        /**
+         * Gets how many times a rate-limited request is retried.
+         *
+         * @return the maximum number of retries
+         */
+        public int getMaxRetries() {
+            return maxRetries;
+        }
+
+        /**
+         * Sets how many times a rate-limited request is retried.
+         *
+         * @param maxRetries the maximum number of retries
+         */
+        public void setMaxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+        }
+
+        /**
+         * Gets the wait before the first retry of a rate-limited request.
+         *
+         * @return the initial backoff
+         */
+        public Duration getInitialBackoff() {
+            return initialBackoff;
+        }
+
+        /**
+         * Sets the wait before the first retry of a rate-limited request.
+         *
+         * @param initialBackoff the initial backoff
+         */
+        public void setInitialBackoff(Duration initialBackoff) {
+            this.initialBackoff = initialBackoff;
+        }
+    }
+
+    /**
+     * The settings of the bulk charge engine, bound to {@code stripe.bulk.*}.
+     */
+    public static class Bulk {
+
+        /**
+         * The maximum number of charges in progress at once.
+         */
+        private int concurrency = 8;
+
+        /**
+         * The maximum number of charges started per second, across all the runs of the application.
+         */
+        private double rateLimit = 25;
+
+        /**
+         * Constructs a new instance with the default settings.
+         */
+        public Bulk() {
+        }
+
+        /**
+         * Gets the maximum number of charges in progress at once.
+         *
+         * @return the concurrency
+         */
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        /**
+         * Sets the maximum number of charges in progress at once.
+         *
+         * @param concurrency the concurrency, at least 1
+         */
+        public void setConcurrency(int concurrency) {
+            this.concurrency = concurrency;
+        }
+
+        /**
+         * Gets the maximum number of charges started per second.
+         *
+         * @return the rate limit
+         */
+        public double getRateLimit() {
+            return rateLimit;
+        }
+
+        /**
+         * Sets the maximum number of charges started per second.
+         *
+         * @param rateLimit the rate limit, greater than 0
+         */
+        public void setRateLimit(double rateLimit) {
+            this.rateLimit = rateLimit;
+        }
+    }
+
+    /**
+     * The settings of the client-side rate limiters, one per Stripe account, bound to {@code stripe.rate-limit.*}.
+     */
+    public static class RateLimit {
+
+        /**
+         * Whether the Stripe calls go through a rate limiter. On by default: the default maximum rate stays under
+         * Stripe's live mode limit, and the rate is halved on the first 429 of an account with lower limits, such as
+         * a test mode account.
+         */
+        private boolean enabled = true;
+
+        /**
+         * The highest rate of calls, per second, reached when Stripe does not push back.
+         */
+        private double maxRate = 80;
+
+        /**
+         * The lowest rate of calls, per second, however many calls are rate limited.
+         */
+        private double minRate = 5;
+
+        /**
+         * How fast the rate grows back after a rate-limited call, in calls per second gained each second.
+         */
+        private double recovery = 5;
+
+        /**
+         * The share of the rate batch calls may use, leaving the rest to interactive calls.
+         */
+        private double batchShare = 0.8;
+
+        /**
+         * How many times a rate-limited call is retried once the rate has been lowered.
+         */
+        private int maxRetries = 3;
+
+        /**
+         * Constructs a new instance with the default settings.
+         */
+        public RateLimit() {
+        }
+
+        /**
+         * Gets whether the Stripe calls go through the rate limiter.
+         *
+         * @return true if the rate limiter is enabled
+         */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * Sets whether the Stripe calls go through the rate limiter.
+         *
+         * @param enabled true to enable the rate limiter
+         */
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * Gets the highest rate of calls.
+         *
+         * @return the maximum rate, per second
+         */
+        public double getMaxRate() {
+            return maxRate;
+        }
+
+        /**
+         * Sets the highest rate of calls.
+         *
+         * @param maxRate the maximum rate, per second
+         */
+        public void setMaxRate(double maxRate) {
+            this.maxRate = maxRate;
+        }
+
+        /**
+         * Gets the lowest rate of calls.
+         *
+         * @return the minimum rate, per second
+         */
+        public double getMinRate() {
+            return minRate;
+        }
+
+        /**
+         * Sets the lowest rate of calls.
+         *
+         * @param minRate the minimum rate, per second
+         */
+        public void setMinRate(double minRate) {
+            this.minRate = minRate;
+        }
+
+        /**
+         * Gets how fast the rate grows back after a rate-limited call.
+         *
+         * @return the calls per second gained each second
+         */
+        public double getRecovery() {
+            return recovery;
+        }
+
+        /**
+         * Sets how fast the rate grows back after a rate-limited call.
+         *
+         * @param recovery the calls per second gained each second
+         */
+        public void setRecovery(double recovery) {
+            this.recovery = recovery;
+        }
+
+        /**
+         * Gets the share of the rate batch calls may use.
+         *
+         * @return the batch share, between 0 and 1
+         */
+        public double getBatchShare() {
+            return batchShare;
+        }
+
+        /**
+         * Sets the share of the rate batch calls may use.
+         *
+         * @param batchShare the batch share, greater than 0 and at most 1
+         */
+        public void setBatchShare(double batchShare) {
+            this.batchShare = batchShare;
+        }
+
+        /**
+         * Gets how many times a rate-limited call is retried.
+         *
+         * @return the maximum number of retries
+         */
+        public int getMaxRetries() {
+            return maxRetries;
+        }
+
+        /**
+         * Sets how many times a rate-limited call is retried.
+         *
+         * @param maxRetries the maximum number of retries
+         */
+        public void setMaxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+        }
+    }
+
+    /**
+     * The settings of the subscription outbox, bound to {@code stripe.outbox.*}.
+     */
+    public static class Outbox {
+
+        /**
+         * Whether created subscriptions are written through the outbox instead of on the request thread.
+         */
+        private boolean enabled = false;
+
+        /**
+         * How often the relay looks for entries to write.
+         */
+        private Duration interval = Duration.ofSeconds(1);
+
+        /**
+         * The maximum number of entries written in one batch.
+         */
+        private int batchSize = 100;
+
+        /**
+         * How many failed writes of an entry are attempted before it is left for an operator.
+         */
+        private int maxAttempts = 10;
+
+        /**
+         * The wait before the second attempt of a failed write, doubled on each further attempt.
+         */
+        private Duration initialBackoff = Duration.ofSeconds(1);
+
+        /**
+         * Constructs a new instance with the default settings.
+         */
+        public Outbox() {
+        }
+
+        /**
+         * Gets whether created subscriptions are written through the outbox.
+         *
+         * @return true if the outbox is enabled
+         */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * Sets whether created subscriptions are written through the outbox.
+         *
+         * @param enabled true to enable the outbox
+         */
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * Gets how often the relay looks for entries to write.
+         *
+         * @return the relay interval
+         */
+        public Duration getInterval() {
+            return interval;
+        }
+
+        /**
+         * Sets how often the relay looks for entries to write.
+         *
+         * @param interval the relay interval
+         */
+        public void setInterval(Duration interval) {
+            this.interval = interval;
+        }
+
+        /**
+         * Gets the maximum number of entries written in one batch.
+         *
+         * @return the batch size
+         */
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        /**
+         * Sets the maximum number of entries written in one batch.
+         *
+         * @param batchSize the batch size, at least 1
+         */
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        /**
+         * Gets how many failed writes of an entry are attempted.
+         *
+         * @return the maximum number of attempts
+         */
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        /**
+         * Sets how many failed writes of an entry are attempted.
+         *
+         * @param maxAttempts the maximum number of attempts
+         */
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+
+        /**
+         * Gets the wait before the second attempt of a failed write.
+         *
+         * @return the initial backoff
+         */
+        public Duration getInitialBackoff() {
+            return initialBackoff;
+        }
+
+        /**
+         * Sets the wait before the second attempt of a failed write.
+         *
+         * @param initialBackoff the initial backoff
+         */
+        public void setInitialBackoff(Duration initialBackoff) {
+            this.initialBackoff = initialBackoff;
+        }
+    }
+
+    /**
+     * The settings of the subscription item swaps, bound to {@code stripe.swap.*}.
+     */
+    public static class Swap {
+
+        /**
+         * How the items of a subscription are replaced by a new price.
+         */
+        public enum Strategy {
+
+            /**
+             * A single subscription update adds the new item and deletes the old ones.
+             */
+            REPLACE,
+
+            /**
+             * A subscription update adds the new item, then the old items are deleted one call each, in parallel.
+             */
+            DELETE_ITEMS
+        }
+
+        /**
+         * How the items are replaced.
+         */
+        private Strategy strategy = Strategy.REPLACE;
+
+        /**
+         * The maximum number of item deletions in progress at once with {@link Strategy#DELETE_ITEMS}.
+         */
+        private int parallelism = 4;
+
+        /**
+         * Constructs a new instance with the default settings.
+         */
+        public Swap() {
+        }
+
+        /**
+         * Gets how the items are replaced.
+         *
+         * @return the strategy
+         */
+        public Strategy getStrategy() {
+            return strategy;
+        }
+
+        /**
+         * Sets how the items are replaced.
+         *
+         * @param strategy the strategy
+         */
+        public void setStrategy(Strategy strategy) {
+            this.strategy = strategy;
+        }
+
+        /**
+         * Gets the maximum number of item deletions in progress at once.
+         *
+         * @return the parallelism
+         */
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        /**
+         * Sets the maximum number of item deletions in progress at once.
+         *
+         * @param parallelism the parallelism, at least 1
+         */
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+    }
+
+    /**
+     * The settings of the batched JDBC writes, bound to {@code stripe.jdbc.*}.
+     */
+    public static class Jdbc {
+
+        /**
+         * The maximum number of rows sent to the database in one batch.
+         */
+        private int batchSize = 500;
+
+        /**
+         * Constructs a new instance with the default settings.
+         */
+        public Jdbc() {
+        }
+
+        /**
+         * Gets the maximum number of rows sent to the database in one batch.
+         *
+         * @return the batch size
+         */
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        /**
+         * Sets the maximum number of rows sent to the database in one batch.
+         *
+         * @param batchSize the batch size, at least 1
+         */
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+    }
+
 }
@@ -1,6 +1,9 @@
 package com.oixan.stripecashier.entity;
 
 import java.time.LocalDateTime;
+
+import org.hibernate.annotations.ColumnDefault;
+
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
@@ -10,6 +13,7 @@ import jakarta.persistence.Index;
 import jakarta.persistence.PrePersist;
 import jakarta.persistence.PreUpdate;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 
 /**
  * The {@code Subscription} class represents a subscription entity in the system.
@@ -19,11 +23,18 @@ import jakarta.persistence.Table;
  * <p>This class is annotated as a JPA entity and is mapped to the "subscriptions" table in the database.
  * It includes lifecycle callbacks to automatically handle the creation and update timestamps.
  * 
- * <p>Indexes are also defined on the {@code user_id} and {@code stripe_status} columns for optimized queries.
+ * <p>The {@code version} column is checked by every JPA update, and incremented by the native writes too, so
+ * concurrent writers cannot overwrite each other's changes unnoticed.
+ *
+ * <p>Indexes are also defined on the {@code user_id} and {@code stripe_status} columns for optimized queries,
+ * and on the {@code user_id} and {@code type} columns for the lookup of the subscription of a given type. A user
+ * who subscribes again after a cancellation holds one row per Stripe subscription of that type, so this index is
+ * not unique; the lookups return the newest row.
  */
 @Entity
 @Table(name = "subscriptions", indexes = {
-        @Index(name = "idx_user_id_stripe_status", columnList = "user_id, stripe_status")
+        @Index(name = "idx_user_id_stripe_status", columnList = "user_id, stripe_status"),
+        @Index(name = "idx_user_id_type", columnList = "user_id, type")
 })
 public class Subscription {
 
@@ -89,6 +100,22 @@ public class Subscription {
     @Column(name = "ends_at")
     private LocalDateTime endsAt;
 
+    /**
+     * The creation time of the last webhook event applied to the row, in seconds since the epoch, so that an
+     * older event delivered late is not applied over it.
+     */
+    @Column(name = "last_event_created")
+    private Long lastEventCreated;
+
+    /**
+     * The version of the row, incremented by every write, so that a write based on a stale copy fails. Defaults to
+     * 0 in the schema, so that the column can be added to a table holding rows.
+     */
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private long version;
+
     /**
      * The timestamp of when the subscription was created.
      */
@@ -265,6 +292,42 @@ public class Subscription {
         this.endsAt = endsAt;
     }
 
+    /**
+     * Gets the creation time of the last webhook event applied to the row.
+     *
+     * @return The creation time in seconds since the epoch, or {@code null} if no event was applied
+     */
+    public Long getLastEventCreated() {
+        return lastEventCreated;
+    }
+
+    /**
+     * Sets the creation time of the last webhook event applied to the row.
+     *
+     * @param lastEventCreated the creation time in seconds since the epoch
+     */
+    public void setLastEventCreated(Long lastEventCreated) {
+        this.lastEventCreated = lastEventCreated;
+    }
+
+    /**
+     * Gets the version of the row.
+     *
+     * @return The version of the row
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Sets the version of the row.
+     *
+     * @param version the version of the row
+     */
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     /**
      * Gets the creation timestamp of the subscription.
      * 
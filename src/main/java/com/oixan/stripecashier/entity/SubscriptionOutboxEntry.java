@@ -0,0 +1,354 @@
+package com.oixan.stripecashier.entity;
+
+import java.time.LocalDateTime;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.Table;
+
+/**
+ * The {@code SubscriptionOutboxEntry} class represents a subscription created on Stripe whose row is still to be
+ * written to the "subscriptions" table.
+ *
+ * <p>Entries are written by the request that created the subscription and removed by the outbox relay once the
+ * subscription row exists. A failed write is retried later: the entry counts its attempts, keeps the last error
+ * and is not picked again before its next attempt time.
+ *
+ * <p>An index is defined on the {@code next_attempt_at} column, the order the relay reads the entries in.
+ */
+@Entity
+@Table(name = "subscription_outbox", indexes = {
+        @Index(name = "idx_subscription_outbox_next_attempt_at", columnList = "next_attempt_at")
+})
+public class SubscriptionOutboxEntry {
+
+    /**
+     * The maximum length of the recorded error.
+     */
+    public static final int MAX_ERROR_LENGTH = 1000;
+
+    /**
+     * Constructs a new instance.
+     */
+    public SubscriptionOutboxEntry() {
+        // Default constructor
+    }
+
+    /**
+     * The unique identifier for the entry.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * The user ID associated with the subscription.
+     */
+    @Column(name = "user_id", nullable = false)
+    private String userId;
+
+    /**
+     * The type of the subscription.
+     */
+    @Column(nullable = false)
+    private String type;
+
+    /**
+     * The Stripe ID of the subscription.
+     */
+    @Column(name = "stripe_id", nullable = false)
+    private String stripeId;
+
+    /**
+     * The status of the subscription on Stripe when it was created.
+     */
+    @Column(name = "stripe_status", nullable = false)
+    private String stripeStatus;
+
+    /**
+     * The Stripe price ID associated with the subscription.
+     */
+    @Column(name = "stripe_price")
+    private String stripePrice;
+
+    /**
+     * The quantity of the subscribed product.
+     */
+    @Column
+    private Long quantity;
+
+    /**
+     * The number of failed attempts to write the subscription.
+     */
+    @Column(nullable = false)
+    private int attempts;
+
+    /**
+     * The error of the last failed attempt.
+     */
+    @Column(name = "last_error", length = MAX_ERROR_LENGTH)
+    private String lastError;
+
+    /**
+     * The earliest time of the next attempt.
+     */
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    /**
+     * The timestamp of when the entry was created.
+     */
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    /**
+     * Creates an entry holding the values of the given subscription.
+     *
+     * @param subscription the subscription to be written
+     * @return the entry
+     */
+    public static SubscriptionOutboxEntry of(Subscription subscription) {
+        SubscriptionOutboxEntry entry = new SubscriptionOutboxEntry();
+        entry.setUserId(subscription.getUserId());
+        entry.setType(subscription.getType());
+        entry.setStripeId(subscription.getStripeId());
+        entry.setStripeStatus(subscription.getStripeStatus());
+        entry.setStripePrice(subscription.getStripePrice());
+        entry.setQuantity(subscription.getQuantity());
+        return entry;
+    }
+
+    /**
+     * Creates the subscription row this entry stands for.
+     *
+     * @return a new, unsaved subscription
+     */
+    public Subscription toSubscription() {
+        Subscription subscription = new Subscription();
+        subscription.setUserId(userId);
+        subscription.setType(type);
+        subscription.setStripeId(stripeId);
+        subscription.setStripeStatus(stripeStatus);
+        subscription.setStripePrice(stripePrice);
+        subscription.setQuantity(quantity);
+        return subscription;
+    }
+
+    // Getters and Setters
+
+    /**
+     * Gets the ID of the entry.
+     *
+     * @return The ID of the entry
+     */
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * Sets the ID of the entry.
+     *
+     * @param id the ID to set
+     */
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    /**
+     * Gets the user ID associated with the subscription.
+     *
+     * @return The user ID
+     */
+    public String getUserId() {
+        return userId;
+    }
+
+    /**
+     * Sets the user ID for the subscription.
+     *
+     * @param userId the user ID to set
+     */
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    /**
+     * Gets the type of the subscription.
+     *
+     * @return The type of the subscription
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Sets the type of the subscription.
+     *
+     * @param type the type of the subscription
+     */
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    /**
+     * Gets the Stripe ID of the subscription.
+     *
+     * @return The Stripe ID
+     */
+    public String getStripeId() {
+        return stripeId;
+    }
+
+    /**
+     * Sets the Stripe ID for the subscription.
+     *
+     * @param stripeId the Stripe ID to set
+     */
+    public void setStripeId(String stripeId) {
+        this.stripeId = stripeId;
+    }
+
+    /**
+     * Gets the Stripe status of the subscription.
+     *
+     * @return The Stripe status
+     */
+    public String getStripeStatus() {
+        return stripeStatus;
+    }
+
+    /**
+     * Sets the status of the subscription in Stripe.
+     *
+     * @param stripeStatus the status of the subscription in Stripe
+     */
+    public void setStripeStatus(String stripeStatus) {
+        this.stripeStatus = stripeStatus;
+    }
+
+    /**
+     * Gets the Stripe price ID associated with the subscription.
+     *
+     * @return The Stripe price ID
+     */
+    public String getStripePrice() {
+        return stripePrice;
+    }
+
+    /**
+     * Sets the Stripe price for the subscription.
+     *
+     * @param stripePrice the Stripe price to set
+     */
+    public void setStripePrice(String stripePrice) {
+        this.stripePrice = stripePrice;
+    }
+
+    /**
+     * Gets the quantity of the subscribed product.
+     *
+     * @return The quantity of the product
+     */
+    public Long getQuantity() {
+        return quantity;
+    }
+
+    /**
+     * Sets the quantity for the subscription.
+     *
+     * @param quantity the quantity to set
+     */
+    public void setQuantity(Long quantity) {
+        this.quantity = quantity;
+    }
+
+    /**
+     * Gets the number of failed attempts to write the subscription.
+     *
+     * @return The number of failed attempts
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Sets the number of failed attempts to write the subscription.
+     *
+     * @param attempts the number of failed attempts
+     */
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    /**
+     * Gets the error of the last failed attempt.
+     *
+     * @return The last error, or {@code null} if no attempt failed
+     */
+    public String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Sets the error of the last failed attempt, truncated to {@value #MAX_ERROR_LENGTH} characters.
+     *
+     * @param lastError the last error
+     */
+    public void setLastError(String lastError) {
+        this.lastError = lastError != null && lastError.length() > MAX_ERROR_LENGTH
+                ? lastError.substring(0, MAX_ERROR_LENGTH)
+                : lastError;
+    }
+
+    /**
+     * Gets the earliest time of the next attempt.
+     *
+     * @return The time of the next attempt
+     */
+    public LocalDateTime getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    /**
+     * Sets the earliest time of the next attempt.
+     *
+     * @param nextAttemptAt the time of the next attempt
+     */
+    public void setNextAttemptAt(LocalDateTime nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    /**
+     * Gets the creation timestamp of the entry.
+     *
+     * @return The creation timestamp
+     */
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Sets the creation date and time of the entry.
+     *
+     * @param createdAt the LocalDateTime when the entry was created
+     */
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * Lifecycle callback method that is triggered before the entry is persisted to the database.
+     * Sets the creation timestamp and makes the entry due immediately unless a time was set.
+     */
+    @PrePersist
+    protected void onCreate() {
+        this.createdAt = LocalDateTime.now();
+        if (this.nextAttemptAt == null) {
+            this.nextAttemptAt = this.createdAt;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.oixan.stripecashier.entity;
+
+import java.time.LocalDateTime;
+
+/**
+ * The columns of a {@link Subscription} its status is computed from.
+ *
+ * <p>Read by the status checks in place of the whole entity: the query selects these four columns only, and the
+ * result is neither managed nor tracked by the persistence context.
+ */
+public final class SubscriptionStatusView {
+
+    private final String type;
+
+    private final String stripeStatus;
+
+    private final LocalDateTime trialEndsAt;
+
+    private final LocalDateTime endsAt;
+
+    /**
+     * Constructs a new instance, called by the projection query.
+     *
+     * @param type the type of the subscription
+     * @param stripeStatus the status of the subscription on Stripe
+     * @param trialEndsAt the trial expiration date, or {@code null}
+     * @param endsAt the subscription expiration date, or {@code null}
+     */
+    public SubscriptionStatusView(String type, String stripeStatus, LocalDateTime trialEndsAt, LocalDateTime endsAt) {
+        this.type = type;
+        this.stripeStatus = stripeStatus;
+        this.trialEndsAt = trialEndsAt;
+        this.endsAt = endsAt;
+    }
+
+    /**
+     * Creates a view of the given subscription.
+     *
+     * @param subscription the subscription
+     * @return the view
+     */
+    public static SubscriptionStatusView of(Subscription subscription) {
+        return new SubscriptionStatusView(
+                subscription.getType(),
+                subscription.getStripeStatus(),
+                subscription.getTrialEndsAt(),
+                subscription.getEndsAt());
+    }
+
+    /**
+     * Gets the type of the subscription.
+     *
+     * @return The type of the subscription
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Gets the Stripe status of the subscription.
+     *
+     * @return The Stripe status
+     */
+    public String getStripeStatus() {
+        return stripeStatus;
+    }
+
+    /**
+     * Gets the trial expiration date for the subscription.
+     *
+     * @return The trial expiration date
+     */
+    public LocalDateTime getTrialEndsAt() {
+        return trialEndsAt;
+    }
+
+    /**
+     * Gets the expiration date of the subscription.
+     *
+     * @return The subscription expiration date
+     */
+    public LocalDateTime getEndsAt() {
+        return endsAt;
+    }
+}
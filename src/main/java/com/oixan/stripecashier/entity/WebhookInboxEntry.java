@@ -0,0 +1,302 @@
+package com.oixan.stripecashier.entity;
+
+import java.time.LocalDateTime;
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Lob;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.Table;
+
+/**
+ * The {@code WebhookInboxEntry} class represents a verified Stripe webhook event stored before it is applied.
+ *
+ * <p>Entries are written by the webhook endpoint, which acknowledges the event once its entry is stored, and
+ * applied by the inbox relay. A failed attempt is retried later: the entry counts its attempts, keeps the last
+ * error and is not picked again before its next attempt time. Applied entries are kept, with the time they were
+ * processed at, until the relay purges them.
+ *
+ * <p>A unique index is defined on the {@code event_id} column, so that each event is stored once however many
+ * times Stripe delivers it, and an index on the {@code next_attempt_at} column, the order the relay reads the
+ * entries in.
+ */
+@Entity
+@Table(name = "webhook_inbox", indexes = {
+        @Index(name = "idx_webhook_inbox_event_id", columnList = "event_id", unique = true),
+        @Index(name = "idx_webhook_inbox_next_attempt_at", columnList = "next_attempt_at")
+})
+public class WebhookInboxEntry {
+
+    /**
+     * The maximum length of the recorded error.
+     */
+    public static final int MAX_ERROR_LENGTH = 1000;
+
+    /**
+     * Constructs a new instance.
+     */
+    public WebhookInboxEntry() {
+        // Default constructor
+    }
+
+    /**
+     * The unique identifier for the entry.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * The ID of the Stripe event.
+     */
+    @Column(name = "event_id", nullable = false, updatable = false)
+    private String eventId;
+
+    /**
+     * The type of the Stripe event.
+     */
+    @Column(nullable = false, updatable = false)
+    private String type;
+
+    /**
+     * The time the event was created on Stripe, in seconds since the epoch.
+     */
+    @Column(name = "event_created", updatable = false)
+    private Long eventCreated;
+
+    /**
+     * The raw, signed payload of the event.
+     */
+    @Lob
+    @Column(nullable = false, updatable = false)
+    private String payload;
+
+    /**
+     * The number of failed attempts to apply the event.
+     */
+    @Column(nullable = false)
+    private int attempts;
+
+    /**
+     * The error of the last failed attempt.
+     */
+    @Column(name = "last_error", length = MAX_ERROR_LENGTH)
+    private String lastError;
+
+    /**
+     * The earliest time of the next attempt.
+     */
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    /**
+     * The time the event was applied at, or {@code null} while it is pending.
+     */
+    @Column(name = "processed_at")
+    private LocalDateTime processedAt;
+
+    /**
+     * The timestamp of when the entry was created.
+     */
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    // Getters and Setters
+
+    /**
+     * Gets the ID of the entry.
+     *
+     * @return The ID of the entry
+     */
+    public Long getId() {
+        return id;
+    }
+
+    /**
+     * Sets the ID of the entry.
+     *
+     * @param id the ID to set
+     */
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    /**
+     * Gets the ID of the Stripe event.
+     *
+     * @return The event ID
+     */
+    public String getEventId() {
+        return eventId;
+    }
+
+    /**
+     * Sets the ID of the Stripe event.
+     *
+     * @param eventId the event ID to set
+     */
+    public void setEventId(String eventId) {
+        this.eventId = eventId;
+    }
+
+    /**
+     * Gets the type of the Stripe event.
+     *
+     * @return The event type
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Sets the type of the Stripe event.
+     *
+     * @param type the event type to set
+     */
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    /**
+     * Gets the time the event was created on Stripe.
+     *
+     * @return The creation time in seconds since the epoch
+     */
+    public Long getEventCreated() {
+        return eventCreated;
+    }
+
+    /**
+     * Sets the time the event was created on Stripe.
+     *
+     * @param eventCreated the creation time in seconds since the epoch
+     */
+    public void setEventCreated(Long eventCreated) {
+        this.eventCreated = eventCreated;
+    }
+
+    /**
+     * Gets the raw payload of the event.
+     *
+     * @return The payload
+     */
+    public String getPayload() {
+        return payload;
+    }
+
+    /**
+     * Sets the raw payload of the event.
+     *
+     * @param payload the payload to set
+     */
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    /**
+     * Gets the number of failed attempts to apply the event.
+     *
+     * @return The number of failed attempts
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * Sets the number of failed attempts to apply the event.
+     *
+     * @param attempts the number of failed attempts
+     */
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    /**
+     * Gets the error of the last failed attempt.
+     *
+     * @return The last error, or {@code null} if no attempt failed
+     */
+    public String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Sets the error of the last failed attempt, truncated to {@value #MAX_ERROR_LENGTH} characters.
+     *
+     * @param lastError the last error
+     */
+    public void setLastError(String lastError) {
+        this.lastError = lastError != null && lastError.length() > MAX_ERROR_LENGTH
+                ? lastError.substring(0, MAX_ERROR_LENGTH)
+                : lastError;
+    }
+
+    /**
+     * Gets the earliest time of the next attempt.
+     *
+     * @return The time of the next attempt
+     */
+    public LocalDateTime getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    /**
+     * Sets the earliest time of the next attempt.
+     *
+     * @param nextAttemptAt the time of the next attempt
+     */
+    public void setNextAttemptAt(LocalDateTime nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    /**
+     * Gets the time the event was applied at.
+     *
+     * @return The processing time, or {@code null} while the event is pending
+     */
+    public LocalDateTime getProcessedAt() {
+        return processedAt;
+    }
+
+    /**
+     * Sets the time the event was applied at.
+     *
+     * @param processedAt the processing time
+     */
+    public void setProcessedAt(LocalDateTime processedAt) {
+        this.processedAt = processedAt;
+    }
+
+    /**
+     * Gets the creation timestamp of the entry.
+     *
+     * @return The creation timestamp
+     */
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Sets the creation date and time of the entry.
+     *
+     * @param createdAt the LocalDateTime when the entry was created
+     */
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * Lifecycle callback method that is triggered before the entry is persisted to the database.
+     * Sets the creation timestamp and makes the entry due immediately unless a time was set.
+     */
+    @PrePersist
+    protected void onCreate() {
+        this.createdAt = LocalDateTime.now();
+        if (this.nextAttemptAt == null) {
+            this.nextAttemptAt = this.createdAt;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.oixan.stripecashier.factory;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -16,7 +17,7 @@ import com.oixan.stripecashier.interfaces.IUserStripe;
 public class ChargeBuilderFactory {
 	
 	@Autowired
-	ChargeBuilder chargeBuilder;
+	ObjectProvider<ChargeBuilder> chargeBuilderProvider;
 
     /**
 	 * Private constructor to prevent instantiation of this singleton class.
@@ -34,6 +35,6 @@ public class ChargeBuilderFactory {
      * @return A newly created instance
      */
     public ChargeBuilder create(IUserStripe user) {
-        return chargeBuilder.setUser(user);
+        return chargeBuilderProvider.getObject().setUser(user);
     }
 }
@@ -1,5 +1,6 @@
 package com.oixan.stripecashier.factory;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -18,7 +19,7 @@ import com.oixan.stripecashier.manager.CustomerManager;
 public class CustomerManagerFactory {
 	
 	@Autowired
-	CustomerManager customerManager;
+	ObjectProvider<CustomerManager> customerManagerProvider;
 
     /**
 	 * Private constructor to prevent instantiation of this singleton class.
@@ -35,6 +36,6 @@ public class CustomerManagerFactory {
      * @return A newly created    instance
      */
     public CustomerManager create(IUserStripe user) {
-        return customerManager.setUser(user);
+        return customerManagerProvider.getObject().setUser(user);
     }
 }
@@ -1,5 +1,6 @@
 package com.oixan.stripecashier.factory;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -19,7 +20,7 @@ import com.oixan.stripecashier.manager.PaymentMethodsManager;
 public class PaymentMethodsManagerFactory {
 	
 	@Autowired
-	PaymentMethodsManager paymentMethodsManager;
+	ObjectProvider<PaymentMethodsManager> paymentMethodsManagerProvider;
 	
 	@Autowired
 	CustomerManagerFactory customerManagerFactory;
@@ -41,7 +42,7 @@ public class PaymentMethodsManagerFactory {
     public PaymentMethodsManager create(IUserStripe user) {
     	CustomerManager cm = customerManagerFactory.create(user);
     	
-        return paymentMethodsManager
+        return paymentMethodsManagerProvider.getObject()
                     .setCustomerManager(cm);
     }
 }
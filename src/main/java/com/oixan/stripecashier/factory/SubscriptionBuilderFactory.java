@@ -1,5 +1,6 @@
 package com.oixan.stripecashier.factory;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -16,7 +17,7 @@ import com.oixan.stripecashier.manager.PaymentMethodsManager;
 public class SubscriptionBuilderFactory {
 	
 	@Autowired
-	SubscriptionBuilder subscriptionBuilder;
+	ObjectProvider<SubscriptionBuilder> subscriptionBuilderProvider;
 	
 	@Autowired
 	CustomerManagerFactory customerManagerFactory;
@@ -43,7 +44,7 @@ public class SubscriptionBuilderFactory {
         PaymentMethodsManager pm = paymentMethodsManagerFactory.create(user);
         
         // Return a new SubscriptionBuilder initialized with the required dependencies
-        return subscriptionBuilder
+        return subscriptionBuilderProvider.getObject()
         			.setCustomerManager(cm)
         			.setPaymentMethodsManager(pm);
     }
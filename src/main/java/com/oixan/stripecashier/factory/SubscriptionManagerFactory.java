@@ -1,5 +1,6 @@
 package com.oixan.stripecashier.factory;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -17,7 +18,7 @@ import com.oixan.stripecashier.manager.SubscriptionManager;
 public class SubscriptionManagerFactory {
 	
 	@Autowired
-	SubscriptionManager subscriptionManager;
+	ObjectProvider<SubscriptionManager> subscriptionManagerProvider;
 	
 	@Autowired
 	CustomerManagerFactory customerManagerFactory;
@@ -38,7 +39,7 @@ public class SubscriptionManagerFactory {
      */
     public SubscriptionManager create(IUserStripe user) {
         // Create and return a new SubscriptionManager initialized with the given user
-        return subscriptionManager
+        return subscriptionManagerProvider.getObject()
                 	.setUser(user)
                 	.setCustomerManager(customerManagerFactory.create(user));
     }
@@ -0,0 +1,91 @@
+package com.oixan.stripecashier.factory;
+
+import com.oixan.stripecashier.builder.ChargeBuilder;
+import com.oixan.stripecashier.builder.CheckoutBuilder;
+import com.oixan.stripecashier.builder.SubscriptionBuilder;
+import com.oixan.stripecashier.interfaces.IUserStripe;
+import com.oixan.stripecashier.interfaces.IUserStripeAction;
+import com.oixan.stripecashier.manager.CustomerManager;
+import com.oixan.stripecashier.manager.PaymentMethodsManager;
+import com.oixan.stripecashier.manager.SubscriptionManager;
+
+/**
+ * The {@link IUserStripeAction} returned by {@link UserStripeFactory}: a plain holder of the builders and
+ * managers bound to one user.
+ * <p>
+ * Every method returns a field, so calls involve no reflection or dynamic proxy dispatch.
+ */
+public final class UserStripeAction implements IUserStripeAction {
+
+    private final IUserStripe user;
+    private final CheckoutBuilder checkoutBuilder;
+    private final SubscriptionBuilder subscriptionBuilder;
+    private final SubscriptionManager subscriptionManager;
+    private final CustomerManager customerManager;
+    private final PaymentMethodsManager paymentMethodsManager;
+    private final ChargeBuilder chargeBuilder;
+
+    /**
+     * Constructs a new UserStripeAction.
+     *
+     * @param user the user the builders and managers are bound to.
+     * @param checkoutBuilder the builder for handling checkout operations.
+     * @param subscriptionBuilder the builder for managing subscriptions.
+     * @param subscriptionManager the manager for handling subscription actions.
+     * @param customerManager the manager for handling customer-related operations.
+     * @param paymentMethodsManager the manager for managing payment methods.
+     * @param chargeBuilder the builder for charge operation.
+     */
+    public UserStripeAction(
+            IUserStripe user,
+            CheckoutBuilder checkoutBuilder,
+            SubscriptionBuilder subscriptionBuilder,
+            SubscriptionManager subscriptionManager,
+            CustomerManager customerManager,
+            PaymentMethodsManager paymentMethodsManager,
+            ChargeBuilder chargeBuilder
+    ) {
+        this.user = user;
+        this.checkoutBuilder = checkoutBuilder;
+        this.subscriptionBuilder = subscriptionBuilder;
+        this.subscriptionManager = subscriptionManager;
+        this.customerManager = customerManager;
+        this.paymentMethodsManager = paymentMethodsManager;
+        this.chargeBuilder = chargeBuilder;
+    }
+
+    @Override
+    public CheckoutBuilder checkout() {
+        return checkoutBuilder;
+    }
+
+    @Override
+    public SubscriptionBuilder subscribe() {
+        return subscriptionBuilder;
+    }
+
+    @Override
+    public IUserStripe getUserStripe() {
+        return user;
+    }
+
+    @Override
+    public SubscriptionManager subscription() {
+        return subscriptionManager;
+    }
+
+    @Override
+    public CustomerManager customer() {
+        return customerManager;
+    }
+
+    @Override
+    public PaymentMethodsManager paymentMethod() {
+        return paymentMethodsManager;
+    }
+
+    @Override
+    public ChargeBuilder charge() {
+        return chargeBuilder;
+    }
+}
@@ -1,5 +1,6 @@
 package com.oixan.stripecashier.factory;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
@@ -11,13 +12,15 @@ import com.oixan.stripecashier.interfaces.IUserStripeAction;
 import com.oixan.stripecashier.manager.CustomerManager;
 import com.oixan.stripecashier.manager.PaymentMethodsManager;
 import com.oixan.stripecashier.manager.SubscriptionManager;
-import com.oixan.stripecashier.proxy.UserStripeActionProxy;
 
 /**
  * The {@code UserStripeFactory} class is responsible for creating instances of {@link IUserStripeAction}.
  * <p>
  * This factory encapsulates the creation of various dependencies required by {@link IUserStripeAction}
- * and returns a proxy implementation using {@link UserStripeActionProxy}.
+ * and returns them bound to the user in a {@link UserStripeAction}.
+ * <p>
+ * The builders and managers are prototype beans: every call returns a fresh set bound to the given user,
+ * so actions created concurrently for different users never share state.
  */
 @Component
 public class UserStripeFactory {
@@ -26,7 +29,7 @@ public class UserStripeFactory {
 	SubscriptionBuilderFactory subscriptionBuilderFactory;
 	
 	@Autowired
-	CheckoutBuilder checkoutBuilder;
+	ObjectProvider<CheckoutBuilder> checkoutBuilderProvider;
 	
 	@Autowired
 	SubscriptionManagerFactory subscriptionManagerFactory;
@@ -49,15 +52,15 @@ public class UserStripeFactory {
     /**
      * Creates an {@link IUserStripeAction} instance for the given user model.
      * <p>
-     * This method initializes and assembles the necessary components, including builders, managers,
-     * and proxies, to create a complete {@link IUserStripeAction} instance.
+     * This method initializes and assembles the necessary components, including builders and managers,
+     * to create a complete {@link IUserStripeAction} instance.
      *
      * @param model The user model implementing {@link IUserStripe} interface
-     * @return A proxied {@link IUserStripeAction} instance configured with the necessary dependencies
+     * @return An {@link IUserStripeAction} instance configured with the necessary dependencies
      */
     public IUserStripeAction create(IUserStripe model) {
     	
-    	checkoutBuilder.setUser(model);
+    	CheckoutBuilder checkoutBuilder = checkoutBuilderProvider.getObject().setUser(model);
 
         // Create the SubscriptionBuilder using the model
         SubscriptionBuilder subscriptionBuilder = subscriptionBuilderFactory.create(model);
@@ -74,8 +77,7 @@ public class UserStripeFactory {
         
         ChargeBuilder chargeBuilder = chargeBuilderFactory.create(model);
 
-        // Create and return the proxy implementation of IUserStripeAction
-        return UserStripeActionProxy.createProxy(
+        return new UserStripeAction(
                 model,
                 checkoutBuilder,
                 subscriptionBuilder,
@@ -4,21 +4,31 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import com.oixan.stripecashier.builder.StripeBuilder;
+import com.oixan.stripecashier.cache.CustomerCache;
+import com.oixan.stripecashier.client.IdempotencyKeys;
+import com.oixan.stripecashier.client.StripeClientResolver;
+import com.oixan.stripecashier.client.StripeInvoker;
 import com.oixan.stripecashier.factory.UserServiceFactory;
 import com.oixan.stripecashier.interfaces.IUserStripe;
 import com.oixan.stripecashier.service.UserServiceStripe;
 import com.oixan.stripecashier.support.Classes;
+import com.stripe.StripeClient;
 import com.stripe.exception.StripeException;
 import com.stripe.model.Customer;
+import com.stripe.param.CustomerCreateParams;
+import com.stripe.param.CustomerRetrieveParams;
 
 /**
  * Manages Stripe customer operations for a user.
  * Provides methods for retrieving, creating, and managing Stripe customer data.
  */
 @Component
+@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 public class CustomerManager {
 
     IUserStripe user;
@@ -39,6 +49,24 @@ public class CustomerManager {
     @Autowired
     UserServiceFactory userServiceFactory;
 
+    /**
+     * Caches the Stripe customers read by the managers.
+     */
+    @Autowired
+    private CustomerCache customerCache;
+
+    /**
+     * Gives the Stripe client of the account serving the user.
+     */
+    @Autowired
+    private StripeClientResolver stripeClientResolver;
+
+    /**
+     * Runs and records the Stripe calls.
+     */
+    @Autowired
+    private StripeInvoker stripeInvoker;
+
     /**
      * Constructor for CustomerManager.
      *
@@ -74,6 +102,23 @@ public class CustomerManager {
      * @throws RuntimeException if an error occurs while creating the Stripe customer
      */
     public <T extends IUserStripe, ID> String createAsStripeCustomer(Map<String, Object> options) {
+        return createAsStripeCustomer(options, null);
+    }
+
+    /**
+     * Create a Stripe customer if not already created, using provided options and idempotency key.
+     * <p>
+     * Without a key, a random one is generated, which the retries of this call send again. To make a creation
+     * retried from another instance return the customer of the first attempt, pass a key identifying the signup.
+     *
+     * @param <T> the type of user implementing {@link IUserStripe}
+     * @param <ID> the type of user ID
+     * @param options a map containing optional parameters like name, email, phone, etc.
+     * @param idempotencyKey the idempotency key, or {@code null} for a random one
+     * @return String!null the created Stripe customer ID
+     * @throws RuntimeException if an error occurs while creating the Stripe customer
+     */
+    public <T extends IUserStripe, ID> String createAsStripeCustomer(Map<String, Object> options, String idempotencyKey) {
         if (this.hasStripeId()) {
             return this.user.getStripeId();
         }
@@ -100,7 +145,10 @@ public class CustomerManager {
 
         Customer customer;
         try {
-            customer = Customer.create(options);
+            CustomerCreateParams params = CustomerCreateParams.builder().putAllExtraParam(options).build();
+            String key = idempotencyKey != null ? idempotencyKey : IdempotencyKeys.random("customer.create");
+            customer = stripeInvoker.invoke("customer.create", key,
+                    () -> stripeClient().customers().create(params, IdempotencyKeys.options(key)));
         } catch (StripeException e) {
             throw new RuntimeException("Error creating Stripe customer", e);
         }
@@ -117,16 +165,38 @@ public class CustomerManager {
 
     /**
      * Retrieve the Stripe customer object using the Stripe customer ID.
+     * <p>
+     * The customer is served from the {@link CustomerCache}, and retrieved with its
+     * {@code invoice_settings.default_payment_method} expanded on a miss.
      *
      * @return Customer|null the Stripe customer object or null if not found
      * @throws StripeException if an error occurs while retrieving the customer
      */
     public Customer asStripeCustomer() throws StripeException {
-        if (this.user.getStripeId() == null || this.user.getStripeId().isEmpty()) {
+        return asStripeCustomer(this.user);
+    }
+
+    /**
+     * Retrieve the Stripe customer object of the given user, through the Stripe account serving that user.
+     * <p>
+     * Used by the asynchronous operations, which read the user before they are handed to the executor.
+     *
+     * @param user the user whose customer is retrieved
+     * @return Customer|null the Stripe customer object or null if not found
+     * @throws StripeException if an error occurs while retrieving the customer
+     * @see #asStripeCustomer()
+     */
+    public Customer asStripeCustomer(IUserStripe user) throws StripeException {
+        if (user.getStripeId() == null || user.getStripeId().isEmpty()) {
             return null;
         }
 
-        return Customer.retrieve(this.user.getStripeId());
+        String stripeId = user.getStripeId();
+        CustomerRetrieveParams params = CustomerRetrieveParams.builder()
+                .addExpand("invoice_settings.default_payment_method")
+                .build();
+        return customerCache.get(stripeId, () -> stripeInvoker.invoke("customer.retrieve",
+                () -> stripeClientResolver.resolve(user).customers().retrieve(stripeId, params)));
     }
 
     /**
@@ -166,11 +236,20 @@ public class CustomerManager {
         this.user = user;
         this.userClass = user.getClass();
         try {
-            this.userId = Classes.findIdField(user.getClass()).getType();
+            this.userId = Classes.idType(user.getClass());
         } catch (NoSuchFieldException e) {
             throw new RuntimeException("Error accessing user ID field", e);
         }
         return this;
     }
+
+    /**
+     * Gets the Stripe client of the account serving the user.
+     *
+     * @return the Stripe client
+     */
+    private StripeClient stripeClient() {
+        return stripeClientResolver.resolve(user);
+    }
 }
 
@@ -1,29 +1,70 @@
 package com.oixan.stripecashier.manager;
 
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import com.oixan.stripecashier.builder.StripeBuilder;
+import com.oixan.stripecashier.cache.CustomerCache;
+import com.oixan.stripecashier.client.StripeClientResolver;
+import com.oixan.stripecashier.client.StripeInvoker;
+import com.oixan.stripecashier.client.StripePagingException;
+import com.stripe.StripeClient;
 import com.stripe.exception.StripeException;
 import com.stripe.model.Customer;
 import com.stripe.model.PaymentMethod;
-import com.stripe.model.SetupIntent;
+import com.stripe.model.StripeCollection;
+import com.stripe.param.CustomerUpdateParams;
+import com.stripe.param.PaymentMethodAttachParams;
+import com.stripe.param.PaymentMethodListParams;
+import com.stripe.param.SetupIntentCreateParams;
 
 /**
  * Manages payment methods for a Stripe customer, including creation, deletion, and setting default methods.
  */
 @Component
+@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 public class PaymentMethodsManager {
 
+    /**
+     * The page size used by {@link #paymentMethods()}, the largest Stripe allows.
+     */
+    public static final long DEFAULT_PAGE_SIZE = 100;
+
     CustomerManager customerManager;
 
     @Autowired
     StripeBuilder stripeBuilder;
 
+    /**
+     * Caches the Stripe customers read by the managers.
+     */
+    @Autowired
+    private CustomerCache customerCache;
+
+    /**
+     * Gives the Stripe client of the account serving the user.
+     */
+    @Autowired
+    private StripeClientResolver stripeClientResolver;
+
+    /**
+     * Runs and records the Stripe calls.
+     */
+    @Autowired
+    private StripeInvoker stripeInvoker;
+
     /**
      * Constructor for PaymentMethodsManager.
      */
@@ -48,9 +89,10 @@ public class PaymentMethodsManager {
      * @throws StripeException If an error occurs while creating the SetupIntent
      */
     public String createSetupIntent() throws StripeException {
-        Map<String, Object> params = new HashMap<>();
-        params.put("customer", customerManager.user.getStripeId());
-        return SetupIntent.create(params).getClientSecret();
+        SetupIntentCreateParams params = SetupIntentCreateParams.builder()
+                .setCustomer(customerManager.user.getStripeId())
+                .build();
+        return stripeInvoker.invoke("setup_intent.create", () -> stripeClient().setupIntents().create(params)).getClientSecret();
     }
 
     /**
@@ -67,7 +109,16 @@ public class PaymentMethodsManager {
         PaymentMethod stripePaymentMethod = resolveStripePaymentMethod(paymentMethodId);
 
         if (!customerManager.user.getStripeId().equals(stripePaymentMethod.getCustomer())) {
-            stripePaymentMethod = stripePaymentMethod.attach(Map.of("customer", customerManager.user.getStripeId()));
+            PaymentMethodAttachParams params = PaymentMethodAttachParams.builder()
+                    .setCustomer(customerManager.user.getStripeId())
+                    .build();
+            try {
+                stripePaymentMethod = stripeInvoker.invoke("payment_method.attach",
+                        () -> stripeClient().paymentMethods().attach(paymentMethodId, params));
+            } finally {
+                // Attaching the first payment method may make it the default one on Stripe's side
+                customerCache.invalidate(customerManager.user.getStripeId());
+            }
         }
 
         return stripePaymentMethod;
@@ -87,7 +138,7 @@ public class PaymentMethodsManager {
             throw new IllegalStateException("The client does not have a Stripe account");
         }
 
-        PaymentMethod paymentMethod = PaymentMethod.retrieve(paymentMethodId);
+        PaymentMethod paymentMethod = resolveStripePaymentMethod(paymentMethodId);
 
         if (!paymentMethod.getCustomer().equals(customerManager.user.getStripeId())) {
             throw new IllegalStateException("The payment method is not attached to the correct customer.");
@@ -108,27 +159,118 @@ public class PaymentMethodsManager {
             }
         }
 
-        paymentMethod = paymentMethod.detach();
+        try {
+            paymentMethod = stripeInvoker.invoke("payment_method.detach", () -> stripeClient().paymentMethods().detach(paymentMethodId));
+        } finally {
+            customerCache.invalidate(customerManager.user.getStripeId());
+        }
 
         return paymentMethod.getId().equals(paymentMethodId);
     }
 
     /**
-     * Retrieves the list of payment methods for the customer from Stripe.
+     * Retrieves the card payment methods of the customer from Stripe, across all pages.
      *
      * @return A list of {@link PaymentMethod}
      * @throws StripeException If the Stripe API call fails
      */
     public List<PaymentMethod> paymentMethods() throws StripeException {
+        try {
+            return streamPaymentMethods(PaymentMethodListParams.Type.CARD, DEFAULT_PAGE_SIZE).collect(Collectors.toList());
+        } catch (StripePagingException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Streams the payment methods of the customer, fetching the pages from Stripe as the stream is consumed.
+     * <p>
+     * Only the pages needed by the consumer are requested, so a stream cut short with {@code limit} or
+     * {@code findFirst} does not read the remaining ones. A failed page request surfaces as a
+     * {@link StripePagingException} thrown by the terminal operation.
+     *
+     * @param type The type of payment methods to list, or {@code null} to list all types
+     * @param pageSize The number of payment methods per request, between 1 and 100
+     * @return A lazy, ordered stream of {@link PaymentMethod}
+     */
+    public Stream<PaymentMethod> streamPaymentMethods(PaymentMethodListParams.Type type, long pageSize) {
         if (assertCustomerExists() == false) {
             throw new IllegalStateException("The client does not have a Stripe account");
         }
+        if (pageSize < 1 || pageSize > 100) {
+            throw new IllegalArgumentException("The page size must be between 1 and 100.");
+        }
+
+        Iterator<PaymentMethod> iterator = new Iterator<>() {
+
+            private Iterator<PaymentMethod> page = Collections.emptyIterator();
+
+            private String startingAfter;
+
+            private boolean hasMore = true;
 
-        Map<String, Object> params = new HashMap<>();
-        params.put("customer", customerManager.user.getStripeId());
-        params.put("type", "card");
+            @Override
+            public boolean hasNext() {
+                while (!page.hasNext() && hasMore) {
+                    StripeCollection<PaymentMethod> next;
+                    try {
+                        next = paymentMethods(type, pageSize, startingAfter);
+                    } catch (StripeException e) {
+                        throw new StripePagingException(e);
+                    }
 
-        return PaymentMethod.list(params).getData();
+                    List<PaymentMethod> data = next.getData();
+                    hasMore = Boolean.TRUE.equals(next.getHasMore()) && !data.isEmpty();
+                    if (!data.isEmpty()) {
+                        startingAfter = data.get(data.size() - 1).getId();
+                    }
+                    page = data.iterator();
+                }
+                return page.hasNext();
+            }
+
+            @Override
+            public PaymentMethod next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+        };
+
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Retrieves a single page of the payment methods of the customer.
+     * <p>
+     * Pass the ID of the last payment method of a page as {@code startingAfter} to fetch the next one, without
+     * requesting the earlier pages again.
+     *
+     * @param type The type of payment methods to list, or {@code null} to list all types
+     * @param pageSize The number of payment methods in the page, between 1 and 100
+     * @param startingAfter The ID of the payment method the page starts after, or {@code null} for the first page
+     * @return The page, whose {@code hasMore} tells whether a next page exists
+     * @throws StripeException If the Stripe API call fails
+     */
+    public StripeCollection<PaymentMethod> paymentMethods(PaymentMethodListParams.Type type, long pageSize, String startingAfter)
+            throws StripeException {
+        if (assertCustomerExists() == false) {
+            throw new IllegalStateException("The client does not have a Stripe account");
+        }
+
+        PaymentMethodListParams.Builder params = PaymentMethodListParams.builder()
+                .setCustomer(customerManager.user.getStripeId())
+                .setLimit(pageSize);
+        if (type != null) {
+            params.setType(type);
+        }
+        if (startingAfter != null) {
+            params.setStartingAfter(startingAfter);
+        }
+
+        return stripeInvoker.invoke("payment_method.list", () -> stripeClient().paymentMethods().list(params.build()));
     }
 
     /**
@@ -138,15 +280,28 @@ public class PaymentMethodsManager {
      * @throws StripeException If an error occurs while updating the customer
      */
     public void setDefaultPaymentMethod(PaymentMethod paymentMethod) throws StripeException {
-        Customer customer = Customer.retrieve(customerManager.user.getStripeId());
+        CustomerUpdateParams params = CustomerUpdateParams.builder()
+                .setInvoiceSettings(CustomerUpdateParams.InvoiceSettings.builder()
+                        .setDefaultPaymentMethod(paymentMethod.getId())
+                        .build())
+                .build();
 
-        customer.update(
-            Map.of("invoice_settings", Map.of("default_payment_method", paymentMethod.getId()))
-        );
+        // The customer is updated by ID, without retrieving it first
+        String customerId = customerManager.user.getStripeId();
+        try {
+            stripeInvoker.invoke("customer.update", () -> stripeClient().customers().update(customerId, params));
+        } finally {
+            customerCache.invalidate(customerId);
+        }
     }
 
     /**
      * Gets the default payment method for the customer.
+     * <p>
+     * The payment method is read from the cached customer, where it is expanded, so a charge with the default
+     * payment method does not call Stripe before creating the payment. The cached customer is invalidated by
+     * {@link #setDefaultPaymentMethod(PaymentMethod)}, {@link #addPaymentMethod(String)} and
+     * {@link #deletePaymentMethod(String)}.
      *
      * @return The default {@link PaymentMethod} or {@code null} if none is set
      * @throws StripeException If an error occurs while retrieving the customer or payment method
@@ -156,16 +311,19 @@ public class PaymentMethodsManager {
             return null;
         }
 
-        Map<String, Object> params = new HashMap<>();
-        params.put("expand", List.of("invoice_settings.default_payment_method"));
-        Customer customer = Customer.retrieve(this.customerManager.user.getStripeId(), params, null);
+        Customer customer = this.customerManager.asStripeCustomer();
 
-        if (customer.getInvoiceSettings().getDefaultPaymentMethod() != null) {
-            String defaultPaymentMethodId = customer.getInvoiceSettings().getDefaultPaymentMethod();
-            return PaymentMethod.retrieve(defaultPaymentMethodId);
+        if (customer == null || customer.getInvoiceSettings() == null) {
+            return null;
         }
 
-        return null;
+        // The payment method is expanded in the response, so it does not need to be retrieved again
+        PaymentMethod paymentMethod = customer.getInvoiceSettings().getDefaultPaymentMethodObject();
+        if (paymentMethod == null && customer.getInvoiceSettings().getDefaultPaymentMethod() != null) {
+            // A custom CustomerCache may hold the customer without the expansion
+            return resolveStripePaymentMethod(customer.getInvoiceSettings().getDefaultPaymentMethod());
+        }
+        return paymentMethod;
     }
 
     /**
@@ -185,6 +343,15 @@ public class PaymentMethodsManager {
      * @throws StripeException If the payment method cannot be retrieved
      */
     private PaymentMethod resolveStripePaymentMethod(String paymentMethodId) throws StripeException {
-        return PaymentMethod.retrieve(paymentMethodId);
+        return stripeInvoker.invoke("payment_method.retrieve", () -> stripeClient().paymentMethods().retrieve(paymentMethodId));
+    }
+
+    /**
+     * Gets the Stripe client of the account serving the user.
+     *
+     * @return the Stripe client
+     */
+    private StripeClient stripeClient() {
+        return stripeClientResolver.resolve(customerManager.user);
     }
 }
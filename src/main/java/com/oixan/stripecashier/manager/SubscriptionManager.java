@@ -1,17 +1,38 @@
 package com.oixan.stripecashier.manager;
 
 import java.time.Instant;
+import java.time.LocalDateTime;
 import java.time.ZoneId;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
-
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.annotation.Scope;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Component;
 
+import com.oixan.stripecashier.builder.StripeBuilder;
+import com.oixan.stripecashier.client.StripeClientResolver;
+import com.oixan.stripecashier.client.StripeInvoker;
+import com.oixan.stripecashier.config.StripeProperties;
+import com.oixan.stripecashier.entity.SubscriptionStatusView;
 import com.oixan.stripecashier.factory.SubscriptionServiceFactory;
 import com.oixan.stripecashier.interfaces.IUserStripe;
+import com.oixan.stripecashier.outbox.SubscriptionOutbox;
 import com.oixan.stripecashier.service.SubscriptionService;
+import com.oixan.stripecashier.support.Async;
+import com.stripe.StripeClient;
 import com.stripe.exception.StripeException;
 import com.stripe.model.Subscription;
 import com.stripe.model.SubscriptionItem;
@@ -21,7 +42,15 @@ import com.stripe.param.SubscriptionUpdateParams;
  * Manages subscription-related operations.
  */
 @Component
+@Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 public class SubscriptionManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(SubscriptionManager.class);
+
+    /**
+     * The number of times the updated subscription is written before an optimistic lock failure is rethrown.
+     */
+    static final int SAVE_ATTEMPTS = 3;
 	
 	@Autowired
 	private SubscriptionServiceFactory subscriptionServiceFactory;
@@ -42,6 +71,43 @@ public class SubscriptionManager {
     @Autowired
     private SubscriptionService subscriptionService;
 
+    /**
+     * Holds the settings deciding which Stripe statuses count as active.
+     */
+    @Autowired
+    private StripeBuilder stripeBuilder;
+
+    /**
+     * Holds the settings of the item swaps.
+     */
+    @Autowired
+    private StripeProperties stripeProperties;
+
+    /**
+     * Runs the asynchronous variants of the operations.
+     */
+    @Autowired
+    @Qualifier("stripeCashierExecutor")
+    private Executor executor;
+
+    /**
+     * Gives the Stripe client of the account serving the user.
+     */
+    @Autowired
+    private StripeClientResolver stripeClientResolver;
+
+    /**
+     * Runs and records the Stripe calls.
+     */
+    @Autowired
+    private StripeInvoker stripeInvoker;
+
+    /**
+     * Holds the subscriptions created but not written yet, when {@code stripe.outbox.enabled} is set.
+     */
+    @Autowired(required = false)
+    private SubscriptionOutbox subscriptionOutbox;
+
     /**
      * Manages subscription-related operations.
      * This class is responsible for handling the creation and management of subscriptions
@@ -94,6 +160,20 @@ public class SubscriptionManager {
      * @throws IllegalArgumentException If the subscription type is null, empty, or the subscription is not found.
      */
     public Subscription cancelAtPeriodEnd(String type) throws StripeException {
+      return cancelAtPeriodEnd(user, type);
+    }
+
+
+    /**
+     * Cancels the subscription of the given user at the end of the current billing period.
+     *
+     * @param user The user whose subscription is canceled, read before the call is handed to the executor.
+     * @param type The type of subscription to be canceled.
+     * @return The updated Stripe subscription object.
+     * @throws StripeException If an error occurs while interacting with the Stripe API.
+     * @throws IllegalArgumentException If the subscription type is null, empty, or the subscription is not found.
+     */
+    private Subscription cancelAtPeriodEnd(IUserStripe user, String type) throws StripeException {
       if (type == null || type.isEmpty()) {
           throw new IllegalArgumentException("Subscription type is required.");
       }
@@ -104,11 +184,14 @@ public class SubscriptionManager {
           throw new IllegalArgumentException("Subscription not found.");
       }
 
-      Map<String, Object> params = new HashMap<>();
-      params.put("cancel_at_period_end", true);
+      SubscriptionUpdateParams params = SubscriptionUpdateParams.builder()
+              .setCancelAtPeriodEnd(true)
+              .build();
 
-      Subscription stripeSubscription = Subscription.retrieve(subscriptionEntity.get().getStripeId());
-      stripeSubscription = stripeSubscription.update(params);
+      // The stored Stripe ID is all the update needs, so the subscription is not retrieved first
+      String subscriptionId = subscriptionEntity.get().getStripeId();
+      Subscription stripeSubscription = stripeInvoker.invoke("subscription.update",
+              () -> stripeClientResolver.resolve(user).subscriptions().update(subscriptionId, params));
 
       updateSubscriptionEndsAt(subscriptionEntity.get().getId(), Instant.ofEpochSecond(stripeSubscription.getCurrentPeriodEnd()));
 
@@ -116,6 +199,34 @@ public class SubscriptionManager {
     }
 
 
+    /**
+     * Cancels the subscription at the end of the current billing period without blocking the calling thread.
+     *
+     * @return a future completed with the updated Stripe subscription object.
+     * @see #cancelAtPeriodEnd()
+     */
+    public CompletableFuture<Subscription> cancelAtPeriodEndAsync() {
+      return cancelAtPeriodEndAsync("default");
+    }
+
+
+    /**
+     * Cancels the subscription at the end of the current billing period without blocking the calling thread.
+     * <p>
+     * The call runs on the {@code stripeCashierExecutor}; a {@link StripeException} completes the future
+     * exceptionally, wrapped in a {@link java.util.concurrent.CompletionException}. The user is read before this
+     * method returns, so the manager can be changed while the future is pending.
+     *
+     * @param type The type of subscription to be canceled.
+     * @return a future completed with the updated Stripe subscription object.
+     * @see #cancelAtPeriodEnd(String)
+     */
+    public CompletableFuture<Subscription> cancelAtPeriodEndAsync(String type) {
+      IUserStripe user = this.user;
+      return Async.supply(() -> cancelAtPeriodEnd(user, type), executor);
+    }
+
+
     /**
      * Determines if the subscription is no longer active.
      * The type of subscription to be checked with default value.
@@ -136,17 +247,7 @@ public class SubscriptionManager {
      * @throws IllegalArgumentException If the subscription type is null, empty, or the subscription is not found.
      */
     public boolean isCanceled(String type) {
-      if (type == null || type.isEmpty()) {
-        throw new IllegalArgumentException("Subscription type is required.");
-      }
-
-      Optional<com.oixan.stripecashier.entity.Subscription> subscriptionEntity = getSubscriptionEntity(user, type);
-
-      if (subscriptionEntity.isEmpty()) {
-        throw new IllegalArgumentException("Subscription not found.");
-      }
-
-      return subscriptionEntity.get().getEndsAt() != null;
+      return status(type).isCanceled();
     }
 
 
@@ -170,7 +271,7 @@ public class SubscriptionManager {
      * @throws IllegalArgumentException If the subscription type is null, empty, or the subscription is not found.
      */
     public boolean ended(String type) {
-      return isCanceled(type) && !onGracePeriod(type);
+      return status(type).isEnded();
     }
 
 
@@ -194,18 +295,7 @@ public class SubscriptionManager {
      * @throws IllegalArgumentException If the subscription type is null, empty, or the subscription is not found.
      */
     public boolean onTrial(String type) {
-      if (type == null || type.isEmpty()) {
-        throw new IllegalArgumentException("Subscription type is required.");
-      }
-
-      Optional<com.oixan.stripecashier.entity.Subscription> subscriptionEntity = getSubscriptionEntity(user, type);
-
-      if (subscriptionEntity.isEmpty()) {
-        throw new IllegalArgumentException("Subscription not found.");
-      }
-
-      com.oixan.stripecashier.entity.Subscription subscription = subscriptionEntity.get();
-      return subscription.getTrialEndsAt() != null && subscription.getTrialEndsAt().isAfter(java.time.LocalDateTime.now());
+      return status(type).isOnTrial();
     }
 
 
@@ -229,18 +319,52 @@ public class SubscriptionManager {
      * @throws IllegalArgumentException If the subscription type is null, empty, or the subscription is not found.
      */
     public boolean onGracePeriod(String type) {
+      return status(type).isOnGracePeriod();
+    }
+
+
+    /**
+     * Loads the subscription once and computes all of its status flags against a single point in time.
+     * The type of subscription to be checked with default value.
+     *
+     * @return an immutable snapshot of the subscription status.
+     * @throws IllegalArgumentException If the subscription type is null, empty, or the subscription is not found.
+     */
+    public SubscriptionStatus status() {
+      return status("default");
+    }
+
+
+    /**
+     * Loads the subscription once and computes all of its status flags against a single point in time.
+     * <p>
+     * Prefer this method over calling {@link #isCanceled(String)}, {@link #onTrial(String)},
+     * {@link #onGracePeriod(String)} and {@link #ended(String)} one after the other.
+     *
+     * @param type The type of subscription to be checked.
+     * @return an immutable snapshot of the subscription status.
+     * @throws IllegalArgumentException If the subscription type is null, empty, or the subscription is not found.
+     */
+    public SubscriptionStatus status(String type) {
       if (type == null || type.isEmpty()) {
         throw new IllegalArgumentException("Subscription type is required.");
       }
 
-      Optional<com.oixan.stripecashier.entity.Subscription> subscriptionEntity = getSubscriptionEntity(user, type);
+      Optional<SubscriptionStatusView> subscriptionStatus = subscriptionService.getSubscriptionStatus(user.getStripeId(), type);
 
-      if (subscriptionEntity.isEmpty()) {
+      if (subscriptionStatus.isEmpty() && flushOutbox(user.getStripeId(), type)) {
+        subscriptionStatus = subscriptionService.getSubscriptionStatus(user.getStripeId(), type);
+      }
+
+      if (subscriptionStatus.isEmpty()) {
         throw new IllegalArgumentException("Subscription not found.");
       }
 
-      com.oixan.stripecashier.entity.Subscription subscription = subscriptionEntity.get();
-      return subscription.getEndsAt() != null && subscription.getEndsAt().isAfter(java.time.LocalDateTime.now());
+      return SubscriptionStatus.of(
+              subscriptionStatus.get(),
+              LocalDateTime.now(),
+              stripeBuilder.isDeactivatePastDue(),
+              stripeBuilder.isDeactivateIncomplete());
     }
     
     /**
@@ -248,6 +372,10 @@ public class SubscriptionManager {
      * <p>
      * This method updates the subscription by replacing the current item with a new price.
      * The update is applied immediately with proration, and the old subscription items are removed.
+     * <p>
+     * By default a single update adds the new item and deletes the old ones. With
+     * {@code stripe.swap.strategy=delete-items}, the update only adds the new item and the old items are deleted
+     * afterwards, at most {@code stripe.swap.parallelism} at a time.
      * 
      * @param type The type of the subscription to be updated.
      * @param newPriceId The new price ID to replace the current item.
@@ -255,9 +383,27 @@ public class SubscriptionManager {
      * @throws StripeException If there is an error updating the subscription with Stripe.
      */
     public Subscription swapItemSubscription(String type, String newPriceId) throws StripeException {
+        return swapItemSubscription(customerManager.getUser().getStripeId(), user, type, newPriceId);
+    }
+
+
+    /**
+     * Swaps the subscription item of the given customer with a new price.
+     *
+     * @param customerId The Stripe ID of the customer, read before the call is handed to the executor.
+     * @param user The user whose Stripe account serves the calls, read before the call is handed to the executor.
+     * @param type The type of the subscription to be updated.
+     * @param newPriceId The new price ID to replace the current item.
+     * @return The updated subscription.
+     * @throws StripeException If there is an error updating the subscription with Stripe.
+     * @see #swapItemSubscription(String, String)
+     */
+    private Subscription swapItemSubscription(String customerId, IUserStripe user, String type, String newPriceId)
+            throws StripeException {
+        StripeClient stripeClient = stripeClientResolver.resolve(user);
+
         // Retrieve the subscription from the database based on the customer and type
-        Optional<com.oixan.stripecashier.entity.Subscription> targetSubscription = getSubscriptionFromDatabase(
-                customerManager.getUser().getStripeId(), type);
+        Optional<com.oixan.stripecashier.entity.Subscription> targetSubscription = getSubscriptionFromDatabase(customerId, type);
 
         if (!targetSubscription.isPresent()) {
             throw new IllegalArgumentException("No subscription found with the specified type for the user.");
@@ -267,47 +413,147 @@ public class SubscriptionManager {
         com.oixan.stripecashier.entity.Subscription subscriptionStripeEntity = targetSubscription.get();
         String subscriptionId = subscriptionStripeEntity.getStripeId();
 
-        // Fetch the existing subscription from Stripe
-        Subscription subscriptionStripe = Subscription.retrieve(subscriptionId);
-        
-        // Create the new item with the specified price and quantity
-        SubscriptionUpdateParams.Item newItem = SubscriptionUpdateParams.Item.builder()
-                .setPrice(newPriceId)
-                .setQuantity(subscriptionStripeEntity.getQuantity())
-                .build();
+        // Fetch the existing subscription from Stripe, for the IDs of the items to remove
+        Subscription subscriptionStripe = stripeInvoker.invoke("subscription.retrieve", () -> stripeClient.subscriptions().retrieve(subscriptionId));
+
+        // The items already on the new price are kept, the others are removed
+        List<SubscriptionItem> staleItems = new ArrayList<>();
+        SubscriptionItem keptItem = null;
+        for (SubscriptionItem item : subscriptionStripe.getItems().getData()) {
+            if (item.getPrice().getId().equals(newPriceId) && keptItem == null) {
+                keptItem = item;
+            } else {
+                staleItems.add(item);
+            }
+        }
+
+        boolean replace = stripeProperties.getSwap().getStrategy() == StripeProperties.Swap.Strategy.REPLACE;
 
         // Build the update parameters with immediate proration behavior
-        SubscriptionUpdateParams updateParams = SubscriptionUpdateParams.builder()
+        SubscriptionUpdateParams.Builder updateParams = SubscriptionUpdateParams.builder()
                 .setProrationBehavior(SubscriptionUpdateParams.ProrationBehavior.ALWAYS_INVOICE) // Apply changes immediately
-                .setCancelAtPeriodEnd(false)
-                .addItem(newItem)
-                .build();
+                .setCancelAtPeriodEnd(false);
+
+        // Keep or create the item with the specified price and quantity
+        updateParams.addItem(keptItem != null
+                ? SubscriptionUpdateParams.Item.builder()
+                        .setId(keptItem.getId())
+                        .setQuantity(subscriptionStripeEntity.getQuantity())
+                        .build()
+                : SubscriptionUpdateParams.Item.builder()
+                        .setPrice(newPriceId)
+                        .setQuantity(subscriptionStripeEntity.getQuantity())
+                        .build());
+
+        if (replace) {
+            for (SubscriptionItem item : staleItems) {
+                updateParams.addItem(SubscriptionUpdateParams.Item.builder()
+                        .setId(item.getId())
+                        .setDeleted(true)
+                        .build());
+            }
+        }
+
+        SubscriptionUpdateParams params = updateParams.build();
 
-  
         // Update the subscription on Stripe
         Subscription updatedSubscription;
         try {
-            updatedSubscription = subscriptionStripe.update(updateParams);
+            updatedSubscription = stripeInvoker.invoke("subscription.update", () -> stripeClient.subscriptions().update(subscriptionId, params));
         } catch (StripeException e) {
-            System.err.println("Error updating subscription: " + e.getMessage());
+            logger.warn("Error updating subscription {}: {}", subscriptionId, e.getMessage());
             throw e;
         }
         
-        // Remove all old subscription items except the new one
-        for (SubscriptionItem item : subscriptionStripe.getItems().getData()) {
-            // Skip the newly added item
-            if (!item.getPrice().getId().equals(newPriceId)) {
-                SubscriptionItem.retrieve(item.getId()).delete();
-            }
+        if (!replace) {
+            // Remove all old subscription items except the new one
+            deleteItems(stripeClient, staleItems, stripeProperties.getSwap().getParallelism());
         }
         
         // Save the updated subscription to the database
-        saveUpdatedSubscription(updatedSubscription, type);
+        saveUpdatedSubscription(updatedSubscription, type, newPriceId);
 
         return updatedSubscription;
     }
 
+
+    /**
+     * Swaps the subscription item with a new price without blocking the calling thread.
+     * <p>
+     * The call runs on the {@code stripeCashierExecutor}; a {@link StripeException} completes the future
+     * exceptionally, wrapped in a {@link java.util.concurrent.CompletionException}. The user is read before this
+     * method returns, so the manager can be changed while the future is pending.
+     *
+     * @param type The type of the subscription to be updated.
+     * @param newPriceId The new price ID to replace the current item.
+     * @return a future completed with the updated subscription.
+     * @see #swapItemSubscription(String, String)
+     */
+    public CompletableFuture<Subscription> swapItemSubscriptionAsync(String type, String newPriceId) {
+        String customerId = customerManager.getUser().getStripeId();
+        IUserStripe user = this.user;
+        return Async.supply(() -> swapItemSubscription(customerId, user, type, newPriceId), executor);
+    }
+
     
+    /**
+     * Deletes the given subscription items, at most {@code parallelism} at a time.
+     * <p>
+     * The calling thread deletes items as well, so the deletions complete even when the executor has no free
+     * thread, for example when the swap itself runs on it. Every item is attempted; the first error is thrown.
+     *
+     * @param stripeClient the Stripe client of the account serving the user
+     * @param items the items to delete
+     * @param parallelism the maximum number of deletions in progress at once
+     * @throws StripeException If an item cannot be deleted.
+     */
+    private void deleteItems(StripeClient stripeClient, List<SubscriptionItem> items, int parallelism) throws StripeException {
+        Queue<SubscriptionItem> pending = new ConcurrentLinkedQueue<>(items);
+        CountDownLatch deleted = new CountDownLatch(items.size());
+        AtomicReference<Exception> error = new AtomicReference<>();
+
+        Runnable worker = () -> {
+            SubscriptionItem item;
+            while ((item = pending.poll()) != null) {
+                String itemId = item.getId();
+                try {
+                    stripeInvoker.invoke("subscription_item.delete", () -> stripeClient.subscriptionItems().delete(itemId));
+                } catch (StripeException | RuntimeException e) {
+                    error.compareAndSet(null, e);
+                } finally {
+                    deleted.countDown();
+                }
+            }
+        };
+
+        for (int i = 1; i < Math.min(parallelism, items.size()); i++) {
+            executor.execute(worker);
+        }
+        worker.run();
+
+        // The items left to the other workers are being deleted by running threads
+        boolean interrupted = false;
+        while (true) {
+            try {
+                deleted.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (error.get() instanceof StripeException) {
+            throw (StripeException) error.get();
+        }
+        if (error.get() != null) {
+            throw (RuntimeException) error.get();
+        }
+    }
+
+
     /**
      * Retrieves a subscription entity from the database.
      * 
@@ -316,23 +562,37 @@ public class SubscriptionManager {
      * @return an Optional containing the subscription entity if found, otherwise an empty Optional
      */
     private Optional<com.oixan.stripecashier.entity.Subscription> getSubscriptionFromDatabase(String userId, String type) {
-        return subscriptionServiceFactory.create().getSubscriptionByUserIdAndType(userId, type);
+        SubscriptionService service = subscriptionServiceFactory.create();
+        Optional<com.oixan.stripecashier.entity.Subscription> subscription = service.getSubscriptionByUserIdAndType(userId, type);
+        return subscription.isEmpty() && flushOutbox(userId, type)
+                ? service.getSubscriptionByUserIdAndType(userId, type)
+                : subscription;
     }
 
 
     /**
      * Saves the updated subscription to the database.
+     * <p>
+     * The row is written at the version it was read at; when another write, such as a webhook, updates it in
+     * between, it is read again, up to {@value #SAVE_ATTEMPTS} times.
      * 
      * @param subscription the updated subscription object
      * @param type the subscription type
+     * @param priceId the price ID the subscription was swapped to
      */
-    private void saveUpdatedSubscription(Subscription subscription, String type) {
+    private void saveUpdatedSubscription(Subscription subscription, String type, String priceId) {
+        // Until the stale items are deleted, the response also holds them, possibly first
+        SubscriptionItem item = subscription.getItems().getData().stream()
+                .filter(candidate -> priceId.equals(candidate.getPrice().getId()))
+                .findFirst()
+                .orElse(subscription.getItems().getData().get(0));
+
         com.oixan.stripecashier.entity.Subscription entity = new com.oixan.stripecashier.entity.Subscription();
         entity.setUserId(subscription.getCustomer());
         entity.setStripeId(subscription.getId());
         entity.setStripeStatus(subscription.getStatus());
-        entity.setStripePrice(subscription.getItems().getData().get(0).getPrice().getId());
-        entity.setQuantity(subscription.getItems().getData().get(0).getQuantity());
+        entity.setStripePrice(item.getPrice().getId());
+        entity.setQuantity(item.getQuantity());
         entity.setType(type);
         
         // Set the end date using LocalDateTime
@@ -348,7 +608,20 @@ public class SubscriptionManager {
             entity.setEndsAt(null);
         }
 
-        subscriptionServiceFactory.create().updateSubscription(entity);
+        SubscriptionService service = subscriptionServiceFactory.create();
+        for (int attempt = 1; ; attempt++) {
+            entity.setVersion(service.getSubscriptionByStripeId(entity.getStripeId())
+                    .map(com.oixan.stripecashier.entity.Subscription::getVersion)
+                    .orElse(0L));
+            try {
+                service.updateSubscription(entity);
+                return;
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt >= SAVE_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
     }
 
 
@@ -372,7 +645,23 @@ public class SubscriptionManager {
      * @return an Optional containing the subscription entity if found, otherwise an empty Optional
      */
     private Optional<com.oixan.stripecashier.entity.Subscription> getSubscriptionEntity(IUserStripe user, String type) {
-      return subscriptionService.getSubscriptionByUserIdAndType(user.getStripeId(), type);
+      Optional<com.oixan.stripecashier.entity.Subscription> subscription =
+              subscriptionService.getSubscriptionByUserIdAndType(user.getStripeId(), type);
+      return subscription.isEmpty() && flushOutbox(user.getStripeId(), type)
+              ? subscriptionService.getSubscriptionByUserIdAndType(user.getStripeId(), type)
+              : subscription;
+    }
+
+
+    /**
+     * Writes the subscription of the given user and type now if {@code start()} left it in the outbox, so it can be
+     * read right after the creation.
+     *
+     * @param userId the user ID
+     * @param type the subscription type
+     * @return true if a subscription was pending in the outbox
+     */
+    private boolean flushOutbox(String userId, String type) {
+      return subscriptionOutbox != null && subscriptionOutbox.flush(userId, type);
     }
-    
 }
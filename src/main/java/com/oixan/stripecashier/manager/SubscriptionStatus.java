@@ -0,0 +1,198 @@
+package com.oixan.stripecashier.manager;
+
+import java.time.LocalDateTime;
+
+import com.oixan.stripecashier.entity.Subscription;
+import com.oixan.stripecashier.entity.SubscriptionStatusView;
+
+/**
+ * An immutable snapshot of the state of a subscription.
+ * <p>
+ * All flags are computed from a single subscription row against a single point in time, so an
+ * entitlement check that needs several of them costs one lookup and sees a consistent view.
+ * Instances are obtained through {@link SubscriptionManager#status(String)}.
+ */
+public final class SubscriptionStatus {
+
+    private final String type;
+
+    private final String stripeStatus;
+
+    private final LocalDateTime checkedAt;
+
+    private final boolean canceled;
+
+    private final boolean onTrial;
+
+    private final boolean onGracePeriod;
+
+    private final boolean ended;
+
+    private final boolean active;
+
+    private final boolean valid;
+
+    private SubscriptionStatus(
+            String type,
+            String stripeStatus,
+            LocalDateTime checkedAt,
+            boolean canceled,
+            boolean onTrial,
+            boolean onGracePeriod,
+            boolean active
+    ) {
+        this.type = type;
+        this.stripeStatus = stripeStatus;
+        this.checkedAt = checkedAt;
+        this.canceled = canceled;
+        this.onTrial = onTrial;
+        this.onGracePeriod = onGracePeriod;
+        this.ended = canceled && !onGracePeriod;
+        this.active = active;
+        this.valid = active || onTrial || onGracePeriod;
+    }
+
+    /**
+     * Computes the status of a subscription at the given point in time.
+     *
+     * @param subscription the subscription row
+     * @param now the point in time the flags are computed against
+     * @param deactivatePastDue whether a {@code past_due} subscription is considered inactive
+     * @param deactivateIncomplete whether an {@code incomplete} subscription is considered inactive
+     * @return the status snapshot
+     */
+    public static SubscriptionStatus of(
+            Subscription subscription,
+            LocalDateTime now,
+            boolean deactivatePastDue,
+            boolean deactivateIncomplete
+    ) {
+        return of(SubscriptionStatusView.of(subscription), now, deactivatePastDue, deactivateIncomplete);
+    }
+
+    /**
+     * Computes the status of a subscription at the given point in time from its status columns.
+     *
+     * @param subscription the status columns of the subscription row
+     * @param now the point in time the flags are computed against
+     * @param deactivatePastDue whether a {@code past_due} subscription is considered inactive
+     * @param deactivateIncomplete whether an {@code incomplete} subscription is considered inactive
+     * @return the status snapshot
+     */
+    public static SubscriptionStatus of(
+            SubscriptionStatusView subscription,
+            LocalDateTime now,
+            boolean deactivatePastDue,
+            boolean deactivateIncomplete
+    ) {
+        LocalDateTime endsAt = subscription.getEndsAt();
+        LocalDateTime trialEndsAt = subscription.getTrialEndsAt();
+        String stripeStatus = subscription.getStripeStatus();
+
+        boolean canceled = endsAt != null;
+        boolean onTrial = trialEndsAt != null && trialEndsAt.isAfter(now);
+        boolean onGracePeriod = endsAt != null && endsAt.isAfter(now);
+
+        boolean active = (!canceled || onGracePeriod)
+                && !(deactivateIncomplete && "incomplete".equals(stripeStatus))
+                && !"incomplete_expired".equals(stripeStatus)
+                && !(deactivatePastDue && "past_due".equals(stripeStatus))
+                && !"unpaid".equals(stripeStatus);
+
+        return new SubscriptionStatus(subscription.getType(), stripeStatus, now, canceled, onTrial, onGracePeriod, active);
+    }
+
+    /**
+     * Gets the type of the subscription.
+     *
+     * @return the subscription type
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Gets the status of the subscription on Stripe, e.g. {@code active} or {@code past_due}.
+     *
+     * @return the Stripe status
+     */
+    public String getStripeStatus() {
+        return stripeStatus;
+    }
+
+    /**
+     * Gets the point in time the flags were computed against.
+     *
+     * @return the time of the check
+     */
+    public LocalDateTime getCheckedAt() {
+        return checkedAt;
+    }
+
+    /**
+     * Determines if the subscription is no longer active.
+     *
+     * @return true if the subscription is canceled, false otherwise
+     */
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    /**
+     * Determines if the subscription is within its trial period.
+     *
+     * @return true if the subscription is on trial, false otherwise
+     */
+    public boolean isOnTrial() {
+        return onTrial;
+    }
+
+    /**
+     * Determines if the subscription is within its grace period after cancellation.
+     *
+     * @return true if the subscription is on its grace period, false otherwise
+     */
+    public boolean isOnGracePeriod() {
+        return onGracePeriod;
+    }
+
+    /**
+     * Determines if the subscription has ended and the grace period has expired.
+     *
+     * @return true if the subscription has ended, false otherwise
+     */
+    public boolean isEnded() {
+        return ended;
+    }
+
+    /**
+     * Determines if the subscription is active, taking the Stripe status into account.
+     *
+     * @return true if the subscription is active, false otherwise
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Determines if the subscription grants access: it is active, on trial or on its grace period.
+     *
+     * @return true if the subscription is valid, false otherwise
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    @Override
+    public String toString() {
+        return "SubscriptionStatus{type=" + type
+                + ", stripeStatus=" + stripeStatus
+                + ", checkedAt=" + checkedAt
+                + ", canceled=" + canceled
+                + ", onTrial=" + onTrial
+                + ", onGracePeriod=" + onGracePeriod
+                + ", ended=" + ended
+                + ", active=" + active
+                + ", valid=" + valid + "}";
+    }
+}
@@ -0,0 +1,273 @@
+package com.oixan.stripecashier.outbox;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import com.oixan.stripecashier.config.StripeProperties;
+import com.oixan.stripecashier.entity.Subscription;
+import com.oixan.stripecashier.entity.SubscriptionOutboxEntry;
+import com.oixan.stripecashier.repository.SubscriptionOutboxRepository;
+import com.oixan.stripecashier.service.SubscriptionService;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Writes the subscriptions created on Stripe to the {@code subscriptions} table off the request thread.
+ * <p>
+ * This is an asynchronous write-behind queue, not a transactional outbox: the entry is stored after the Stripe
+ * call, in a transaction of its own, so it does not commit or roll back with the work of the caller. It moves the
+ * write of the row off the response path and retries it until it succeeds.
+ * <p>
+ * {@link #enqueue(Subscription)} stores the subscription as a single row of the {@code subscription_outbox}
+ * table and returns. A relay thread then writes the due entries in batches: the subscriptions already saved are
+ * skipped, the others are upserted by Stripe ID, and the entries written are deleted. When a batch fails,
+ * its entries are written one at a time, so a single bad entry does not hold back the others; a failed entry is
+ * attempted again after an exponential backoff, up to {@code stripe.outbox.max-attempts} times.
+ * <p>
+ * The relay runs every {@code stripe.outbox.interval} and right after each enqueue. Since the entries are only
+ * deleted once their subscription exists, an entry left behind by a crash is written by the next run.
+ * Only registered when {@code stripe.outbox.enabled} is {@code true}.
+ */
+@Component
+@ConditionalOnProperty(prefix = "stripe.outbox", name = "enabled", havingValue = "true")
+public class SubscriptionOutbox {
+
+    private static final Logger logger = LoggerFactory.getLogger(SubscriptionOutbox.class);
+
+    /**
+     * Stores the entries.
+     */
+    @Autowired
+    private SubscriptionOutboxRepository subscriptionOutboxRepository;
+
+    /**
+     * Service for managing subscriptions.
+     */
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    /**
+     * Holds the batch size, interval and retry settings.
+     */
+    @Autowired
+    private StripeProperties stripeProperties;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final AtomicBoolean relayRequested = new AtomicBoolean();
+
+    private ScheduledExecutorService relayThread;
+
+    /**
+     * Constructs a new outbox.
+     */
+    public SubscriptionOutbox() {
+    }
+
+    /**
+     * Starts the relay thread.
+     */
+    @PostConstruct
+    public void start() {
+        relayThread = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stripe-subscription-outbox");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = stripeProperties.getOutbox().getInterval().toMillis();
+        relayThread.scheduleWithFixedDelay(this::relayQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the relay thread. The entries not written yet are written by the next start.
+     */
+    @PreDestroy
+    public void stop() {
+        if (relayThread != null) {
+            relayThread.shutdown();
+        }
+    }
+
+    /**
+     * Stores a subscription to be written to the {@code subscriptions} table, and wakes the relay up.
+     *
+     * @param subscription the subscription to be written
+     */
+    public void enqueue(Subscription subscription) {
+        subscriptionOutboxRepository.save(SubscriptionOutboxEntry.of(subscription));
+
+        // Enqueues arriving while a relay is pending are written by that relay
+        if (relayThread != null && relayRequested.compareAndSet(false, true)) {
+            try {
+                relayThread.execute(() -> {
+                    relayRequested.set(false);
+                    relayQuietly();
+                });
+            } catch (RejectedExecutionException e) {
+                relayRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * Writes the pending entries of a user's subscription type now, ahead of the relay, so a read right after
+     * {@code start()} finds the row.
+     *
+     * @param userId the user ID
+     * @param type the subscription type
+     * @return true if a subscription of that user and type was pending
+     */
+    public boolean flush(String userId, String type) {
+        return flush(subscriptionOutboxRepository.findByUserIdAndTypeOrderById(userId, type));
+    }
+
+    /**
+     * Writes the pending entries of a Stripe subscription now, ahead of the relay, so a webhook event arriving
+     * right after {@code start()} finds the row.
+     *
+     * @param stripeId the Stripe ID of the subscription
+     * @return true if the subscription was pending
+     */
+    public boolean flush(String stripeId) {
+        return flush(subscriptionOutboxRepository.findByStripeId(stripeId));
+    }
+
+    private boolean flush(List<SubscriptionOutboxEntry> entries) {
+        if (entries.isEmpty()) {
+            return false;
+        }
+        // Writes can be repeated, so racing the relay on the same entries is harmless
+        write(entries);
+        return true;
+    }
+
+    /**
+     * Writes the due entries, batch after batch, until none is left.
+     *
+     * @return the number of subscriptions created
+     */
+    public int relay() {
+        if (!running.compareAndSet(false, true)) {
+            // The running relay writes the entries
+            return 0;
+        }
+        try {
+            StripeProperties.Outbox outbox = stripeProperties.getOutbox();
+            int created = 0;
+            while (true) {
+                List<SubscriptionOutboxEntry> due = subscriptionOutboxRepository.findDue(
+                        LocalDateTime.now(), outbox.getMaxAttempts(), PageRequest.of(0, outbox.getBatchSize()));
+                if (due.isEmpty()) {
+                    return created;
+                }
+                created += write(due);
+                if (due.size() < outbox.getBatchSize()) {
+                    return created;
+                }
+            }
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private void relayQuietly() {
+        try {
+            relay();
+        } catch (RuntimeException e) {
+            logger.error("Subscription outbox relay failed", e);
+        }
+    }
+
+    private int write(List<SubscriptionOutboxEntry> due) {
+        Set<String> saved = subscriptionService.getSubscriptionsByStripeIds(due.stream()
+                        .map(SubscriptionOutboxEntry::getStripeId)
+                        .collect(Collectors.toSet()))
+                .stream()
+                .map(Subscription::getStripeId)
+                .collect(Collectors.toSet());
+
+        // Retried creations may have queued the same subscription more than once
+        Map<String, SubscriptionOutboxEntry> pending = new LinkedHashMap<>();
+        List<SubscriptionOutboxEntry> done = new ArrayList<>();
+        for (SubscriptionOutboxEntry entry : due) {
+            if (saved.contains(entry.getStripeId()) || pending.putIfAbsent(entry.getStripeId(), entry) != null) {
+                done.add(entry);
+            }
+        }
+
+        int created = 0;
+        try {
+            subscriptionService.upsertSubscriptions(pending.values().stream()
+                    .map(SubscriptionOutboxEntry::toSubscription)
+                    .collect(Collectors.toList()));
+            done.addAll(pending.values());
+            created = pending.size();
+        } catch (RuntimeException e) {
+            // Upserts can be repeated, so write the entries one at a time to isolate the failing ones
+            for (SubscriptionOutboxEntry entry : pending.values()) {
+                try {
+                    subscriptionService.updateSubscription(entry.toSubscription());
+                    done.add(entry);
+                    created++;
+                } catch (OptimisticLockingFailureException written) {
+                    // Saved and updated since the batch was read, by a webhook for instance
+                    done.add(entry);
+                } catch (RuntimeException entryError) {
+                    failed(entry, entryError);
+                }
+            }
+        }
+
+        if (!done.isEmpty()) {
+            subscriptionOutboxRepository.deleteAllInBatch(done);
+        }
+        return created;
+    }
+
+    private void failed(SubscriptionOutboxEntry entry, RuntimeException error) {
+        StripeProperties.Outbox outbox = stripeProperties.getOutbox();
+        int attempts = entry.getAttempts() + 1;
+
+        entry.setAttempts(attempts);
+        entry.setLastError(error.toString());
+        entry.setNextAttemptAt(LocalDateTime.now().plus(backoff(outbox.getInitialBackoff(), attempts)));
+        subscriptionOutboxRepository.save(entry);
+
+        if (attempts >= outbox.getMaxAttempts()) {
+            logger.error("Giving up writing subscription {} after {} attempts", entry.getStripeId(), attempts, error);
+        } else {
+            logger.warn("Writing subscription {} failed, attempt {}", entry.getStripeId(), attempts, error);
+        }
+    }
+
+    /**
+     * Gives the wait after the given number of failed attempts.
+     *
+     * @param initialBackoff the wait after the first failed attempt
+     * @param attempts the number of failed attempts, at least 1
+     * @return the wait before the next attempt
+     */
+    static Duration backoff(Duration initialBackoff, int attempts) {
+        return initialBackoff.multipliedBy(1L << Math.min(attempts - 1, 20));
+    }
+}
@@ -17,7 +17,12 @@ import com.oixan.stripecashier.manager.SubscriptionManager;
 /**
  * A proxy implementation for delegating actions to the appropriate builder or manager 
  * associated with a Stripe user.
+ *
+ * @deprecated {@link com.oixan.stripecashier.factory.UserStripeFactory} now returns a
+ *             {@link com.oixan.stripecashier.factory.UserStripeAction}, which dispatches without reflection.
+ *             This class will be removed in a future release.
  */
+@Deprecated
 public class UserStripeActionProxy implements InvocationHandler {
 
     private final IUserStripe target; 
@@ -0,0 +1,36 @@
+package com.oixan.stripecashier.reconciliation;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link ReconciliationCheckpoint} kept in memory, lost when the application stops.
+ */
+public class InMemoryReconciliationCheckpoint implements ReconciliationCheckpoint {
+
+    private volatile String defaultCursor;
+
+    private final Map<String, String> tenantCursors = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs an empty checkpoint.
+     */
+    public InMemoryReconciliationCheckpoint() {
+    }
+
+    @Override
+    public String load(String tenant) {
+        return tenant != null ? tenantCursors.get(tenant) : defaultCursor;
+    }
+
+    @Override
+    public void save(String tenant, String cursor) {
+        if (tenant == null) {
+            defaultCursor = cursor;
+        } else if (cursor == null) {
+            tenantCursors.remove(tenant);
+        } else {
+            tenantCursors.put(tenant, cursor);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.oixan.stripecashier.reconciliation;
+
+/**
+ * Records where the reconciliation of each Stripe account stopped, so the next run resumes after the last page it
+ * completed.
+ * <p>
+ * Implementations backed by a database or a file survive a restart; {@link InMemoryReconciliationCheckpoint}
+ * only covers runs within the same process. Declare a bean of this type to replace it.
+ */
+public interface ReconciliationCheckpoint {
+
+    /**
+     * Gets the Stripe ID the next run of an account starts after.
+     *
+     * @param tenant the tenant ID of the account, or {@code null} for the default account
+     * @return the cursor, or {@code null} to start from the beginning
+     */
+    String load(String tenant);
+
+    /**
+     * Records the Stripe ID of the last subscription of a page of an account once its rows are written.
+     *
+     * @param tenant the tenant ID of the account, or {@code null} for the default account
+     * @param cursor the cursor, or {@code null} once a run has completed
+     */
+    void save(String tenant, String cursor);
+}
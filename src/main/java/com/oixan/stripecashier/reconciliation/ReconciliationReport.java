@@ -0,0 +1,146 @@
+package com.oixan.stripecashier.reconciliation;
+
+import java.time.Duration;
+
+/**
+ * The outcome of one reconciliation run.
+ */
+public final class ReconciliationReport {
+
+    private final String tenant;
+
+    private final String startingAfter;
+
+    private final String lastStripeId;
+
+    private final long pages;
+
+    private final long scanned;
+
+    private final long updated;
+
+    private final long missing;
+
+    private final Duration elapsed;
+
+    /**
+     * Constructs a new report.
+     *
+     * @param tenant the tenant ID of the account reconciled, or {@code null} for the default account
+     * @param startingAfter the Stripe ID the run started after, or {@code null} if it started from the beginning
+     * @param lastStripeId the Stripe ID of the last subscription processed, or {@code null} if there was none
+     * @param pages the number of pages fetched
+     * @param scanned the number of Stripe subscriptions compared
+     * @param updated the number of local rows written
+     * @param missing the number of Stripe subscriptions with no local row
+     * @param elapsed the duration of the run
+     */
+    public ReconciliationReport(
+            String tenant,
+            String startingAfter,
+            String lastStripeId,
+            long pages,
+            long scanned,
+            long updated,
+            long missing,
+            Duration elapsed
+    ) {
+        this.tenant = tenant;
+        this.startingAfter = startingAfter;
+        this.lastStripeId = lastStripeId;
+        this.pages = pages;
+        this.scanned = scanned;
+        this.updated = updated;
+        this.missing = missing;
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * Gets the tenant ID of the account reconciled.
+     *
+     * @return the tenant ID, or {@code null} for the default account
+     */
+    public String getTenant() {
+        return tenant;
+    }
+
+    /**
+     * Gets the Stripe ID the run started after.
+     *
+     * @return the starting cursor, or {@code null} if the run started from the beginning
+     */
+    public String getStartingAfter() {
+        return startingAfter;
+    }
+
+    /**
+     * Gets the Stripe ID of the last subscription processed.
+     *
+     * @return the last Stripe ID, or {@code null} if there was none
+     */
+    public String getLastStripeId() {
+        return lastStripeId;
+    }
+
+    /**
+     * Gets the number of pages fetched from Stripe.
+     *
+     * @return the number of pages
+     */
+    public long getPages() {
+        return pages;
+    }
+
+    /**
+     * Gets the number of Stripe subscriptions compared with the local rows.
+     *
+     * @return the number of subscriptions scanned
+     */
+    public long getScanned() {
+        return scanned;
+    }
+
+    /**
+     * Gets the number of local rows written because they had drifted.
+     *
+     * @return the number of rows updated
+     */
+    public long getUpdated() {
+        return updated;
+    }
+
+    /**
+     * Gets the number of Stripe subscriptions with no local row. These are left alone.
+     *
+     * @return the number of missing rows
+     */
+    public long getMissing() {
+        return missing;
+    }
+
+    /**
+     * Gets the duration of the run.
+     *
+     * @return the elapsed time
+     */
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * Gets the throughput of the run.
+     *
+     * @return the number of subscriptions scanned per second
+     */
+    public double getRowsPerSecond() {
+        double seconds = elapsed.toNanos() / 1_000_000_000d;
+        return seconds > 0 ? scanned / seconds : scanned;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "ReconciliationReport{tenant=%s, pages=%d, scanned=%d, updated=%d, missing=%d, elapsed=%dms, rowsPerSecond=%.1f, lastStripeId=%s}",
+                tenant, pages, scanned, updated, missing, elapsed.toMillis(), getRowsPerSecond(), lastStripeId);
+    }
+}
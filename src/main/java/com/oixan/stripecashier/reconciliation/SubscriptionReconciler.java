@@ -0,0 +1,366 @@
+package com.oixan.stripecashier.reconciliation;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.oixan.stripecashier.client.StripeClientResolver;
+import com.oixan.stripecashier.client.StripeInvoker;
+import com.oixan.stripecashier.client.StripeRateLimiter;
+import com.oixan.stripecashier.config.StripeProperties;
+import com.oixan.stripecashier.service.SubscriptionService;
+import com.oixan.stripecashier.support.StripeSubscriptions;
+import com.stripe.StripeClient;
+import com.stripe.exception.RateLimitException;
+import com.stripe.exception.StripeException;
+import com.stripe.model.StripeCollection;
+import com.stripe.model.Subscription;
+import com.stripe.param.SubscriptionListParams;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+
+/**
+ * Brings the {@code subscriptions} table back in line with Stripe.
+ * <p>
+ * A run reconciles every Stripe account in turn: the default one, then each tenant configured under
+ * {@code stripe.tenants}. For each account, it pages through every subscription, newest first, and compares each
+ * page with the local rows loaded in a single query. Rows whose status, end date or trial end date have drifted
+ * are written back in one JDBC batch per page. Subscriptions unknown locally are skipped.
+ * <p>
+ * After each page is written, the reconciler saves the last Stripe ID it processed for the account to its
+ * {@link ReconciliationCheckpoint}, so an account whose run stopped by an error or a restart resumes from there on
+ * the next call to {@link #reconcile()}. An error stops the run of one account only; the other accounts are still
+ * reconciled.
+ * <p>
+ * The {@link StripeRateLimiter} of the Stripe client, when enabled, retries a rate-limited page request a few times
+ * at a lower rate. A page request still rate limited after that, or sent without a rate limiter, is retried by the
+ * reconciler after an exponential backoff starting at {@code stripe.reconciliation.initial-backoff}, up to
+ * {@code stripe.reconciliation.max-retries} times, before the run of the account stops.
+ * <p>
+ * The subscriptions scanned are counted in the {@value #ROWS_METRIC} counter, and the throughput of the last run
+ * is published in the {@value #RATE_METRIC} gauge, both tagged with the {@code tenant} of the account,
+ * {@code default} for the default one.
+ */
+@Component
+public class SubscriptionReconciler {
+
+    /**
+     * The name of the counter of the subscriptions scanned.
+     */
+    public static final String ROWS_METRIC = "stripe.reconciliation.rows";
+
+    /**
+     * The name of the gauge of the subscriptions scanned per second by the last run.
+     */
+    public static final String RATE_METRIC = "stripe.reconciliation.rows.per.second";
+
+    private static final Logger logger = LoggerFactory.getLogger(SubscriptionReconciler.class);
+
+    /**
+     * Service for managing subscriptions.
+     */
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    /**
+     * Holds the page size.
+     */
+    @Autowired
+    private StripeProperties stripeProperties;
+
+    /**
+     * Gives the Stripe clients of the default account and of the tenants, whose subscriptions are reconciled.
+     */
+    @Autowired
+    private StripeClientResolver stripeClientResolver;
+
+    /**
+     * Runs and records the Stripe calls.
+     */
+    @Autowired
+    private StripeInvoker stripeInvoker;
+
+    /**
+     * Keeps the cursors between runs; in memory unless a {@link ReconciliationCheckpoint} bean is declared.
+     */
+    @Autowired(required = false)
+    private ReconciliationCheckpoint checkpoint = new InMemoryReconciliationCheckpoint();
+
+    /**
+     * Records the metrics of the runs, when Micrometer is configured.
+     */
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    /**
+     * Waits between the retries of a rate-limited request.
+     */
+    private Sleeper sleeper = Thread::sleep;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * The counters of the subscriptions scanned, by tenant tag.
+     */
+    private final Map<String, Counter> rows = new ConcurrentHashMap<>();
+
+    /**
+     * The throughput of the last run of each account, by tenant tag, read by the gauges.
+     */
+    private final Map<String, Double> rates = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new reconciler.
+     */
+    public SubscriptionReconciler() {
+    }
+
+    /**
+     * Reconciles all subscriptions of every account, resuming each after the last page processed if its previous
+     * run stopped early.
+     *
+     * @return the reports of the accounts reconciled in full, the default account first
+     * @throws StripeException if a page of an account cannot be fetched, once the other accounts are reconciled;
+     *         the errors of further accounts are suppressed in it
+     * @throws IllegalStateException if a run is already in progress
+     */
+    public List<ReconciliationReport> reconcile() throws StripeException {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A reconciliation is already running.");
+        }
+
+        List<String> tenants = new ArrayList<>();
+        tenants.add(null);
+        tenants.addAll(new TreeSet<>(stripeClientResolver.getTenants()));
+
+        List<ReconciliationReport> reports = new ArrayList<>();
+        Exception error = null;
+        // The run yields to the interactive Stripe calls of the application
+        try (StripeRateLimiter.Scope scope = StripeRateLimiter.batch()) {
+            for (String tenant : tenants) {
+                try {
+                    reports.add(run(tenant, checkpoint.load(tenant)));
+                } catch (StripeException | RuntimeException e) {
+                    logger.warn("Subscription reconciliation of {} stopped after {}",
+                            tag(tenant), checkpoint.load(tenant), e);
+                    if (error == null) {
+                        error = e;
+                    } else {
+                        error.addSuppressed(e);
+                    }
+                }
+            }
+        } finally {
+            running.set(false);
+        }
+
+        if (error instanceof StripeException) {
+            throw (StripeException) error;
+        }
+        if (error != null) {
+            throw (RuntimeException) error;
+        }
+        return reports;
+    }
+
+    /**
+     * Reconciles the subscriptions of one account listed after the given Stripe ID.
+     *
+     * @param tenant the tenant ID of the account, or {@code null} for the default account
+     * @param startingAfter the Stripe ID to start after, or {@code null} to start from the beginning
+     * @return the report of the run
+     * @throws StripeException if a page cannot be fetched
+     * @throws IllegalStateException if a run is already in progress, or the tenant is not configured
+     */
+    public ReconciliationReport reconcile(String tenant, String startingAfter) throws StripeException {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A reconciliation is already running.");
+        }
+        try (StripeRateLimiter.Scope scope = StripeRateLimiter.batch()) {
+            return run(tenant, startingAfter);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Gets the Stripe ID the next call to {@link #reconcile()} starts after for an account.
+     *
+     * @param tenant the tenant ID of the account, or {@code null} for the default account
+     * @return the cursor, or {@code null} if the last run of the account completed
+     */
+    public String getCursor(String tenant) {
+        return checkpoint.load(tenant);
+    }
+
+    /**
+     * Forgets the cursor of an account, so its next run starts from the beginning.
+     *
+     * @param tenant the tenant ID of the account, or {@code null} for the default account
+     */
+    public void resetCursor(String tenant) {
+        checkpoint.save(tenant, null);
+    }
+
+    private ReconciliationReport run(String tenant, String startingAfter) throws StripeException {
+        StripeClient stripeClient = tenant != null
+                ? stripeClientResolver.forTenant(tenant)
+                : stripeClientResolver.resolve(null);
+        Counter scannedRows = rows(tenant);
+        long start = System.nanoTime();
+        String position = startingAfter;
+        long pages = 0;
+        long scanned = 0;
+        long updated = 0;
+        long missing = 0;
+
+        while (true) {
+            StripeCollection<Subscription> page = fetchPage(stripeClient, position);
+            List<Subscription> stripeSubscriptions = page.getData();
+
+            if (!stripeSubscriptions.isEmpty()) {
+                PageResult result = reconcilePage(stripeSubscriptions);
+                pages++;
+                scanned += stripeSubscriptions.size();
+                updated += result.updated();
+                missing += result.missing();
+                scannedRows.increment(stripeSubscriptions.size());
+
+                position = stripeSubscriptions.get(stripeSubscriptions.size() - 1).getId();
+                checkpoint.save(tenant, position);
+            }
+
+            if (stripeSubscriptions.isEmpty() || !Boolean.TRUE.equals(page.getHasMore())) {
+                break;
+            }
+        }
+
+        checkpoint.save(tenant, null);
+
+        ReconciliationReport report = new ReconciliationReport(tenant,
+                startingAfter, position, pages, scanned, updated, missing, Duration.ofNanos(System.nanoTime() - start));
+        rate(tenant, report.getRowsPerSecond());
+        logger.info("Subscription reconciliation completed: {}", report);
+        return report;
+    }
+
+    private PageResult reconcilePage(List<Subscription> stripeSubscriptions) {
+        Map<String, com.oixan.stripecashier.entity.Subscription> local = subscriptionService
+                .getSubscriptionsByStripeIds(stripeSubscriptions.stream().map(Subscription::getId).collect(Collectors.toList()))
+                .stream()
+                .collect(Collectors.toMap(com.oixan.stripecashier.entity.Subscription::getStripeId, Function.identity()));
+
+        List<com.oixan.stripecashier.entity.Subscription> changed = new ArrayList<>();
+        long missing = 0;
+
+        for (Subscription stripeSubscription : stripeSubscriptions) {
+            com.oixan.stripecashier.entity.Subscription entity = local.get(stripeSubscription.getId());
+            if (entity == null) {
+                missing++;
+                continue;
+            }
+
+            String status = stripeSubscription.getStatus();
+            LocalDateTime endsAt = StripeSubscriptions.endsAt(stripeSubscription, false, stripeSubscription.getCanceledAt());
+            LocalDateTime trialEndsAt = StripeSubscriptions.toLocalDateTime(stripeSubscription.getTrialEnd());
+
+            if (Objects.equals(status, entity.getStripeStatus())
+                    && Objects.equals(endsAt, entity.getEndsAt())
+                    && Objects.equals(trialEndsAt, entity.getTrialEndsAt())) {
+                continue;
+            }
+
+            entity.setStripeStatus(status);
+            entity.setEndsAt(endsAt);
+            entity.setTrialEndsAt(trialEndsAt);
+            changed.add(entity);
+        }
+
+        int updated = subscriptionService.updateSubscriptionStates(changed);
+        return new PageResult(updated, missing);
+    }
+
+    private Counter rows(String tenant) {
+        return rows.computeIfAbsent(tag(tenant), tag -> Counter.builder(ROWS_METRIC)
+                .description("Stripe subscriptions compared with the local rows")
+                .tag("tenant", tag)
+                .register(registry()));
+    }
+
+    private void rate(String tenant, double rowsPerSecond) {
+        String tag = tag(tenant);
+        if (rates.put(tag, rowsPerSecond) == null) {
+            Gauge.builder(RATE_METRIC, rates, current -> current.getOrDefault(tag, 0d))
+                    .description("Stripe subscriptions compared per second by the last reconciliation")
+                    .tag("tenant", tag)
+                    .register(registry());
+        }
+    }
+
+    private MeterRegistry registry() {
+        return meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+    }
+
+    private static String tag(String tenant) {
+        return tenant != null ? tenant : StripeRateLimiter.DEFAULT_TENANT;
+    }
+
+    private StripeCollection<Subscription> fetchPage(StripeClient stripeClient, String startingAfter) throws StripeException {
+        StripeProperties.Reconciliation settings = stripeProperties.getReconciliation();
+
+        SubscriptionListParams.Builder params = SubscriptionListParams.builder()
+                .setLimit((long) settings.getPageSize())
+                .setStatus(SubscriptionListParams.Status.ALL);
+        if (startingAfter != null) {
+            params.setStartingAfter(startingAfter);
+        }
+        SubscriptionListParams listParams = params.build();
+
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return stripeInvoker.invoke("subscription.list", () -> stripeClient.subscriptions().list(listParams));
+            } catch (RateLimitException e) {
+                if (attempt >= settings.getMaxRetries()) {
+                    throw e;
+                }
+                Duration backoff = settings.getInitialBackoff().multipliedBy(1L << Math.min(attempt, 20));
+                logger.warn("Rate limited while listing subscriptions after {}, retrying in {} ms", startingAfter, backoff.toMillis());
+                try {
+                    sleeper.sleep(backoff.toMillis());
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for the given number of milliseconds.
+     */
+    @FunctionalInterface
+    interface Sleeper {
+
+        void sleep(long millis) throws InterruptedException;
+    }
+
+    private record PageResult(int updated, long missing) {
+    }
+}
@@ -0,0 +1,45 @@
+package com.oixan.stripecashier.reconciliation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.stripe.exception.StripeException;
+
+/**
+ * Runs the {@link SubscriptionReconciler} on the {@code stripe.reconciliation.cron} schedule.
+ * Only registered when {@code stripe.reconciliation.enabled} is {@code true}.
+ */
+@Component
+@EnableScheduling
+@ConditionalOnProperty(prefix = "stripe.reconciliation", name = "enabled", havingValue = "true")
+public class SubscriptionReconciliationScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(SubscriptionReconciliationScheduler.class);
+
+    @Autowired
+    private SubscriptionReconciler subscriptionReconciler;
+
+    /**
+     * Constructs a new scheduler.
+     */
+    public SubscriptionReconciliationScheduler() {
+    }
+
+    /**
+     * Runs a reconciliation of every account. The run of an account stopped by an error is resumed from its cursor
+     * on the next schedule.
+     */
+    @Scheduled(cron = "${stripe.reconciliation.cron:0 0 3 * * *}")
+    public void reconcile() {
+        try {
+            subscriptionReconciler.reconcile();
+        } catch (StripeException | RuntimeException e) {
+            logger.error("Subscription reconciliation did not complete for every account", e);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.oixan.stripecashier.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.oixan.stripecashier.entity.SubscriptionOutboxEntry;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+
+/**
+ * The interface provides methods to interact with the subscription outbox.
+ */
+@Repository
+public interface SubscriptionOutboxRepository extends JpaRepository<SubscriptionOutboxEntry, Long> {
+
+    /**
+     * Finds the entries due for an attempt that have not run out of attempts, oldest first.
+     *
+     * @param now         the current time.
+     * @param maxAttempts the number of failed attempts after which an entry is no longer picked.
+     * @param pageable    the number of entries to return.
+     * @return the due entries.
+     */
+    @Query("SELECT e FROM SubscriptionOutboxEntry e WHERE e.nextAttemptAt <= :now AND e.attempts < :maxAttempts ORDER BY e.nextAttemptAt, e.id")
+    List<SubscriptionOutboxEntry> findDue(@Param("now") LocalDateTime now, @Param("maxAttempts") int maxAttempts, Pageable pageable);
+
+    /**
+     * Finds the entries of a user's subscription type, oldest first.
+     *
+     * @param userId the user ID.
+     * @param type   the subscription type.
+     * @return the entries.
+     */
+    List<SubscriptionOutboxEntry> findByUserIdAndTypeOrderById(String userId, String type);
+
+    /**
+     * Finds the entries of a Stripe subscription.
+     *
+     * @param stripeId the Stripe ID of the subscription.
+     * @return the entries.
+     */
+    List<SubscriptionOutboxEntry> findByStripeId(String stripeId);
+
+}
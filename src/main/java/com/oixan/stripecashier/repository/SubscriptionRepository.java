@@ -8,8 +8,10 @@ import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.oixan.stripecashier.entity.Subscription;
+import com.oixan.stripecashier.entity.SubscriptionStatusView;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,16 +20,50 @@ import java.util.Optional;
  * The interface provides methods to interact with the subscription data.
  */
 @Repository
-public interface SubscriptionRepository extends JpaRepository<Subscription, Long> {
+public interface SubscriptionRepository extends JpaRepository<Subscription, Long>, SubscriptionUpsertRepository {
 
     /**
-     * Finds a subscription by user ID and type.
+     * Finds the newest subscription of a user and type. The older ones are the subscriptions the user held
+     * before subscribing again.
      *
      * @param userId the ID of the user.
      * @param type   the type of the subscription.
      * @return an Optional containing the subscription if found, otherwise empty.
      */
-    Optional<Subscription> findByUserIdAndType(String userId, String type);
+    @Query("SELECT s FROM Subscription s WHERE s.id = (SELECT MAX(n.id) FROM Subscription n "
+            + "WHERE n.userId = :userId AND n.type = :type)")
+    Optional<Subscription> findByUserIdAndType(@Param("userId") String userId, @Param("type") String type);
+
+
+    /**
+     * Finds the status columns of the newest subscription of a user and type, without loading the entity.
+     *
+     * @param userId the ID of the user.
+     * @param type   the type of the subscription.
+     * @return an Optional containing the status columns if found, otherwise empty.
+     */
+    @Query("SELECT new com.oixan.stripecashier.entity.SubscriptionStatusView(s.type, s.stripeStatus, s.trialEndsAt, s.endsAt) "
+            + "FROM Subscription s WHERE s.id = (SELECT MAX(n.id) FROM Subscription n "
+            + "WHERE n.userId = :userId AND n.type = :type)")
+    Optional<SubscriptionStatusView> findStatusByUserIdAndType(@Param("userId") String userId, @Param("type") String type);
+
+
+    /**
+     * Finds a subscription by Stripe ID.
+     *
+     * @param stripeId the Stripe ID of the subscription.
+     * @return an Optional containing the subscription if found, otherwise empty.
+     */
+    Optional<Subscription> findByStripeId(String stripeId);
+
+
+    /**
+     * Finds the subscriptions with any of the given Stripe IDs.
+     *
+     * @param stripeIds the Stripe IDs of the subscriptions.
+     * @return the subscriptions found, in no particular order.
+     */
+    List<Subscription> findByStripeIdIn(Collection<String> stripeIds);
 
     
     /**
@@ -55,7 +91,7 @@ public interface SubscriptionRepository extends JpaRepository<Subscription, Long
      */
     @Modifying
     @Transactional
-    @Query(value = "UPDATE subscriptions SET ends_at = :endsAt WHERE id = :id", nativeQuery = true)
+    @Query(value = "UPDATE subscriptions SET ends_at = :endsAt, version = version + 1 WHERE id = :id", nativeQuery = true)
     void updateEndsAt(@Param("id") Long id, @Param("endsAt") LocalDateTime endsAt);
 
 }
\ No newline at end of file
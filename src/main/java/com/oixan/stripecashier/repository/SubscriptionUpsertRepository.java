@@ -0,0 +1,41 @@
+package com.oixan.stripecashier.repository;
+
+import java.util.Collection;
+
+import com.oixan.stripecashier.entity.Subscription;
+
+/**
+ * Writes subscriptions in a single statement each, whether their row exists or not.
+ */
+public interface SubscriptionUpsertRepository {
+
+    /**
+     * Inserts the subscription, or updates the row of the same Stripe ID in the same statement.
+     * <p>
+     * An existing row gets the status, price, quantity and end date of the subscription, and its version is
+     * incremented; its user ID, type, trial end date and creation timestamp are kept. A new Stripe subscription,
+     * as after a re-subscribe, gets a row of its own, so the rows of the ended subscriptions are kept.
+     * <p>
+     * The existing row is updated only while it holds the {@linkplain Subscription#getVersion() version} of the
+     * subscription, so a write based on a stale read does not overwrite a newer one.
+     *
+     * @param subscription the subscription to write.
+     * @return the number of rows affected, as reported by the driver.
+     * @throws org.springframework.dao.OptimisticLockingFailureException if the row holds another version.
+     */
+    int upsert(Subscription subscription);
+
+    /**
+     * Upserts the subscriptions as {@link #upsert(Subscription)} does, sending the statements to the database
+     * in JDBC batches.
+     * <p>
+     * Each batch is committed on its own unless a transaction is in progress.
+     *
+     * @param subscriptions the subscriptions to write.
+     * @param batchSize     the maximum number of statements in one batch.
+     * @return the number of rows affected, as reported by the driver.
+     * @throws org.springframework.dao.OptimisticLockingFailureException if a row holds another version than its
+     *         subscription; the previous batches stay written.
+     */
+    int upsertAll(Collection<Subscription> subscriptions, int batchSize);
+}
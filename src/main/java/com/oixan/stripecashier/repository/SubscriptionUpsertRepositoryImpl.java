@@ -0,0 +1,260 @@
+package com.oixan.stripecashier.repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.oixan.stripecashier.entity.Subscription;
+import com.oixan.stripecashier.support.JdbcBatches;
+
+/**
+ * Implements {@link SubscriptionUpsertRepository} with the upsert statement of the database in use.
+ * <p>
+ * PostgreSQL gets {@code INSERT ... ON CONFLICT ... WHERE}, and any other database, H2 included, the standard
+ * {@code MERGE ... WHEN MATCHED AND}, both updating the row only when it still holds the expected version. MySQL
+ * and MariaDB do not report a skipped {@code ON DUPLICATE KEY UPDATE}, so they get a guarded {@code UPDATE},
+ * followed by an {@code INSERT} when no row matched. The database is detected from the connection metadata on the
+ * first upsert.
+ */
+public class SubscriptionUpsertRepositoryImpl implements SubscriptionUpsertRepository {
+
+    /**
+     * Updates the row of a Stripe ID holding the expected version, for the databases without a guarded upsert.
+     */
+    static final String UPDATE_SQL = "UPDATE subscriptions SET stripe_status = ?, stripe_price = ?, quantity = ?, "
+            + "ends_at = ?, updated_at = ?, version = version + 1 WHERE stripe_id = ? AND version = ?";
+
+    /**
+     * Inserts a row, for the databases without a guarded upsert.
+     */
+    static final String INSERT_SQL = "INSERT INTO subscriptions (user_id, type, stripe_id, stripe_status, "
+            + "stripe_price, quantity, trial_ends_at, ends_at, created_at, updated_at, version) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)";
+
+    /**
+     * The upsert statements, all taking the parameters in the order of {@link #parameters(Subscription)}: the
+     * columns of the row, then the version expected in the row to update.
+     */
+    enum Dialect {
+
+        POSTGRESQL("INSERT INTO subscriptions (user_id, type, stripe_id, stripe_status, stripe_price, quantity, "
+                + "trial_ends_at, ends_at, created_at, updated_at, version) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0) "
+                + "ON CONFLICT (stripe_id) DO UPDATE SET stripe_status = EXCLUDED.stripe_status, "
+                + "stripe_price = EXCLUDED.stripe_price, quantity = EXCLUDED.quantity, ends_at = EXCLUDED.ends_at, "
+                + "updated_at = EXCLUDED.updated_at, version = subscriptions.version + 1 "
+                + "WHERE subscriptions.version = ?"),
+
+        /**
+         * Has no upsert statement: the rows are written with {@link #UPDATE_SQL} and {@link #INSERT_SQL}.
+         */
+        MYSQL(null),
+
+        STANDARD("MERGE INTO subscriptions t USING (VALUES (CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)), "
+                + "CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(255)), CAST(? AS BIGINT), "
+                + "CAST(? AS TIMESTAMP), CAST(? AS TIMESTAMP), CAST(? AS TIMESTAMP), CAST(? AS TIMESTAMP), "
+                + "CAST(? AS BIGINT))) AS s (user_id, type, stripe_id, stripe_status, stripe_price, quantity, "
+                + "trial_ends_at, ends_at, created_at, updated_at, version) ON t.stripe_id = s.stripe_id "
+                + "WHEN MATCHED AND t.version = s.version THEN UPDATE SET stripe_status = s.stripe_status, "
+                + "stripe_price = s.stripe_price, quantity = s.quantity, ends_at = s.ends_at, "
+                + "updated_at = s.updated_at, version = t.version + 1 "
+                + "WHEN NOT MATCHED THEN INSERT (user_id, type, stripe_id, stripe_status, stripe_price, quantity, "
+                + "trial_ends_at, ends_at, created_at, updated_at, version) VALUES (s.user_id, s.type, s.stripe_id, "
+                + "s.stripe_status, s.stripe_price, s.quantity, s.trial_ends_at, s.ends_at, s.created_at, "
+                + "s.updated_at, 0)");
+
+        private final String sql;
+
+        Dialect(String sql) {
+            this.sql = sql;
+        }
+
+        static Dialect of(String databaseProductName) {
+            String name = databaseProductName.toLowerCase(Locale.ROOT);
+            if (name.contains("postgres")) {
+                return POSTGRESQL;
+            }
+            if (name.contains("mysql") || name.contains("mariadb")) {
+                return MYSQL;
+            }
+            return STANDARD;
+        }
+    }
+
+    /**
+     * Runs the upsert statement.
+     */
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * The dialect of the database, detected on the first upsert.
+     */
+    private volatile Dialect dialect;
+
+    /**
+     * Constructs a new repository fragment.
+     */
+    public SubscriptionUpsertRepositoryImpl() {
+    }
+
+    /**
+     * Constructs a repository fragment for the given dialect.
+     *
+     * @param jdbcTemplate the template running the upsert statement
+     * @param dialect the dialect of the database
+     */
+    SubscriptionUpsertRepositoryImpl(JdbcTemplate jdbcTemplate, Dialect dialect) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dialect = dialect;
+    }
+
+    @Override
+    public int upsert(Subscription subscription) {
+        Dialect current = dialect();
+        if (current.sql == null) {
+            int updated = jdbcTemplate.update(UPDATE_SQL, updateParameters(subscription));
+            if (updated > 0) {
+                return updated;
+            }
+            try {
+                return jdbcTemplate.update(INSERT_SQL, insertParameters(subscription));
+            } catch (DuplicateKeyException e) {
+                throw staleVersion(subscription);
+            }
+        }
+
+        int affected = jdbcTemplate.update(current.sql, parameters(subscription));
+        if (affected == 0) {
+            throw staleVersion(subscription);
+        }
+        return affected;
+    }
+
+    @Override
+    public int upsertAll(Collection<Subscription> subscriptions, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be at least 1.");
+        }
+
+        Dialect current = dialect();
+        List<Subscription> batch = new ArrayList<>(Math.min(batchSize, subscriptions.size()));
+        int affected = 0;
+        for (Subscription subscription : subscriptions) {
+            batch.add(subscription);
+            if (batch.size() == batchSize) {
+                affected += flush(current, batch);
+            }
+        }
+        if (!batch.isEmpty()) {
+            affected += flush(current, batch);
+        }
+        return affected;
+    }
+
+    private int flush(Dialect current, List<Subscription> batch) {
+        int affected = current.sql != null
+                ? write(current.sql, batch, SubscriptionUpsertRepositoryImpl::parameters)
+                : updateOrInsert(batch);
+        batch.clear();
+        return affected;
+    }
+
+    private int updateOrInsert(List<Subscription> batch) {
+        int[] counts = jdbcTemplate.batchUpdate(UPDATE_SQL, batch.stream()
+                .map(SubscriptionUpsertRepositoryImpl::updateParameters)
+                .collect(Collectors.toList()));
+
+        List<Subscription> missing = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                missing.add(batch.get(i));
+            }
+        }
+        if (missing.isEmpty()) {
+            return JdbcBatches.affectedRows(counts);
+        }
+        try {
+            return JdbcBatches.affectedRows(counts)
+                    + write(INSERT_SQL, missing, SubscriptionUpsertRepositoryImpl::insertParameters);
+        } catch (DuplicateKeyException e) {
+            throw new OptimisticLockingFailureException(
+                    "A subscription of the batch was updated since the version it was read at.", e);
+        }
+    }
+
+    private int write(String sql, List<Subscription> batch, Function<Subscription, Object[]> parameters) {
+        int[] counts = jdbcTemplate.batchUpdate(sql, batch.stream().map(parameters).collect(Collectors.toList()));
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                throw staleVersion(batch.get(i));
+            }
+        }
+        return JdbcBatches.affectedRows(counts);
+    }
+
+    private Dialect dialect() {
+        Dialect current = dialect;
+        if (current == null) {
+            current = Dialect.of(jdbcTemplate.execute(
+                    (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName()));
+            dialect = current;
+        }
+        return current;
+    }
+
+    private static Object[] parameters(Subscription subscription) {
+        Object[] insert = insertParameters(subscription);
+        Object[] parameters = Arrays.copyOf(insert, insert.length + 1);
+        parameters[insert.length] = subscription.getVersion();
+        return parameters;
+    }
+
+    private static Object[] insertParameters(Subscription subscription) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        return new Object[] {
+                subscription.getUserId(),
+                subscription.getType(),
+                subscription.getStripeId(),
+                subscription.getStripeStatus(),
+                subscription.getStripePrice(),
+                subscription.getQuantity(),
+                toTimestamp(subscription.getTrialEndsAt()),
+                toTimestamp(subscription.getEndsAt()),
+                now,
+                now
+        };
+    }
+
+    private static Object[] updateParameters(Subscription subscription) {
+        return new Object[] {
+                subscription.getStripeStatus(),
+                subscription.getStripePrice(),
+                subscription.getQuantity(),
+                toTimestamp(subscription.getEndsAt()),
+                Timestamp.valueOf(LocalDateTime.now()),
+                subscription.getStripeId(),
+                subscription.getVersion()
+        };
+    }
+
+    private static OptimisticLockingFailureException staleVersion(Subscription subscription) {
+        return new OptimisticLockingFailureException("Subscription " + subscription.getStripeId()
+                + " was updated since version " + subscription.getVersion() + ".");
+    }
+
+    private static Timestamp toTimestamp(LocalDateTime dateTime) {
+        return dateTime != null ? Timestamp.valueOf(dateTime) : null;
+    }
+}
@@ -0,0 +1,55 @@
+package com.oixan.stripecashier.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.oixan.stripecashier.entity.WebhookInboxEntry;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+
+/**
+ * The interface provides methods to interact with the webhook inbox.
+ */
+@Repository
+public interface WebhookInboxRepository extends JpaRepository<WebhookInboxEntry, Long> {
+
+    /**
+     * Checks whether an event is already stored.
+     *
+     * @param eventId the ID of the Stripe event.
+     * @return true if the event is stored.
+     */
+    boolean existsByEventId(String eventId);
+
+    /**
+     * Finds the pending entries due for an attempt that have not run out of attempts, in the order Stripe
+     * created the events.
+     *
+     * @param now         the current time.
+     * @param maxAttempts the number of failed attempts after which an entry is no longer picked.
+     * @param pageable    the number of entries to return.
+     * @return the due entries.
+     */
+    @Query("SELECT e FROM WebhookInboxEntry e WHERE e.processedAt IS NULL AND e.nextAttemptAt <= :now "
+            + "AND e.attempts < :maxAttempts ORDER BY e.eventCreated, e.id")
+    List<WebhookInboxEntry> findDue(@Param("now") LocalDateTime now, @Param("maxAttempts") int maxAttempts, Pageable pageable);
+
+    /**
+     * Deletes the entries applied before the given time.
+     *
+     * @param before the time before which processed entries are deleted.
+     * @return the number of deleted entries.
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM WebhookInboxEntry e WHERE e.processedAt < :before")
+    int deleteProcessedBefore(@Param("before") LocalDateTime before);
+
+}
@@ -1,15 +1,25 @@
 package com.oixan.stripecashier.service;
 
+import java.sql.Timestamp;
 import java.time.Instant;
+import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 
+import com.oixan.stripecashier.cache.SubscriptionCache;
+import com.oixan.stripecashier.config.StripeProperties;
 import com.oixan.stripecashier.entity.Subscription;
+import com.oixan.stripecashier.entity.SubscriptionStatusView;
 import com.oixan.stripecashier.repository.SubscriptionRepository;
+import com.oixan.stripecashier.support.JdbcBatches;
 
 /**
  * Service class for managing subscriptions.
@@ -27,6 +37,24 @@ public class SubscriptionService {
 	@Autowired
     private SubscriptionRepository subscriptionRepository;
 
+    /**
+     * The cache of subscription rows, invalidated by every write of this service.
+     */
+    @Autowired
+    private SubscriptionCache subscriptionCache;
+
+    /**
+     * The settings of the batched writes.
+     */
+    @Autowired
+    private StripeProperties stripeProperties;
+
+    /**
+     * Runs the batched writes that bypass JPA.
+     */
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     /**
      * Constructs a new {@link SubscriptionService} instance with the given repository.
      *
@@ -37,6 +65,8 @@ public class SubscriptionService {
 
     /**
      * Retrieves a subscription by user ID and subscription type.
+     * <p>
+     * The lookup is served from the {@link SubscriptionCache} when possible.
      *
      * @param userId the ID of the user
      * @param type the type of the subscription
@@ -44,7 +74,48 @@ public class SubscriptionService {
      *         otherwise an empty {@link Optional}
      */
     public Optional<Subscription> getSubscriptionByUserIdAndType(String userId, String type) {
-        return subscriptionRepository.findByUserIdAndType(userId, type);
+        return subscriptionCache.get(userId, type, () -> subscriptionRepository.findByUserIdAndType(userId, type));
+    }
+
+    /**
+     * Retrieves the status columns of a subscription by user ID and subscription type.
+     * <p>
+     * When the {@link SubscriptionCache} is enabled, the status is read from the cached entity, which is loaded on
+     * a miss and then serves the next checks. Otherwise only the status columns are queried.
+     *
+     * @param userId the ID of the user
+     * @param type the type of the subscription
+     * @return an {@link Optional} containing the status columns if found, otherwise an empty {@link Optional}
+     */
+    public Optional<SubscriptionStatusView> getSubscriptionStatus(String userId, String type) {
+        if (subscriptionCache.isEnabled()) {
+            return getSubscriptionByUserIdAndType(userId, type).map(SubscriptionStatusView::of);
+        }
+        return subscriptionRepository.findStatusByUserIdAndType(userId, type);
+    }
+
+    /**
+     * Retrieves a subscription by its Stripe ID.
+     *
+     * @param stripeId the Stripe ID of the subscription
+     * @return an {@link Optional} containing the {@link Subscription} if found,
+     *         otherwise an empty {@link Optional}
+     */
+    public Optional<Subscription> getSubscriptionByStripeId(String stripeId) {
+        return subscriptionRepository.findByStripeId(stripeId);
+    }
+
+    /**
+     * Retrieves the subscriptions with any of the given Stripe IDs in a single query.
+     *
+     * @param stripeIds the Stripe IDs of the subscriptions
+     * @return the subscriptions found, in no particular order
+     */
+    public List<Subscription> getSubscriptionsByStripeIds(Collection<String> stripeIds) {
+        if (stripeIds.isEmpty()) {
+            return List.of();
+        }
+        return subscriptionRepository.findByStripeIdIn(stripeIds);
     }
 
     /**
@@ -64,33 +135,71 @@ public class SubscriptionService {
      * @return the created {@link Subscription}
      */
     public Subscription createSubscription(Subscription subscription) {
-        return subscriptionRepository.save(subscription);
+        Subscription saved = subscriptionRepository.save(subscription);
+        subscriptionCache.invalidate(saved.getUserId(), saved.getType());
+        return saved;
     }
 
     /**
-     * Updates an existing subscription with the provided updated details.
-     * 
-     * @param updatedSubscription The subscription object containing the updated details.
-     * @throws IllegalArgumentException If no subscription is found for the provided user ID and type.
+     * Creates the given subscriptions in a single transaction: if one cannot be saved, none is.
+     *
+     * @param subscriptions the subscriptions to be created
+     * @return the created subscriptions
      */
-    public void updateSubscription(Subscription updatedSubscription) {
-        Optional<Subscription> existingSubscription = subscriptionRepository.findByUserIdAndType(updatedSubscription.getUserId(), updatedSubscription.getType());
-        
-        if (!existingSubscription.isPresent()) {
-            throw new IllegalArgumentException("Subscription with ID " + updatedSubscription.getUserId() + " and type: " + updatedSubscription.getType() + " does not exist.");
+    public List<Subscription> createSubscriptions(Collection<Subscription> subscriptions) {
+        if (subscriptions.isEmpty()) {
+            return List.of();
         }
+        List<Subscription> saved = subscriptionRepository.saveAll(subscriptions);
+        saved.forEach(subscription -> subscriptionCache.invalidate(subscription.getUserId(), subscription.getType()));
+        return saved;
+    }
 
-        Subscription existingSub = existingSubscription.get();
-
-        existingSub.setStripeStatus(updatedSubscription.getStripeStatus());
-        existingSub.setStripePrice(updatedSubscription.getStripePrice());
-        existingSub.setQuantity(updatedSubscription.getQuantity());
-        existingSub.setEndsAt(updatedSubscription.getEndsAt());
-        existingSub.setStripeId(updatedSubscription.getStripeId());
+    /**
+     * Creates or updates a subscription as given, without looking up the existing row first.
+     *
+     * @param subscription the {@link Subscription} to be saved
+     * @return the saved {@link Subscription}
+     */
+    public Subscription saveSubscription(Subscription subscription) {
+        Subscription saved = subscriptionRepository.save(subscription);
+        subscriptionCache.invalidate(saved.getUserId(), saved.getType());
+        return saved;
+    }
 
-        subscriptionRepository.save(existingSub);
+    /**
+     * Updates the subscription of the Stripe ID of the provided details, or creates it if there is none.
+     * <p>
+     * The status, price, quantity and end date are written in a single upsert statement, which updates an
+     * existing row only while it holds the version of the provided details, and increments it.
+     * 
+     * @param updatedSubscription The subscription object containing the updated details.
+     * @throws org.springframework.dao.OptimisticLockingFailureException if the row was updated since that version.
+     */
+    public void updateSubscription(Subscription updatedSubscription) {
+        subscriptionRepository.upsert(updatedSubscription);
+        subscriptionCache.invalidate(updatedSubscription.getUserId(), updatedSubscription.getType());
     }
     
+    /**
+     * Updates or creates the given subscriptions as {@link #updateSubscription(Subscription)} does, in JDBC batches
+     * of {@code stripe.jdbc.batch-size} statements.
+     * <p>
+     * Meant for bulk imports: the rows are written without being loaded, and a failed batch leaves the previous
+     * ones written, so an import can be run again from the start.
+     *
+     * @param subscriptions the subscriptions to be written
+     * @return the number of rows affected, as reported by the driver
+     */
+    public int upsertSubscriptions(Collection<Subscription> subscriptions) {
+        if (subscriptions.isEmpty()) {
+            return 0;
+        }
+        int affected = subscriptionRepository.upsertAll(subscriptions, stripeProperties.getJdbc().getBatchSize());
+        subscriptions.forEach(subscription -> subscriptionCache.invalidate(subscription.getUserId(), subscription.getType()));
+        return affected;
+    }
+
     /**
      * Deletes a subscription by its ID.
      *
@@ -98,6 +207,7 @@ public class SubscriptionService {
      */
     public void deleteSubscriptionById(Long id) {
         subscriptionRepository.deleteById(id);
+        subscriptionCache.invalidateIf(subscription -> id.equals(subscription.getId()));
     }
 
     /**
@@ -107,6 +217,7 @@ public class SubscriptionService {
      */
     public void deleteSubscriptionByStripeId(String id) {
         subscriptionRepository.deleteByStripeId(id);
+        subscriptionCache.invalidateIf(subscription -> id.equals(subscription.getStripeId()));
     }
 
     /**
@@ -117,5 +228,45 @@ public class SubscriptionService {
      */
     public void updateSubscriptionEndsAt(Long id, Instant endsAt) {
         subscriptionRepository.updateEndsAt(id, endsAt.atZone(ZoneId.systemDefault()).toLocalDateTime());
+        subscriptionCache.invalidateIf(subscription -> id.equals(subscription.getId()));
+    }
+
+    /**
+     * Writes the status, end date and trial end date of the given subscriptions in one JDBC batch.
+     * <p>
+     * Only these columns and {@code updated_at} are written, matched by ID; the subscriptions are
+     * removed from the cache.
+     *
+     * @param subscriptions the subscriptions carrying the new values
+     * @return the number of rows updated
+     */
+    public int updateSubscriptionStates(Collection<Subscription> subscriptions) {
+        if (subscriptions.isEmpty()) {
+            return 0;
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = subscriptions.stream()
+                .map(subscription -> new Object[] {
+                        subscription.getStripeStatus(),
+                        toTimestamp(subscription.getEndsAt()),
+                        toTimestamp(subscription.getTrialEndsAt()),
+                        now,
+                        subscription.getId()
+                })
+                .collect(Collectors.toList());
+
+        int[] counts = jdbcTemplate.batchUpdate(
+                "UPDATE subscriptions SET stripe_status = ?, ends_at = ?, trial_ends_at = ?, updated_at = ?, version = version + 1 WHERE id = ?",
+                rows);
+
+        Set<Long> ids = subscriptions.stream().map(Subscription::getId).collect(Collectors.toSet());
+        subscriptionCache.invalidateIf(subscription -> ids.contains(subscription.getId()));
+
+        return JdbcBatches.affectedRows(counts);
+    }
+
+    private static Timestamp toTimestamp(LocalDateTime dateTime) {
+        return dateTime != null ? Timestamp.valueOf(dateTime) : null;
     }
 }
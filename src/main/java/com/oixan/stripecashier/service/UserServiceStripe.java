@@ -1,6 +1,5 @@
 package com.oixan.stripecashier.service;
 
-import java.lang.reflect.Field;
 import java.util.Optional;
 
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
@@ -68,8 +67,8 @@ public class UserServiceStripe<T extends IUserStripe, D> {
     /**
      * Retrieves a user from the repository based on the user ID.
      *
-     * <p>This method attempts to find the user by accessing the user ID field
-     * dynamically using reflection.</p>
+     * <p>This method attempts to find the user by reading the user ID field,
+     * resolved once per user class.</p>
      *
      * @param model the user model whose ID is to be used to find the user
      * @return an Optional containing the user if found, otherwise an empty Optional
@@ -77,17 +76,13 @@ public class UserServiceStripe<T extends IUserStripe, D> {
      */
     public Optional<T> getUserById(IUserStripe model){
         try { 
-            Class<?> userClass = model.getClass();
-
-            Field idField = Classes.findIdField(userClass);
-            
-            Object userId = idField.get(model);
+            Object userId = Classes.idValue(model);
 
             Optional<T> optionalUser = repository.findById((D) userId);
 
             return optionalUser;
 
-        } catch (NoSuchFieldException | IllegalAccessException e) {
+        } catch (NoSuchFieldException e) {
             throw new RuntimeException("Error accessing user ID field", e);
         }
     }
@@ -0,0 +1,77 @@
+package com.oixan.stripecashier.support;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A utility class for running Stripe calls off the caller thread.
+ */
+public final class Async {
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private Async() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Runs a Stripe call on the given executor.
+     * <p>
+     * A {@link com.stripe.exception.StripeException} thrown by the call completes the future exceptionally,
+     * wrapped in a {@link CompletionException}.
+     *
+     * @param <T> the type of the result of the call
+     * @param call the call to run
+     * @param executor the executor running the call
+     * @return a future completed with the result of the call
+     */
+    public static <T> CompletableFuture<T> supply(StripeCall<T> call, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return call.call();
+            } catch (Exception e) {
+                throw e instanceof RuntimeException ? (RuntimeException) e : new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Creates the executor running asynchronous Stripe calls.
+     * <p>
+     * When {@code virtualThreads} is set and the JVM supports them (Java 21 or later), every call runs on its
+     * own virtual thread. Otherwise a pool of at most {@code poolSize} daemon threads is used.
+     *
+     * @param virtualThreads whether to use virtual threads when available
+     * @param poolSize the maximum number of platform threads
+     * @return the executor
+     */
+    public static ExecutorService newExecutor(boolean virtualThreads, int poolSize) {
+        if (virtualThreads) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // Virtual threads are not available on this JVM
+            }
+        }
+
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "stripe-cashier-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -1,5 +1,8 @@
 package com.oixan.stripecashier.support;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 
 import jakarta.persistence.Id;
@@ -7,10 +10,22 @@ import jakarta.persistence.Id;
 
 /**
  * A utility class for working with classes and reflection.
+ * <p>
+ * The {@link Id} field of a class is resolved once and cached per class, so repeated lookups for the
+ * same entity type cost a single {@link ClassValue} read.
  */
 public class Classes {
 
-    	
+    /**
+     * The resolved {@link Id} accessor of each class.
+     */
+    private static final ClassValue<IdAccessor> ID_ACCESSORS = new ClassValue<>() {
+        @Override
+        protected IdAccessor computeValue(Class<?> type) {
+            return IdAccessor.resolve(type);
+        }
+    };
+
 	/**
 	 * Private constructor to prevent instantiation of this singleton class.
 	 * This class should only be used through the {@link #create()} method.
@@ -22,22 +37,85 @@ public class Classes {
     /**
      * Finds and returns the field annotated with {@link Id} in the given class.
      *
-     * <p>This method searches through the declared fields of the provided class and returns the first 
-     * field that is annotated with the {@link Id} annotation. If no such field is found, a {@link NoSuchFieldException} 
-     * is thrown.</p>
+     * <p>This method searches through the declared fields of the provided class and of its superclasses,
+     * such as {@code @MappedSuperclass} bases, and returns the first field that is annotated with the
+     * {@link Id} annotation. If no such field is found, a {@link NoSuchFieldException} is thrown.
+     * The result is cached per class.</p>
      *
      * @param clazz the {@link Class} object representing the class to search
      * @return the {@link Field} object representing the field annotated with {@link Id}
      * @throws NoSuchFieldException if no field annotated with {@link Id} is found in the class
      */
     public static Field findIdField(Class<?> clazz) throws NoSuchFieldException {
-        for (Field field : clazz.getDeclaredFields()) {
-            if (field.isAnnotationPresent(Id.class)) {
-                field.setAccessible(true); 
-                return field;
+        return ID_ACCESSORS.get(clazz).field();
+    }
+
+    /**
+     * Returns the type of the field annotated with {@link Id} in the given class.
+     *
+     * @param clazz the {@link Class} object representing the class to search
+     * @return the type of the ID
+     * @throws NoSuchFieldException if no field annotated with {@link Id} is found in the class
+     */
+    public static Class<?> idType(Class<?> clazz) throws NoSuchFieldException {
+        return ID_ACCESSORS.get(clazz).field().getType();
+    }
+
+    /**
+     * Reads the value of the field annotated with {@link Id} from the given object.
+     *
+     * @param entity the object to read the ID from
+     * @return the value of the ID, possibly {@code null}
+     * @throws NoSuchFieldException if no field annotated with {@link Id} is found in the class of the object
+     */
+    public static Object idValue(Object entity) throws NoSuchFieldException {
+        return ID_ACCESSORS.get(entity.getClass()).get(entity);
+    }
+
+    /**
+     * The {@link Id} field of a class and a method handle reading it, or the reason it could not be found.
+     */
+    private record IdAccessor(Class<?> type, Field idField, MethodHandle getter) {
+
+        private static IdAccessor resolve(Class<?> type) {
+            for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+                for (Field field : current.getDeclaredFields()) {
+                    if (field.isAnnotationPresent(Id.class)) {
+                        field.setAccessible(true);
+                        return new IdAccessor(type, field, getter(field));
+                    }
+                }
+            }
+            return new IdAccessor(type, null, null);
+        }
+
+        private static MethodHandle getter(Field field) {
+            try {
+                return MethodHandles.lookup()
+                        .unreflectGetter(field)
+                        .asType(MethodType.methodType(Object.class, Object.class));
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot access ID field " + field, e);
+            }
+        }
+
+        Field field() throws NoSuchFieldException {
+            if (idField == null) {
+                throw new NoSuchFieldException("ID field not found in class " + type.getName());
+            }
+            return idField;
+        }
+
+        Object get(Object entity) throws NoSuchFieldException {
+            field();
+            try {
+                return (Object) getter.invokeExact(entity);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
             }
         }
-        throw new NoSuchFieldException("ID field not found in class " + clazz.getName());
     }
 
 }
@@ -0,0 +1,40 @@
+package com.oixan.stripecashier.support;
+
+import java.sql.Statement;
+
+import org.springframework.dao.IncorrectUpdateSemanticsDataAccessException;
+
+/**
+ * A utility class reading the update counts of JDBC batches.
+ */
+public final class JdbcBatches {
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private JdbcBatches() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Sums the update counts of a batch. Drivers may report {@link Statement#SUCCESS_NO_INFO} for batched
+     * statements, which is counted as one row. The counts are summed as the driver reports them, so an
+     * {@code INSERT ... ON DUPLICATE KEY UPDATE} that updated a row counts as two rows on MySQL.
+     *
+     * @param counts the update counts returned by the batch
+     * @return the number of rows affected
+     * @throws IncorrectUpdateSemanticsDataAccessException if a statement of the batch is reported as
+     *         {@link Statement#EXECUTE_FAILED}, by a driver that keeps executing a batch after a failure
+     */
+    public static int affectedRows(int[] counts) {
+        int affected = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == Statement.EXECUTE_FAILED) {
+                throw new IncorrectUpdateSemanticsDataAccessException(
+                        "Statement " + i + " of the batch failed to execute.");
+            }
+            affected += counts[i] == Statement.SUCCESS_NO_INFO ? 1 : counts[i];
+        }
+        return affected;
+    }
+}
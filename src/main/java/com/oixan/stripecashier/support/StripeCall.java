@@ -0,0 +1,20 @@
+package com.oixan.stripecashier.support;
+
+import com.stripe.exception.StripeException;
+
+/**
+ * A call to the Stripe API, which may fail with a {@link StripeException}.
+ *
+ * @param <T> the type of the result of the call
+ */
+@FunctionalInterface
+public interface StripeCall<T> {
+
+    /**
+     * Performs the call.
+     *
+     * @return the result of the call
+     * @throws StripeException if the call fails
+     */
+    T call() throws StripeException;
+}
@@ -0,0 +1,57 @@
+package com.oixan.stripecashier.support;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import com.stripe.model.Subscription;
+
+/**
+ * A utility class mapping Stripe subscription fields onto the columns of the {@code subscriptions} table.
+ */
+public final class StripeSubscriptions {
+
+    /**
+     * Private constructor to prevent instantiation of this utility class.
+     */
+    private StripeSubscriptions() {
+        // Private constructor to prevent instantiation
+    }
+
+    /**
+     * Computes the end of the subscription: the time it ended if it is over, the end of the current period
+     * if it is set to cancel then, or the scheduled cancellation time.
+     *
+     * @param subscription the Stripe subscription
+     * @param ended whether the subscription is over, even if its status does not say so yet
+     * @param fallbackEndedAt the end time used when an ended subscription carries none, in epoch seconds
+     * @return the end of the subscription, or {@code null} if it does not end
+     */
+    public static LocalDateTime endsAt(Subscription subscription, boolean ended, Long fallbackEndedAt) {
+        if (ended || "canceled".equals(subscription.getStatus())) {
+            Long endedAt = subscription.getEndedAt() != null ? subscription.getEndedAt() : fallbackEndedAt;
+            return toLocalDateTime(endedAt);
+        }
+
+        if (Boolean.TRUE.equals(subscription.getCancelAtPeriodEnd())) {
+            return toLocalDateTime(subscription.getCurrentPeriodEnd());
+        }
+
+        return toLocalDateTime(subscription.getCancelAt());
+    }
+
+    /**
+     * Converts a Stripe timestamp to a local date-time in the system time zone.
+     *
+     * @param epochSecond the timestamp in epoch seconds, possibly {@code null}
+     * @return the local date-time, or {@code null} if the timestamp is {@code null}
+     */
+    public static LocalDateTime toLocalDateTime(Long epochSecond) {
+        if (epochSecond == null) {
+            return null;
+        }
+        return Instant.ofEpochSecond(epochSecond)
+                .atZone(ZoneId.systemDefault())
+                .toLocalDateTime();
+    }
+}
@@ -0,0 +1,107 @@
+package com.oixan.stripecashier.support;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A token bucket limiting how often an action may start.
+ * <p>
+ * Tokens are added at a steady rate up to a burst capacity, and each action takes one. An action arriving at an
+ * empty bucket reserves the next token and waits for it, so waiting callers are served in arrival order and the
+ * long-run rate never exceeds the configured one.
+ */
+public class TokenBucket {
+
+    private final LongSupplier nanoClock;
+
+    private double permitsPerSecond;
+
+    private final double capacity;
+
+    private double tokens;
+
+    private long refilledAt;
+
+    /**
+     * Constructs a new bucket, initially full, reading the time from {@link System#nanoTime()}.
+     *
+     * @param permitsPerSecond the rate tokens are added at
+     * @param capacity the maximum number of tokens stored, that is the largest burst allowed
+     */
+    public TokenBucket(double permitsPerSecond, double capacity) {
+        this(permitsPerSecond, capacity, System::nanoTime);
+    }
+
+    /**
+     * Constructs a new bucket, initially full.
+     *
+     * @param permitsPerSecond the rate tokens are added at
+     * @param capacity the maximum number of tokens stored, that is the largest burst allowed
+     * @param nanoClock the source of the time, in nanoseconds
+     */
+    public TokenBucket(double permitsPerSecond, double capacity, LongSupplier nanoClock) {
+        if (permitsPerSecond <= 0 || capacity < 1) {
+            throw new IllegalArgumentException("The rate must be positive and the capacity at least 1.");
+        }
+        this.permitsPerSecond = permitsPerSecond;
+        this.capacity = capacity;
+        this.nanoClock = nanoClock;
+        this.tokens = capacity;
+        this.refilledAt = nanoClock.getAsLong();
+    }
+
+    /**
+     * Takes a token, waiting until one is available.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting; the reserved token is lost
+     */
+    public void acquire() throws InterruptedException {
+        long wait = reserve();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * Takes a token, reserving the next one if the bucket is empty.
+     *
+     * @return the time to wait before the token may be used, in nanoseconds, {@code 0} if it may be used now
+     */
+    public synchronized long reserve() {
+        refill();
+        tokens -= 1;
+        if (tokens >= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(-tokens / permitsPerSecond * TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * Gets the rate tokens are added at.
+     *
+     * @return the rate, per second
+     */
+    public synchronized double getRate() {
+        return permitsPerSecond;
+    }
+
+    /**
+     * Changes the rate tokens are added at. The tokens already stored or reserved are kept.
+     *
+     * @param permitsPerSecond the new rate, per second
+     */
+    public synchronized void setRate(double permitsPerSecond) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("The rate must be positive.");
+        }
+        refill();
+        this.permitsPerSecond = permitsPerSecond;
+    }
+
+    private void refill() {
+        long now = nanoClock.getAsLong();
+        double added = (now - refilledAt) * permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        tokens = Math.min(capacity, tokens + added);
+        refilledAt = now;
+    }
+}
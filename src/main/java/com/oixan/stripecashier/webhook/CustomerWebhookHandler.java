@@ -0,0 +1,41 @@
+package com.oixan.stripecashier.webhook;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.oixan.stripecashier.cache.CustomerCache;
+import com.stripe.model.Customer;
+import com.stripe.model.Event;
+import com.stripe.model.StripeObject;
+
+/**
+ * Evicts customers changed outside the library from the {@link CustomerCache}, on {@code customer.updated}
+ * and {@code customer.deleted} webhook events.
+ */
+@Component
+public class CustomerWebhookHandler implements StripeWebhookHandler {
+
+    /**
+     * Caches the Stripe customers read by the managers.
+     */
+    @Autowired
+    private CustomerCache customerCache;
+
+    /**
+     * Constructs a new handler.
+     */
+    public CustomerWebhookHandler() {
+    }
+
+    @Override
+    public boolean supports(String eventType) {
+        return "customer.updated".equals(eventType) || "customer.deleted".equals(eventType);
+    }
+
+    @Override
+    public void handle(Event event, StripeObject object) {
+        if (object instanceof Customer) {
+            customerCache.invalidate(((Customer) object).getId());
+        }
+    }
+}
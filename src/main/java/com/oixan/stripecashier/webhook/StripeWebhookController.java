@@ -0,0 +1,86 @@
+package com.oixan.stripecashier.webhook;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.oixan.stripecashier.config.StripeProperties;
+import com.stripe.exception.SignatureVerificationException;
+import com.stripe.model.Event;
+import com.stripe.net.Webhook;
+
+/**
+ * The endpoint receiving Stripe webhook events.
+ * <p>
+ * The endpoint verifies the signature of each payload, stores the event in the {@link WebhookInbox} and
+ * acknowledges it right away; the inbox applies it off the request thread. An event that could not be stored is
+ * answered with an error status, so that Stripe delivers it again. It is registered only when
+ * {@code stripe.webhook.secret} is set, and mapped to {@code stripe.webhook.path}.
+ */
+@RestController
+@ConditionalOnProperty(prefix = "stripe.webhook", name = "secret")
+public class StripeWebhookController {
+
+    private static final Logger logger = LoggerFactory.getLogger(StripeWebhookController.class);
+
+    @Autowired
+    private StripeProperties stripeProperties;
+
+    @Autowired
+    private WebhookInbox webhookInbox;
+
+    /**
+     * Constructs a new controller.
+     */
+    public StripeWebhookController() {
+    }
+
+    /**
+     * Verifies and stores a webhook event.
+     *
+     * @param payload the raw body of the request
+     * @param signature the value of the {@code Stripe-Signature} header
+     * @return {@code 200} once the event is stored, or was already stored by an earlier delivery, {@code 400} if
+     *         the payload is not a valid signed event, and {@code 500} if the event could not be stored, in which
+     *         case Stripe delivers it again
+     */
+    @PostMapping("${stripe.webhook.path:/stripe/webhook}")
+    public ResponseEntity<Void> handle(
+            @RequestBody String payload,
+            @RequestHeader(value = "Stripe-Signature", required = false) String signature
+    ) {
+        if (signature == null || signature.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        StripeProperties.Webhook webhook = stripeProperties.getWebhook();
+
+        Event event;
+        try {
+            event = Webhook.constructEvent(payload, signature, webhook.getSecret(), webhook.getTolerance().getSeconds());
+        } catch (SignatureVerificationException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (RuntimeException e) {
+            // The payload is not a readable event
+            return ResponseEntity.badRequest().build();
+        }
+
+        try {
+            webhookInbox.receive(event, payload);
+            return ResponseEntity.ok().build();
+        } catch (IllegalArgumentException e) {
+            // The object of the event is not readable
+            return ResponseEntity.badRequest().build();
+        } catch (RuntimeException e) {
+            logger.error("Failed to store webhook event {}", event.getId(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.oixan.stripecashier.webhook;
+
+import com.stripe.model.Event;
+import com.stripe.model.StripeObject;
+
+/**
+ * A handler applying verified Stripe webhook events.
+ * <p>
+ * Handlers are registered as Spring beans and invoked by the {@link WebhookEventDispatcher} on one of its
+ * workers. Events concerning the same Stripe object are always handled by the same worker, in the order
+ * they were received, and events that are duplicated or older than the last one seen for the object are
+ * dropped before reaching the handler.
+ */
+public interface StripeWebhookHandler {
+
+    /**
+     * Determines if this handler applies events of the given type.
+     *
+     * @param eventType the type of the event, e.g. {@code customer.subscription.updated}
+     * @return true if the handler applies the event, false otherwise
+     */
+    boolean supports(String eventType);
+
+    /**
+     * Applies the event.
+     *
+     * @param event the verified event
+     * @param object the object carried by the event, already deserialized
+     */
+    void handle(Event event, StripeObject object);
+}
@@ -0,0 +1,128 @@
+package com.oixan.stripecashier.webhook;
+
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import com.oixan.stripecashier.outbox.SubscriptionOutbox;
+import com.oixan.stripecashier.service.SubscriptionService;
+import com.oixan.stripecashier.support.StripeSubscriptions;
+import com.stripe.model.Event;
+import com.stripe.model.StripeObject;
+import com.stripe.model.Subscription;
+import com.stripe.model.SubscriptionItem;
+
+/**
+ * Applies {@code customer.subscription.*} webhook events to the {@code subscriptions} table.
+ * <p>
+ * Only subscriptions already known locally are updated: rows are created by {@code SubscriptionBuilder},
+ * and creating them here as well would race with it. A subscription still waiting in the {@link SubscriptionOutbox}
+ * is written first. An event for a subscription with no row fails, so the {@link WebhookInbox} attempts it again
+ * later, once the creation has written the row.
+ * <p>
+ * Each row records the {@code created} time of the last event applied to it; an older event delivered late is
+ * skipped, so it does not overwrite the newer state.
+ * <p>
+ * The row is read, changed and saved against its version. If another writer updated it in between, the save
+ * fails and the event is applied again to the fresh row, up to {@value #MAX_ATTEMPTS} times.
+ */
+@Component
+public class SubscriptionWebhookHandler implements StripeWebhookHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(SubscriptionWebhookHandler.class);
+
+    /**
+     * How many times an event is applied before a version conflict is given up on.
+     */
+    static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * Service for managing subscriptions.
+     */
+    @Autowired
+    private SubscriptionService subscriptionService;
+
+    /**
+     * Holds the subscriptions created but not written yet, when {@code stripe.outbox.enabled} is set.
+     */
+    @Autowired(required = false)
+    private SubscriptionOutbox subscriptionOutbox;
+
+    /**
+     * Constructs a new handler.
+     */
+    public SubscriptionWebhookHandler() {
+    }
+
+    @Override
+    public boolean supports(String eventType) {
+        return eventType != null && eventType.startsWith("customer.subscription.");
+    }
+
+    @Override
+    public void handle(Event event, StripeObject object) {
+        if (!(object instanceof Subscription)) {
+            return;
+        }
+
+        Subscription stripeSubscription = (Subscription) object;
+        for (int attempt = 1; ; attempt++) {
+            Optional<com.oixan.stripecashier.entity.Subscription> existing =
+                    subscriptionService.getSubscriptionByStripeId(stripeSubscription.getId());
+
+            if (existing.isEmpty() && subscriptionOutbox != null && subscriptionOutbox.flush(stripeSubscription.getId())) {
+                // Created moments ago and still waiting in the outbox
+                existing = subscriptionService.getSubscriptionByStripeId(stripeSubscription.getId());
+            }
+
+            if (existing.isEmpty()) {
+                throw new IllegalStateException("Subscription " + stripeSubscription.getId() + " of webhook event "
+                        + event.getId() + " not found.");
+            }
+
+            com.oixan.stripecashier.entity.Subscription entity = existing.get();
+            if (isOutOfOrder(event, entity)) {
+                logger.debug("Skipping out-of-order webhook event {} for subscription {}", event.getId(), stripeSubscription.getId());
+                return;
+            }
+            apply(event, stripeSubscription, entity);
+
+            try {
+                subscriptionService.saveSubscription(entity);
+                return;
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+                logger.debug("Subscription {} was updated concurrently, applying webhook event {} again",
+                        stripeSubscription.getId(), event.getId());
+            }
+        }
+    }
+
+    private static boolean isOutOfOrder(Event event, com.oixan.stripecashier.entity.Subscription entity) {
+        return event.getCreated() != null && entity.getLastEventCreated() != null
+                && event.getCreated() < entity.getLastEventCreated();
+    }
+
+    private static void apply(Event event, Subscription stripeSubscription, com.oixan.stripecashier.entity.Subscription entity) {
+        entity.setLastEventCreated(event.getCreated());
+        entity.setStripeStatus(stripeSubscription.getStatus());
+
+        if (stripeSubscription.getItems() != null && !stripeSubscription.getItems().getData().isEmpty()) {
+            SubscriptionItem item = stripeSubscription.getItems().getData().get(0);
+            entity.setStripePrice(item.getPrice().getId());
+            entity.setQuantity(item.getQuantity());
+        }
+
+        entity.setTrialEndsAt(StripeSubscriptions.toLocalDateTime(stripeSubscription.getTrialEnd()));
+        entity.setEndsAt(StripeSubscriptions.endsAt(
+                stripeSubscription,
+                "customer.subscription.deleted".equals(event.getType()),
+                event.getCreated()));
+    }
+}
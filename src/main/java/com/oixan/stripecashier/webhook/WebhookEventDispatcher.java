@@ -0,0 +1,139 @@
+package com.oixan.stripecashier.webhook;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.stripe.exception.EventDataObjectDeserializationException;
+import com.stripe.model.Event;
+import com.stripe.model.HasId;
+import com.stripe.model.StripeObject;
+
+/**
+ * Queues webhook events and applies them on a bounded pool of workers.
+ * <p>
+ * Each worker owns a bounded queue, and events are routed to a worker by the ID of the object they carry,
+ * so that events for the same subscription or customer are applied one at a time and in the order they are
+ * dispatched in.
+ * <p>
+ * The dispatcher keeps no state between events: the {@link WebhookInbox} dispatches each stored event and
+ * records its outcome, duplicates are recognised by the inbox, and out-of-order events by the handlers against
+ * the rows they update.
+ */
+public class WebhookEventDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookEventDispatcher.class);
+
+    private final List<StripeWebhookHandler> handlers;
+
+    private final List<ExecutorService> workers;
+
+    /**
+     * Constructs a new dispatcher and starts its workers.
+     *
+     * @param handlers the handlers the events are applied with
+     * @param workerCount the number of workers
+     * @param queueCapacity the total number of events that may wait to be applied
+     */
+    public WebhookEventDispatcher(List<StripeWebhookHandler> handlers, int workerCount, int queueCapacity) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("At least one webhook worker is required.");
+        }
+
+        this.handlers = List.copyOf(handlers);
+        this.workers = new ArrayList<>(workerCount);
+
+        int capacityPerWorker = Math.max(1, queueCapacity / workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            String name = "stripe-webhook-" + i;
+            workers.add(new ThreadPoolExecutor(
+                    1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(capacityPerWorker),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, name);
+                        thread.setDaemon(true);
+                        return thread;
+                    }));
+        }
+    }
+
+    /**
+     * Queues an event to be applied.
+     *
+     * @param event the verified event
+     * @return a future completed once the event is applied. It completes exceptionally with a
+     *         {@link RejectedExecutionException} if the queue is full and the event should be dispatched again
+     *         later, or with the exception of the handler that failed
+     * @throws IllegalArgumentException if the object of the event cannot be read
+     */
+    public CompletableFuture<Void> dispatch(Event event) {
+        StripeObject object = deserialize(event);
+        String objectId = object instanceof HasId ? ((HasId) object).getId() : event.getId();
+
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        try {
+            workerFor(objectId).execute(() -> {
+                try {
+                    apply(event, object);
+                    result.complete(null);
+                } catch (RuntimeException e) {
+                    logger.warn("Failed to apply webhook event {} of type {}", event.getId(), event.getType(), e);
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * Stops accepting events and waits for the queued ones to be applied.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void shutdown() throws InterruptedException {
+        workers.forEach(ExecutorService::shutdown);
+        for (ExecutorService worker : workers) {
+            worker.awaitTermination(30, TimeUnit.SECONDS);
+        }
+    }
+
+    private void apply(Event event, StripeObject object) {
+        for (StripeWebhookHandler handler : handlers) {
+            if (!handler.supports(event.getType())) {
+                continue;
+            }
+            handler.handle(event, object);
+        }
+    }
+
+    private ExecutorService workerFor(String objectId) {
+        return workers.get(Math.floorMod(objectId.hashCode(), workers.size()));
+    }
+
+    /**
+     * Reads the object an event carries.
+     *
+     * @param event the event
+     * @return the object
+     * @throws IllegalArgumentException if the object cannot be read
+     */
+    static StripeObject deserialize(Event event) {
+        return event.getDataObjectDeserializer().getObject().orElseGet(() -> {
+            try {
+                return event.getDataObjectDeserializer().deserializeUnsafe();
+            } catch (EventDataObjectDeserializationException e) {
+                throw new IllegalArgumentException("Unable to read the object of event " + event.getId(), e);
+            }
+        });
+    }
+}
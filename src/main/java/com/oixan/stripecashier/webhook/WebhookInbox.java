@@ -0,0 +1,287 @@
+package com.oixan.stripecashier.webhook;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import com.oixan.stripecashier.config.StripeProperties;
+import com.oixan.stripecashier.entity.WebhookInboxEntry;
+import com.oixan.stripecashier.repository.WebhookInboxRepository;
+import com.stripe.model.Event;
+import com.stripe.net.ApiResource;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Stores the verified webhook events in the {@code webhook_inbox} table and applies them off the request thread.
+ * <p>
+ * {@link #receive(Event, String)} stores the event as a single row and returns, so the endpoint acknowledges it
+ * as soon as it is durable. Each event is stored once, by its ID, however many times Stripe delivers it.
+ * <p>
+ * A relay thread then reads the due events in the order Stripe created them and applies them with the
+ * {@link WebhookEventDispatcher}. An applied event is marked processed; a failed one, for a subscription not
+ * written yet for instance, is attempted again after an exponential backoff, up to
+ * {@code stripe.webhook.max-attempts} times, after which it stays in the table with its last error.
+ * <p>
+ * The relay runs every {@code stripe.webhook.interval} and right after each event is stored. Processed events
+ * are deleted once they are older than {@code stripe.webhook.retention}. Only registered when
+ * {@code stripe.webhook.secret} is set.
+ */
+@Component
+@ConditionalOnProperty(prefix = "stripe.webhook", name = "secret")
+public class WebhookInbox {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookInbox.class);
+
+    /**
+     * How often the processed events past their retention are deleted.
+     */
+    private static final long PURGE_INTERVAL_MINUTES = 60;
+
+    /**
+     * Stores the entries.
+     */
+    @Autowired
+    private WebhookInboxRepository webhookInboxRepository;
+
+    /**
+     * Applies the events.
+     */
+    @Autowired
+    private WebhookEventDispatcher webhookEventDispatcher;
+
+    /**
+     * Holds the batch size, interval, retry and retention settings.
+     */
+    @Autowired
+    private StripeProperties stripeProperties;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final AtomicBoolean relayRequested = new AtomicBoolean();
+
+    private ScheduledExecutorService relayThread;
+
+    /**
+     * Constructs a new inbox.
+     */
+    public WebhookInbox() {
+    }
+
+    /**
+     * Starts the relay thread.
+     */
+    @PostConstruct
+    public void start() {
+        relayThread = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stripe-webhook-inbox");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = stripeProperties.getWebhook().getInterval().toMillis();
+        relayThread.scheduleWithFixedDelay(this::relayQuietly, interval, interval, TimeUnit.MILLISECONDS);
+        relayThread.scheduleWithFixedDelay(this::purgeQuietly,
+                PURGE_INTERVAL_MINUTES, PURGE_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stops the relay thread. The events not applied yet are applied after the next start.
+     */
+    @PreDestroy
+    public void stop() {
+        if (relayThread != null) {
+            relayThread.shutdown();
+        }
+    }
+
+    /**
+     * Stores a verified event to be applied, and wakes the relay up.
+     *
+     * @param event the verified event
+     * @param payload the raw payload the event was read from
+     * @return true if the event was stored, false if it was already stored by an earlier delivery
+     * @throws IllegalArgumentException if the object of the event cannot be read
+     */
+    public boolean receive(Event event, String payload) {
+        // An unreadable event would fail every attempt, so it is refused instead of stored
+        WebhookEventDispatcher.deserialize(event);
+
+        if (webhookInboxRepository.existsByEventId(event.getId())) {
+            logger.debug("Duplicate webhook event {}", event.getId());
+            return false;
+        }
+
+        WebhookInboxEntry entry = new WebhookInboxEntry();
+        entry.setEventId(event.getId());
+        entry.setType(event.getType());
+        entry.setEventCreated(event.getCreated());
+        entry.setPayload(payload);
+        try {
+            webhookInboxRepository.save(entry);
+        } catch (DataIntegrityViolationException e) {
+            // Stored in between by a concurrent delivery of the same event
+            logger.debug("Duplicate webhook event {}", event.getId());
+            return false;
+        }
+
+        // Events arriving while a relay is pending are applied by that relay
+        if (relayThread != null && relayRequested.compareAndSet(false, true)) {
+            try {
+                relayThread.execute(() -> {
+                    relayRequested.set(false);
+                    relayQuietly();
+                });
+            } catch (RejectedExecutionException e) {
+                relayRequested.set(false);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Applies the due events, batch after batch, until none is left or the dispatcher queue is full.
+     *
+     * @return the number of events applied
+     */
+    public int relay() {
+        if (!running.compareAndSet(false, true)) {
+            // The running relay applies the events
+            return 0;
+        }
+        try {
+            StripeProperties.Webhook webhook = stripeProperties.getWebhook();
+            int applied = 0;
+            while (true) {
+                List<WebhookInboxEntry> due = webhookInboxRepository.findDue(
+                        LocalDateTime.now(), webhook.getMaxAttempts(), PageRequest.of(0, webhook.getBatchSize()));
+                if (due.isEmpty()) {
+                    return applied;
+                }
+                Outcome outcome = apply(due);
+                applied += outcome.applied();
+                if (outcome.queueFull() || due.size() < webhook.getBatchSize()) {
+                    return applied;
+                }
+            }
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Deletes the processed events older than {@code stripe.webhook.retention}.
+     *
+     * @return the number of events deleted
+     */
+    public int purge() {
+        return webhookInboxRepository.deleteProcessedBefore(
+                LocalDateTime.now().minus(stripeProperties.getWebhook().getRetention()));
+    }
+
+    private void relayQuietly() {
+        try {
+            relay();
+        } catch (RuntimeException e) {
+            logger.error("Webhook inbox relay failed", e);
+        }
+    }
+
+    private void purgeQuietly() {
+        try {
+            purge();
+        } catch (RuntimeException e) {
+            logger.error("Webhook inbox purge failed", e);
+        }
+    }
+
+    private Outcome apply(List<WebhookInboxEntry> due) {
+        // Events of the same object go to the same worker, so they are applied in this order
+        Map<WebhookInboxEntry, CompletableFuture<Void>> dispatched = new LinkedHashMap<>();
+        for (WebhookInboxEntry entry : due) {
+            try {
+                Event event = ApiResource.GSON.fromJson(entry.getPayload(), Event.class);
+                dispatched.put(entry, webhookEventDispatcher.dispatch(event));
+            } catch (RuntimeException e) {
+                dispatched.put(entry, CompletableFuture.failedFuture(e));
+            }
+        }
+
+        List<WebhookInboxEntry> processed = new ArrayList<>();
+        boolean queueFull = false;
+        for (Map.Entry<WebhookInboxEntry, CompletableFuture<Void>> result : dispatched.entrySet()) {
+            WebhookInboxEntry entry = result.getKey();
+            try {
+                result.getValue().join();
+                entry.setProcessedAt(LocalDateTime.now());
+                processed.add(entry);
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RejectedExecutionException) {
+                    // Not attempted; picked again by the next run
+                    queueFull = true;
+                } else {
+                    failed(entry, e.getCause() != null ? e.getCause() : e);
+                }
+            }
+        }
+
+        if (!processed.isEmpty()) {
+            webhookInboxRepository.saveAll(processed);
+        }
+        return new Outcome(processed.size(), queueFull);
+    }
+
+    private void failed(WebhookInboxEntry entry, Throwable error) {
+        StripeProperties.Webhook webhook = stripeProperties.getWebhook();
+        int attempts = entry.getAttempts() + 1;
+
+        entry.setAttempts(attempts);
+        entry.setLastError(error.toString());
+        entry.setNextAttemptAt(LocalDateTime.now().plus(backoff(webhook.getInitialBackoff(), attempts)));
+        webhookInboxRepository.save(entry);
+
+        if (attempts >= webhook.getMaxAttempts()) {
+            logger.error("Giving up applying webhook event {} after {} attempts", entry.getEventId(), attempts, error);
+        } else {
+            logger.warn("Applying webhook event {} failed, attempt {}", entry.getEventId(), attempts, error);
+        }
+    }
+
+    /**
+     * Gives the wait after the given number of failed attempts.
+     *
+     * @param initialBackoff the wait after the first failed attempt
+     * @param attempts the number of failed attempts, at least 1
+     * @return the wait before the next attempt
+     */
+    static Duration backoff(Duration initialBackoff, int attempts) {
+        return initialBackoff.multipliedBy(1L << Math.min(attempts - 1, 20));
+    }
+
+    /**
+     * The outcome of a batch.
+     *
+     * @param applied the number of events applied
+     * @param queueFull whether some events were not attempted because the dispatcher queue was full
+     */
+    private record Outcome(int applied, boolean queueFull) {
+    }
+}
@@ -0,0 +1,139 @@
+package com.oixan.stripecashier.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares a JMH result file with a baseline one and fails when a score regressed by more than a threshold.
+ * <p>
+ * Results are matched by benchmark name and parameters. A score regresses when it is higher than the baseline in
+ * the time modes ({@code avgt}, {@code sample}, {@code ss}) and lower in the throughput mode ({@code thrpt}).
+ * Benchmarks missing from either file are reported and ignored.
+ * <p>
+ * Run by the {@code compare} execution of the {@code benchmark} profile:
+ * {@code mvn -P benchmark test-compile exec:exec exec:exec@compare -Djmh.baseline=path/to/baseline.json}, with
+ * {@code -Djmh.threshold=10} to change the allowed regression, in percent.
+ */
+public final class BenchmarkComparison {
+
+    private BenchmarkComparison() {
+    }
+
+    /**
+     * Compares two JMH result files and exits with status {@code 1} if a score regressed past the threshold.
+     *
+     * @param args the result file, the baseline file, and the allowed regression in percent
+     * @throws IOException if a file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: BenchmarkComparison <result.json> <baseline.json> <threshold-percent>");
+            System.exit(2);
+        }
+
+        ObjectMapper mapper = new ObjectMapper();
+        Map<String, Score> current = scores(mapper.readTree(new File(args[0])));
+        Map<String, Score> baseline = scores(mapper.readTree(new File(args[1])));
+        double threshold = Double.parseDouble(args[2]);
+
+        List<String> regressions = compare(current, baseline, threshold);
+        if (!regressions.isEmpty()) {
+            System.err.println(regressions.size() + " benchmark(s) regressed by more than " + threshold + "%:");
+            regressions.forEach(regression -> System.err.println("  " + regression));
+            System.exit(1);
+        }
+        System.out.println("No benchmark regressed by more than " + threshold + "%.");
+    }
+
+    /**
+     * Compares the scores of a run with the baseline ones, printing every change.
+     *
+     * @param current the scores of the run, by benchmark key
+     * @param baseline the scores of the baseline, by benchmark key
+     * @param threshold the allowed regression, in percent
+     * @return the description of each regression past the threshold
+     */
+    static List<String> compare(Map<String, Score> current, Map<String, Score> baseline, double threshold) {
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Score> entry : current.entrySet()) {
+            Score before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.println("NEW   " + entry.getKey() + ": " + entry.getValue());
+                continue;
+            }
+
+            double regression = entry.getValue().regressionFrom(before);
+            String line = String.format("%s: %s -> %s (%+.1f%%)", entry.getKey(), before, entry.getValue(), regression);
+            if (regression > threshold) {
+                regressions.add(line);
+                System.out.println("WORSE " + line);
+            } else {
+                System.out.println("OK    " + line);
+            }
+        }
+        baseline.keySet().stream()
+                .filter(key -> !current.containsKey(key))
+                .forEach(key -> System.out.println("GONE  " + key));
+        return regressions;
+    }
+
+    /**
+     * Reads the primary scores of a JMH JSON result.
+     *
+     * @param results the parsed result file
+     * @return the scores, by benchmark name and parameters
+     */
+    static Map<String, Score> scores(JsonNode results) {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (JsonNode result : results) {
+            StringBuilder key = new StringBuilder(result.path("benchmark").asText());
+            Map<String, String> params = new TreeMap<>();
+            result.path("params").fields().forEachRemaining(param -> params.put(param.getKey(), param.getValue().asText()));
+            if (!params.isEmpty()) {
+                key.append(params);
+            }
+
+            JsonNode metric = result.path("primaryMetric");
+            scores.put(key.toString(), new Score(
+                    result.path("mode").asText(), metric.path("score").asDouble(), metric.path("scoreUnit").asText()));
+        }
+        return scores;
+    }
+
+    /**
+     * The primary score of a benchmark.
+     *
+     * @param mode the JMH mode, such as {@code avgt} or {@code thrpt}
+     * @param value the score
+     * @param unit the unit of the score
+     */
+    record Score(String mode, double value, String unit) {
+
+        /**
+         * Computes how much worse this score is than a baseline one.
+         *
+         * @param baseline the baseline score
+         * @return the regression in percent, negative for an improvement
+         */
+        double regressionFrom(Score baseline) {
+            if (baseline.value() == 0) {
+                return 0;
+            }
+            double change = (value - baseline.value()) / baseline.value() * 100;
+            return "thrpt".equals(mode) ? -change : change;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.3f %s", value, unit);
+        }
+    }
+}
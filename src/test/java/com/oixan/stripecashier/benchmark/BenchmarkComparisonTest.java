@@ -0,0 +1,43 @@
+package com.oixan.stripecashier.benchmark;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class BenchmarkComparisonTest {
+
+    private static final String RESULT = "[{\"benchmark\":\"b.subscribe\",\"mode\":\"avgt\",\"params\":{\"latencyMillis\":\"%s\"},"
+            + "\"primaryMetric\":{\"score\":%s,\"scoreUnit\":\"us/op\"}},"
+            + "{\"benchmark\":\"b.create\",\"mode\":\"thrpt\",\"primaryMetric\":{\"score\":%s,\"scoreUnit\":\"ops/ms\"}}]";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void testSlowerTimeAndLowerThroughputAreRegressions() throws Exception {
+        Map<String, BenchmarkComparison.Score> baseline = scores("0", 100, 50);
+
+        assertTrue(BenchmarkComparison.compare(scores("0", 109, 46), baseline, 10).isEmpty());
+        assertTrue(BenchmarkComparison.compare(scores("0", 80, 60), baseline, 10).isEmpty(), "Improvements pass");
+
+        List<String> regressions = BenchmarkComparison.compare(scores("0", 120, 40), baseline, 10);
+        assertEquals(2, regressions.size());
+        assertTrue(regressions.get(0).startsWith("b.subscribe{latencyMillis=0}"));
+        assertTrue(regressions.get(1).endsWith("(+20.0%)"), "Regressions are positive in both modes");
+    }
+
+    @Test
+    void testBenchmarksAreMatchedByTheirParameters() throws Exception {
+        assertTrue(BenchmarkComparison.compare(scores("50", 1000, 50), scores("0", 100, 50), 10).isEmpty(),
+                "A benchmark run with other parameters has no baseline");
+    }
+
+    private Map<String, BenchmarkComparison.Score> scores(String latency, double subscribe, double create) throws Exception {
+        return BenchmarkComparison.scores(mapper.readTree(String.format(RESULT, latency, subscribe, create)));
+    }
+}
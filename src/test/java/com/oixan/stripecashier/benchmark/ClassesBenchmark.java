@@ -0,0 +1,75 @@
+package com.oixan.stripecashier.benchmark;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.oixan.stripecashier.entity.UserAccount;
+import com.oixan.stripecashier.support.Classes;
+
+import jakarta.persistence.Id;
+
+/**
+ * Measures the per-user cost of resolving and reading the {@code @Id} field: the former scan of the declared
+ * fields on every call against the cached lookup in {@link Classes}.
+ * <p>
+ * Run with {@code mvn -P benchmark test-compile exec:exec -Djmh.includes=ClassesBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClassesBenchmark {
+
+    private UserAccount user;
+
+    @Setup
+    public void setUp() {
+        user = new UserAccount();
+    }
+
+    @Benchmark
+    public Class<?> idTypeScan() throws Exception {
+        return scanIdField(UserAccount.class).getType();
+    }
+
+    @Benchmark
+    public Class<?> idTypeCached() throws Exception {
+        return Classes.idType(UserAccount.class);
+    }
+
+    @Benchmark
+    public Object idValueScan() throws Exception {
+        return scanIdField(user.getClass()).get(user);
+    }
+
+    @Benchmark
+    public Object idValueCached() throws Exception {
+        return Classes.idValue(user);
+    }
+
+    /**
+     * The lookup as it was before the cache: a scan of the declared fields on every call.
+     */
+    private static Field scanIdField(Class<?> clazz) throws NoSuchFieldException {
+        for (Field field : clazz.getDeclaredFields()) {
+            if (field.isAnnotationPresent(Id.class)) {
+                field.setAccessible(true);
+                return field;
+            }
+        }
+        throw new NoSuchFieldException("ID field not found in class " + clazz.getName());
+    }
+}
@@ -0,0 +1,207 @@
+package com.oixan.stripecashier.benchmark;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import com.oixan.stripecashier.builder.ChargeBuilder;
+import com.oixan.stripecashier.builder.CheckoutBuilder;
+import com.oixan.stripecashier.builder.StripeBuilder;
+import com.oixan.stripecashier.builder.SubscriptionBuilder;
+import com.oixan.stripecashier.cache.CaffeineCustomerCache;
+import com.oixan.stripecashier.client.StripeClientResolver;
+import com.oixan.stripecashier.client.StripeInvoker;
+import com.oixan.stripecashier.config.StripeProperties;
+import com.oixan.stripecashier.entity.Subscription;
+import com.oixan.stripecashier.entity.SubscriptionStatusView;
+import com.oixan.stripecashier.entity.UserAccount;
+import com.oixan.stripecashier.factory.ChargeBuilderFactory;
+import com.oixan.stripecashier.factory.CustomerManagerFactory;
+import com.oixan.stripecashier.factory.PaymentMethodsManagerFactory;
+import com.oixan.stripecashier.factory.SubscriptionBuilderFactory;
+import com.oixan.stripecashier.factory.SubscriptionManagerFactory;
+import com.oixan.stripecashier.factory.SubscriptionServiceFactory;
+import com.oixan.stripecashier.factory.UserServiceFactory;
+import com.oixan.stripecashier.factory.UserStripeFactory;
+import com.oixan.stripecashier.manager.CustomerManager;
+import com.oixan.stripecashier.manager.PaymentMethodsManager;
+import com.oixan.stripecashier.manager.SubscriptionManager;
+import com.oixan.stripecashier.service.SubscriptionService;
+import com.oixan.stripecashier.support.StripeStubServer;
+import com.oixan.stripecashier.support.StripeStubServer.Response;
+import com.stripe.exception.StripeException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Measures the user-facing operations of the library end to end against a {@link StripeStubServer}, with the
+ * beans wired as in an application and the database replaced by an in-memory {@link SubscriptionService}.
+ * <p>
+ * Each operation starts from {@link UserStripeFactory#create}, as the README usage does; {@code create} measures
+ * that step alone. With the default parameters, Stripe answers immediately and the scores are the overhead of
+ * the library and of the local HTTP round trips. {@code latencyMillis} delays every Stripe response, and
+ * {@code errorRate} answers that share of the calls with a retryable {@code 503}; a call still failing after
+ * its retries counts as a completed operation.
+ * <p>
+ * Run with {@code mvn -P benchmark test-compile exec:exec -Djmh.includes=StripeOperationsBenchmark}, adding for
+ * example {@code -p latencyMillis=50} to the JMH arguments.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StripeOperationsBenchmark {
+
+    private static final String SUBSCRIPTION_PATH = "/v1/subscriptions/sub_123";
+
+    private static final String SUBSCRIPTION = "{\"id\":\"sub_123\",\"object\":\"subscription\",\"customer\":\"cus_123\","
+            + "\"status\":\"active\",\"items\":{\"object\":\"list\",\"data\":[{\"id\":\"%s\",\"object\":\"subscription_item\","
+            + "\"quantity\":1,\"price\":{\"id\":\"%s\",\"object\":\"price\"}}]}}";
+
+    private static final String PAYMENT_INTENT = "{\"id\":\"pi_123\",\"object\":\"payment_intent\",\"status\":\"succeeded\","
+            + "\"amount\":1000,\"currency\":\"usd\",\"customer\":\"cus_123\",\"payment_method\":\"pm_default\"}";
+
+    @Param({"0"})
+    public long latencyMillis;
+
+    @Param({"0"})
+    public double errorRate;
+
+    private StripeStubServer stripe;
+
+    private AnnotationConfigApplicationContext context;
+
+    private UserStripeFactory userStripeFactory;
+
+    private UserAccount user;
+
+    @Setup
+    public void setUp() throws Exception {
+        stripe = StripeStubServer.start()
+                .stubResource("GET", "/v1/customers/cus_123", "/stripe/customer.json")
+                .stubResource("POST", "/v1/subscriptions", "/stripe/subscription.json")
+                .stub("GET", SUBSCRIPTION_PATH, String.format(SUBSCRIPTION, "si_1", "price_basic"))
+                .stub("POST", SUBSCRIPTION_PATH, String.format(SUBSCRIPTION, "si_2", "price_pro"))
+                .stub("POST", "/v1/payment_intents", PAYMENT_INTENT)
+                .latency(Duration.ofMillis(latencyMillis))
+                .errorRate(errorRate, Response.error(503, "api_error", "Injected failure"));
+
+        Subscription subscription = new Subscription();
+        subscription.setId(1L);
+        subscription.setUserId("cus_123");
+        subscription.setType("default");
+        subscription.setStripeId("sub_123");
+        subscription.setQuantity(1L);
+
+        // Stub-only mocks do not record their invocations, which would grow for the whole run
+        SubscriptionService subscriptionService = mock(SubscriptionService.class, withSettings().stubOnly());
+        when(subscriptionService.getSubscriptionByUserIdAndType(anyString(), anyString())).thenReturn(Optional.of(subscription));
+        when(subscriptionService.getSubscriptionStatus(anyString(), anyString()))
+                .thenReturn(Optional.of(new SubscriptionStatusView("default", "active", null, null)));
+        SubscriptionServiceFactory subscriptionServiceFactory = mock(SubscriptionServiceFactory.class, withSettings().stubOnly());
+        when(subscriptionServiceFactory.create()).thenReturn(subscriptionService);
+
+        context = new AnnotationConfigApplicationContext();
+        context.getBeanFactory().registerSingleton("subscriptionService", subscriptionService);
+        context.getBeanFactory().registerSingleton("subscriptionServiceFactory", subscriptionServiceFactory);
+        context.getBeanFactory().registerSingleton("userServiceFactory", mock(UserServiceFactory.class, withSettings().stubOnly()));
+        context.getBeanFactory().registerSingleton("stripeCashierExecutor", (Executor) Runnable::run);
+        context.getBeanFactory().registerSingleton("stripeInvoker", new StripeInvoker(new SimpleMeterRegistry()));
+        context.getBeanFactory().registerSingleton("stripeClientResolver", new StripeClientResolver(stripe.client()));
+        context.getBeanFactory().registerSingleton("customerCache", new CaffeineCustomerCache(10_000, Duration.ofMinutes(5)));
+        context.getBeanFactory().registerSingleton("stripeProperties", new StripeProperties());
+        context.register(
+                StripeBuilder.class,
+                CheckoutBuilder.class,
+                ChargeBuilder.class,
+                SubscriptionBuilder.class,
+                CustomerManager.class,
+                PaymentMethodsManager.class,
+                SubscriptionManager.class,
+                CustomerManagerFactory.class,
+                PaymentMethodsManagerFactory.class,
+                SubscriptionBuilderFactory.class,
+                SubscriptionManagerFactory.class,
+                ChargeBuilderFactory.class,
+                UserStripeFactory.class);
+        context.refresh();
+
+        userStripeFactory = context.getBean(UserStripeFactory.class);
+        user = new UserAccount();
+        user.setStripeId("cus_123");
+    }
+
+    /**
+     * Forgets the requests recorded by the stub server, which would otherwise grow for the whole run.
+     */
+    @TearDown(Level.Iteration)
+    public void resetRequests() {
+        stripe.reset();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+        stripe.close();
+    }
+
+    @Benchmark
+    public Object create() {
+        return userStripeFactory.create(user);
+    }
+
+    @Benchmark
+    public void subscribe(Blackhole blackhole) {
+        call(blackhole, () -> userStripeFactory.create(user).subscribe().setPriceId("price_basic").start());
+    }
+
+    @Benchmark
+    public void charge(Blackhole blackhole) {
+        call(blackhole, () -> userStripeFactory.create(user).charge().pay(10.0));
+    }
+
+    @Benchmark
+    public void status(Blackhole blackhole) {
+        call(blackhole, () -> userStripeFactory.create(user).subscription().status("default"));
+    }
+
+    @Benchmark
+    public void swap(Blackhole blackhole) {
+        call(blackhole, () -> userStripeFactory.create(user).subscription().swapItemSubscription("default", "price_pro"));
+    }
+
+    private static void call(Blackhole blackhole, Callable<?> operation) {
+        try {
+            blackhole.consume(operation.call());
+        } catch (StripeException e) {
+            blackhole.consume(e);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
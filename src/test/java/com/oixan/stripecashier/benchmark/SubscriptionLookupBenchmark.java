@@ -0,0 +1,113 @@
+package com.oixan.stripecashier.benchmark;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+/**
+ * Measures the lookup of a subscription by user ID and type on a {@code subscriptions} table of several million
+ * rows, in an H2 database in PostgreSQL mode.
+ * <p>
+ * {@code indexes} selects the schema: {@code before} has only the {@code (user_id, stripe_status)} index,
+ * {@code after} adds the unique {@code (user_id, type)} index declared on the entity. Each schema is queried for
+ * the whole row, as {@code findByUserIdAndType} does, and for the status columns only, as
+ * {@code findStatusByUserIdAndType} does.
+ * <p>
+ * Run with {@code mvn -P benchmark test-compile exec:exec -Djmh.includes=SubscriptionLookupBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SubscriptionLookupBenchmark {
+
+    /**
+     * The subscription types, each user holding one of each.
+     */
+    private static final String[] TYPES = {"default", "premium", "addon", "support"};
+
+    @Param({"2000000"})
+    public int rows;
+
+    @Param({"before", "after"})
+    public String indexes;
+
+    private SingleConnectionDataSource dataSource;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private int users;
+
+    @Setup
+    public void setUp() {
+        dataSource = new SingleConnectionDataSource(
+                "jdbc:h2:mem:subscriptions_" + indexes + ";MODE=PostgreSQL", "sa", "", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+
+        jdbcTemplate.execute("CREATE TABLE subscriptions ("
+                + "id BIGINT PRIMARY KEY, user_id VARCHAR(255) NOT NULL, type VARCHAR(255) NOT NULL, "
+                + "stripe_id VARCHAR(255) NOT NULL UNIQUE, stripe_status VARCHAR(255) NOT NULL, "
+                + "stripe_price VARCHAR(255), quantity BIGINT, trial_ends_at TIMESTAMP, ends_at TIMESTAMP, "
+                + "created_at TIMESTAMP NOT NULL, updated_at TIMESTAMP NOT NULL)");
+        jdbcTemplate.update("INSERT INTO subscriptions "
+                + "SELECT X, 'cus_' || (X / " + TYPES.length + "), "
+                + "CASEWHEN(MOD(X, 4) = 0, 'default', CASEWHEN(MOD(X, 4) = 1, 'premium', CASEWHEN(MOD(X, 4) = 2, 'addon', 'support'))), "
+                + "'sub_' || X, CASEWHEN(MOD(X, 7) = 0, 'canceled', 'active'), 'price_basic', 1, NULL, NULL, "
+                + "CURRENT_TIMESTAMP, CURRENT_TIMESTAMP FROM SYSTEM_RANGE(1, ?)", rows);
+
+        jdbcTemplate.execute("CREATE INDEX idx_user_id_stripe_status ON subscriptions (user_id, stripe_status)");
+        if ("after".equals(indexes)) {
+            jdbcTemplate.execute("CREATE UNIQUE INDEX idx_user_id_type ON subscriptions (user_id, type)");
+        }
+        jdbcTemplate.execute("ANALYZE");
+
+        users = rows / TYPES.length;
+    }
+
+    @TearDown
+    public void tearDown() {
+        jdbcTemplate.execute("DROP ALL OBJECTS");
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> entity() {
+        return jdbcTemplate.queryForList(
+                "SELECT id, user_id, type, stripe_id, stripe_status, stripe_price, quantity, trial_ends_at, ends_at, "
+                        + "created_at, updated_at FROM subscriptions WHERE user_id = ? AND type = ?",
+                randomUser(), randomType());
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> statusProjection() {
+        return jdbcTemplate.queryForList(
+                "SELECT type, stripe_status, trial_ends_at, ends_at FROM subscriptions WHERE user_id = ? AND type = ?",
+                randomUser(), randomType());
+    }
+
+    private String randomUser() {
+        return "cus_" + ThreadLocalRandom.current().nextInt(users);
+    }
+
+    private static String randomType() {
+        return TYPES[ThreadLocalRandom.current().nextInt(TYPES.length)];
+    }
+}
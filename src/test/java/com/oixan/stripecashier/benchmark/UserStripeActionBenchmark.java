@@ -0,0 +1,106 @@
+package com.oixan.stripecashier.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.oixan.stripecashier.builder.ChargeBuilder;
+import com.oixan.stripecashier.builder.CheckoutBuilder;
+import com.oixan.stripecashier.builder.SubscriptionBuilder;
+import com.oixan.stripecashier.entity.UserAccount;
+import com.oixan.stripecashier.factory.UserStripeAction;
+import com.oixan.stripecashier.interfaces.IUserStripeAction;
+import com.oixan.stripecashier.manager.CustomerManager;
+import com.oixan.stripecashier.manager.PaymentMethodsManager;
+import com.oixan.stripecashier.manager.SubscriptionManager;
+import com.oixan.stripecashier.proxy.UserStripeActionProxy;
+
+/**
+ * Compares the reflective {@link UserStripeActionProxy} with the direct {@link UserStripeAction}:
+ * the cost of creating one, and the cost of dispatching a call through it.
+ * <p>
+ * Run with {@code mvn -P benchmark test-compile exec:exec -Djmh.includes=UserStripeActionBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@SuppressWarnings("deprecation")
+public class UserStripeActionBenchmark {
+
+    private UserAccount user;
+    private CheckoutBuilder checkoutBuilder;
+    private SubscriptionBuilder subscriptionBuilder;
+    private SubscriptionManager subscriptionManager;
+    private CustomerManager customerManager;
+    private PaymentMethodsManager paymentMethodsManager;
+    private ChargeBuilder chargeBuilder;
+
+    private IUserStripeAction proxy;
+    private IUserStripeAction direct;
+
+    @Setup
+    public void setUp() {
+        user = new UserAccount();
+        user.setStripeId("cus_bench");
+
+        customerManager = new CustomerManager().setUser(user);
+        paymentMethodsManager = new PaymentMethodsManager().setCustomerManager(customerManager);
+        checkoutBuilder = new CheckoutBuilder().setUser(user);
+        subscriptionBuilder = new SubscriptionBuilder()
+                .setCustomerManager(customerManager)
+                .setPaymentMethodsManager(paymentMethodsManager);
+        subscriptionManager = new SubscriptionManager().setUser(user).setCustomerManager(customerManager);
+        chargeBuilder = new ChargeBuilder().setUser(user);
+
+        proxy = createProxy();
+        direct = createDirect();
+    }
+
+    @Benchmark
+    public IUserStripeAction createProxy() {
+        return UserStripeActionProxy.createProxy(user, checkoutBuilder, subscriptionBuilder, subscriptionManager,
+                customerManager, paymentMethodsManager, chargeBuilder);
+    }
+
+    @Benchmark
+    public IUserStripeAction createDirect() {
+        return new UserStripeAction(user, checkoutBuilder, subscriptionBuilder, subscriptionManager,
+                customerManager, paymentMethodsManager, chargeBuilder);
+    }
+
+    @Benchmark
+    public void dispatchProxy(Blackhole blackhole) {
+        dispatch(proxy, blackhole);
+    }
+
+    @Benchmark
+    public void dispatchDirect(Blackhole blackhole) {
+        dispatch(direct, blackhole);
+    }
+
+    /**
+     * Calls every accessor once; the last ones in the proxy's comparison chain are the slowest to reach.
+     */
+    private static void dispatch(IUserStripeAction action, Blackhole blackhole) {
+        blackhole.consume(action.checkout());
+        blackhole.consume(action.subscribe());
+        blackhole.consume(action.getUserStripe());
+        blackhole.consume(action.subscription());
+        blackhole.consume(action.customer());
+        blackhole.consume(action.paymentMethod());
+        blackhole.consume(action.charge());
+    }
+}
@@ -0,0 +1,136 @@
+package com.oixan.stripecashier.builder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.oixan.stripecashier.cache.CaffeineCustomerCache;
+import com.oixan.stripecashier.client.StripeClientResolver;
+import com.oixan.stripecashier.client.StripeInvoker;
+import com.oixan.stripecashier.entity.UserAccount;
+import com.oixan.stripecashier.factory.PaymentMethodsManagerFactory;
+import com.oixan.stripecashier.manager.CustomerManager;
+import com.oixan.stripecashier.manager.PaymentMethodsManager;
+import com.oixan.stripecashier.support.StripeStubServer;
+import com.stripe.model.PaymentIntent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class ChargeBuilderCallsTest {
+
+    private static final String PAYMENT_INTENT = "{\"id\":\"pi_123\",\"object\":\"payment_intent\",\"status\":\"succeeded\","
+            + "\"amount\":1000,\"currency\":\"usd\",\"customer\":\"cus_123\",\"payment_method\":\"pm_default\"}";
+
+    private static final String REFUND = "{\"id\":\"re_123\",\"object\":\"refund\",\"payment_intent\":\"pi_123\","
+            + "\"status\":\"succeeded\"}";
+
+    private StripeStubServer stripe;
+
+    private ChargeBuilder builder;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stripe = StripeStubServer.start()
+                .stubResource("GET", "/v1/customers/cus_123", "/stripe/customer.json")
+                .stub("POST", "/v1/payment_intents", PAYMENT_INTENT)
+                .stub("POST", "/v1/refunds", REFUND);
+
+        StripeClientResolver stripeClientResolver = new StripeClientResolver(stripe.client());
+        StripeInvoker stripeInvoker = new StripeInvoker(new SimpleMeterRegistry());
+        CaffeineCustomerCache customerCache = new CaffeineCustomerCache(100, Duration.ofMinutes(5));
+
+        UserAccount user = new UserAccount();
+        user.setStripeId("cus_123");
+
+        // The factory hands out a new manager per charge, as the prototype-scoped beans do
+        PaymentMethodsManagerFactory paymentMethodsManagerFactory = mock(PaymentMethodsManagerFactory.class);
+        when(paymentMethodsManagerFactory.create(user)).thenAnswer(invocation -> {
+            CustomerManager customerManager = new CustomerManager().setUser(user);
+            PaymentMethodsManager paymentMethodsManager = new PaymentMethodsManager().setCustomerManager(customerManager);
+            for (Object manager : new Object[] { customerManager, paymentMethodsManager }) {
+                ReflectionTestUtils.setField(manager, "stripeClientResolver", stripeClientResolver);
+                ReflectionTestUtils.setField(manager, "stripeInvoker", stripeInvoker);
+                ReflectionTestUtils.setField(manager, "customerCache", customerCache);
+            }
+            return paymentMethodsManager;
+        });
+
+        builder = new ChargeBuilder();
+        ReflectionTestUtils.setField(builder, "stripeBuilder", new StripeBuilder());
+        ReflectionTestUtils.setField(builder, "paymentMethodsManagerFactory", paymentMethodsManagerFactory);
+        ReflectionTestUtils.setField(builder, "stripeClientResolver", stripeClientResolver);
+        ReflectionTestUtils.setField(builder, "stripeInvoker", stripeInvoker);
+        builder.setUser(user);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stripe.close();
+    }
+
+    @Test
+    void testChargeWithDefaultPaymentMethodTakesOneCallOnceCached() throws Exception {
+        PaymentIntent first = builder.pay(10.0);
+        assertEquals(2, stripe.callCount());
+
+        stripe.reset();
+        PaymentIntent second = builder.pay(10.0);
+
+        assertEquals("pi_123", first.getId());
+        assertEquals("pi_123", second.getId());
+        assertEquals(1, stripe.callCount());
+        assertEquals(1, stripe.callCount("POST", "/v1/payment_intents"));
+        String body = URLDecoder.decode(stripe.requests().get(0).body(), StandardCharsets.UTF_8);
+        assertTrue(body.contains("payment_method=pm_default"));
+        assertTrue(body.contains("customer=cus_123"));
+    }
+
+    @Test
+    void testChargeSendsTheCallerKeyOnce() throws Exception {
+        builder.setIdempotencyKey("order-42").pay(10.0, "pm_default", null);
+        builder.pay(10.0, "pm_default", null);
+
+        String first = stripe.requests().get(0).idempotencyKey();
+        String second = stripe.requests().get(1).idempotencyKey();
+        assertEquals("order-42", first);
+        assertNotNull(second);
+        assertNotEquals(first, second);
+    }
+
+    @Test
+    void testRepeatedRefundsAreDistinct() throws Exception {
+        builder.refund("pi_123", new HashMap<>(Map.of("amount", 500)));
+        builder.refund("pi_123", new HashMap<>(Map.of("amount", 500)));
+
+        String first = stripe.requests().get(0).idempotencyKey();
+        assertTrue(first.startsWith("refund.create:"));
+        assertNotEquals(first, stripe.requests().get(1).idempotencyKey());
+    }
+
+    @Test
+    void testDerivedRefundKeySurvivesARetry() throws Exception {
+        builder.deriveIdempotencyKey().refund("pi_123", new HashMap<>(Map.of("amount", 500)));
+        builder.deriveIdempotencyKey().refund("pi_123", new HashMap<>(Map.of("amount", 500)));
+        builder.deriveIdempotencyKey().refund("pi_123", new HashMap<>(Map.of("amount", 300)));
+        builder.refund("pi_123", new HashMap<>(Map.of("amount", 500)));
+
+        String first = stripe.requests().get(0).idempotencyKey();
+        assertEquals(first, stripe.requests().get(1).idempotencyKey());
+        assertNotEquals(first, stripe.requests().get(2).idempotencyKey());
+        assertNotEquals(first, stripe.requests().get(3).idempotencyKey(), "The derivation applies to one call");
+    }
+}
@@ -0,0 +1,208 @@
+package com.oixan.stripecashier.builder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.oixan.stripecashier.cache.CaffeineCustomerCache;
+import com.oixan.stripecashier.client.StripeClientResolver;
+import com.oixan.stripecashier.client.StripeInvoker;
+import com.oixan.stripecashier.entity.UserAccount;
+import com.oixan.stripecashier.factory.SubscriptionServiceFactory;
+import com.oixan.stripecashier.manager.CustomerManager;
+import com.oixan.stripecashier.outbox.SubscriptionOutbox;
+import com.oixan.stripecashier.service.SubscriptionService;
+import com.oixan.stripecashier.support.StripeStubServer;
+import com.oixan.stripecashier.support.StripeStubServer.Response;
+import com.stripe.exception.InvalidRequestException;
+import com.stripe.model.Subscription;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class SubscriptionBuilderCallsTest {
+
+    private StripeStubServer stripe;
+
+    private SubscriptionService subscriptionService;
+
+    private SubscriptionBuilder builder;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private List<Runnable> pending;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stripe = StripeStubServer.start()
+                .stubResource("GET", "/v1/customers/cus_123", "/stripe/customer.json")
+                .stubResource("POST", "/v1/subscriptions", "/stripe/subscription.json");
+
+        subscriptionService = mock(SubscriptionService.class);
+        SubscriptionServiceFactory subscriptionServiceFactory = mock(SubscriptionServiceFactory.class);
+        when(subscriptionServiceFactory.create()).thenReturn(subscriptionService);
+
+        UserAccount user = new UserAccount();
+        user.setStripeId("cus_123");
+
+        meterRegistry = new SimpleMeterRegistry();
+        StripeInvoker stripeInvoker = new StripeInvoker(meterRegistry);
+        StripeClientResolver stripeClientResolver = new StripeClientResolver(stripe.client());
+
+        CustomerManager customerManager = new CustomerManager().setUser(user);
+        ReflectionTestUtils.setField(customerManager, "stripeInvoker", stripeInvoker);
+        ReflectionTestUtils.setField(customerManager, "stripeClientResolver", stripeClientResolver);
+        ReflectionTestUtils.setField(customerManager, "customerCache", new CaffeineCustomerCache(100, Duration.ofMinutes(5)));
+
+        // Holds the asynchronous calls until the test runs them
+        pending = new ArrayList<>();
+
+        builder = new SubscriptionBuilder();
+        ReflectionTestUtils.setField(builder, "executor", (Executor) pending::add);
+        ReflectionTestUtils.setField(builder, "subscriptionServiceFactory", subscriptionServiceFactory);
+        ReflectionTestUtils.setField(builder, "stripeInvoker", stripeInvoker);
+        ReflectionTestUtils.setField(builder, "stripeClientResolver", stripeClientResolver);
+        builder.setCustomerManager(customerManager)
+               .setPriceId("price_basic");
+    }
+
+    @AfterEach
+    void tearDown() {
+        stripe.close();
+    }
+
+    @Test
+    void testStartWithDefaultPaymentMethodTakesTwoCalls() throws Exception {
+        Subscription subscription = builder.start();
+
+        assertEquals("sub_123", subscription.getId());
+        assertEquals(2, stripe.callCount());
+        assertEquals(1, stripe.callCount("GET", "/v1/customers/cus_123"));
+        assertEquals(1, stripe.callCount("POST", "/v1/subscriptions"));
+
+        String customerQuery = URLDecoder.decode(stripe.requests().get(0).query(), StandardCharsets.UTF_8);
+        assertTrue(customerQuery.contains("invoice_settings.default_payment_method"));
+
+        String createBody = URLDecoder.decode(stripe.requests().get(1).body(), StandardCharsets.UTF_8);
+        assertTrue(createBody.contains("customer=cus_123"));
+        assertTrue(createBody.contains("default_payment_method=pm_default"));
+
+        ArgumentCaptor<com.oixan.stripecashier.entity.Subscription> saved =
+                ArgumentCaptor.forClass(com.oixan.stripecashier.entity.Subscription.class);
+        verify(subscriptionService).updateSubscription(saved.capture());
+        assertEquals("cus_123", saved.getValue().getUserId());
+        assertEquals("price_basic", saved.getValue().getStripePrice());
+
+        assertEquals(1, meterRegistry.get(StripeInvoker.METRIC_NAME)
+                .tags("operation", "customer.retrieve", "outcome", "success").timer().count());
+        assertEquals(1, meterRegistry.get(StripeInvoker.METRIC_NAME)
+                .tags("operation", "subscription.create", "outcome", "success").timer().count());
+    }
+
+    @Test
+    void testStartWithGivenPaymentMethodTakesOneCall() throws Exception {
+        builder.start(null, "pm_given", "default");
+
+        assertEquals(1, stripe.callCount());
+        String createBody = URLDecoder.decode(stripe.requests().get(0).body(), StandardCharsets.UTF_8);
+        assertTrue(createBody.contains("default_payment_method=pm_given"));
+    }
+
+    @Test
+    void testStartWithoutDefaultPaymentMethodIsRejected() throws Exception {
+        stripe.stub("GET", "/v1/customers/cus_123",
+                "{\"id\":\"cus_123\",\"object\":\"customer\",\"invoice_settings\":{\"default_payment_method\":null}}");
+
+        assertThrows(IllegalArgumentException.class, () -> builder.start());
+        assertEquals(0, stripe.callCount("POST", "/v1/subscriptions"));
+        verify(subscriptionService, never()).updateSubscription(any());
+    }
+
+    @Test
+    void testResubscribeSendsANewKey() throws Exception {
+        builder.start(null, "pm_given", "default");
+        builder.start(null, "pm_given", "default");
+
+        String first = stripe.requests().get(0).idempotencyKey();
+        assertTrue(first.startsWith("subscription.create:"));
+        assertNotEquals(first, stripe.requests().get(1).idempotencyKey());
+    }
+
+    @Test
+    void testRetriedStartSendsTheSameKeyAndUpsertsTheSameRow() throws Exception {
+        builder.deriveIdempotencyKey().start(null, "pm_given", "default");
+        builder.deriveIdempotencyKey().start(null, "pm_given", "default");
+        builder.setIdempotencyKey("signup-42").start(null, "pm_given", "default");
+
+        String first = stripe.requests().get(0).idempotencyKey();
+        assertTrue(first.startsWith("subscription.create:"));
+        assertEquals(first, stripe.requests().get(1).idempotencyKey());
+        assertEquals("signup-42", stripe.requests().get(2).idempotencyKey());
+        verify(subscriptionService, times(3)).updateSubscription(argThat(subscription ->
+                "cus_123".equals(subscription.getUserId()) && "default".equals(subscription.getType())));
+        verify(subscriptionService, never()).createSubscription(any());
+    }
+
+    @Test
+    void testStartWithOutboxQueuesTheSubscription() throws Exception {
+        SubscriptionOutbox outbox = mock(SubscriptionOutbox.class);
+        ReflectionTestUtils.setField(builder, "subscriptionOutbox", outbox);
+
+        builder.start(null, "pm_given", "default");
+
+        ArgumentCaptor<com.oixan.stripecashier.entity.Subscription> queued =
+                ArgumentCaptor.forClass(com.oixan.stripecashier.entity.Subscription.class);
+        verify(outbox).enqueue(queued.capture());
+        assertEquals("sub_123", queued.getValue().getStripeId());
+        assertEquals("cus_123", queued.getValue().getUserId());
+        verify(subscriptionService, never()).updateSubscription(any());
+    }
+
+    @Test
+    void testStartAsyncUsesTheBuilderStateOfTheCall() throws Exception {
+        CompletableFuture<Subscription> future = builder.setIdempotencyKey("signup-42").startAsync(null, "pm_given", "default");
+        builder.setPriceId("price_pro").setIdempotencyKey("signup-43");
+        pending.forEach(Runnable::run);
+
+        assertEquals("sub_123", future.join().getId());
+        String createBody = URLDecoder.decode(stripe.requests().get(0).body(), StandardCharsets.UTF_8);
+        assertTrue(createBody.contains("items[0][price]=price_basic"));
+        assertEquals("signup-42", stripe.requests().get(0).idempotencyKey());
+        verify(subscriptionService).updateSubscription(any());
+    }
+
+    @Test
+    void testStartAsyncCompletesExceptionallyWithTheStripeError() throws Exception {
+        stripe.respond("POST", "/v1/subscriptions",
+                request -> Response.error(400, "invalid_request_error", "No such price: 'price_basic'"));
+
+        CompletableFuture<Subscription> future = builder.startAsync(null, "pm_given", "default");
+        pending.forEach(Runnable::run);
+
+        CompletionException error = assertThrows(CompletionException.class, future::join);
+        assertTrue(error.getCause() instanceof InvalidRequestException);
+        verify(subscriptionService, never()).updateSubscription(any());
+    }
+}
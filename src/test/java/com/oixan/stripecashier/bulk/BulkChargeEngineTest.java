@@ -0,0 +1,206 @@
+package com.oixan.stripecashier.bulk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.oixan.stripecashier.builder.ChargeBuilder;
+import com.oixan.stripecashier.builder.StripeBuilder;
+import com.oixan.stripecashier.client.StripeClientResolver;
+import com.oixan.stripecashier.client.StripeInvoker;
+import com.oixan.stripecashier.config.StripeProperties;
+import com.oixan.stripecashier.entity.UserAccount;
+import com.oixan.stripecashier.factory.ChargeBuilderFactory;
+import com.oixan.stripecashier.support.StripeStubServer;
+import com.oixan.stripecashier.support.StripeStubServer.Response;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class BulkChargeEngineTest {
+
+    private StripeStubServer stripe;
+
+    private ExecutorService executor;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private StripeProperties stripeProperties;
+
+    private BulkChargeEngine engine;
+
+    private final AtomicInteger running = new AtomicInteger();
+
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        stripe = StripeStubServer.start().respond("POST", "/v1/payment_intents", request -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running.decrementAndGet();
+            }
+            String body = URLDecoder.decode(request.body(), StandardCharsets.UTF_8);
+            if (body.contains("amount=666")) {
+                return Response.error(402, "card_error", "Your card was declined.");
+            }
+            return new Response(200, "{\"id\":\"pi_" + Math.abs(request.idempotencyKey().hashCode()) + "\","
+                    + "\"object\":\"payment_intent\",\"status\":\"succeeded\",\"payment_method\":\"pm_card\"}");
+        });
+
+        StripeClientResolver stripeClientResolver = new StripeClientResolver(stripe.client());
+        StripeInvoker stripeInvoker = new StripeInvoker(new SimpleMeterRegistry());
+        ChargeBuilderFactory chargeBuilderFactory = mock(ChargeBuilderFactory.class);
+        when(chargeBuilderFactory.create(any())).thenAnswer(invocation -> {
+            ChargeBuilder builder = new ChargeBuilder();
+            ReflectionTestUtils.setField(builder, "stripeBuilder", new StripeBuilder());
+            ReflectionTestUtils.setField(builder, "stripeClientResolver", stripeClientResolver);
+            ReflectionTestUtils.setField(builder, "stripeInvoker", stripeInvoker);
+            return builder.setUser(invocation.getArgument(0));
+        });
+
+        executor = Executors.newFixedThreadPool(16);
+        meterRegistry = new SimpleMeterRegistry();
+        ObjectProvider<MeterRegistry> meterRegistryProvider = mock(ObjectProvider.class);
+        when(meterRegistryProvider.getIfAvailable(any())).thenReturn(meterRegistry);
+
+        stripeProperties = new StripeProperties();
+        stripeProperties.getBulk().setConcurrency(4);
+        stripeProperties.getBulk().setRateLimit(1000);
+
+        engine = new BulkChargeEngine();
+        ReflectionTestUtils.setField(engine, "chargeBuilderFactory", chargeBuilderFactory);
+        ReflectionTestUtils.setField(engine, "stripeProperties", stripeProperties);
+        ReflectionTestUtils.setField(engine, "executor", executor);
+        ReflectionTestUtils.setField(engine, "meterRegistry", meterRegistryProvider);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+        stripe.close();
+    }
+
+    @Test
+    void testEveryChargeGetsItsOwnResult() {
+        BulkChargeReport report = engine.charge(charges(20));
+
+        assertEquals(20, report.getResults().size());
+        assertEquals(18, report.getSucceeded());
+        assertEquals(2, report.getFailed());
+        assertEquals(Set.of("charge-6", "charge-16"), report.getFailures().stream()
+                .map(result -> result.getCharge().getId())
+                .collect(Collectors.toSet()));
+        report.getFailures().forEach(failure -> assertNotNull(failure.getError()));
+        assertFalse(report.isInterrupted());
+
+        assertEquals(18, meterRegistry.get(BulkChargeEngine.METRIC_NAME).tags("outcome", "success").timer().count());
+        assertEquals(2, meterRegistry.get(BulkChargeEngine.METRIC_NAME).tags("outcome", "failure").timer().count());
+    }
+
+    @Test
+    void testConcurrencyIsBounded() {
+        engine.charge(charges(24));
+
+        assertEquals(24, stripe.callCount());
+        assertTrue(maxRunning.get() <= 4, "at most 4 charges at once, got " + maxRunning.get());
+        assertTrue(maxRunning.get() > 1, "charges run concurrently");
+    }
+
+    @Test
+    void testRateLimitSpacesTheCharges() {
+        stripeProperties.getBulk().setRateLimit(20);
+
+        BulkChargeReport report = engine.charge(charges(30));
+
+        // The first 20 charges use the burst, the next 10 wait 50 ms each for a token
+        assertEquals(30, report.getResults().size());
+        assertTrue(report.getElapsed().compareTo(Duration.ofMillis(450)) >= 0, "got " + report.getElapsed());
+    }
+
+    @Test
+    void testResumedRunSkipsCompletedCharges() {
+        InMemoryChargeCheckpoint checkpoint = new InMemoryChargeCheckpoint();
+        engine.charge(charges(20).limit(12), checkpoint);
+        stripe.reset();
+
+        BulkChargeReport resumed = engine.charge(charges(20), checkpoint);
+
+        // The 11 charges that succeeded are skipped; the declined one is retried with the rest
+        assertEquals(11, resumed.getSkipped());
+        assertEquals(9, resumed.getResults().size());
+        assertEquals(9, stripe.callCount());
+    }
+
+    @Test
+    void testChargeIdIsTheIdempotencyKey() {
+        engine.charge(charges(3));
+
+        assertEquals(Set.of("bulk_charge:charge-0", "bulk_charge:charge-1", "bulk_charge:charge-2"),
+                stripe.requests().stream().map(StripeStubServer.Request::idempotencyKey).collect(Collectors.toSet()));
+    }
+
+    @Test
+    void testRejectedChargeIsRetriedWithANewKey() {
+        InMemoryChargeCheckpoint checkpoint = new InMemoryChargeCheckpoint();
+        engine.charge(charges(7), checkpoint);
+        engine.charge(charges(7), checkpoint);
+        stripe.reset();
+
+        engine.charge(charges(7), checkpoint);
+
+        // The two earlier runs were declined, so the third is the first to send a key numbered 2
+        assertEquals(3, checkpoint.getRejections("charge-6"));
+        assertEquals(List.of("bulk_charge:charge-6:2"),
+                stripe.requests().stream().map(StripeStubServer.Request::idempotencyKey).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testTimerIsRegisteredOncePerOutcome() {
+        engine.charge(charges(20));
+
+        assertEquals(2, meterRegistry.find(BulkChargeEngine.METRIC_NAME).timers().size());
+        assertEquals(2, ((Map<?, ?>) ReflectionTestUtils.getField(engine, "timers")).size());
+    }
+
+    private static Stream<BulkCharge> charges(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new BulkCharge("charge-" + i, user(i), i % 10 == 6 ? 6.66 : 10, "pm_card", null));
+    }
+
+    private static UserAccount user(int i) {
+        UserAccount user = new UserAccount();
+        user.setStripeId("cus_" + i);
+        return user;
+    }
+}
@@ -0,0 +1,134 @@
+package com.oixan.stripecashier.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.Test;
+
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.model.Customer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class CaffeineCustomerCacheTest {
+
+    @Test
+    void testCustomerIsLoadedOnce() throws Exception {
+        CaffeineCustomerCache cache = new CaffeineCustomerCache(100, Duration.ofMinutes(5));
+        AtomicInteger loads = new AtomicInteger();
+
+        Customer first = cache.get("cus_123", () -> load("cus_123", loads));
+        Customer second = cache.get("cus_123", () -> load("cus_123", loads));
+
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.stats().hitCount());
+        assertEquals(1, cache.stats().missCount());
+    }
+
+    @Test
+    void testInvalidatedCustomerIsLoadedAgain() throws Exception {
+        CaffeineCustomerCache cache = new CaffeineCustomerCache(100, Duration.ofMinutes(5));
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get("cus_123", () -> load("cus_123", loads));
+        cache.invalidate("cus_123");
+        cache.get("cus_123", () -> load("cus_123", loads));
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testFailedLoadIsNotCached() throws Exception {
+        CaffeineCustomerCache cache = new CaffeineCustomerCache(100, Duration.ofMinutes(5));
+        AtomicInteger loads = new AtomicInteger();
+
+        ApiConnectionException error = new ApiConnectionException("down");
+        assertSame(error, assertThrows(ApiConnectionException.class, () -> cache.get("cus_123", () -> {
+            throw error;
+        })));
+
+        cache.get("cus_123", () -> load("cus_123", loads));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testDisabledCacheAlwaysLoads() throws Exception {
+        CaffeineCustomerCache cache = new CaffeineCustomerCache(0, Duration.ofMinutes(5));
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get("cus_123", () -> load("cus_123", loads));
+        cache.get("cus_123", () -> load("cus_123", loads));
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testConcurrentMissesShareOneLoad() throws Exception {
+        CaffeineCustomerCache cache = new CaffeineCustomerCache(100, Duration.ofMinutes(5));
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Customer>> calls = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                calls.add(() -> {
+                    start.await();
+                    return cache.get("cus_123", () -> {
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+                        return load("cus_123", loads);
+                    });
+                });
+            }
+            List<Future<Customer>> futures = new ArrayList<>();
+            for (Callable<Customer> call : calls) {
+                futures.add(pool.submit(call));
+            }
+            start.countDown();
+            for (Future<Customer> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testHitsAndMissesArePublished() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        CaffeineCustomerCache cache = new CaffeineCustomerCache(100, Duration.ofMinutes(5)).bindTo(meterRegistry);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get("cus_123", () -> load("cus_123", loads));
+        cache.get("cus_123", () -> load("cus_123", loads));
+        cache.get("cus_123", () -> load("cus_123", loads));
+
+        assertEquals(2.0, meterRegistry.get("cache.gets")
+                .tags("cache", CaffeineCustomerCache.CACHE_NAME, "result", "hit").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get("cache.gets")
+                .tags("cache", CaffeineCustomerCache.CACHE_NAME, "result", "miss").functionCounter().count());
+    }
+
+    private static Customer load(String id, AtomicInteger loads) {
+        loads.incrementAndGet();
+        Customer customer = new Customer();
+        customer.setId(id);
+        return customer;
+    }
+}
@@ -0,0 +1,128 @@
+package com.oixan.stripecashier.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.oixan.stripecashier.entity.Subscription;
+
+public class SubscriptionCacheTest {
+
+    private AtomicLong now;
+
+    private AtomicInteger loads;
+
+    private SubscriptionCache cache;
+
+    @BeforeEach
+    void setUp() {
+        now = new AtomicLong();
+        loads = new AtomicInteger();
+        cache = new SubscriptionCache(2, Duration.ofSeconds(30), now::get);
+    }
+
+    @Test
+    void testRepeatedLookupIsServedFromCache() {
+        Subscription subscription = subscription(1L, "cus_1", "default");
+
+        cache.get("cus_1", "default", () -> load(subscription));
+        Optional<Subscription> cached = cache.get("cus_1", "default", () -> load(subscription));
+
+        assertSame(subscription, cached.get());
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    void testEntryExpiresAfterTtl() {
+        Subscription subscription = subscription(1L, "cus_1", "default");
+
+        cache.get("cus_1", "default", () -> load(subscription));
+        now.addAndGet(Duration.ofSeconds(31).toNanos());
+        cache.get("cus_1", "default", () -> load(subscription));
+
+        assertEquals(2, loads.get());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    void testLeastRecentlyUsedEntryIsEvicted() {
+        cache.get("cus_1", "default", () -> load(subscription(1L, "cus_1", "default")));
+        cache.get("cus_2", "default", () -> load(subscription(2L, "cus_2", "default")));
+        cache.get("cus_1", "default", () -> load(subscription(1L, "cus_1", "default")));
+        cache.get("cus_3", "default", () -> load(subscription(3L, "cus_3", "default")));
+
+        assertEquals(2, cache.size());
+        cache.get("cus_2", "default", () -> load(subscription(2L, "cus_2", "default")));
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    void testInvalidationForcesReload() {
+        Subscription subscription = subscription(7L, "cus_1", "default");
+
+        cache.get("cus_1", "default", () -> load(subscription));
+        cache.invalidate("cus_1", "default");
+        cache.get("cus_1", "default", () -> load(subscription));
+
+        cache.invalidateIf(s -> Long.valueOf(7L).equals(s.getId()));
+        cache.get("cus_1", "default", () -> load(subscription));
+
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void testLoadRacingWithInvalidationIsNotCached() {
+        Subscription stale = subscription(1L, "cus_1", "default");
+
+        cache.get("cus_1", "default", () -> {
+            cache.invalidate("cus_1", "default");
+            return load(stale);
+        });
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testMissingRowIsNotCached() {
+        assertFalse(cache.get("cus_1", "default", Optional::empty).isPresent());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testDisabledCacheAlwaysLoads() {
+        SubscriptionCache disabled = new SubscriptionCache(0, Duration.ofSeconds(30), now::get);
+        Subscription subscription = subscription(1L, "cus_1", "default");
+
+        disabled.get("cus_1", "default", () -> load(subscription));
+        assertTrue(disabled.get("cus_1", "default", () -> load(subscription)).isPresent());
+
+        assertEquals(2, loads.get());
+        assertEquals(0, disabled.size());
+    }
+
+    private Optional<Subscription> load(Subscription subscription) {
+        loads.incrementAndGet();
+        return Optional.of(subscription);
+    }
+
+    private static Subscription subscription(Long id, String userId, String type) {
+        Subscription subscription = new Subscription();
+        subscription.setId(id);
+        subscription.setUserId(userId);
+        subscription.setType(type);
+        subscription.setStripeId("sub_" + id);
+        subscription.setStripeStatus("active");
+        return subscription;
+    }
+}
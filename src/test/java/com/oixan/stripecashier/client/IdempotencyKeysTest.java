@@ -0,0 +1,44 @@
+package com.oixan.stripecashier.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class IdempotencyKeysTest {
+
+    @Test
+    void testDerivedKeyIgnoresMapOrder() {
+        Map<String, Object> first = new LinkedHashMap<>();
+        first.put("payment_intent", "pi_123");
+        first.put("amount", 500L);
+        first.put("metadata", Map.of("order", "42"));
+
+        Map<String, Object> second = new LinkedHashMap<>();
+        second.put("metadata", Map.of("order", "42"));
+        second.put("amount", 500L);
+        second.put("payment_intent", "pi_123");
+
+        assertEquals(IdempotencyKeys.derive("refund.create", first), IdempotencyKeys.derive("refund.create", second));
+    }
+
+    @Test
+    void testDerivedKeyDependsOnOperationAndInputs() {
+        String key = IdempotencyKeys.derive("refund.create", Map.of("payment_intent", "pi_123"));
+
+        assertTrue(key.startsWith("refund.create:"));
+        assertNotEquals(key, IdempotencyKeys.derive("refund.create", Map.of("payment_intent", "pi_456")));
+        assertNotEquals(key, IdempotencyKeys.derive("customer.create", Map.of("payment_intent", "pi_123")));
+        assertNotEquals(IdempotencyKeys.derive("op", List.of("a", "b")), IdempotencyKeys.derive("op", List.of("b", "a")));
+    }
+
+    @Test
+    void testRandomKeysDiffer() {
+        assertNotEquals(IdempotencyKeys.random("payment_intent.create"), IdempotencyKeys.random("payment_intent.create"));
+    }
+}
@@ -0,0 +1,95 @@
+package com.oixan.stripecashier.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.oixan.stripecashier.config.StripeProperties;
+import com.oixan.stripecashier.support.StripeStubServer;
+import com.oixan.stripecashier.support.StripeStubServer.Response;
+import com.stripe.StripeClient;
+import com.stripe.exception.RateLimitException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class RateLimitedHttpClientTest {
+
+    private static final String CUSTOMER_PATH = "/v1/customers/cus_123";
+
+    private static final String CUSTOMER = "{\"id\":\"cus_123\",\"object\":\"customer\"}";
+
+    private StripeStubServer stripe;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private StripeProperties.RateLimit settings;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stripe = StripeStubServer.start();
+        meterRegistry = new SimpleMeterRegistry();
+        settings = new StripeProperties.RateLimit();
+        settings.setEnabled(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stripe.close();
+    }
+
+    @Test
+    void testRateLimitedRequestIsRetriedAtALowerRate() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        stripe.respond("GET", CUSTOMER_PATH, request -> attempts.incrementAndGet() < 3
+                ? Response.error(429, "rate_limit", "Too many requests")
+                : new Response(200, CUSTOMER));
+        StripeRateLimiter rateLimiter = limiter("default");
+
+        StripeClient client = stripe.client(new RateLimitedHttpClient(new StripeHttpClient(new StripeProperties.Http()), rateLimiter));
+
+        assertEquals("cus_123", client.customers().retrieve("cus_123").getId());
+        assertEquals(3, stripe.callCount());
+        assertEquals(40, rateLimiter.getRate());
+    }
+
+    @Test
+    void testRateLimitedRequestFailsAfterTheRetries() {
+        settings.setMaxRetries(1);
+        stripe.respond("GET", CUSTOMER_PATH, request -> Response.error(429, "rate_limit", "Too many requests"));
+
+        StripeClient client = stripe.client(new RateLimitedHttpClient(new StripeHttpClient(new StripeProperties.Http()), limiter("default")));
+
+        assertThrows(RateLimitException.class, () -> client.customers().retrieve("cus_123"));
+        assertEquals(2, stripe.callCount());
+    }
+
+    @Test
+    void testEachClientIsPacedByItsOwnLimiter() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        stripe.respond("GET", CUSTOMER_PATH, request -> attempts.incrementAndGet() == 1
+                ? Response.error(429, "rate_limit", "Too many requests")
+                : new Response(200, CUSTOMER));
+        settings.setMaxRetries(0);
+        StripeRateLimiter acme = limiter("acme");
+        StripeRateLimiter globex = limiter("globex");
+        StripeClient acmeClient = stripe.client(new RateLimitedHttpClient(new StripeHttpClient(new StripeProperties.Http()), acme));
+        StripeClient globexClient = stripe.client(new RateLimitedHttpClient(new StripeHttpClient(new StripeProperties.Http()), globex));
+
+        assertThrows(RateLimitException.class, () -> acmeClient.customers().retrieve("cus_123"));
+        globexClient.customers().retrieve("cus_123");
+
+        assertEquals(40, acme.getRate());
+        assertEquals(80, globex.getRate());
+        assertEquals(40, meterRegistry.get("stripe.ratelimiter.rate").tag("tenant", "acme").gauge().value());
+        assertEquals(80, meterRegistry.get("stripe.ratelimiter.rate").tag("tenant", "globex").gauge().value());
+    }
+
+    private StripeRateLimiter limiter(String tenant) {
+        return new StripeRateLimiter(settings, meterRegistry, tenant, () -> 0L, nanos -> { });
+    }
+}
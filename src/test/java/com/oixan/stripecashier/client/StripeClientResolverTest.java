@@ -0,0 +1,150 @@
+package com.oixan.stripecashier.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.oixan.stripecashier.config.StripeProperties;
+import com.oixan.stripecashier.entity.UserAccount;
+import com.oixan.stripecashier.support.StripeStubServer;
+import com.stripe.StripeClient;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class StripeClientResolverTest {
+
+    private StripeStubServer stripe;
+
+    private StripeClient defaultClient;
+
+    private StripeClientResolver resolver;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stripe = StripeStubServer.start()
+                .stub("GET", "/v1/customers/cus_123", "{\"id\":\"cus_123\",\"object\":\"customer\"}");
+        defaultClient = stripe.client();
+
+        resolver = new StripeClientResolver(
+                defaultClient,
+                user -> user.getEmail() != null && user.getEmail().endsWith("@acme.test") ? "acme" : null,
+                Map.of("acme", tenant("sk_test_acme"), "globex", tenant("sk_test_globex")),
+                new StripeProperties.Http());
+    }
+
+    @AfterEach
+    void tearDown() {
+        stripe.close();
+    }
+
+    @Test
+    void testUsersAreRoutedToTheirTenant() throws Exception {
+        StripeClient acme = resolver.resolve(user("jane@acme.test"));
+
+        assertSame(defaultClient, resolver.resolve(user("john@example.test")));
+        assertSame(defaultClient, resolver.resolve(null));
+        assertNotSame(defaultClient, acme);
+        assertSame(acme, resolver.resolve(user("joe@acme.test")));
+        assertNotSame(acme, resolver.forTenant("globex"));
+    }
+
+    @Test
+    void testTenantsCallStripeWithTheirOwnKey() throws Exception {
+        resolver.resolve(user("jane@acme.test")).customers().retrieve("cus_123");
+        resolver.resolve(user("john@example.test")).customers().retrieve("cus_123");
+        resolver.forTenant("globex").customers().retrieve("cus_123");
+
+        List<String> keys = stripe.requests().stream().map(request -> request.header("Authorization")).toList();
+        assertEquals(List.of("Bearer sk_test_acme", "Bearer sk_test_stub", "Bearer sk_test_globex"), keys);
+    }
+
+    @Test
+    void testConcurrentTenantsKeepTheirKeys() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Void>> calls = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                String tenant = i % 2 == 0 ? "acme" : "globex";
+                calls.add(() -> {
+                    resolver.forTenant(tenant).customers().retrieve("cus_123");
+                    return null;
+                });
+            }
+            for (Future<Void> future : pool.invokeAll(calls)) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        Map<String, Long> perKey = stripe.requests().stream()
+                .collect(Collectors.groupingBy(request -> request.header("Authorization"), Collectors.counting()));
+        assertEquals(Map.of("Bearer sk_test_acme", 20L, "Bearer sk_test_globex", 20L), perKey);
+    }
+
+    @Test
+    void testEachTenantHasItsOwnRateLimiter() throws Exception {
+        StripeProperties.RateLimit rateLimit = new StripeProperties.RateLimit();
+        rateLimit.setEnabled(true);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        resolver = new StripeClientResolver(defaultClient, user -> null,
+                Map.of("acme", tenant("sk_test_acme"), "globex", tenant("sk_test_globex")),
+                new StripeProperties.Http(), tenant -> new StripeHttpClient(new StripeProperties.Http()), rateLimit, meterRegistry);
+
+        resolver.forTenant("acme").customers().retrieve("cus_123");
+        resolver.forTenant("globex").customers().retrieve("cus_123");
+
+        assertEquals(1, meterRegistry.get("stripe.ratelimiter.wait").tags("tenant", "acme", "priority", "interactive").timer().count());
+        assertEquals(1, meterRegistry.get("stripe.ratelimiter.wait").tags("tenant", "globex", "priority", "interactive").timer().count());
+    }
+
+    @Test
+    void testTenantClientsAreBuiltByTheFactory() throws Exception {
+        List<String> created = new ArrayList<>();
+        StripeHttpClient shared = new StripeHttpClient(new StripeProperties.Http());
+        resolver = new StripeClientResolver(defaultClient, user -> null,
+                Map.of("acme", tenant("sk_test_acme"), "globex", tenant("sk_test_globex")),
+                new StripeProperties.Http(), tenant -> {
+                    created.add(tenant);
+                    return shared;
+                }, new StripeProperties.RateLimit(), null);
+
+        resolver.forTenant("acme").customers().retrieve("cus_123");
+        resolver.forTenant("acme").customers().retrieve("cus_123");
+        resolver.forTenant("globex").customers().retrieve("cus_123");
+
+        assertEquals(List.of("acme", "globex"), created);
+        assertEquals(3, stripe.callCount());
+    }
+
+    @Test
+    void testUnknownTenantIsRejected() {
+        assertThrows(IllegalStateException.class, () -> resolver.forTenant("initech"));
+    }
+
+    private static StripeProperties.Tenant tenant(String apiKey) {
+        StripeProperties.Tenant tenant = new StripeProperties.Tenant();
+        tenant.setApiKey(apiKey);
+        return tenant;
+    }
+
+    private static UserAccount user(String email) {
+        UserAccount user = new UserAccount();
+        user.setEmail(email);
+        return user;
+    }
+}
@@ -0,0 +1,112 @@
+package com.oixan.stripecashier.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.oixan.stripecashier.config.StripeProperties;
+import com.oixan.stripecashier.support.StripeStubServer;
+import com.oixan.stripecashier.support.StripeStubServer.Response;
+import com.stripe.StripeClient;
+import com.stripe.exception.InvalidRequestException;
+import com.stripe.exception.RateLimitException;
+import com.stripe.exception.StripeException;
+import com.stripe.model.Customer;
+import com.stripe.param.CustomerCreateParams;
+
+public class StripeHttpClientTest {
+
+    private static final String CUSTOMER = "{\"id\":\"cus_123\",\"object\":\"customer\"}";
+
+    private StripeStubServer stripe;
+
+    private StripeClient client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stripe = StripeStubServer.start();
+        client = stripe.client();
+    }
+
+    @AfterEach
+    void tearDown() {
+        stripe.close();
+    }
+
+    @Test
+    void testRequestIsSentWithStripeHeaders() throws Exception {
+        stripe.stub("POST", "/v1/customers", CUSTOMER);
+
+        Customer customer = client.customers().create(CustomerCreateParams.builder().setEmail("a@example.com").build());
+
+        assertEquals("cus_123", customer.getId());
+        assertEquals(1, stripe.callCount());
+        assertTrue(stripe.requests().get(0).body().contains("email=a%40example.com"));
+    }
+
+    @Test
+    void testRetryableStatusIsRetried() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        stripe.respond("GET", "/v1/customers/cus_123", request -> attempts.incrementAndGet() == 1
+                ? Response.error(503, "api_error", "Unavailable")
+                : new Response(200, CUSTOMER));
+
+        assertEquals("cus_123", client.customers().retrieve("cus_123").getId());
+        assertEquals(2, stripe.callCount());
+    }
+
+    @Test
+    void testRetriesStopAtTheLimit() {
+        stripe.stub("GET", "/v1/customers/cus_123", 409, Response.error(409, "invalid_request_error", "Conflict").json());
+
+        assertThrows(StripeException.class, () -> client.customers().retrieve("cus_123"));
+        assertEquals(3, stripe.callCount());
+    }
+
+    @Test
+    void testClientErrorsAndRateLimitsAreNotRetried() {
+        stripe.stub("GET", "/v1/customers/cus_400", 400, Response.error(400, "invalid_request_error", "Bad").json());
+        stripe.stub("GET", "/v1/customers/cus_429", 429, Response.error(429, "invalid_request_error", "Slow down").json());
+
+        assertThrows(InvalidRequestException.class, () -> client.customers().retrieve("cus_400"));
+        assertThrows(RateLimitException.class, () -> client.customers().retrieve("cus_429"));
+        assertEquals(2, stripe.callCount());
+    }
+
+    @Test
+    void testRetriedWritesKeepTheirIdempotencyKey() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        stripe.respond("POST", "/v1/customers", request -> attempts.incrementAndGet() == 1
+                ? Response.error(500, "api_error", "Boom")
+                : new Response(200, CUSTOMER));
+
+        client.customers().create(CustomerCreateParams.builder().build());
+
+        assertEquals(2, stripe.callCount());
+        assertNotNull(stripe.requests().get(0).idempotencyKey());
+        assertEquals(stripe.requests().get(0).idempotencyKey(), stripe.requests().get(1).idempotencyKey());
+    }
+
+    @Test
+    void testBackoffIsJitteredWithinTheCap() {
+        StripeProperties.Http http = new StripeProperties.Http();
+        http.setInitialBackoff(Duration.ofMillis(100));
+        http.setMaxBackoff(Duration.ofMillis(300));
+        StripeHttpClient httpClient = new StripeHttpClient(http);
+
+        for (int i = 0; i < 100; i++) {
+            long first = httpClient.backoff(0);
+            long capped = httpClient.backoff(5);
+            assertTrue(first >= 50 && first <= 100, "first retry waited " + first);
+            assertTrue(capped >= 150 && capped <= 300, "capped retry waited " + capped);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.oixan.stripecashier.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.oixan.stripecashier.support.StripeCall;
+import com.stripe.exception.ApiConnectionException;
+import com.stripe.exception.ApiException;
+import com.stripe.exception.CardException;
+import com.stripe.exception.InvalidRequestException;
+import com.stripe.exception.RateLimitException;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class StripeInvokerTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private StripeInvoker invoker;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        invoker = new StripeInvoker(meterRegistry);
+    }
+
+    @Test
+    void testSuccessfulCallIsTimed() throws Exception {
+        assertEquals("cus_123", invoker.invoke("customer.retrieve", () -> "cus_123"));
+        invoker.invoke("customer.retrieve", () -> "cus_456");
+
+        assertEquals(2, timer("customer.retrieve", "success").count());
+    }
+
+    @Test
+    void testFailedCallIsTaggedWithItsOutcome() {
+        RateLimitException error = new RateLimitException("Too many requests", "req_1", null, null, 429, null);
+
+        RateLimitException thrown = assertThrows(RateLimitException.class,
+                () -> invoker.invoke("subscription.list", () -> {
+                    throw error;
+                }));
+
+        assertSame(error, thrown);
+        assertEquals(1, timer("subscription.list", "rate_limited").count());
+    }
+
+    @Test
+    void testConcurrentCallsWithTheSameKeyReachStripeOnce() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        StripeCall<String> call = () -> {
+            calls.incrementAndGet();
+            started.countDown();
+            await(release);
+            return "pi_123";
+        };
+
+        FutureTask<String> first = new FutureTask<>(() -> invoker.invoke("payment_intent.create", "key_1", call));
+        new Thread(first).start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        List<FutureTask<String>> retries = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            FutureTask<String> retry = new FutureTask<>(() -> invoker.invoke("payment_intent.create", "key_1", call));
+            Thread thread = new Thread(retry);
+            thread.start();
+            retries.add(retry);
+            threads.add(thread);
+        }
+        // The retries park on the running call before it is released
+        for (Thread thread : threads) {
+            while (thread.getState() != Thread.State.WAITING) {
+                Thread.onSpinWait();
+            }
+        }
+        release.countDown();
+
+        assertEquals("pi_123", first.get(5, TimeUnit.SECONDS));
+        for (FutureTask<String> retry : retries) {
+            assertEquals("pi_123", retry.get(5, TimeUnit.SECONDS));
+        }
+
+        assertEquals(1, calls.get());
+        assertEquals(0, invoker.inFlight());
+        assertEquals(1, timer("payment_intent.create", "success").count());
+    }
+
+    @Test
+    void testFailedKeyedCallIsReleased() throws Exception {
+        ApiConnectionException error = new ApiConnectionException("Timed out");
+
+        assertSame(error, assertThrows(ApiConnectionException.class,
+                () -> invoker.invoke("refund.create", "key_1", () -> {
+                    throw error;
+                })));
+
+        assertEquals(0, invoker.inFlight());
+        assertEquals("re_123", invoker.invoke("refund.create", "key_1", () -> "re_123"));
+    }
+
+    @Test
+    void testRuntimeErrorIsTaggedAsError() {
+        assertThrows(IllegalStateException.class, () -> invoker.invoke("refund.create", () -> {
+            throw new IllegalStateException();
+        }));
+
+        assertEquals(1, timer("refund.create", "error").count());
+    }
+
+    @Test
+    void testOutcomeClassification() {
+        assertEquals("rate_limited", StripeInvoker.outcome(
+                new RateLimitException("", null, null, null, 429, null)));
+        assertEquals("card_error", StripeInvoker.outcome(
+                new CardException("", null, "card_declined", null, null, null, 402, null)));
+        assertEquals("invalid_request", StripeInvoker.outcome(
+                new InvalidRequestException("", null, null, null, 400, null)));
+        assertEquals("connection_error", StripeInvoker.outcome(new ApiConnectionException("")));
+        assertEquals("api_error", StripeInvoker.outcome(new ApiException("", null, null, 500, null)));
+    }
+
+    private Timer timer(String operation, String outcome) {
+        return meterRegistry.get(StripeInvoker.METRIC_NAME).tags("operation", operation, "outcome", outcome).timer();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
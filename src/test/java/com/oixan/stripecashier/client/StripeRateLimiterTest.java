@@ -0,0 +1,137 @@
+package com.oixan.stripecashier.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.oixan.stripecashier.config.StripeProperties;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class StripeRateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final List<Long> sleeps = new ArrayList<>();
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private StripeProperties.RateLimit settings;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        settings = new StripeProperties.RateLimit();
+        settings.setMaxRate(40);
+        settings.setMinRate(5);
+        settings.setRecovery(10);
+        settings.setBatchShare(0.5);
+    }
+
+    @Test
+    void testCallsAreSpacedByTheRateAfterTheBurst() {
+        StripeRateLimiter limiter = limiter();
+
+        // The burst is a quarter of a second of calls
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire();
+        }
+        assertTrue(sleeps.isEmpty());
+
+        limiter.acquire();
+        limiter.acquire();
+        assertEquals(List.of(millis(25), millis(25)), sleeps);
+    }
+
+    @Test
+    void testRateLimitedCallHalvesTheRateOncePerSecond() {
+        StripeRateLimiter limiter = limiter();
+
+        limiter.onRateLimited();
+        limiter.onRateLimited();
+        assertEquals(20, limiter.getRate());
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        limiter.onRateLimited();
+        assertEquals(10, limiter.getRate());
+
+        for (int i = 0; i < 3; i++) {
+            now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+            limiter.onRateLimited();
+        }
+        assertEquals(5, limiter.getRate());
+    }
+
+    @Test
+    void testRateGrowsBackLinearlyToTheMaximum() {
+        StripeRateLimiter limiter = limiter();
+        limiter.onRateLimited();
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        limiter.acquire();
+        assertEquals(30, limiter.getRate(), 0.001);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        limiter.acquire();
+        assertEquals(40, limiter.getRate(), 0.001);
+    }
+
+    @Test
+    void testBatchCallsOnlyUseTheirShareOfTheRate() {
+        StripeRateLimiter limiter = limiter();
+
+        try (StripeRateLimiter.Scope scope = StripeRateLimiter.batch()) {
+            assertEquals(StripeRateLimiter.Priority.BATCH, StripeRateLimiter.currentPriority());
+            for (int i = 0; i < 25; i++) {
+                limiter.acquire();
+            }
+        }
+        assertEquals(StripeRateLimiter.Priority.INTERACTIVE, StripeRateLimiter.currentPriority());
+
+        // After their burst of 5, batch calls run at half the rate: 20 calls take a second
+        assertEquals(TimeUnit.SECONDS.toNanos(1), now.get(), millis(1));
+
+        // The shared bucket kept tokens for the interactive calls
+        sleeps.clear();
+        limiter.acquire();
+        assertTrue(sleeps.isEmpty());
+    }
+
+    @Test
+    void testQueueAndWaitAreMeasured() {
+        List<Double> queued = new ArrayList<>();
+        StripeRateLimiter limiter = new StripeRateLimiter(settings, meterRegistry, now::get, nanos -> {
+            queued.add(meterRegistry.get("stripe.ratelimiter.queue").tag("priority", "interactive").gauge().value());
+            now.addAndGet(nanos);
+        });
+
+        for (int i = 0; i < 11; i++) {
+            limiter.acquire();
+        }
+
+        assertEquals(List.of(1.0), queued);
+        assertEquals(0, meterRegistry.get("stripe.ratelimiter.queue").tag("priority", "interactive").gauge().value());
+        assertEquals(11, meterRegistry.get("stripe.ratelimiter.wait").tag("priority", "interactive").timer().count());
+        assertEquals(25, meterRegistry.get("stripe.ratelimiter.wait").tag("priority", "interactive").timer()
+                .totalTime(TimeUnit.MILLISECONDS), 0.001);
+        assertEquals(40, meterRegistry.get("stripe.ratelimiter.rate").tag("tenant", "default").gauge().value());
+    }
+
+    private StripeRateLimiter limiter() {
+        return new StripeRateLimiter(settings, meterRegistry, now::get, nanos -> {
+            sleeps.add(nanos);
+            now.addAndGet(nanos);
+        });
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
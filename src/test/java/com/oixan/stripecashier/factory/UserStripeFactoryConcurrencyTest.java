@@ -0,0 +1,159 @@
+package com.oixan.stripecashier.factory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.oixan.stripecashier.builder.ChargeBuilder;
+import com.oixan.stripecashier.builder.CheckoutBuilder;
+import com.oixan.stripecashier.builder.StripeBuilder;
+import com.oixan.stripecashier.builder.SubscriptionBuilder;
+import com.oixan.stripecashier.cache.CaffeineCustomerCache;
+import com.oixan.stripecashier.client.StripeClientResolver;
+import com.oixan.stripecashier.client.StripeInvoker;
+import com.oixan.stripecashier.config.StripeProperties;
+import com.oixan.stripecashier.entity.UserAccount;
+import com.oixan.stripecashier.interfaces.IUserStripe;
+import com.oixan.stripecashier.interfaces.IUserStripeAction;
+import com.oixan.stripecashier.manager.CustomerManager;
+import com.oixan.stripecashier.manager.PaymentMethodsManager;
+import com.oixan.stripecashier.manager.SubscriptionManager;
+import com.oixan.stripecashier.service.SubscriptionService;
+import com.stripe.StripeClient;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class UserStripeFactoryConcurrencyTest {
+
+    private static final int THREADS = 32;
+
+    private static final int ITERATIONS = 200;
+
+    private AnnotationConfigApplicationContext context;
+
+    private UserStripeFactory userStripeFactory;
+
+    @BeforeEach
+    void setUp() {
+        context = new AnnotationConfigApplicationContext();
+        // Registered as ready-made singletons so the mocks are not autowired themselves
+        context.getBeanFactory().registerSingleton("subscriptionService", mock(SubscriptionService.class));
+        context.getBeanFactory().registerSingleton("subscriptionServiceFactory", mock(SubscriptionServiceFactory.class));
+        context.getBeanFactory().registerSingleton("userServiceFactory", mock(UserServiceFactory.class));
+        context.getBeanFactory().registerSingleton("stripeCashierExecutor", (Executor) Runnable::run);
+        context.getBeanFactory().registerSingleton("stripeInvoker", new StripeInvoker(new SimpleMeterRegistry()));
+        context.getBeanFactory().registerSingleton("stripeClientResolver", new StripeClientResolver(new StripeClient("sk_test_unused")));
+        context.getBeanFactory().registerSingleton("customerCache", new CaffeineCustomerCache(100, Duration.ofMinutes(5)));
+        context.getBeanFactory().registerSingleton("stripeProperties", new StripeProperties());
+        context.register(
+                StripeBuilder.class,
+                CheckoutBuilder.class,
+                ChargeBuilder.class,
+                SubscriptionBuilder.class,
+                CustomerManager.class,
+                PaymentMethodsManager.class,
+                SubscriptionManager.class,
+                CustomerManagerFactory.class,
+                PaymentMethodsManagerFactory.class,
+                SubscriptionBuilderFactory.class,
+                SubscriptionManagerFactory.class,
+                ChargeBuilderFactory.class,
+                UserStripeFactory.class);
+        context.refresh();
+
+        userStripeFactory = context.getBean(UserStripeFactory.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        context.close();
+    }
+
+    @Test
+    void testEachCallGetsItsOwnInstances() {
+        IUserStripeAction first = userStripeFactory.create(user(1));
+        IUserStripeAction second = userStripeFactory.create(user(2));
+
+        assertNotSame(first.subscribe(), second.subscribe());
+        assertNotSame(first.subscription(), second.subscription());
+        assertNotSame(first.customer(), second.customer());
+        assertNotSame(first.paymentMethod(), second.paymentMethod());
+        assertNotSame(first.charge(), second.charge());
+        assertNotSame(first.checkout(), second.checkout());
+
+        assertEquals("cus_1", first.customer().stripeId());
+        assertEquals("cus_2", second.customer().stripeId());
+    }
+
+    @Test
+    void testConcurrentUsersDoNotSeeEachOther() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> results = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            Callable<Integer> task = () -> {
+                start.await();
+                int mismatches = 0;
+                for (int i = 0; i < ITERATIONS; i++) {
+                    IUserStripe user = user(thread * ITERATIONS + i);
+                    IUserStripeAction action = userStripeFactory.create(user);
+                    Thread.yield();
+                    mismatches += boundUsers(action).stream().filter(bound -> bound != user).count();
+                }
+                return mismatches;
+            };
+            results.add(pool.submit(task));
+        }
+
+        start.countDown();
+        int mismatches = 0;
+        for (Future<Integer> result : results) {
+            mismatches += result.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(0, mismatches);
+    }
+
+    /**
+     * Collects the user every builder and manager of the action is bound to.
+     */
+    private static List<Object> boundUsers(IUserStripeAction action) {
+        return List.of(
+                action.getUserStripe(),
+                action.customer().getUser(),
+                ReflectionTestUtils.getField(action.subscription(), "user"),
+                ((CustomerManager) ReflectionTestUtils.getField(action.subscription(), "customerManager")).getUser(),
+                ((CustomerManager) ReflectionTestUtils.getField(action.subscribe(), "customerManager")).getUser(),
+                ((CustomerManager) ReflectionTestUtils.getField(action.paymentMethod(), "customerManager")).getUser(),
+                ReflectionTestUtils.getField(action.charge(), "user"),
+                ReflectionTestUtils.getField(action.checkout(), "user"));
+    }
+
+    private static IUserStripe user(int id) {
+        UserAccount user = new UserAccount();
+        user.setStripeId("cus_" + id);
+        return user;
+    }
+}
@@ -0,0 +1,79 @@
+package com.oixan.stripecashier.manager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.oixan.stripecashier.cache.CaffeineCustomerCache;
+import com.oixan.stripecashier.client.StripeClientResolver;
+import com.oixan.stripecashier.client.StripeInvoker;
+import com.oixan.stripecashier.entity.UserAccount;
+import com.oixan.stripecashier.factory.UserServiceFactory;
+import com.oixan.stripecashier.service.UserServiceStripe;
+import com.oixan.stripecashier.support.StripeStubServer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class CustomerManagerCallsTest {
+
+    private StripeStubServer stripe;
+
+    private UserServiceFactory userServiceFactory;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stripe = StripeStubServer.start()
+                .stub("POST", "/v1/customers", "{\"id\":\"cus_123\",\"object\":\"customer\"}");
+
+        userServiceFactory = mock(UserServiceFactory.class);
+        when(userServiceFactory.create(any(), any())).thenReturn(mock(UserServiceStripe.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        stripe.close();
+    }
+
+    @Test
+    void testCreationWithoutKeyGetsRandomKey() throws Exception {
+        customerManager(user(7L, "ada@example.com")).createAsStripeCustomer(null);
+        customerManager(user(7L, "ada@example.com")).createAsStripeCustomer(null);
+
+        String first = stripe.requests().get(0).idempotencyKey();
+        assertTrue(first.startsWith("customer.create:"));
+        assertNotEquals(first, stripe.requests().get(1).idempotencyKey());
+    }
+
+    @Test
+    void testCallerKeyIsSent() throws Exception {
+        customerManager(user(7L, "ada@example.com")).createAsStripeCustomer(null, "signup-7");
+
+        assertEquals("signup-7", stripe.requests().get(0).idempotencyKey());
+    }
+
+    private CustomerManager customerManager(UserAccount user) {
+        CustomerManager customerManager = new CustomerManager().setUser(user);
+        ReflectionTestUtils.setField(customerManager, "userServiceFactory", userServiceFactory);
+        ReflectionTestUtils.setField(customerManager, "stripeClientResolver", new StripeClientResolver(stripe.client()));
+        ReflectionTestUtils.setField(customerManager, "stripeInvoker", new StripeInvoker(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(customerManager, "customerCache", new CaffeineCustomerCache(100, Duration.ofMinutes(5)));
+        return customerManager;
+    }
+
+    private static UserAccount user(long id, String email) {
+        UserAccount user = new UserAccount();
+        ReflectionTestUtils.setField(user, "id", id);
+        user.setEmail(email);
+        return user;
+    }
+}
@@ -0,0 +1,204 @@
+package com.oixan.stripecashier.manager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.oixan.stripecashier.cache.CaffeineCustomerCache;
+import com.oixan.stripecashier.client.StripeClientResolver;
+import com.oixan.stripecashier.client.StripeInvoker;
+import com.oixan.stripecashier.client.StripePagingException;
+import com.oixan.stripecashier.entity.UserAccount;
+import com.oixan.stripecashier.support.StripeStubServer;
+import com.oixan.stripecashier.support.StripeStubServer.Response;
+import com.stripe.exception.InvalidRequestException;
+import com.stripe.model.PaymentMethod;
+import com.stripe.model.StripeCollection;
+import com.stripe.param.PaymentMethodListParams;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class PaymentMethodsManagerCallsTest {
+
+    private static final String CUSTOMER_PATH = "/v1/customers/cus_123";
+
+    private static final String PAYMENT_METHOD = "{\"id\":\"%s\",\"object\":\"payment_method\",\"type\":\"card\",\"customer\":%s}";
+
+    private StripeStubServer stripe;
+
+    private CustomerManager customerManager;
+
+    private PaymentMethodsManager paymentMethodsManager;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stripe = StripeStubServer.start()
+                .stubResource("GET", CUSTOMER_PATH, "/stripe/customer.json")
+                .stubResource("POST", CUSTOMER_PATH, "/stripe/customer.json");
+
+        StripeClientResolver stripeClientResolver = new StripeClientResolver(stripe.client());
+        StripeInvoker stripeInvoker = new StripeInvoker(new SimpleMeterRegistry());
+        CaffeineCustomerCache customerCache = new CaffeineCustomerCache(100, Duration.ofMinutes(5));
+
+        UserAccount user = new UserAccount();
+        user.setStripeId("cus_123");
+
+        customerManager = new CustomerManager().setUser(user);
+        paymentMethodsManager = new PaymentMethodsManager().setCustomerManager(customerManager);
+        for (Object manager : new Object[] { customerManager, paymentMethodsManager }) {
+            ReflectionTestUtils.setField(manager, "stripeClientResolver", stripeClientResolver);
+            ReflectionTestUtils.setField(manager, "stripeInvoker", stripeInvoker);
+            ReflectionTestUtils.setField(manager, "customerCache", customerCache);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        stripe.close();
+    }
+
+    @Test
+    void testCustomerIsRetrievedOncePerFlow() throws Exception {
+        customerManager.asStripeCustomer();
+        PaymentMethod first = paymentMethodsManager.defaultPaymentMethod();
+        PaymentMethod second = paymentMethodsManager.defaultPaymentMethod();
+
+        assertEquals("pm_default", first.getId());
+        assertEquals("pm_default", second.getId());
+        assertEquals(1, stripe.callCount());
+        assertTrue(URLDecoder.decode(stripe.requests().get(0).query(), StandardCharsets.UTF_8)
+                .contains("invoice_settings.default_payment_method"));
+    }
+
+    @Test
+    void testSetDefaultPaymentMethodEvictsTheCustomer() throws Exception {
+        paymentMethodsManager.defaultPaymentMethod();
+
+        PaymentMethod paymentMethod = new PaymentMethod();
+        paymentMethod.setId("pm_new");
+        paymentMethodsManager.setDefaultPaymentMethod(paymentMethod);
+
+        paymentMethodsManager.defaultPaymentMethod();
+
+        assertEquals(2, stripe.callCount("GET", CUSTOMER_PATH));
+        assertEquals(1, stripe.callCount("POST", CUSTOMER_PATH));
+        String updateBody = URLDecoder.decode(stripe.requests().get(1).body(), StandardCharsets.UTF_8);
+        assertTrue(updateBody.contains("invoice_settings[default_payment_method]=pm_new"));
+    }
+
+    @Test
+    void testAddPaymentMethodEvictsTheCustomer() throws Exception {
+        stripe.stub("GET", "/v1/payment_methods/pm_new", String.format(PAYMENT_METHOD, "pm_new", "null"))
+              .stub("POST", "/v1/payment_methods/pm_new/attach", String.format(PAYMENT_METHOD, "pm_new", "\"cus_123\""));
+
+        paymentMethodsManager.defaultPaymentMethod();
+        paymentMethodsManager.addPaymentMethod("pm_new");
+        paymentMethodsManager.defaultPaymentMethod();
+
+        assertEquals(1, stripe.callCount("POST", "/v1/payment_methods/pm_new/attach"));
+        assertEquals(2, stripe.callCount("GET", CUSTOMER_PATH));
+    }
+
+    @Test
+    void testDeletePaymentMethodEvictsTheCustomer() throws Exception {
+        stripe.stub("GET", "/v1/payment_methods/pm_other", String.format(PAYMENT_METHOD, "pm_other", "\"cus_123\""))
+              .stub("GET", "/v1/payment_methods", "{\"object\":\"list\",\"has_more\":false,\"data\":["
+                      + String.format(PAYMENT_METHOD, "pm_default", "\"cus_123\"") + ","
+                      + String.format(PAYMENT_METHOD, "pm_other", "\"cus_123\"") + "]}")
+              .stub("POST", "/v1/payment_methods/pm_other/detach", String.format(PAYMENT_METHOD, "pm_other", "null"));
+
+        paymentMethodsManager.defaultPaymentMethod();
+        paymentMethodsManager.deletePaymentMethod("pm_other");
+        paymentMethodsManager.defaultPaymentMethod();
+
+        assertEquals(1, stripe.callCount("POST", "/v1/payment_methods/pm_other/detach"));
+        assertEquals(2, stripe.callCount("GET", CUSTOMER_PATH));
+    }
+
+    @Test
+    void testUnexpandedDefaultPaymentMethodIsRetrieved() throws Exception {
+        stripe.stub("GET", CUSTOMER_PATH, "{\"id\":\"cus_123\",\"object\":\"customer\","
+                      + "\"invoice_settings\":{\"default_payment_method\":\"pm_default\"}}")
+              .stub("GET", "/v1/payment_methods/pm_default", String.format(PAYMENT_METHOD, "pm_default", "\"cus_123\""));
+
+        assertEquals("pm_default", paymentMethodsManager.defaultPaymentMethod().getId());
+        assertEquals(1, stripe.callCount("GET", "/v1/payment_methods/pm_default"));
+    }
+
+    @Test
+    void testStreamFetchesPagesLazily() throws Exception {
+        stubTwoPages();
+
+        List<String> first = paymentMethodsManager.streamPaymentMethods(PaymentMethodListParams.Type.CARD, 2)
+                .limit(2)
+                .map(PaymentMethod::getId)
+                .collect(Collectors.toList());
+        assertEquals(List.of("pm_1", "pm_2"), first);
+        assertEquals(1, stripe.callCount());
+
+        stripe.reset();
+        List<String> all = paymentMethodsManager.streamPaymentMethods(PaymentMethodListParams.Type.CARD, 2)
+                .map(PaymentMethod::getId)
+                .collect(Collectors.toList());
+        assertEquals(List.of("pm_1", "pm_2", "pm_3"), all);
+        assertEquals(2, stripe.callCount());
+
+        String query = URLDecoder.decode(stripe.requests().get(1).query(), StandardCharsets.UTF_8);
+        assertTrue(query.contains("limit=2"));
+        assertTrue(query.contains("type=card"));
+        assertTrue(query.contains("starting_after=pm_2"));
+    }
+
+    @Test
+    void testPageIsFetchedFromItsCursor() throws Exception {
+        stubTwoPages();
+
+        StripeCollection<PaymentMethod> page = paymentMethodsManager.paymentMethods(null, 2, "pm_2");
+
+        assertEquals(1, page.getData().size());
+        assertEquals("pm_3", page.getData().get(0).getId());
+        assertFalse(page.getHasMore());
+        assertEquals(1, stripe.callCount());
+        assertFalse(stripe.requests().get(0).query().contains("type="));
+    }
+
+    @Test
+    void testPaymentMethodsReadsEveryPage() throws Exception {
+        stubTwoPages();
+
+        assertEquals(3, paymentMethodsManager.paymentMethods().size());
+    }
+
+    @Test
+    void testFailedPageIsRethrownByTheStream() throws Exception {
+        stripe.stub("GET", "/v1/payment_methods", 400, Response.error(400, "invalid_request_error", "No such customer").json());
+
+        StripePagingException error = assertThrows(StripePagingException.class,
+                () -> paymentMethodsManager.streamPaymentMethods(null, 10).count());
+        assertTrue(error.getCause() instanceof InvalidRequestException);
+        assertThrows(InvalidRequestException.class, () -> paymentMethodsManager.paymentMethods());
+    }
+
+    private void stubTwoPages() {
+        stripe.respond("GET", "/v1/payment_methods", request -> {
+            boolean second = request.query() != null && request.query().contains("starting_after=pm_2");
+            String data = second
+                    ? String.format(PAYMENT_METHOD, "pm_3", "\"cus_123\"")
+                    : String.format(PAYMENT_METHOD, "pm_1", "\"cus_123\"") + "," + String.format(PAYMENT_METHOD, "pm_2", "\"cus_123\"");
+            return new Response(200, "{\"object\":\"list\",\"url\":\"/v1/payment_methods\",\"has_more\":" + !second
+                    + ",\"data\":[" + data + "]}");
+        });
+    }
+}
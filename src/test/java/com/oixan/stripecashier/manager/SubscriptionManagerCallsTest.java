@@ -0,0 +1,343 @@
+package com.oixan.stripecashier.manager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.oixan.stripecashier.client.StripeClientResolver;
+import com.oixan.stripecashier.client.StripeInvoker;
+import com.oixan.stripecashier.config.StripeProperties;
+import com.oixan.stripecashier.entity.UserAccount;
+import com.oixan.stripecashier.factory.SubscriptionServiceFactory;
+import com.oixan.stripecashier.outbox.SubscriptionOutbox;
+import com.oixan.stripecashier.service.SubscriptionService;
+import com.oixan.stripecashier.support.StripeStubServer;
+import com.oixan.stripecashier.support.StripeStubServer.Response;
+import com.stripe.exception.InvalidRequestException;
+import com.stripe.model.Subscription;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class SubscriptionManagerCallsTest {
+
+    private static final String SUBSCRIPTION_PATH = "/v1/subscriptions/sub_123";
+
+    private static final String SUBSCRIPTION = "{\"id\":\"sub_123\",\"object\":\"subscription\",\"customer\":\"cus_123\","
+            + "\"status\":\"active\",\"items\":{\"object\":\"list\",\"data\":[%s]}}";
+
+    private static final String ITEM = "{\"id\":\"%s\",\"object\":\"subscription_item\",\"quantity\":1,"
+            + "\"price\":{\"id\":\"%s\",\"object\":\"price\"}}";
+
+    private StripeStubServer stripe;
+
+    private StripeProperties stripeProperties;
+
+    private SubscriptionService subscriptionService;
+
+    private ExecutorService executor;
+
+    private SubscriptionManager subscriptionManager;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stripe = StripeStubServer.start()
+                .stub("GET", SUBSCRIPTION_PATH, subscription(item("si_1", "price_a"), item("si_2", "price_b"), item("si_3", "price_c")))
+                .stub("POST", SUBSCRIPTION_PATH, subscription(item("si_4", "price_new")));
+        for (String itemId : new String[] { "si_1", "si_2", "si_3" }) {
+            stripe.stub("DELETE", "/v1/subscription_items/" + itemId,
+                    "{\"id\":\"" + itemId + "\",\"object\":\"subscription_item\",\"deleted\":true}");
+        }
+
+        com.oixan.stripecashier.entity.Subscription entity = new com.oixan.stripecashier.entity.Subscription();
+        entity.setId(7L);
+        entity.setStripeId("sub_123");
+        entity.setQuantity(2L);
+        subscriptionService = mock(SubscriptionService.class);
+        when(subscriptionService.getSubscriptionByUserIdAndType("cus_123", "default")).thenReturn(Optional.of(entity));
+        SubscriptionServiceFactory subscriptionServiceFactory = mock(SubscriptionServiceFactory.class);
+        when(subscriptionServiceFactory.create()).thenReturn(subscriptionService);
+
+        UserAccount user = new UserAccount();
+        user.setStripeId("cus_123");
+
+        stripeProperties = new StripeProperties();
+        executor = Executors.newFixedThreadPool(4);
+
+        subscriptionManager = new SubscriptionManager()
+                .setUser(user)
+                .setCustomerManager(new CustomerManager().setUser(user));
+        ReflectionTestUtils.setField(subscriptionManager, "subscriptionServiceFactory", subscriptionServiceFactory);
+        ReflectionTestUtils.setField(subscriptionManager, "subscriptionService", subscriptionService);
+        ReflectionTestUtils.setField(subscriptionManager, "stripeProperties", stripeProperties);
+        ReflectionTestUtils.setField(subscriptionManager, "executor", executor);
+        ReflectionTestUtils.setField(subscriptionManager, "stripeClientResolver", new StripeClientResolver(stripe.client()));
+        ReflectionTestUtils.setField(subscriptionManager, "stripeInvoker", new StripeInvoker(new SimpleMeterRegistry()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        stripe.close();
+    }
+
+    @Test
+    void testCancelAtPeriodEndUpdatesByIdInOneCall() throws Exception {
+        stripe.stub("POST", SUBSCRIPTION_PATH, "{\"id\":\"sub_123\",\"object\":\"subscription\","
+                + "\"cancel_at_period_end\":true,\"current_period_end\":1702592000}");
+
+        subscriptionManager.cancelAtPeriodEnd();
+
+        assertEquals(1, stripe.callCount());
+        assertEquals(1, stripe.callCount("POST", SUBSCRIPTION_PATH));
+        String body = URLDecoder.decode(stripe.requests().get(0).body(), StandardCharsets.UTF_8);
+        assertTrue(body.contains("cancel_at_period_end=true"));
+        verify(subscriptionService).updateSubscriptionEndsAt(7L, Instant.ofEpochSecond(1702592000));
+    }
+
+    @Test
+    void testCancelAtPeriodEndRightAfterStartWritesTheOutboxEntryFirst() throws Exception {
+        stripe.stub("POST", SUBSCRIPTION_PATH, "{\"id\":\"sub_123\",\"object\":\"subscription\","
+                + "\"cancel_at_period_end\":true,\"current_period_end\":1702592000}");
+        com.oixan.stripecashier.entity.Subscription entity = subscriptionService.getSubscriptionByUserIdAndType("cus_123", "default").get();
+        when(subscriptionService.getSubscriptionByUserIdAndType("cus_123", "default"))
+                .thenReturn(Optional.empty(), Optional.of(entity));
+        SubscriptionOutbox subscriptionOutbox = mock(SubscriptionOutbox.class);
+        when(subscriptionOutbox.flush("cus_123", "default")).thenReturn(true);
+        ReflectionTestUtils.setField(subscriptionManager, "subscriptionOutbox", subscriptionOutbox);
+
+        subscriptionManager.cancelAtPeriodEnd();
+
+        verify(subscriptionOutbox).flush("cus_123", "default");
+        verify(subscriptionService).updateSubscriptionEndsAt(7L, Instant.ofEpochSecond(1702592000));
+    }
+
+    @Test
+    void testMissingSubscriptionOutsideTheOutboxIsNotFound() {
+        when(subscriptionService.getSubscriptionByUserIdAndType("cus_123", "default")).thenReturn(Optional.empty());
+        SubscriptionOutbox subscriptionOutbox = mock(SubscriptionOutbox.class);
+        ReflectionTestUtils.setField(subscriptionManager, "subscriptionOutbox", subscriptionOutbox);
+
+        assertThrows(IllegalArgumentException.class, () -> subscriptionManager.cancelAtPeriodEnd());
+        assertEquals(0, stripe.callCount());
+    }
+
+    @Test
+    void testSwapReplacesTheItemsInOneUpdate() throws Exception {
+        subscriptionManager.swapItemSubscription("default", "price_new");
+
+        assertEquals(2, stripe.callCount());
+        assertEquals(1, stripe.callCount("GET", SUBSCRIPTION_PATH));
+        assertEquals(1, stripe.callCount("POST", SUBSCRIPTION_PATH));
+
+        String body = URLDecoder.decode(stripe.requests().get(1).body(), StandardCharsets.UTF_8);
+        assertTrue(body.contains("items[0][price]=price_new"));
+        assertTrue(body.contains("items[0][quantity]=2"));
+        assertTrue(body.contains("items[1][id]=si_1"));
+        assertTrue(body.contains("items[1][deleted]=true"));
+        assertTrue(body.contains("items[3][id]=si_3"));
+        assertTrue(body.contains("items[3][deleted]=true"));
+        verify(subscriptionService).updateSubscription(any());
+    }
+
+    @Test
+    void testSwapWritesTheRowAgainAtItsNewVersion() throws Exception {
+        com.oixan.stripecashier.entity.Subscription stale = new com.oixan.stripecashier.entity.Subscription();
+        stale.setVersion(4L);
+        com.oixan.stripecashier.entity.Subscription fresh = new com.oixan.stripecashier.entity.Subscription();
+        fresh.setVersion(5L);
+        when(subscriptionService.getSubscriptionByStripeId("sub_123")).thenReturn(Optional.of(stale), Optional.of(fresh));
+        List<Long> versions = new ArrayList<>();
+        doAnswer(invocation -> {
+            versions.add(invocation.<com.oixan.stripecashier.entity.Subscription>getArgument(0).getVersion());
+            if (versions.size() == 1) {
+                throw new OptimisticLockingFailureException("updated by a webhook");
+            }
+            return null;
+        }).when(subscriptionService).updateSubscription(any());
+
+        subscriptionManager.swapItemSubscription("default", "price_new");
+
+        assertEquals(List.of(4L, 5L), versions);
+    }
+
+    @Test
+    void testSwapKeepsTheItemAlreadyOnTheNewPrice() throws Exception {
+        stripe.stub("GET", SUBSCRIPTION_PATH, subscription(item("si_1", "price_a"), item("si_2", "price_new")));
+
+        subscriptionManager.swapItemSubscription("default", "price_new");
+
+        String body = URLDecoder.decode(stripe.requests().get(1).body(), StandardCharsets.UTF_8);
+        assertTrue(body.contains("items[0][id]=si_2"));
+        assertFalse(body.contains("[price]="));
+        assertTrue(body.contains("items[1][id]=si_1"));
+        assertTrue(body.contains("items[1][deleted]=true"));
+    }
+
+    @Test
+    void testSwapWithDeleteItemsDeletesInParallel() throws Exception {
+        stripeProperties.getSwap().setStrategy(StripeProperties.Swap.Strategy.DELETE_ITEMS);
+        stripeProperties.getSwap().setParallelism(2);
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        for (String itemId : new String[] { "si_1", "si_2", "si_3" }) {
+            stripe.respond("DELETE", "/v1/subscription_items/" + itemId, request -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+                running.decrementAndGet();
+                return new Response(200, "{\"id\":\"" + itemId + "\",\"object\":\"subscription_item\",\"deleted\":true}");
+            });
+        }
+
+        subscriptionManager.swapItemSubscription("default", "price_new");
+
+        String body = URLDecoder.decode(stripe.requests().get(1).body(), StandardCharsets.UTF_8);
+        assertFalse(body.contains("[deleted]"));
+        assertEquals(5, stripe.callCount());
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    void testSwapWithDeleteItemsSavesTheItemOfTheNewPrice() throws Exception {
+        stripeProperties.getSwap().setStrategy(StripeProperties.Swap.Strategy.DELETE_ITEMS);
+        stripe.stub("POST", SUBSCRIPTION_PATH, subscription(item("si_1", "price_a"), item("si_4", "price_new")));
+
+        subscriptionManager.swapItemSubscription("default", "price_new");
+
+        ArgumentCaptor<com.oixan.stripecashier.entity.Subscription> saved =
+                ArgumentCaptor.forClass(com.oixan.stripecashier.entity.Subscription.class);
+        verify(subscriptionService).updateSubscription(saved.capture());
+        assertEquals("price_new", saved.getValue().getStripePrice());
+    }
+
+    @Test
+    void testDeletionsCompleteWithoutFreeExecutorThread() throws Exception {
+        stripeProperties.getSwap().setStrategy(StripeProperties.Swap.Strategy.DELETE_ITEMS);
+        ReflectionTestUtils.setField(subscriptionManager, "executor", (Executor) runnable -> { });
+
+        subscriptionManager.swapItemSubscription("default", "price_new");
+
+        assertEquals(5, stripe.callCount());
+    }
+
+    @Test
+    void testFailedDeletionIsThrownAfterTheOthers() throws Exception {
+        stripeProperties.getSwap().setStrategy(StripeProperties.Swap.Strategy.DELETE_ITEMS);
+        stripe.respond("DELETE", "/v1/subscription_items/si_1",
+                request -> Response.error(404, "invalid_request_error", "No such subscription item: 'si_1'"));
+
+        assertThrows(InvalidRequestException.class, () -> subscriptionManager.swapItemSubscription("default", "price_new"));
+
+        assertEquals(1, stripe.callCount("DELETE", "/v1/subscription_items/si_2"));
+        assertEquals(1, stripe.callCount("DELETE", "/v1/subscription_items/si_3"));
+    }
+
+@Test
+    void testCancelAtPeriodEndAsyncUsesTheUserOfTheCall() throws Exception {
+        stripe.stub("POST", SUBSCRIPTION_PATH, "{\"id\":\"sub_123\",\"object\":\"subscription\","
+                + "\"cancel_at_period_end\":true,\"current_period_end\":1702592000}");
+        List<Runnable> pending = deferExecutor();
+
+        CompletableFuture<Subscription> future = subscriptionManager.cancelAtPeriodEndAsync("default");
+        subscriptionManager.setUser(otherUser());
+        pending.forEach(Runnable::run);
+
+        assertEquals("sub_123", future.join().getId());
+        verify(subscriptionService).updateSubscriptionEndsAt(7L, Instant.ofEpochSecond(1702592000));
+    }
+
+    @Test
+    void testCancelAtPeriodEndAsyncCompletesExceptionallyWithTheStripeError() throws Exception {
+        stripe.respond("POST", SUBSCRIPTION_PATH,
+                request -> Response.error(404, "invalid_request_error", "No such subscription: 'sub_123'"));
+        List<Runnable> pending = deferExecutor();
+
+        CompletableFuture<Subscription> future = subscriptionManager.cancelAtPeriodEndAsync("default");
+        pending.forEach(Runnable::run);
+
+        CompletionException error = assertThrows(CompletionException.class, future::join);
+        assertTrue(error.getCause() instanceof InvalidRequestException);
+        verify(subscriptionService, never()).updateSubscriptionEndsAt(any(), any());
+    }
+
+    @Test
+    void testSwapAsyncUsesTheUserOfTheCall() throws Exception {
+        List<Runnable> pending = deferExecutor();
+
+        CompletableFuture<Subscription> future = subscriptionManager.swapItemSubscriptionAsync("default", "price_new");
+        UserAccount other = otherUser();
+        subscriptionManager.setUser(other).setCustomerManager(new CustomerManager().setUser(other));
+        pending.forEach(Runnable::run);
+
+        assertEquals("sub_123", future.join().getId());
+        assertEquals(1, stripe.callCount("POST", SUBSCRIPTION_PATH));
+        verify(subscriptionService).updateSubscription(any());
+    }
+
+    @Test
+    void testSwapAsyncCompletesExceptionallyWithTheStripeError() throws Exception {
+        stripe.respond("GET", SUBSCRIPTION_PATH,
+                request -> Response.error(404, "invalid_request_error", "No such subscription: 'sub_123'"));
+        List<Runnable> pending = deferExecutor();
+
+        CompletableFuture<Subscription> future = subscriptionManager.swapItemSubscriptionAsync("default", "price_new");
+        pending.forEach(Runnable::run);
+
+        CompletionException error = assertThrows(CompletionException.class, future::join);
+        assertTrue(error.getCause() instanceof InvalidRequestException);
+        assertEquals(0, stripe.callCount("POST", SUBSCRIPTION_PATH));
+        verify(subscriptionService, never()).updateSubscription(any());
+    }
+
+    /**
+     * Holds the asynchronous calls of the manager until the test runs them.
+     */
+    private List<Runnable> deferExecutor() {
+        List<Runnable> pending = new ArrayList<>();
+        ReflectionTestUtils.setField(subscriptionManager, "executor", (Executor) pending::add);
+        return pending;
+    }
+
+    private static UserAccount otherUser() {
+        UserAccount user = new UserAccount();
+        user.setStripeId("cus_other");
+        return user;
+    }
+
+        private static String subscription(String... items) {
+        return String.format(SUBSCRIPTION, String.join(",", items));
+    }
+
+    private static String item(String id, String priceId) {
+        return String.format(ITEM, id, priceId);
+    }
+}
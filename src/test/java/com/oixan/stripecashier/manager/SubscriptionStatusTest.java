@@ -0,0 +1,77 @@
+package com.oixan.stripecashier.manager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+
+import com.oixan.stripecashier.entity.Subscription;
+
+public class SubscriptionStatusTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 1, 15, 12, 0);
+
+    @Test
+    void testActiveSubscription() {
+        SubscriptionStatus status = SubscriptionStatus.of(subscription("active", null, null), NOW, true, true);
+
+        assertEquals("active", status.getStripeStatus());
+        assertEquals(NOW, status.getCheckedAt());
+        assertFalse(status.isCanceled());
+        assertFalse(status.isOnTrial());
+        assertFalse(status.isOnGracePeriod());
+        assertFalse(status.isEnded());
+        assertTrue(status.isActive());
+        assertTrue(status.isValid());
+    }
+
+    @Test
+    void testCanceledSubscriptionOnGracePeriod() {
+        SubscriptionStatus status = SubscriptionStatus.of(subscription("active", NOW.plusDays(3), null), NOW, true, true);
+
+        assertTrue(status.isCanceled());
+        assertTrue(status.isOnGracePeriod());
+        assertFalse(status.isEnded());
+        assertTrue(status.isValid());
+    }
+
+    @Test
+    void testEndedSubscription() {
+        SubscriptionStatus status = SubscriptionStatus.of(subscription("canceled", NOW.minusSeconds(1), null), NOW, true, true);
+
+        assertTrue(status.isCanceled());
+        assertFalse(status.isOnGracePeriod());
+        assertTrue(status.isEnded());
+        assertFalse(status.isActive());
+        assertFalse(status.isValid());
+    }
+
+    @Test
+    void testTrialKeepsIncompleteSubscriptionValid() {
+        SubscriptionStatus status = SubscriptionStatus.of(subscription("incomplete", null, NOW.plusDays(7)), NOW, true, true);
+
+        assertTrue(status.isOnTrial());
+        assertFalse(status.isActive());
+        assertTrue(status.isValid());
+    }
+
+    @Test
+    void testPastDueHonoursDeactivationSetting() {
+        Subscription pastDue = subscription("past_due", null, null);
+
+        assertFalse(SubscriptionStatus.of(pastDue, NOW, true, true).isActive());
+        assertTrue(SubscriptionStatus.of(pastDue, NOW, false, true).isActive());
+    }
+
+    private static Subscription subscription(String stripeStatus, LocalDateTime endsAt, LocalDateTime trialEndsAt) {
+        Subscription subscription = new Subscription();
+        subscription.setType("default");
+        subscription.setStripeStatus(stripeStatus);
+        subscription.setEndsAt(endsAt);
+        subscription.setTrialEndsAt(trialEndsAt);
+        return subscription;
+    }
+}
@@ -0,0 +1,195 @@
+package com.oixan.stripecashier.outbox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.oixan.stripecashier.config.StripeProperties;
+import com.oixan.stripecashier.entity.Subscription;
+import com.oixan.stripecashier.entity.SubscriptionOutboxEntry;
+import com.oixan.stripecashier.repository.SubscriptionOutboxRepository;
+import com.oixan.stripecashier.service.SubscriptionService;
+
+public class SubscriptionOutboxTest {
+
+    private SubscriptionOutboxRepository subscriptionOutboxRepository;
+
+    private SubscriptionService subscriptionService;
+
+    private SubscriptionOutbox outbox;
+
+    @BeforeEach
+    void setUp() {
+        subscriptionOutboxRepository = mock(SubscriptionOutboxRepository.class);
+        subscriptionService = mock(SubscriptionService.class);
+
+        outbox = new SubscriptionOutbox();
+        ReflectionTestUtils.setField(outbox, "subscriptionOutboxRepository", subscriptionOutboxRepository);
+        ReflectionTestUtils.setField(outbox, "subscriptionService", subscriptionService);
+        ReflectionTestUtils.setField(outbox, "stripeProperties", new StripeProperties());
+    }
+
+    @Test
+    void testEnqueueStoresOneEntry() {
+        outbox.enqueue(subscription("sub_1"));
+
+        ArgumentCaptor<SubscriptionOutboxEntry> entry = ArgumentCaptor.forClass(SubscriptionOutboxEntry.class);
+        verify(subscriptionOutboxRepository).save(entry.capture());
+        assertEquals("sub_1", entry.getValue().getStripeId());
+        assertEquals("cus_1", entry.getValue().getUserId());
+        assertEquals("price_basic", entry.getValue().getStripePrice());
+        verify(subscriptionService, never()).updateSubscription(any());
+    }
+
+    @Test
+    void testDueEntriesAreWrittenInOneBatch() {
+        List<SubscriptionOutboxEntry> due = List.of(entry(1L, "sub_1"), entry(2L, "sub_2"));
+        when(subscriptionOutboxRepository.findDue(any(), anyInt(), any(Pageable.class))).thenReturn(due);
+
+        assertEquals(2, outbox.relay());
+
+        verify(subscriptionService).upsertSubscriptions(argThat(subscriptions -> stripeIds(subscriptions).equals(List.of("sub_1", "sub_2"))));
+        verify(subscriptionService, never()).updateSubscription(any());
+        verify(subscriptionOutboxRepository).deleteAllInBatch(argThat(entries -> ids(entries).equals(List.of(1L, 2L))));
+    }
+
+    @Test
+    void testSavedAndDuplicateEntriesAreDeletedWithoutWrite() {
+        List<SubscriptionOutboxEntry> due = List.of(entry(1L, "sub_1"), entry(2L, "sub_2"), entry(3L, "sub_2"));
+        when(subscriptionOutboxRepository.findDue(any(), anyInt(), any(Pageable.class))).thenReturn(due);
+        when(subscriptionService.getSubscriptionsByStripeIds(any())).thenReturn(List.of(subscription("sub_1")));
+
+        assertEquals(1, outbox.relay());
+
+        verify(subscriptionService).upsertSubscriptions(argThat(subscriptions -> stripeIds(subscriptions).equals(List.of("sub_2"))));
+        verify(subscriptionOutboxRepository).deleteAllInBatch(argThat(entries -> ids(entries).containsAll(List.of(1L, 2L, 3L))));
+    }
+
+    @Test
+    void testFailedBatchIsWrittenOneAtATime() {
+        List<SubscriptionOutboxEntry> due = List.of(entry(1L, "sub_1"), entry(2L, "sub_2"));
+        when(subscriptionOutboxRepository.findDue(any(), anyInt(), any(Pageable.class))).thenReturn(due);
+        when(subscriptionService.upsertSubscriptions(any())).thenThrow(new IllegalStateException("constraint"));
+        doThrow(new IllegalStateException("constraint")).when(subscriptionService)
+                .updateSubscription(argThat(subscription -> "sub_2".equals(subscription.getStripeId())));
+
+        LocalDateTime before = LocalDateTime.now();
+        assertEquals(1, outbox.relay());
+
+        verify(subscriptionOutboxRepository).deleteAllInBatch(argThat(entries -> ids(entries).equals(List.of(1L))));
+        ArgumentCaptor<SubscriptionOutboxEntry> failed = ArgumentCaptor.forClass(SubscriptionOutboxEntry.class);
+        verify(subscriptionOutboxRepository).save(failed.capture());
+        assertEquals("sub_2", failed.getValue().getStripeId());
+        assertEquals(1, failed.getValue().getAttempts());
+        assertTrue(failed.getValue().getLastError().contains("constraint"));
+        assertTrue(failed.getValue().getNextAttemptAt().isAfter(before));
+    }
+
+    @Test
+    void testEntryUpdatedSinceTheBatchWasReadIsDone() {
+        List<SubscriptionOutboxEntry> due = List.of(entry(1L, "sub_1"));
+        when(subscriptionOutboxRepository.findDue(any(), anyInt(), any(Pageable.class))).thenReturn(due);
+        when(subscriptionService.upsertSubscriptions(any())).thenThrow(new OptimisticLockingFailureException("stale"));
+        doThrow(new OptimisticLockingFailureException("stale")).when(subscriptionService).updateSubscription(any());
+
+        assertEquals(0, outbox.relay());
+
+        verify(subscriptionOutboxRepository).deleteAllInBatch(argThat(entries -> ids(entries).equals(List.of(1L))));
+        verify(subscriptionOutboxRepository, never()).save(any());
+    }
+
+    @Test
+    void testNothingDueWritesNothing() {
+        when(subscriptionOutboxRepository.findDue(any(), anyInt(), any(Pageable.class))).thenReturn(List.of());
+
+        assertEquals(0, outbox.relay());
+
+        verify(subscriptionService, never()).upsertSubscriptions(any());
+        verify(subscriptionOutboxRepository, never()).deleteAllInBatch(any());
+    }
+
+    @Test
+    void testFlushWritesThePendingEntriesOfTheUserAndType() {
+        when(subscriptionOutboxRepository.findByUserIdAndTypeOrderById("cus_1", "default"))
+                .thenReturn(List.of(entry(1L, "sub_1")));
+
+        assertTrue(outbox.flush("cus_1", "default"));
+
+        verify(subscriptionService).upsertSubscriptions(argThat(subscriptions -> stripeIds(subscriptions).equals(List.of("sub_1"))));
+        verify(subscriptionOutboxRepository).deleteAllInBatch(argThat(entries -> ids(entries).equals(List.of(1L))));
+    }
+
+    @Test
+    void testFlushWithoutPendingEntryWritesNothing() {
+        when(subscriptionOutboxRepository.findByStripeId("sub_1")).thenReturn(List.of());
+
+        assertFalse(outbox.flush("sub_1"));
+
+        verify(subscriptionService, never()).upsertSubscriptions(any());
+    }
+
+    @Test
+    void testBackoffDoublesWithEachAttempt() {
+        assertEquals(Duration.ofSeconds(1), SubscriptionOutbox.backoff(Duration.ofSeconds(1), 1));
+        assertEquals(Duration.ofSeconds(8), SubscriptionOutbox.backoff(Duration.ofSeconds(1), 4));
+    }
+
+    @Test
+    void testLongErrorIsTruncated() {
+        SubscriptionOutboxEntry entry = new SubscriptionOutboxEntry();
+        entry.setLastError("x".repeat(SubscriptionOutboxEntry.MAX_ERROR_LENGTH + 1));
+        assertEquals(SubscriptionOutboxEntry.MAX_ERROR_LENGTH, entry.getLastError().length());
+
+        entry.setLastError(null);
+        assertNull(entry.getLastError());
+    }
+
+    private static List<String> stripeIds(Collection<Subscription> subscriptions) {
+        return subscriptions.stream().map(Subscription::getStripeId).collect(Collectors.toList());
+    }
+
+    private static List<Long> ids(Iterable<SubscriptionOutboxEntry> entries) {
+        List<Long> ids = new java.util.ArrayList<>();
+        entries.forEach(entry -> ids.add(entry.getId()));
+        return ids;
+    }
+
+    private static SubscriptionOutboxEntry entry(Long id, String stripeId) {
+        SubscriptionOutboxEntry entry = SubscriptionOutboxEntry.of(subscription(stripeId));
+        entry.setId(id);
+        return entry;
+    }
+
+    private static Subscription subscription(String stripeId) {
+        Subscription subscription = new Subscription();
+        subscription.setUserId("cus_1");
+        subscription.setType("default");
+        subscription.setStripeId(stripeId);
+        subscription.setStripeStatus("active");
+        subscription.setStripePrice("price_basic");
+        subscription.setQuantity(1L);
+        return subscription;
+    }
+}
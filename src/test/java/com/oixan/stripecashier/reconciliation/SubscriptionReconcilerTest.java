@@ -0,0 +1,315 @@
+package com.oixan.stripecashier.reconciliation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.oixan.stripecashier.client.RateLimitedHttpClient;
+import com.oixan.stripecashier.client.StripeClientOptions;
+import com.oixan.stripecashier.client.StripeClientResolver;
+import com.oixan.stripecashier.client.StripeHttpClient;
+import com.oixan.stripecashier.client.StripeInvoker;
+import com.oixan.stripecashier.client.StripeRateLimiter;
+import com.oixan.stripecashier.config.StripeProperties;
+import com.oixan.stripecashier.entity.Subscription;
+import com.oixan.stripecashier.service.SubscriptionService;
+import com.oixan.stripecashier.support.StripeStubServer;
+import com.oixan.stripecashier.support.StripeStubServer.Response;
+import com.stripe.StripeClient;
+import com.stripe.exception.ApiException;
+import com.stripe.exception.RateLimitException;
+import com.stripe.net.LiveStripeResponseGetter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class SubscriptionReconcilerTest {
+
+    private static final String FIRST_PAGE = "{\"object\":\"list\",\"url\":\"/v1/subscriptions\",\"has_more\":true,\"data\":["
+            + "{\"id\":\"sub_3\",\"object\":\"subscription\",\"status\":\"past_due\",\"cancel_at_period_end\":false},"
+            + "{\"id\":\"sub_2\",\"object\":\"subscription\",\"status\":\"active\",\"cancel_at_period_end\":true,\"current_period_end\":1702592000}"
+            + "]}";
+
+    private static final String SECOND_PAGE = "{\"object\":\"list\",\"url\":\"/v1/subscriptions\",\"has_more\":false,\"data\":["
+            + "{\"id\":\"sub_1\",\"object\":\"subscription\",\"status\":\"canceled\",\"ended_at\":1700000200}"
+            + "]}";
+
+    private StripeStubServer stripe;
+
+    private SubscriptionService subscriptionService;
+
+    private SubscriptionReconciler reconciler;
+
+    private final List<Long> sleeps = new ArrayList<>();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stripe = StripeStubServer.start()
+                .respond("GET", "/v1/subscriptions", request -> new Response(200, page(request)));
+
+        subscriptionService = mock(SubscriptionService.class);
+        when(subscriptionService.getSubscriptionsByStripeIds(anyCollection())).thenAnswer(invocation -> {
+            Collection<String> ids = invocation.getArgument(0);
+            List<Subscription> found = new ArrayList<>();
+            // sub_1 is unknown locally; sub_2 is up to date; sub_3 has drifted
+            if (ids.contains("sub_2")) {
+                found.add(subscription(2L, "sub_2", "active", toLocalDateTime(1702592000L)));
+            }
+            if (ids.contains("sub_3")) {
+                found.add(subscription(3L, "sub_3", "active", null));
+            }
+            return found;
+        });
+        when(subscriptionService.updateSubscriptionStates(anyCollection()))
+                .thenAnswer(invocation -> ((Collection<?>) invocation.getArgument(0)).size());
+
+        StripeProperties properties = new StripeProperties();
+        properties.getReconciliation().setPageSize(2);
+
+        reconciler = new SubscriptionReconciler();
+        ReflectionTestUtils.setField(reconciler, "subscriptionService", subscriptionService);
+        ReflectionTestUtils.setField(reconciler, "stripeProperties", properties);
+        ReflectionTestUtils.setField(reconciler, "stripeInvoker", new StripeInvoker(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(reconciler, "stripeClientResolver", new StripeClientResolver(stripe.client()));
+        ReflectionTestUtils.setField(reconciler, "meterRegistry", registryProvider(meterRegistry));
+        ReflectionTestUtils.setField(reconciler, "sleeper", (SubscriptionReconciler.Sleeper) sleeps::add);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stripe.close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testDriftedRowsAreWrittenInBatches() throws Exception {
+        ReconciliationReport report = reconciler.reconcile().get(0);
+
+        assertEquals(2, report.getPages());
+        assertEquals(3, report.getScanned());
+        assertEquals(1, report.getUpdated());
+        assertEquals(1, report.getMissing());
+        assertEquals("sub_1", report.getLastStripeId());
+        assertTrue(report.getRowsPerSecond() > 0);
+        assertNull(reconciler.getCursor(null));
+
+        List<String> queries = queries();
+        assertEquals(2, queries.size());
+        assertTrue(queries.get(0).contains("limit=2"));
+        assertTrue(queries.get(0).contains("status=all"));
+        assertTrue(queries.get(1).contains("starting_after=sub_2"));
+
+        ArgumentCaptor<Collection<Subscription>> batches = ArgumentCaptor.forClass(Collection.class);
+        verify(subscriptionService, times(2)).updateSubscriptionStates(batches.capture());
+        List<Subscription> firstBatch = new ArrayList<>(batches.getAllValues().get(0));
+        assertEquals(1, firstBatch.size());
+        assertEquals("sub_3", firstBatch.get(0).getStripeId());
+        assertEquals("past_due", firstBatch.get(0).getStripeStatus());
+        assertTrue(batches.getAllValues().get(1).isEmpty());
+    }
+
+    @Test
+    void testRateLimitedPageIsRetriedByTheRateLimiterFirst() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        stripe.respond("GET", "/v1/subscriptions", request -> attempts.incrementAndGet() <= 2
+                ? Response.error(429, "rate_limit", "Too many requests")
+                : new Response(200, page(request)));
+        StripeProperties.RateLimit rateLimit = new StripeProperties.RateLimit();
+        rateLimit.setEnabled(true);
+        StripeRateLimiter rateLimiter = new StripeRateLimiter(rateLimit, new SimpleMeterRegistry(), () -> 0L, nanos -> { });
+        ReflectionTestUtils.setField(reconciler, "stripeClientResolver", new StripeClientResolver(
+                stripe.client(new RateLimitedHttpClient(new StripeHttpClient(new StripeProperties.Http()), rateLimiter))));
+
+        ReconciliationReport report = reconciler.reconcile().get(0);
+
+        assertEquals(3, report.getScanned());
+        assertEquals(4, stripe.callCount(), "Two rate-limited requests and two pages");
+        assertTrue(sleeps.isEmpty());
+    }
+
+    @Test
+    void testRateLimitedPageIsRetriedWithBackoffWithoutRateLimiter() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        stripe.respond("GET", "/v1/subscriptions", request -> attempts.incrementAndGet() <= 2
+                ? Response.error(429, "rate_limit", "Too many requests")
+                : new Response(200, page(request)));
+
+        ReconciliationReport report = reconciler.reconcile().get(0);
+
+        assertEquals(3, report.getScanned());
+        assertEquals(List.of(1000L, 2000L), sleeps);
+    }
+
+    @Test
+    void testRateLimitGivesUpAfterMaxRetries() {
+        stripe.stub("GET", "/v1/subscriptions", 429,
+                Response.error(429, "rate_limit", "Too many requests").json());
+
+        assertThrows(RateLimitException.class, () -> reconciler.reconcile());
+        assertEquals(6, stripe.callCount());
+        assertEquals(5, sleeps.size());
+    }
+
+    @Test
+    void testStoppedRunResumesFromCursor() throws Exception {
+        stripe.respond("GET", "/v1/subscriptions", request -> decodedQuery(request).contains("starting_after")
+                ? Response.error(500, "api_error", "Something went wrong")
+                : new Response(200, FIRST_PAGE));
+
+        assertThrows(ApiException.class, () -> reconciler.reconcile());
+        assertEquals("sub_2", reconciler.getCursor(null));
+
+        stripe.reset();
+        stripe.respond("GET", "/v1/subscriptions", request -> new Response(200, page(request)));
+
+        ReconciliationReport report = reconciler.reconcile().get(0);
+
+        assertEquals("sub_2", report.getStartingAfter());
+        assertEquals(1, report.getScanned());
+        assertTrue(queries().get(0).contains("starting_after=sub_2"));
+    }
+
+    @Test
+    void testNewReconcilerResumesFromTheCheckpoint() throws Exception {
+        ReconciliationCheckpoint checkpoint = new InMemoryReconciliationCheckpoint();
+        ReflectionTestUtils.setField(reconciler, "checkpoint", checkpoint);
+        stripe.respond("GET", "/v1/subscriptions", request -> decodedQuery(request).contains("starting_after")
+                ? Response.error(500, "api_error", "Something went wrong")
+                : new Response(200, FIRST_PAGE));
+
+        assertThrows(ApiException.class, () -> reconciler.reconcile());
+        assertEquals("sub_2", checkpoint.load(null));
+
+        // A new instance, as after a restart, sharing only the checkpoint
+        SubscriptionReconciler restarted = new SubscriptionReconciler();
+        for (String field : List.of("subscriptionService", "stripeProperties", "stripeInvoker", "stripeClientResolver", "meterRegistry")) {
+            ReflectionTestUtils.setField(restarted, field, ReflectionTestUtils.getField(reconciler, field));
+        }
+        ReflectionTestUtils.setField(restarted, "checkpoint", checkpoint);
+        stripe.reset();
+        stripe.respond("GET", "/v1/subscriptions", request -> new Response(200, page(request)));
+
+        ReconciliationReport report = restarted.reconcile().get(0);
+
+        assertEquals("sub_2", report.getStartingAfter());
+        assertEquals(1, report.getScanned());
+        assertTrue(queries().get(0).contains("starting_after=sub_2"));
+        assertNull(checkpoint.load(null));
+    }
+
+    @Test
+    void testEveryTenantIsReconciledAfterTheDefaultAccount() throws Exception {
+        // The acme account fails on its second page; its requests are told apart by their API key
+        stripe.respond("GET", "/v1/subscriptions", request -> isAcme(request) && decodedQuery(request).contains("starting_after")
+                ? Response.error(500, "api_error", "Something went wrong")
+                : new Response(200, page(request)));
+        StripeClientResolver resolver = mock(StripeClientResolver.class);
+        when(resolver.resolve(null)).thenReturn(stripe.client());
+        when(resolver.getTenants()).thenReturn(Set.of("globex", "acme"));
+        when(resolver.forTenant("acme")).thenReturn(new StripeClient(new LiveStripeResponseGetter(
+                new StripeClientOptions(() -> "sk_test_acme", new StripeProperties.Http()),
+                new StripeHttpClient(new StripeProperties.Http()))));
+        when(resolver.forTenant("globex")).thenReturn(stripe.client());
+        ReflectionTestUtils.setField(reconciler, "stripeClientResolver", resolver);
+
+        assertThrows(ApiException.class, () -> reconciler.reconcile());
+        assertEquals("sub_2", reconciler.getCursor("acme"));
+        assertNull(reconciler.getCursor("globex"));
+        assertNull(reconciler.getCursor(null));
+        assertEquals(4, stripe.requests().stream().filter(request -> !isAcme(request)).count(),
+                "Two pages of the default account and two of globex");
+
+        stripe.reset();
+        stripe.respond("GET", "/v1/subscriptions", request -> new Response(200, page(request)));
+
+        List<ReconciliationReport> reports = reconciler.reconcile();
+
+        assertEquals(Arrays.asList(null, "acme", "globex"),
+                reports.stream().map(ReconciliationReport::getTenant).toList());
+        assertEquals("sub_2", reports.get(1).getStartingAfter());
+        assertEquals(1, reports.get(1).getScanned());
+        assertNull(reconciler.getCursor("acme"));
+    }
+
+    @Test
+    void testRowsAndRateArePublishedByTenant() throws Exception {
+        ReconciliationReport report = reconciler.reconcile().get(0);
+
+        assertEquals(3, meterRegistry.get(SubscriptionReconciler.ROWS_METRIC)
+                .tag("tenant", StripeRateLimiter.DEFAULT_TENANT).counter().count());
+        assertEquals(report.getRowsPerSecond(), meterRegistry.get(SubscriptionReconciler.RATE_METRIC)
+                .tag("tenant", StripeRateLimiter.DEFAULT_TENANT).gauge().value());
+
+        reconciler.reconcile();
+
+        assertEquals(6, meterRegistry.get(SubscriptionReconciler.ROWS_METRIC)
+                .tag("tenant", StripeRateLimiter.DEFAULT_TENANT).counter().count());
+        assertEquals(1, meterRegistry.find(SubscriptionReconciler.RATE_METRIC).gauges().size());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ObjectProvider<MeterRegistry> registryProvider(MeterRegistry registry) {
+        ObjectProvider<MeterRegistry> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable(any())).thenReturn(registry);
+        return provider;
+    }
+
+    private List<String> queries() {
+        return stripe.requests().stream().map(SubscriptionReconcilerTest::decodedQuery).toList();
+    }
+
+    private static boolean isAcme(StripeStubServer.Request request) {
+        return "Bearer sk_test_acme".equals(request.header("Authorization"));
+    }
+
+    private static String page(StripeStubServer.Request request) {
+        return decodedQuery(request).contains("starting_after=sub_2") ? SECOND_PAGE : FIRST_PAGE;
+    }
+
+    private static String decodedQuery(StripeStubServer.Request request) {
+        return request.query() == null ? "" : URLDecoder.decode(request.query(), StandardCharsets.UTF_8);
+    }
+
+    private static Subscription subscription(Long id, String stripeId, String status, LocalDateTime endsAt) {
+        Subscription subscription = new Subscription();
+        subscription.setId(id);
+        subscription.setUserId("cus_" + id);
+        subscription.setType("default");
+        subscription.setStripeId(stripeId);
+        subscription.setStripeStatus(status);
+        subscription.setEndsAt(endsAt);
+        return subscription;
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochSecond) {
+        return Instant.ofEpochSecond(epochSecond).atZone(ZoneId.systemDefault()).toLocalDateTime();
+    }
+}
@@ -0,0 +1,208 @@
+package com.oixan.stripecashier.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+
+import com.oixan.stripecashier.entity.Subscription;
+import com.oixan.stripecashier.entity.SubscriptionStatusView;
+
+@DataJpaTest
+@ContextConfiguration(classes = SubscriptionRepositoryTest.Config.class)
+public class SubscriptionRepositoryTest {
+
+    /**
+     * Not a {@code @Configuration}, so that the component scans of the other tests do not pick it up.
+     */
+    @EnableAutoConfiguration
+    @EntityScan(basePackageClasses = Subscription.class)
+    @EnableJpaRepositories(basePackageClasses = SubscriptionRepository.class)
+    static class Config {
+    }
+
+    @Autowired
+    private SubscriptionRepository subscriptionRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void testStatusIsReadWithoutTheEntity() {
+        LocalDateTime trialEndsAt = LocalDateTime.of(2030, 1, 1, 0, 0);
+        Subscription subscription = subscription("cus_1", "default", "sub_1");
+        subscription.setTrialEndsAt(trialEndsAt);
+        subscriptionRepository.saveAndFlush(subscription);
+        subscriptionRepository.saveAndFlush(subscription("cus_1", "premium", "sub_2"));
+
+        SubscriptionStatusView status = subscriptionRepository.findStatusByUserIdAndType("cus_1", "default").orElseThrow();
+
+        assertEquals("default", status.getType());
+        assertEquals("trialing", status.getStripeStatus());
+        assertEquals(trialEndsAt, status.getTrialEndsAt());
+        assertNull(status.getEndsAt());
+        assertTrue(subscriptionRepository.findStatusByUserIdAndType("cus_2", "default").isEmpty());
+    }
+
+    @Test
+    void testLookupsReturnNewestSubscriptionOfType() {
+        Subscription ended = subscription("cus_1", "default", "sub_1");
+        ended.setStripeStatus("canceled");
+        subscriptionRepository.saveAndFlush(ended);
+        subscriptionRepository.saveAndFlush(subscription("cus_1", "default", "sub_2"));
+
+        assertEquals("sub_2", subscriptionRepository.findByUserIdAndType("cus_1", "default").orElseThrow().getStripeId());
+        assertEquals("trialing", subscriptionRepository.findStatusByUserIdAndType("cus_1", "default").orElseThrow().getStripeStatus());
+    }
+
+    @Test
+    void testStripeIdIsUnique() {
+        subscriptionRepository.saveAndFlush(subscription("cus_1", "default", "sub_1"));
+
+        assertThrows(DataIntegrityViolationException.class,
+                () -> subscriptionRepository.saveAndFlush(subscription("cus_1", "premium", "sub_1")));
+    }
+
+    @Test
+    void testUpsertInsertsMissingRow() {
+        Subscription subscription = subscription("cus_1", "default", "sub_1");
+        subscription.setTrialEndsAt(LocalDateTime.of(2030, 1, 1, 0, 0));
+
+        assertEquals(1, subscriptionRepository.upsert(subscription));
+
+        Subscription inserted = subscriptionRepository.findByUserIdAndType("cus_1", "default").orElseThrow();
+        assertEquals("sub_1", inserted.getStripeId());
+        assertEquals(LocalDateTime.of(2030, 1, 1, 0, 0), inserted.getTrialEndsAt());
+        assertEquals(0L, inserted.getVersion());
+    }
+
+    @Test
+    void testUpsertUpdatesRowOfSameStripeId() {
+        Subscription existing = subscription("cus_1", "default", "sub_1");
+        existing.setTrialEndsAt(LocalDateTime.of(2030, 1, 1, 0, 0));
+        subscriptionRepository.saveAndFlush(existing);
+
+        Subscription updated = subscription("cus_1", "default", "sub_1");
+        updated.setStripeStatus("active");
+        updated.setStripePrice("price_pro");
+        updated.setQuantity(3L);
+        subscriptionRepository.upsert(updated);
+
+        Map<String, Object> row = jdbcTemplate.queryForMap(
+                "SELECT stripe_id, stripe_status, stripe_price, quantity, trial_ends_at, version FROM subscriptions "
+                        + "WHERE user_id = 'cus_1' AND type = 'default'");
+        assertEquals("sub_1", row.get("STRIPE_ID"));
+        assertEquals("active", row.get("STRIPE_STATUS"));
+        assertEquals("price_pro", row.get("STRIPE_PRICE"));
+        assertEquals(3L, ((Number) row.get("QUANTITY")).longValue());
+        assertNotNull(row.get("TRIAL_ENDS_AT"));
+        assertEquals(1L, ((Number) row.get("VERSION")).longValue());
+    }
+
+    @Test
+    void testResubscribeKeepsEndedSubscriptionOfSameType() {
+        Subscription ended = subscription("cus_1", "default", "sub_1");
+        ended.setStripeStatus("canceled");
+        ended.setTrialEndsAt(LocalDateTime.of(2020, 1, 1, 0, 0));
+        ended.setEndsAt(LocalDateTime.of(2020, 2, 1, 0, 0));
+        subscriptionRepository.saveAndFlush(ended);
+
+        Subscription resubscribed = subscription("cus_1", "default", "sub_2");
+        resubscribed.setStripeStatus("active");
+        assertEquals(1, subscriptionRepository.upsert(resubscribed));
+
+        assertEquals(2L, subscriptionRepository.count());
+        Map<String, Object> row = jdbcTemplate.queryForMap(
+                "SELECT stripe_status, trial_ends_at, ends_at FROM subscriptions WHERE stripe_id = 'sub_1'");
+        assertEquals("canceled", row.get("STRIPE_STATUS"));
+        assertNotNull(row.get("TRIAL_ENDS_AT"));
+        assertNotNull(row.get("ENDS_AT"));
+        Subscription current = subscriptionRepository.findByUserIdAndType("cus_1", "default").orElseThrow();
+        assertEquals("sub_2", current.getStripeId());
+        assertEquals("active", current.getStripeStatus());
+        assertNull(current.getTrialEndsAt());
+    }
+
+    @Test
+    void testUpsertAllWritesEveryBatch() {
+        subscriptionRepository.saveAndFlush(subscription("cus_1", "default", "sub_1"));
+
+        Subscription updated = subscription("cus_1", "default", "sub_1");
+        updated.setStripeStatus("active");
+        List<Subscription> subscriptions = List.of(updated,
+                subscription("cus_2", "default", "sub_2"),
+                subscription("cus_3", "default", "sub_3"));
+
+        assertEquals(3, subscriptionRepository.upsertAll(subscriptions, 2));
+
+        assertEquals(3L, subscriptionRepository.count());
+        assertEquals("active", subscriptionRepository.findStatusByUserIdAndType("cus_1", "default").orElseThrow().getStripeStatus());
+        assertEquals("sub_3", subscriptionRepository.findByUserIdAndType("cus_3", "default").orElseThrow().getStripeId());
+        assertThrows(InvalidDataAccessApiUsageException.class, () -> subscriptionRepository.upsertAll(subscriptions, 0));
+    }
+
+    @Test
+    void testUpsertOfStaleVersionFails() {
+        subscriptionRepository.saveAndFlush(subscription("cus_1", "default", "sub_1"));
+        subscriptionRepository.upsert(subscription("cus_1", "default", "sub_1"));
+
+        Subscription stale = subscription("cus_1", "default", "sub_1");
+        stale.setStripeStatus("canceled");
+
+        assertThrows(OptimisticLockingFailureException.class, () -> subscriptionRepository.upsert(stale));
+        assertThrows(OptimisticLockingFailureException.class, () -> subscriptionRepository.upsertAll(List.of(stale), 10));
+        assertEquals("trialing", jdbcTemplate.queryForObject(
+                "SELECT stripe_status FROM subscriptions WHERE stripe_id = 'sub_1'", String.class));
+
+        stale.setVersion(1L);
+        assertEquals(1, subscriptionRepository.upsert(stale));
+        assertEquals(2L, jdbcTemplate.queryForObject(
+                "SELECT version FROM subscriptions WHERE stripe_id = 'sub_1'", Long.class));
+    }
+
+    @Test
+    void testVersionDefaultsToZero() {
+        jdbcTemplate.update("INSERT INTO subscriptions (user_id, type, stripe_id, stripe_status, created_at, updated_at) "
+                + "VALUES ('cus_1', 'default', 'sub_1', 'active', CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)");
+
+        assertEquals(0L, jdbcTemplate.queryForObject(
+                "SELECT version FROM subscriptions WHERE stripe_id = 'sub_1'", Long.class));
+    }
+
+    @Test
+    void testSaveOfStaleCopyFails() {
+        Subscription stale = subscriptionRepository.saveAndFlush(subscription("cus_1", "default", "sub_1"));
+        subscriptionRepository.upsert(subscription("cus_1", "default", "sub_1"));
+
+        stale.setStripeStatus("canceled");
+
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> subscriptionRepository.saveAndFlush(stale));
+    }
+
+    private static Subscription subscription(String userId, String type, String stripeId) {
+        Subscription subscription = new Subscription();
+        subscription.setUserId(userId);
+        subscription.setType(type);
+        subscription.setStripeId(stripeId);
+        subscription.setStripeStatus("trialing");
+        return subscription;
+    }
+}
@@ -0,0 +1,95 @@
+package com.oixan.stripecashier.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.test.context.ContextConfiguration;
+
+import com.oixan.stripecashier.entity.WebhookInboxEntry;
+
+@DataJpaTest
+@ContextConfiguration(classes = WebhookInboxRepositoryTest.Config.class)
+public class WebhookInboxRepositoryTest {
+
+    /**
+     * Not a {@code @Configuration}, so that the component scans of the other tests do not pick it up.
+     */
+    @EnableAutoConfiguration
+    @EntityScan(basePackageClasses = WebhookInboxEntry.class)
+    @EnableJpaRepositories(basePackageClasses = WebhookInboxRepository.class)
+    static class Config {
+    }
+
+    @Autowired
+    private WebhookInboxRepository webhookInboxRepository;
+
+    @Test
+    void testEventIsStoredOnce() {
+        webhookInboxRepository.saveAndFlush(entry("evt_1", 100L));
+
+        assertTrue(webhookInboxRepository.existsByEventId("evt_1"));
+        assertFalse(webhookInboxRepository.existsByEventId("evt_2"));
+        assertThrows(DataIntegrityViolationException.class,
+                () -> webhookInboxRepository.saveAndFlush(entry("evt_1", 100L)));
+    }
+
+    @Test
+    void testDueEventsAreReadInCreationOrder() {
+        LocalDateTime now = LocalDateTime.now();
+        webhookInboxRepository.saveAndFlush(entry("evt_3", 300L));
+        webhookInboxRepository.saveAndFlush(entry("evt_1", 100L));
+        WebhookInboxEntry processed = entry("evt_2", 200L);
+        processed.setProcessedAt(now);
+        webhookInboxRepository.saveAndFlush(processed);
+        WebhookInboxEntry later = entry("evt_4", 50L);
+        later.setNextAttemptAt(now.plusHours(1));
+        webhookInboxRepository.saveAndFlush(later);
+        WebhookInboxEntry exhausted = entry("evt_5", 60L);
+        exhausted.setAttempts(10);
+        webhookInboxRepository.saveAndFlush(exhausted);
+
+        List<WebhookInboxEntry> due = webhookInboxRepository.findDue(now.plusSeconds(1), 10, PageRequest.of(0, 10));
+
+        assertEquals(List.of("evt_1", "evt_3"), due.stream().map(WebhookInboxEntry::getEventId).toList());
+    }
+
+    @Test
+    void testProcessedEventsArePurged() {
+        LocalDateTime now = LocalDateTime.now();
+        WebhookInboxEntry old = entry("evt_1", 100L);
+        old.setProcessedAt(now.minusDays(8));
+        webhookInboxRepository.saveAndFlush(old);
+        WebhookInboxEntry recent = entry("evt_2", 200L);
+        recent.setProcessedAt(now.minusDays(1));
+        webhookInboxRepository.saveAndFlush(recent);
+        webhookInboxRepository.saveAndFlush(entry("evt_3", 300L));
+
+        assertEquals(1, webhookInboxRepository.deleteProcessedBefore(now.minusDays(7)));
+
+        assertFalse(webhookInboxRepository.existsByEventId("evt_1"));
+        assertTrue(webhookInboxRepository.existsByEventId("evt_2"));
+        assertTrue(webhookInboxRepository.existsByEventId("evt_3"));
+    }
+
+    private static WebhookInboxEntry entry(String eventId, Long created) {
+        WebhookInboxEntry entry = new WebhookInboxEntry();
+        entry.setEventId(eventId);
+        entry.setType("customer.subscription.updated");
+        entry.setEventCreated(created);
+        entry.setPayload("{\"id\":\"" + eventId + "\"}");
+        return entry;
+    }
+}
@@ -0,0 +1,138 @@
+package com.oixan.stripecashier.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.oixan.stripecashier.cache.SubscriptionCache;
+import com.oixan.stripecashier.config.StripeProperties;
+import com.oixan.stripecashier.entity.Subscription;
+import com.oixan.stripecashier.repository.SubscriptionRepository;
+
+public class SubscriptionServiceBatchTest {
+
+    private EmbeddedDatabase database;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private SubscriptionCache subscriptionCache;
+
+    private SubscriptionService subscriptionService;
+
+    @BeforeEach
+    void setUp() {
+        database = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        jdbcTemplate.execute("CREATE TABLE subscriptions ("
+                + "id BIGINT PRIMARY KEY, user_id VARCHAR(255) NOT NULL, type VARCHAR(255) NOT NULL, "
+                + "stripe_id VARCHAR(255) NOT NULL UNIQUE, stripe_status VARCHAR(255) NOT NULL, "
+                + "stripe_price VARCHAR(255), quantity BIGINT, trial_ends_at TIMESTAMP, ends_at TIMESTAMP, "
+                + "created_at TIMESTAMP NOT NULL, updated_at TIMESTAMP NOT NULL, version BIGINT DEFAULT 0 NOT NULL)");
+        for (long id = 1; id <= 3; id++) {
+            jdbcTemplate.update("INSERT INTO subscriptions (id, user_id, type, stripe_id, stripe_status, created_at, updated_at) "
+                    + "VALUES (?, ?, 'default', ?, 'active', CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)", id, "cus_" + id, "sub_" + id);
+        }
+
+        subscriptionCache = new SubscriptionCache(100, Duration.ofMinutes(5));
+        subscriptionService = new SubscriptionService();
+        ReflectionTestUtils.setField(subscriptionService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(subscriptionService, "subscriptionCache", subscriptionCache);
+    }
+
+    @AfterEach
+    void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    void testStatesAreWrittenInOneBatch() {
+        LocalDateTime endsAt = LocalDateTime.of(2024, 1, 31, 12, 0);
+        Subscription first = subscription(1L, "past_due", null);
+        Subscription third = subscription(3L, "canceled", endsAt);
+
+        int updated = subscriptionService.updateSubscriptionStates(List.of(first, third));
+
+        assertEquals(2, updated);
+        Map<String, Object> row1 = jdbcTemplate.queryForMap("SELECT * FROM subscriptions WHERE id = 1");
+        Map<String, Object> row2 = jdbcTemplate.queryForMap("SELECT * FROM subscriptions WHERE id = 2");
+        Map<String, Object> row3 = jdbcTemplate.queryForMap("SELECT * FROM subscriptions WHERE id = 3");
+        assertEquals("past_due", row1.get("STRIPE_STATUS"));
+        assertNull(row1.get("ENDS_AT"));
+        assertEquals(1L, ((Number) row1.get("VERSION")).longValue());
+        assertEquals("active", row2.get("STRIPE_STATUS"));
+        assertEquals(0L, ((Number) row2.get("VERSION")).longValue());
+        assertEquals("canceled", row3.get("STRIPE_STATUS"));
+        assertEquals(endsAt, ((Timestamp) row3.get("ENDS_AT")).toLocalDateTime());
+    }
+
+    @Test
+    void testWrittenSubscriptionsAreEvictedFromCache() {
+        Subscription cached = subscription(1L, "active", null);
+        subscriptionCache.get("cus_1", "default", () -> Optional.of(cached));
+
+        subscriptionService.updateSubscriptionStates(List.of(subscription(1L, "past_due", null)));
+
+        assertEquals(0, subscriptionCache.size());
+    }
+
+    @Test
+    void testEmptyBatchIsANoOp() {
+        assertEquals(0, subscriptionService.updateSubscriptionStates(List.of()));
+        assertTrue(subscriptionService.getSubscriptionsByStripeIds(List.of()).isEmpty());
+    }
+
+    @Test
+    void testUpsertsAreSentInConfiguredBatches() {
+        SubscriptionRepository subscriptionRepository = mock(SubscriptionRepository.class);
+        StripeProperties stripeProperties = new StripeProperties();
+        stripeProperties.getJdbc().setBatchSize(2);
+        ReflectionTestUtils.setField(subscriptionService, "subscriptionRepository", subscriptionRepository);
+        ReflectionTestUtils.setField(subscriptionService, "stripeProperties", stripeProperties);
+
+        Subscription cached = subscription(1L, "active", null);
+        subscriptionCache.get("cus_1", "default", () -> Optional.of(cached));
+        List<Subscription> subscriptions = List.of(subscription(1L, "past_due", null), subscription(2L, "active", null));
+        when(subscriptionRepository.upsertAll(subscriptions, 2)).thenReturn(2);
+
+        assertEquals(2, subscriptionService.upsertSubscriptions(subscriptions));
+        verify(subscriptionRepository).upsertAll(subscriptions, 2);
+        assertEquals(0, subscriptionCache.size());
+
+        assertEquals(0, subscriptionService.upsertSubscriptions(List.of()));
+        verifyNoMoreInteractions(subscriptionRepository);
+    }
+
+    private static Subscription subscription(Long id, String status, LocalDateTime endsAt) {
+        Subscription subscription = new Subscription();
+        subscription.setId(id);
+        subscription.setUserId("cus_" + id);
+        subscription.setType("default");
+        subscription.setStripeId("sub_" + id);
+        subscription.setStripeStatus(status);
+        subscription.setEndsAt(endsAt);
+        return subscription;
+    }
+}
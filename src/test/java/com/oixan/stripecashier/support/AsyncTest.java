@@ -0,0 +1,75 @@
+package com.oixan.stripecashier.support;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.stripe.exception.ApiConnectionException;
+
+public class AsyncTest {
+
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = Async.newExecutor(false, 2);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testCallRunsOffTheCallerThread() throws Exception {
+        Thread caller = Thread.currentThread();
+
+        Thread worker = Async.supply(Thread::currentThread, executor).get(5, TimeUnit.SECONDS);
+
+        assertNotEquals(caller, worker);
+        assertTrue(worker.getName().startsWith("stripe-cashier-"));
+    }
+
+    @Test
+    void testStripeExceptionCompletesFutureExceptionally() {
+        CompletableFuture<String> future = Async.supply(() -> {
+            throw new ApiConnectionException("connection reset");
+        }, executor);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(ApiConnectionException.class, e.getCause());
+    }
+
+    @Test
+    void testIllegalArgumentIsPropagatedAsIs() {
+        CompletableFuture<String> future = Async.supply(() -> {
+            throw new IllegalArgumentException("Subscription not found.");
+        }, executor);
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalArgumentException.class, e.getCause());
+        assertEquals("Subscription not found.", e.getCause().getMessage());
+    }
+
+    @Test
+    void testVirtualThreadExecutorRunsCalls() throws Exception {
+        ExecutorService preferred = Async.newExecutor(true, 2);
+        try {
+            assertEquals("ok", Async.supply(() -> "ok", preferred).get(5, TimeUnit.SECONDS));
+        } finally {
+            preferred.shutdown();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.oixan.stripecashier.support;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import com.oixan.stripecashier.entity.UserAccount;
+
+import jakarta.persistence.Id;
+import jakarta.persistence.MappedSuperclass;
+
+public class ClassesTest {
+
+    @MappedSuperclass
+    static class BaseEntity {
+
+        @Id
+        private String uuid;
+
+        BaseEntity(String uuid) {
+            this.uuid = uuid;
+        }
+    }
+
+    static class Member extends BaseEntity {
+
+        private String name;
+
+        Member(String uuid) {
+            super(uuid);
+        }
+    }
+
+    static class NoId {
+
+        private String name;
+    }
+
+    @Test
+    void testFindsIdDeclaredOnTheClass() throws Exception {
+        assertEquals("id", Classes.findIdField(UserAccount.class).getName());
+        assertEquals(Long.class, Classes.idType(UserAccount.class));
+        assertNull(Classes.idValue(new UserAccount()));
+    }
+
+    @Test
+    void testFindsIdDeclaredOnMappedSuperclass() throws Exception {
+        assertEquals("uuid", Classes.findIdField(Member.class).getName());
+        assertEquals(String.class, Classes.idType(Member.class));
+        assertEquals("u-42", Classes.idValue(new Member("u-42")));
+    }
+
+    @Test
+    void testLookupIsCachedPerClass() throws Exception {
+        assertSame(Classes.findIdField(Member.class), Classes.findIdField(Member.class));
+    }
+
+    @Test
+    void testMissingIdIsReported() {
+        assertThrows(NoSuchFieldException.class, () -> Classes.findIdField(NoId.class));
+        assertThrows(NoSuchFieldException.class, () -> Classes.idValue(new NoId()));
+    }
+}
@@ -0,0 +1,25 @@
+package com.oixan.stripecashier.support;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.sql.Statement;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.IncorrectUpdateSemanticsDataAccessException;
+
+public class JdbcBatchesTest {
+
+    @Test
+    void testUnknownCountsAreCountedAsOneRow() {
+        assertEquals(0, JdbcBatches.affectedRows(new int[0]));
+        assertEquals(4, JdbcBatches.affectedRows(new int[] {1, 2, Statement.SUCCESS_NO_INFO}));
+        assertEquals(1, JdbcBatches.affectedRows(new int[] {0, 1, 0}));
+    }
+
+    @Test
+    void testFailedStatementFailsTheBatch() {
+        assertThrows(IncorrectUpdateSemanticsDataAccessException.class,
+                () -> JdbcBatches.affectedRows(new int[] {1, Statement.EXECUTE_FAILED, 1}));
+    }
+}
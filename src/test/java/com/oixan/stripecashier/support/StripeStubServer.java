@@ -0,0 +1,382 @@
+package com.oixan.stripecashier.support;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import com.oixan.stripecashier.client.StripeClientOptions;
+import com.oixan.stripecashier.client.StripeHttpClient;
+import com.oixan.stripecashier.config.StripeProperties;
+import com.stripe.Stripe;
+import com.stripe.StripeClient;
+import com.stripe.net.HttpClient;
+import com.stripe.net.LiveStripeResponseGetter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A local HTTP server standing in for the Stripe API in tests.
+ * <p>
+ * Routes are stubbed by method and path with a canned JSON body, and every request is recorded so tests can
+ * count the calls an operation makes. While the server is running, the Stripe client is pointed at it with
+ * a test API key; {@link #close()} restores the previous settings.
+ * <p>
+ * Every response can be delayed by a configurable latency, and a share of the requests can be answered with an
+ * injected error instead of their route, to exercise the retries and measure the library against a slow or
+ * failing Stripe.
+ */
+public class StripeStubServer implements AutoCloseable {
+
+    static {
+        // Without TCP_NODELAY, Nagle's algorithm and delayed ACKs hold every response for about 40 ms;
+        // read once, when the first server is created
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final Map<String, Function<Request, Response>> routes = new ConcurrentHashMap<>();
+
+    private final List<Request> requests = new ArrayList<>();
+
+    private volatile long minLatencyNanos;
+
+    private volatile long maxLatencyNanos;
+
+    private volatile double errorRate;
+
+    private volatile Response injectedError;
+
+    private final String previousApiBase;
+
+    private final String previousApiKey;
+
+    private StripeStubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::serve);
+        // Requests are served concurrently, as Stripe does
+        server.setExecutor(executor);
+        server.start();
+
+        previousApiBase = Stripe.getApiBase();
+        previousApiKey = Stripe.apiKey;
+        Stripe.overrideApiBase("http://127.0.0.1:" + server.getAddress().getPort());
+        Stripe.apiKey = "sk_test_stub";
+    }
+
+    /**
+     * Starts a stub server and points the Stripe client at it.
+     *
+     * @return the running server
+     * @throws IOException if the server cannot be started
+     */
+    public static StripeStubServer start() throws IOException {
+        return new StripeStubServer();
+    }
+
+    /**
+     * Creates a Stripe client sending its requests to this server through a {@link StripeHttpClient}.
+     * Retries wait at most a few milliseconds.
+     *
+     * @return the client
+     */
+    public StripeClient client() {
+        StripeProperties.Http http = new StripeProperties.Http();
+        http.setInitialBackoff(Duration.ofMillis(1));
+        http.setMaxBackoff(Duration.ofMillis(5));
+        return client(http);
+    }
+
+    /**
+     * Creates a Stripe client sending its requests to this server through a {@link StripeHttpClient}.
+     *
+     * @param http the HTTP client settings
+     * @return the client
+     */
+    public StripeClient client(StripeProperties.Http http) {
+        StripeClientOptions options = new StripeClientOptions(() -> Stripe.apiKey, http);
+        return new StripeClient(new LiveStripeResponseGetter(options, new StripeHttpClient(http)));
+    }
+
+    /**
+     * Creates a Stripe client sending its requests to this server through the given HTTP client.
+     *
+     * @param httpClient the HTTP client
+     * @return the client
+     */
+    public StripeClient client(HttpClient httpClient) {
+        StripeClientOptions options = new StripeClientOptions(() -> Stripe.apiKey, new StripeProperties.Http());
+        return new StripeClient(new LiveStripeResponseGetter(options, httpClient));
+    }
+
+    /**
+     * Answers a route with a {@code 200} response.
+     *
+     * @param method the HTTP method
+     * @param path the request path, without query string
+     * @param json the response body
+     * @return this server
+     */
+    public StripeStubServer stub(String method, String path, String json) {
+        return stub(method, path, 200, json);
+    }
+
+    /**
+     * Answers a route with the given status.
+     *
+     * @param method the HTTP method
+     * @param path the request path, without query string
+     * @param status the response status
+     * @param json the response body
+     * @return this server
+     */
+    public StripeStubServer stub(String method, String path, int status, String json) {
+        Response response = new Response(status, json);
+        return respond(method, path, request -> response);
+    }
+
+    /**
+     * Answers a route with a response computed from each request, for example from its query string.
+     *
+     * @param method the HTTP method
+     * @param path the request path, without query string
+     * @param responder computes the response to a request
+     * @return this server
+     */
+    public StripeStubServer respond(String method, String path, Function<Request, Response> responder) {
+        routes.put(method + " " + path, responder);
+        return this;
+    }
+
+    /**
+     * Answers a route with a JSON file read from the test classpath.
+     *
+     * @param method the HTTP method
+     * @param path the request path, without query string
+     * @param resource the classpath location of the response body
+     * @return this server
+     */
+    public StripeStubServer stubResource(String method, String path, String resource) {
+        try (InputStream in = StripeStubServer.class.getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IllegalArgumentException("Missing fixture " + resource);
+            }
+            return stub(method, path, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Delays every response by the given latency.
+     *
+     * @param latency the delay, zero for none
+     * @return this server
+     */
+    public StripeStubServer latency(Duration latency) {
+        return latency(latency, latency);
+    }
+
+    /**
+     * Delays every response by a latency drawn uniformly between the given bounds.
+     *
+     * @param min the shortest delay
+     * @param max the longest delay
+     * @return this server
+     */
+    public StripeStubServer latency(Duration min, Duration max) {
+        if (min.isNegative() || max.compareTo(min) < 0) {
+            throw new IllegalArgumentException("Invalid latency range " + min + " to " + max);
+        }
+        minLatencyNanos = min.toNanos();
+        maxLatencyNanos = max.toNanos();
+        return this;
+    }
+
+    /**
+     * Answers the given share of the requests, on any route, with an injected error instead of their stub.
+     * The requests are still recorded.
+     *
+     * @param rate the share of the requests failing, from 0 for none to 1 for all
+     * @param error the response of the failing requests, such as {@code Response.error(503, "api_error", ...)}
+     * @return this server
+     */
+    public StripeStubServer errorRate(double rate, Response error) {
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("The error rate must be between 0 and 1: " + rate);
+        }
+        injectedError = error;
+        errorRate = rate;
+        return this;
+    }
+
+    /**
+     * Gets the requests received so far.
+     *
+     * @return a copy of the received requests, in arrival order
+     */
+    public List<Request> requests() {
+        synchronized (requests) {
+            return List.copyOf(requests);
+        }
+    }
+
+    /**
+     * Counts the requests received so far.
+     *
+     * @return the number of requests
+     */
+    public int callCount() {
+        synchronized (requests) {
+            return requests.size();
+        }
+    }
+
+    /**
+     * Counts the requests received so far on a route.
+     *
+     * @param method the HTTP method
+     * @param path the request path, without query string
+     * @return the number of requests on the route
+     */
+    public int callCount(String method, String path) {
+        return (int) requests().stream()
+                .filter(request -> request.method().equals(method) && request.path().equals(path))
+                .count();
+    }
+
+    /**
+     * Forgets the requests received so far.
+     */
+    public void reset() {
+        synchronized (requests) {
+            requests.clear();
+        }
+    }
+
+    /**
+     * Stops the server and restores the previous Stripe settings.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+        Stripe.overrideApiBase(previousApiBase);
+        Stripe.apiKey = previousApiKey;
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+
+        Request request = new Request(method, path, exchange.getRequestURI().getRawQuery(), body,
+                Map.copyOf(exchange.getRequestHeaders()));
+        synchronized (requests) {
+            requests.add(request);
+        }
+
+        delay();
+
+        Function<Request, Response> responder = routes.get(method + " " + path);
+        Response response;
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            response = injectedError;
+        } else if (responder != null) {
+            response = responder.apply(request);
+        } else {
+            response = Response.error(404, "invalid_request_error", "No stub for " + method + " " + path);
+        }
+
+        byte[] bytes = response.json().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("Request-Id", "req_stub");
+        exchange.sendResponseHeaders(response.status(), bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private void delay() {
+        long min = minLatencyNanos;
+        long max = maxLatencyNanos;
+        long nanos = max > min ? ThreadLocalRandom.current().nextLong(min, max + 1) : min;
+        if (nanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(nanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * A request received by the server.
+     *
+     * @param method the HTTP method
+     * @param path the request path
+     * @param query the raw query string, or {@code null}
+     * @param body the form-encoded body
+     * @param headers the request headers
+     */
+    public record Request(String method, String path, String query, String body, Map<String, List<String>> headers) {
+
+        /**
+         * Gets the first value of a header.
+         *
+         * @param name the header name, in any case
+         * @return the value, or {@code null} if the header is absent
+         */
+        public String header(String name) {
+            return headers.entrySet().stream()
+                    .filter(entry -> entry.getKey().equalsIgnoreCase(name) && !entry.getValue().isEmpty())
+                    .map(entry -> entry.getValue().get(0))
+                    .findFirst()
+                    .orElse(null);
+        }
+
+        /**
+         * Gets the value of the {@code Idempotency-Key} header.
+         *
+         * @return the idempotency key, or {@code null}
+         */
+        public String idempotencyKey() {
+            return header("Idempotency-Key");
+        }
+    }
+
+    /**
+     * A canned response.
+     *
+     * @param status the HTTP status
+     * @param json the response body
+     */
+    public record Response(int status, String json) {
+
+        /**
+         * Creates a Stripe error response.
+         *
+         * @param status the HTTP status
+         * @param type the Stripe error type, such as {@code rate_limit_error}
+         * @param message the error message
+         * @return the response
+         */
+        public static Response error(int status, String type, String message) {
+            return new Response(status, "{\"error\":{\"type\":\"" + type + "\",\"message\":\"" + message + "\"}}");
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.oixan.stripecashier.support;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.oixan.stripecashier.support.StripeStubServer.Response;
+import com.stripe.StripeClient;
+import com.stripe.exception.ApiException;
+import com.stripe.exception.InvalidRequestException;
+
+public class StripeStubServerTest {
+
+    private static final String CUSTOMER_PATH = "/v1/customers/cus_123";
+
+    private StripeStubServer stripe;
+
+    private StripeClient client;
+
+    private AtomicInteger answered;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        answered = new AtomicInteger();
+        stripe = StripeStubServer.start().respond("GET", CUSTOMER_PATH, request -> {
+            answered.incrementAndGet();
+            return new Response(200, "{\"id\":\"cus_123\",\"object\":\"customer\"}");
+        });
+        client = stripe.client();
+    }
+
+    @AfterEach
+    void tearDown() {
+        stripe.close();
+    }
+
+    @Test
+    void testResponsesAreDelayedByTheLatency() throws Exception {
+        stripe.latency(Duration.ofMillis(100));
+
+        long start = System.nanoTime();
+        client.customers().retrieve("cus_123");
+
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofMillis(100)) >= 0);
+        assertThrows(IllegalArgumentException.class, () -> stripe.latency(Duration.ofMillis(2), Duration.ofMillis(1)));
+    }
+
+    @Test
+    void testInjectedErrorsReplaceTheStub() throws Exception {
+        stripe.errorRate(1, Response.error(400, "invalid_request_error", "Injected"));
+
+        assertThrows(InvalidRequestException.class, () -> client.customers().retrieve("cus_123"));
+        assertEquals(1, stripe.callCount(), "Errors that are not retryable are not retried");
+        assertEquals(0, answered.get());
+
+        stripe.errorRate(0, null);
+        assertEquals("cus_123", client.customers().retrieve("cus_123").getId());
+        assertThrows(IllegalArgumentException.class, () -> stripe.errorRate(1.5, null));
+    }
+
+    @Test
+    void testInjectedServerErrorsAreRetried() throws Exception {
+        stripe.errorRate(1, Response.error(503, "api_error", "Injected"));
+
+        assertThrows(ApiException.class, () -> client.customers().retrieve("cus_123"));
+        assertEquals(3, stripe.callCount(), "One call and the two default retries");
+    }
+}
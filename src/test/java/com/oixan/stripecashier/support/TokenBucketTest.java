@@ -0,0 +1,65 @@
+package com.oixan.stripecashier.support;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+public class TokenBucketTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    void testBurstIsServedImmediately() {
+        TokenBucket bucket = new TokenBucket(10, 3, now::get);
+
+        assertEquals(0, bucket.reserve());
+        assertEquals(0, bucket.reserve());
+        assertEquals(0, bucket.reserve());
+        assertEquals(millis(100), bucket.reserve());
+    }
+
+    @Test
+    void testWaitingCallersAreSpacedByTheRate() {
+        TokenBucket bucket = new TokenBucket(10, 1, now::get);
+
+        assertEquals(0, bucket.reserve());
+        assertEquals(millis(100), bucket.reserve());
+        assertEquals(millis(200), bucket.reserve());
+
+        now.addAndGet(millis(200));
+        assertEquals(millis(100), bucket.reserve());
+    }
+
+    @Test
+    void testTokensRefillUpToTheCapacity() {
+        TokenBucket bucket = new TokenBucket(10, 2, now::get);
+        bucket.reserve();
+        bucket.reserve();
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+
+        assertEquals(0, bucket.reserve());
+        assertEquals(0, bucket.reserve());
+        assertEquals(millis(100), bucket.reserve());
+    }
+
+    @Test
+    void testRateChangeAppliesToTheNextTokens() {
+        TokenBucket bucket = new TokenBucket(10, 1, now::get);
+        bucket.reserve();
+
+        bucket.setRate(2);
+
+        assertEquals(2, bucket.getRate());
+        assertEquals(millis(500), bucket.reserve());
+        assertThrows(IllegalArgumentException.class, () -> bucket.setRate(0));
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
@@ -0,0 +1,339 @@
+package com.oixan.stripecashier.webhook;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.oixan.stripecashier.cache.CustomerCache;
+import com.oixan.stripecashier.config.StripeProperties;
+import com.oixan.stripecashier.entity.Subscription;
+import com.oixan.stripecashier.outbox.SubscriptionOutbox;
+import com.oixan.stripecashier.service.SubscriptionService;
+import com.stripe.exception.EventDataObjectDeserializationException;
+import com.stripe.model.Event;
+import com.stripe.model.EventDataObjectDeserializer;
+import com.stripe.model.StripeObject;
+import com.stripe.net.Webhook;
+
+public class StripeWebhookControllerTest {
+
+    private static final String SECRET = "whsec_test_secret";
+
+    private SubscriptionService subscriptionService;
+
+    private CustomerCache customerCache;
+
+    private WebhookEventDispatcher dispatcher;
+
+    private WebhookInbox inbox;
+
+    private StripeWebhookController controller;
+
+    @BeforeEach
+    void setUp() {
+        subscriptionService = mock(SubscriptionService.class);
+
+        SubscriptionWebhookHandler handler = new SubscriptionWebhookHandler();
+        ReflectionTestUtils.setField(handler, "subscriptionService", subscriptionService);
+
+        customerCache = mock(CustomerCache.class);
+        CustomerWebhookHandler customerHandler = new CustomerWebhookHandler();
+        ReflectionTestUtils.setField(customerHandler, "customerCache", customerCache);
+
+        dispatcher = new WebhookEventDispatcher(List.of(handler, customerHandler), 2, 10);
+        inbox = mock(WebhookInbox.class);
+        controller = controller(inbox);
+    }
+
+    @Test
+    void testSignedEventIsStoredAndAcknowledged() throws Exception {
+        String payload = fixture("customer.subscription.updated.json");
+
+        assertEquals(HttpStatus.OK, controller.handle(payload, sign(payload, SECRET)).getStatusCode());
+
+        ArgumentCaptor<Event> event = ArgumentCaptor.forClass(Event.class);
+        verify(inbox).receive(event.capture(), eq(payload));
+        assertEquals("evt_1001", event.getValue().getId());
+        verify(subscriptionService, never()).saveSubscription(any());
+    }
+
+    @Test
+    void testDuplicateEventIsAcknowledged() throws Exception {
+        when(inbox.receive(any(), any())).thenReturn(false);
+
+        assertEquals(HttpStatus.OK, replay("customer.subscription.updated.json").getStatusCode());
+    }
+
+    @Test
+    void testInvalidSignatureIsRejected() throws Exception {
+        String payload = fixture("customer.subscription.updated.json");
+
+        assertEquals(HttpStatus.BAD_REQUEST, controller.handle(payload, sign(payload, "whsec_other")).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, controller.handle(payload, null).getStatusCode());
+
+        verify(inbox, never()).receive(any(), any());
+    }
+
+    @Test
+    void testUnreadableEventIsRejected() throws Exception {
+        when(inbox.receive(any(), any())).thenThrow(new IllegalArgumentException("Unreadable"));
+
+        assertEquals(HttpStatus.BAD_REQUEST, replay("customer.subscription.updated.json").getStatusCode());
+    }
+
+    @Test
+    void testStorageFailureAsksStripeToRetry() throws Exception {
+        when(inbox.receive(any(), any())).thenThrow(new DataAccessResourceFailureException("Database unavailable"));
+
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, replay("customer.subscription.updated.json").getStatusCode());
+    }
+
+    @Test
+    void testEventIsAppliedToSubscription() throws Exception {
+        when(subscriptionService.getSubscriptionByStripeId("sub_123")).thenReturn(Optional.of(subscription()));
+
+        apply("customer.subscription.updated.json");
+
+        Subscription saved = savedSubscription();
+        assertEquals("active", saved.getStripeStatus());
+        assertEquals("price_pro", saved.getStripePrice());
+        assertEquals(2L, saved.getQuantity());
+        assertEquals(toLocalDateTime(1702592000L), saved.getEndsAt());
+        assertEquals(1700000100L, saved.getLastEventCreated());
+    }
+
+    @Test
+    void testOutOfOrderEventIsSkipped() throws Exception {
+        Subscription subscription = subscription();
+        when(subscriptionService.getSubscriptionByStripeId("sub_123")).thenReturn(Optional.of(subscription));
+
+        apply("customer.subscription.updated.json");
+        apply("customer.subscription.updated.stale.json");
+
+        verify(subscriptionService, times(1)).saveSubscription(any());
+        assertEquals("active", savedSubscription().getStripeStatus());
+    }
+
+    @Test
+    void testOutOfOrderEventIsSkippedAfterRestart() throws Exception {
+        // The order is kept on the row, so a new dispatcher skips the stale event as well
+        Subscription subscription = subscription();
+        subscription.setLastEventCreated(1700000100L);
+        when(subscriptionService.getSubscriptionByStripeId("sub_123")).thenReturn(Optional.of(subscription));
+
+        apply("customer.subscription.updated.stale.json");
+
+        verify(subscriptionService, never()).saveSubscription(any());
+    }
+
+    @Test
+    void testDeletedEventEndsSubscription() throws Exception {
+        when(subscriptionService.getSubscriptionByStripeId("sub_123")).thenReturn(Optional.of(subscription()));
+
+        apply("customer.subscription.deleted.json");
+
+        Subscription saved = savedSubscription();
+        assertEquals("canceled", saved.getStripeStatus());
+        assertEquals(toLocalDateTime(1700000200L), saved.getEndsAt());
+    }
+
+    @Test
+    void testVersionConflictAppliesEventToFreshRow() throws Exception {
+        when(subscriptionService.getSubscriptionByStripeId("sub_123"))
+                .thenReturn(Optional.of(subscription()), Optional.of(subscription()));
+        when(subscriptionService.saveSubscription(any()))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Subscription.class, 1L))
+                .thenAnswer(invocation -> invocation.getArgument(0));
+
+        apply("customer.subscription.updated.json");
+
+        verify(subscriptionService, times(2)).getSubscriptionByStripeId("sub_123");
+        ArgumentCaptor<Subscription> captor = ArgumentCaptor.forClass(Subscription.class);
+        verify(subscriptionService, times(2)).saveSubscription(captor.capture());
+        assertEquals("active", captor.getValue().getStripeStatus());
+    }
+
+    @Test
+    void testUnknownSubscriptionFailsSoItIsRetried() throws Exception {
+        when(subscriptionService.getSubscriptionByStripeId("sub_123")).thenReturn(Optional.empty());
+
+        ExecutionException error = assertThrows(ExecutionException.class,
+                () -> dispatcher.dispatch(event(fixture("customer.subscription.updated.json"))).get(5, TimeUnit.SECONDS));
+        dispatcher.shutdown();
+
+        assertTrue(error.getCause() instanceof IllegalStateException);
+        verify(subscriptionService, never()).saveSubscription(any());
+    }
+
+    @Test
+    void testSubscriptionStillInTheOutboxIsWrittenFirst() throws Exception {
+        SubscriptionOutbox outbox = mock(SubscriptionOutbox.class);
+        when(outbox.flush("sub_123")).thenReturn(true);
+        SubscriptionWebhookHandler handler = new SubscriptionWebhookHandler();
+        ReflectionTestUtils.setField(handler, "subscriptionService", subscriptionService);
+        ReflectionTestUtils.setField(handler, "subscriptionOutbox", outbox);
+        dispatcher = new WebhookEventDispatcher(List.of(handler), 1, 10);
+        when(subscriptionService.getSubscriptionByStripeId("sub_123"))
+                .thenReturn(Optional.empty(), Optional.of(subscription()));
+
+        apply("customer.subscription.updated.json");
+
+        verify(outbox).flush("sub_123");
+        assertEquals("active", savedSubscription().getStripeStatus());
+    }
+
+    @Test
+    void testCustomerUpdatedEvictsCachedCustomer() throws Exception {
+        apply("customer.updated.json");
+
+        verify(customerCache).invalidate("cus_123");
+        verify(subscriptionService, never()).saveSubscription(any());
+    }
+
+    @Test
+    void testFullQueueRejectsTheEvent() throws Exception {
+        CountDownLatch taken = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        WebhookEventDispatcher saturated = new WebhookEventDispatcher(List.of(blocking(taken, release)), 1, 1);
+
+        String payload = fixture("customer.subscription.updated.json");
+        CompletableFuture<Void> first = saturated.dispatch(event(payload));
+        assertTrue(taken.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Void> second = saturated.dispatch(event(payload.replace("evt_1001", "evt_1003")));
+        CompletableFuture<Void> third = saturated.dispatch(event(payload.replace("evt_1001", "evt_1004")));
+
+        assertFalse(second.isDone(), "The second event waits in the queue");
+        ExecutionException rejected = assertThrows(ExecutionException.class, () -> third.get(5, TimeUnit.SECONDS));
+        assertTrue(rejected.getCause() instanceof RejectedExecutionException);
+
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        saturated.shutdown();
+    }
+
+    @Test
+    void testUnreadableEventIsRefused() throws Exception {
+        Event unreadable = spy(event(fixture("customer.subscription.updated.json")));
+        EventDataObjectDeserializer deserializer = mock(EventDataObjectDeserializer.class);
+        when(deserializer.getObject()).thenReturn(Optional.empty());
+        when(deserializer.deserializeUnsafe()).thenThrow(new EventDataObjectDeserializationException("Unreadable", "{}"));
+        doReturn(deserializer).when(unreadable).getDataObjectDeserializer();
+
+        assertThrows(IllegalArgumentException.class, () -> dispatcher.dispatch(unreadable));
+        dispatcher.shutdown();
+
+        verify(subscriptionService, never()).saveSubscription(any());
+    }
+
+    private static StripeWebhookHandler blocking(CountDownLatch taken, CountDownLatch release) {
+        return new StripeWebhookHandler() {
+            @Override
+            public boolean supports(String eventType) {
+                return true;
+            }
+
+            @Override
+            public void handle(Event event, StripeObject object) {
+                taken.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    private static Event event(String payload) throws Exception {
+        return Webhook.constructEvent(payload, sign(payload, SECRET), SECRET);
+    }
+
+    private StripeWebhookController controller(WebhookInbox webhookInbox) {
+        StripeProperties properties = new StripeProperties();
+        properties.getWebhook().setSecret(SECRET);
+
+        StripeWebhookController webhookController = new StripeWebhookController();
+        ReflectionTestUtils.setField(webhookController, "stripeProperties", properties);
+        ReflectionTestUtils.setField(webhookController, "webhookInbox", webhookInbox);
+        return webhookController;
+    }
+
+    private ResponseEntity<Void> replay(String name) throws Exception {
+        String payload = fixture(name);
+        return controller.handle(payload, sign(payload, SECRET));
+    }
+
+    private void apply(String name) throws Exception {
+        dispatcher.dispatch(event(fixture(name))).get(5, TimeUnit.SECONDS);
+    }
+
+    private Subscription savedSubscription() {
+        ArgumentCaptor<Subscription> captor = ArgumentCaptor.forClass(Subscription.class);
+        verify(subscriptionService).saveSubscription(captor.capture());
+        assertNotNull(captor.getValue());
+        return captor.getValue();
+    }
+
+    private static Subscription subscription() {
+        Subscription subscription = new Subscription();
+        subscription.setId(1L);
+        subscription.setUserId("cus_123");
+        subscription.setType("default");
+        subscription.setStripeId("sub_123");
+        subscription.setStripeStatus("past_due");
+        subscription.setStripePrice("price_basic");
+        subscription.setQuantity(1L);
+        return subscription;
+    }
+
+    private static String sign(String payload, String secret) throws Exception {
+        long timestamp = Webhook.Util.getTimeNow();
+        String signature = Webhook.Util.computeHmacSha256(secret, timestamp + "." + payload);
+        return "t=" + timestamp + ",v1=" + signature;
+    }
+
+    private static String fixture(String name) throws IOException {
+        try (InputStream in = StripeWebhookControllerTest.class.getResourceAsStream("/webhook/" + name)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochSecond) {
+        return Instant.ofEpochSecond(epochSecond).atZone(ZoneId.systemDefault()).toLocalDateTime();
+    }
+}
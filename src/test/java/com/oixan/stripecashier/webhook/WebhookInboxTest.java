@@ -0,0 +1,208 @@
+package com.oixan.stripecashier.webhook;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.oixan.stripecashier.config.StripeProperties;
+import com.oixan.stripecashier.entity.WebhookInboxEntry;
+import com.oixan.stripecashier.repository.WebhookInboxRepository;
+import com.stripe.exception.EventDataObjectDeserializationException;
+import com.stripe.model.Event;
+import com.stripe.model.EventDataObjectDeserializer;
+import com.stripe.net.Webhook;
+
+public class WebhookInboxTest {
+
+    private static final String SECRET = "whsec_test_secret";
+
+    private WebhookInboxRepository webhookInboxRepository;
+
+    private WebhookEventDispatcher dispatcher;
+
+    private StripeProperties stripeProperties;
+
+    private WebhookInbox inbox;
+
+    @BeforeEach
+    void setUp() {
+        webhookInboxRepository = mock(WebhookInboxRepository.class);
+        dispatcher = mock(WebhookEventDispatcher.class);
+        stripeProperties = new StripeProperties();
+
+        inbox = new WebhookInbox();
+        ReflectionTestUtils.setField(inbox, "webhookInboxRepository", webhookInboxRepository);
+        ReflectionTestUtils.setField(inbox, "webhookEventDispatcher", dispatcher);
+        ReflectionTestUtils.setField(inbox, "stripeProperties", stripeProperties);
+    }
+
+    @Test
+    void testReceiveStoresOneEntry() throws Exception {
+        String payload = fixture("customer.subscription.updated.json");
+
+        assertTrue(inbox.receive(event(payload), payload));
+
+        ArgumentCaptor<WebhookInboxEntry> entry = ArgumentCaptor.forClass(WebhookInboxEntry.class);
+        verify(webhookInboxRepository).save(entry.capture());
+        assertEquals("evt_1001", entry.getValue().getEventId());
+        assertEquals("customer.subscription.updated", entry.getValue().getType());
+        assertEquals(1700000100L, entry.getValue().getEventCreated());
+        assertEquals(payload, entry.getValue().getPayload());
+        verify(dispatcher, never()).dispatch(any());
+    }
+
+    @Test
+    void testDuplicateDeliveryIsNotStoredAgain() throws Exception {
+        String payload = fixture("customer.subscription.updated.json");
+        when(webhookInboxRepository.existsByEventId("evt_1001")).thenReturn(true);
+
+        assertFalse(inbox.receive(event(payload), payload));
+
+        verify(webhookInboxRepository, never()).save(any());
+    }
+
+    @Test
+    void testConcurrentDuplicateDeliveryIsNotStoredAgain() throws Exception {
+        String payload = fixture("customer.subscription.updated.json");
+        when(webhookInboxRepository.save(any())).thenThrow(new DataIntegrityViolationException("idx_webhook_inbox_event_id"));
+
+        assertFalse(inbox.receive(event(payload), payload));
+    }
+
+    @Test
+    void testUnreadableEventIsNotStored() throws Exception {
+        String payload = fixture("customer.subscription.updated.json");
+        Event unreadable = spy(event(payload));
+        EventDataObjectDeserializer deserializer = mock(EventDataObjectDeserializer.class);
+        when(deserializer.getObject()).thenReturn(Optional.empty());
+        when(deserializer.deserializeUnsafe()).thenThrow(new EventDataObjectDeserializationException("Unreadable", "{}"));
+        doReturn(deserializer).when(unreadable).getDataObjectDeserializer();
+
+        assertThrows(IllegalArgumentException.class, () -> inbox.receive(unreadable, payload));
+
+        verify(webhookInboxRepository, never()).save(any());
+    }
+
+    @Test
+    void testDueEventsAreAppliedInOrderAndMarkedProcessed() throws Exception {
+        List<WebhookInboxEntry> due = List.of(
+                entry(1L, "customer.subscription.updated.stale.json"),
+                entry(2L, "customer.subscription.updated.json"));
+        when(webhookInboxRepository.findDue(any(), anyInt(), any(Pageable.class))).thenReturn(due);
+        List<String> dispatched = new ArrayList<>();
+        when(dispatcher.dispatch(any())).thenAnswer(invocation -> {
+            dispatched.add(invocation.<Event>getArgument(0).getId());
+            return CompletableFuture.completedFuture(null);
+        });
+
+        assertEquals(2, inbox.relay());
+
+        assertEquals(List.of("evt_1000", "evt_1001"), dispatched);
+        verify(webhookInboxRepository).saveAll(argThat(entries -> {
+            List<WebhookInboxEntry> saved = new ArrayList<>();
+            entries.forEach(saved::add);
+            return saved.size() == 2 && saved.stream().allMatch(entry -> entry.getProcessedAt() != null);
+        }));
+    }
+
+    @Test
+    void testFailedEventIsRetriedLater() throws Exception {
+        WebhookInboxEntry entry = entry(1L, "customer.subscription.updated.json");
+        when(webhookInboxRepository.findDue(any(), anyInt(), any(Pageable.class))).thenReturn(List.of(entry));
+        when(dispatcher.dispatch(any())).thenReturn(
+                CompletableFuture.failedFuture(new IllegalStateException("Subscription sub_123 not found.")));
+
+        LocalDateTime before = LocalDateTime.now();
+        assertEquals(0, inbox.relay());
+
+        verify(webhookInboxRepository).save(entry);
+        assertEquals(1, entry.getAttempts());
+        assertTrue(entry.getLastError().contains("not found"));
+        assertTrue(entry.getNextAttemptAt().isAfter(before));
+        assertNull(entry.getProcessedAt());
+        verify(webhookInboxRepository, never()).saveAll(any());
+    }
+
+    @Test
+    void testEventRejectedByAFullQueueIsLeftForTheNextRun() throws Exception {
+        stripeProperties.getWebhook().setBatchSize(1);
+        WebhookInboxEntry entry = entry(1L, "customer.subscription.updated.json");
+        when(webhookInboxRepository.findDue(any(), anyInt(), any(Pageable.class))).thenReturn(List.of(entry));
+        when(dispatcher.dispatch(any())).thenReturn(CompletableFuture.failedFuture(new RejectedExecutionException()));
+
+        assertEquals(0, inbox.relay());
+
+        assertEquals(0, entry.getAttempts());
+        assertNull(entry.getProcessedAt());
+        verify(webhookInboxRepository, never()).save(any());
+    }
+
+    @Test
+    void testPurgeDeletesProcessedEventsPastRetention() {
+        stripeProperties.getWebhook().setRetention(Duration.ofDays(2));
+
+        LocalDateTime before = LocalDateTime.now().minusDays(2);
+        inbox.purge();
+
+        ArgumentCaptor<LocalDateTime> cutoff = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(webhookInboxRepository).deleteProcessedBefore(cutoff.capture());
+        assertNotNull(cutoff.getValue());
+        assertFalse(cutoff.getValue().isBefore(before));
+        assertTrue(cutoff.getValue().isBefore(LocalDateTime.now().minusDays(1)));
+    }
+
+    @Test
+    void testBackoffDoublesWithEachAttempt() {
+        assertEquals(Duration.ofSeconds(1), WebhookInbox.backoff(Duration.ofSeconds(1), 1));
+        assertEquals(Duration.ofSeconds(8), WebhookInbox.backoff(Duration.ofSeconds(1), 4));
+    }
+
+    private static WebhookInboxEntry entry(Long id, String fixture) throws IOException {
+        WebhookInboxEntry entry = new WebhookInboxEntry();
+        entry.setId(id);
+        entry.setPayload(fixture(fixture));
+        return entry;
+    }
+
+    private static Event event(String payload) throws Exception {
+        long timestamp = Webhook.Util.getTimeNow();
+        String signature = Webhook.Util.computeHmacSha256(SECRET, timestamp + "." + payload);
+        return Webhook.constructEvent(payload, "t=" + timestamp + ",v1=" + signature, SECRET);
+    }
+
+    private static String fixture(String name) throws IOException {
+        try (InputStream in = WebhookInboxTest.class.getResourceAsStream("/webhook/" + name)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}